@@ -0,0 +1,276 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The fields we need from one line of a CDX index file, which looks like:
+ *
+ * <pre>
+ * 0,124,148,146)/index.php 20170429211342 {"url": "http://146.148.124.0/index.php", "mime": "text/html", ...}
+ * </pre>
+ *
+ * We only extract the fields we use from the JSON, with a minimal scanner, versus building a full JSON object for
+ * every line that has the key we're looking for.
+ */
+public class CdxEntry {
+
+    private static final byte[] URL_FIELD = "url".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MIME_FIELD = "mime".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STATUS_FIELD = "status".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FILENAME_FIELD = "filename".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OFFSET_FIELD = "offset".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LENGTH_FIELD = "length".getBytes(StandardCharsets.UTF_8);
+
+    private long _timestamp;
+    private String _url;
+    private String _mime;
+    private int _status = -1;
+    private String _filename;
+    private long _offset = -1;
+    private long _length = -1;
+
+    public long getTimestamp() {
+        return _timestamp;
+    }
+
+    public String getUrl() {
+        return _url;
+    }
+
+    public String getMime() {
+        return _mime;
+    }
+
+    public int getStatus() {
+        return _status;
+    }
+
+    public String getFilename() {
+        return _filename;
+    }
+
+    public long getOffset() {
+        return _offset;
+    }
+
+    public long getLength() {
+        return _length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d %d %s %s@%d+%d", _url, _timestamp, _status, _mime, _filename,
+                _offset, _length);
+    }
+
+    /**
+     * Parse the CDX line in data[start, end), where <keyEnd> is the end of the key.
+     *
+     * @return the entry
+     * @throws IOException
+     *             if the line isn't valid, or is missing one of the fields we need.
+     */
+    public static CdxEntry parse(byte[] data, int start, int keyEnd, int end) throws IOException {
+        CdxEntry result = new CdxEntry();
+
+        int pos = skipSpaces(data, keyEnd, end);
+        int timestampEnd = pos;
+        while ((timestampEnd < end) && (data[timestampEnd] != ' ')) {
+            timestampEnd++;
+        }
+
+        result._timestamp = parseLong(data, pos, timestampEnd, start, end);
+
+        pos = skipWhitespace(data, timestampEnd, end);
+        if ((pos == end) || (data[pos] != '{')) {
+            throw invalidLine(data, start, end);
+        }
+
+        pos++;
+        while (true) {
+            pos = skipWhitespace(data, pos, end);
+            if (pos == end) {
+                throw invalidLine(data, start, end);
+            } else if (data[pos] == '}') {
+                break;
+            } else if (data[pos] != '"') {
+                throw invalidLine(data, start, end);
+            }
+
+            int nameStart = pos + 1;
+            int nameEnd = findStringEnd(data, nameStart, end, start);
+
+            pos = skipWhitespace(data, nameEnd + 1, end);
+            if ((pos == end) || (data[pos] != ':')) {
+                throw invalidLine(data, start, end);
+            }
+
+            pos = skipWhitespace(data, pos + 1, end);
+            int valueStart;
+            int valueEnd;
+            if ((pos < end) && (data[pos] == '"')) {
+                valueStart = pos + 1;
+                valueEnd = findStringEnd(data, valueStart, end, start);
+                pos = valueEnd + 1;
+            } else {
+                // Number, true/false/null. We don't handle nested objects or arrays,
+                // which CDX lines don't have.
+                valueStart = pos;
+                while ((pos < end) && (data[pos] != ',') && (data[pos] != '}')
+                        && (data[pos] != ' ')) {
+                    pos++;
+                }
+
+                valueEnd = pos;
+            }
+
+            if (fieldEquals(data, nameStart, nameEnd, URL_FIELD)) {
+                result._url = decodeString(data, valueStart, valueEnd);
+            } else if (fieldEquals(data, nameStart, nameEnd, MIME_FIELD)) {
+                result._mime = decodeString(data, valueStart, valueEnd);
+            } else if (fieldEquals(data, nameStart, nameEnd, STATUS_FIELD)) {
+                result._status = (int) parseLong(data, valueStart, valueEnd, start, end);
+            } else if (fieldEquals(data, nameStart, nameEnd, FILENAME_FIELD)) {
+                result._filename = decodeString(data, valueStart, valueEnd);
+            } else if (fieldEquals(data, nameStart, nameEnd, OFFSET_FIELD)) {
+                result._offset = parseLong(data, valueStart, valueEnd, start, end);
+            } else if (fieldEquals(data, nameStart, nameEnd, LENGTH_FIELD)) {
+                result._length = parseLong(data, valueStart, valueEnd, start, end);
+            }
+
+            pos = skipWhitespace(data, pos, end);
+            if ((pos < end) && (data[pos] == ',')) {
+                pos++;
+            }
+        }
+
+        if ((result._url == null) || (result._mime == null) || (result._status == -1)
+                || (result._filename == null) || (result._offset == -1)
+                || (result._length == -1)) {
+            throw new IOException("CDX line is missing required fields: "
+                    + new String(data, start, end - start, StandardCharsets.UTF_8));
+        }
+
+        return result;
+    }
+
+    private static int skipSpaces(byte[] data, int pos, int end) {
+        while ((pos < end) && (data[pos] == ' ')) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    private static int skipWhitespace(byte[] data, int pos, int end) {
+        while ((pos < end) && ((data[pos] == ' ') || (data[pos] == '\t') || (data[pos] == '\r'))) {
+            pos++;
+        }
+
+        return pos;
+    }
+
+    /**
+     * @return position of the closing quote of the string that starts at <pos>.
+     */
+    private static int findStringEnd(byte[] data, int pos, int end, int lineStart)
+            throws IOException {
+        while (pos < end) {
+            byte b = data[pos];
+            if (b == '"') {
+                return pos;
+            } else if (b == '\\') {
+                pos += 2;
+            } else {
+                pos++;
+            }
+        }
+
+        throw invalidLine(data, lineStart, end);
+    }
+
+    private static boolean fieldEquals(byte[] data, int start, int end, byte[] field) {
+        if ((end - start) != field.length) {
+            return false;
+        }
+
+        for (int i = 0; i < field.length; i++) {
+            if (data[start + i] != field[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseLong(byte[] data, int start, int end, int lineStart, int lineEnd)
+            throws IOException {
+        if (start == end) {
+            throw invalidLine(data, lineStart, lineEnd);
+        }
+
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                throw invalidLine(data, lineStart, lineEnd);
+            }
+
+            result = (result * 10) + digit;
+        }
+
+        return result;
+    }
+
+    private static String decodeString(byte[] data, int start, int end) {
+        String result = new String(data, start, end - start, StandardCharsets.UTF_8);
+        if (result.indexOf('\\') == -1) {
+            return result;
+        }
+
+        StringBuilder unescaped = new StringBuilder(result.length());
+        for (int i = 0; i < result.length(); i++) {
+            char c = result.charAt(i);
+            if ((c != '\\') || (i == result.length() - 1)) {
+                unescaped.append(c);
+                continue;
+            }
+
+            c = result.charAt(++i);
+            switch (c) {
+                case 'b':
+                    unescaped.append('\b');
+                    break;
+                case 'f':
+                    unescaped.append('\f');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 < result.length()) {
+                        unescaped.append((char) Integer.parseInt(result.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default:
+                    // \" \\ \/
+                    unescaped.append(c);
+            }
+        }
+
+        return unescaped.toString();
+    }
+
+    private static IOException invalidLine(byte[] data, int start, int end) {
+        return new IOException(
+                "Invalid CDX line: " + new String(data, start, end - start, StandardCharsets.UTF_8));
+    }
+}
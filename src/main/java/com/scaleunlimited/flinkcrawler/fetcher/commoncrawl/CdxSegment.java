@@ -0,0 +1,187 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A decompressed CDX index segment (about 3000 lines), with the start of every line and the end of its SURT key
+ * pre-computed. Since the lines are sorted by key, we can binary search for a key by comparing bytes, and then only
+ * parse the (few) lines that match, versus decompressing the segment and running a regex over every line for every
+ * lookup.
+ */
+public class CdxSegment {
+
+    // Overhead of our two int arrays, per line.
+    private static final int BYTES_PER_LINE = 8;
+
+    private final byte[] _data;
+    private final int[] _lineStarts;
+    private final int[] _keyEnds;
+    private final int _numLines;
+
+    /**
+     * Decompress and index a gzipped segment, as read from a CDX file.
+     *
+     * @param gzippedData
+     * @return parsed segment
+     * @throws IOException
+     */
+    public static CdxSegment parse(byte[] gzippedData) throws IOException {
+        try (GZIPInputStream gzis = new GZIPInputStream(new ByteArrayInputStream(gzippedData))) {
+            return new CdxSegment(IOUtils.toByteArray(gzis));
+        }
+    }
+
+    /**
+     * @param data
+     *            uncompressed CDX lines, sorted by key.
+     * @throws IOException
+     *             if a line doesn't have a key.
+     */
+    public CdxSegment(byte[] data) throws IOException {
+        _data = data;
+
+        int numLines = 0;
+        for (int i = 0; i < data.length; i++) {
+            if ((data[i] == '\n') && (i > 0) && (data[i - 1] != '\n')) {
+                numLines++;
+            }
+        }
+
+        if ((data.length > 0) && (data[data.length - 1] != '\n')) {
+            numLines++;
+        }
+
+        _lineStarts = new int[numLines + 1];
+        _keyEnds = new int[numLines];
+
+        int lineIndex = 0;
+        int pos = 0;
+        while (pos < data.length) {
+            if (data[pos] == '\n') {
+                // Skip empty lines
+                pos++;
+                continue;
+            }
+
+            int lineStart = pos;
+            int keyEnd = -1;
+            while ((pos < data.length) && (data[pos] != '\n')) {
+                if ((keyEnd == -1) && (data[pos] == ' ')) {
+                    keyEnd = pos;
+                }
+
+                pos++;
+            }
+
+            if (keyEnd == -1) {
+                throw new IOException("Invalid CDX line: "
+                        + new String(data, lineStart, pos - lineStart, StandardCharsets.UTF_8));
+            }
+
+            _lineStarts[lineIndex] = lineStart;
+            _keyEnds[lineIndex] = keyEnd;
+            lineIndex++;
+        }
+
+        _numLines = lineIndex;
+        _lineStarts[_numLines] = data.length;
+    }
+
+    public int size() {
+        return _numLines;
+    }
+
+    /**
+     * @return approximate number of bytes of heap used by this segment, for the segment cache.
+     */
+    public long getSizeInBytes() {
+        return _data.length + ((long) BYTES_PER_LINE * _numLines);
+    }
+
+    /**
+     * Return all entries with a key that's equal to <targetKey>, in the order they occur in the segment (which is
+     * sorted by timestamp).
+     *
+     * @param targetKey
+     *            SURT-format key
+     * @return list of entries, which will be empty if there are no matches.
+     * @throws IOException
+     *             if one of the matching lines can't be parsed.
+     */
+    public List<CdxEntry> getEntries(String targetKey) throws IOException {
+        byte[] key = targetKey.getBytes(StandardCharsets.UTF_8);
+        return getEntries(key, key.length);
+    }
+
+    /**
+     * Same as {@link #getEntries(String)}, but for the UTF-8 bytes of the key (e.g. from {@link IndexKeyBuilder}).
+     *
+     * @param key
+     * @param keyLength
+     *            number of bytes in <key> to use.
+     * @return list of entries, which will be empty if there are no matches.
+     * @throws IOException
+     */
+    public List<CdxEntry> getEntries(byte[] key, int keyLength) throws IOException {
+        List<CdxEntry> result = new ArrayList<>();
+        for (int line = findFirst(key, keyLength); (line < _numLines)
+                && (compareKey(line, key, keyLength) == 0); line++) {
+            result.add(CdxEntry.parse(_data, _lineStarts[line], _keyEnds[line], getLineEnd(line)));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return index of the first line with a key that's >= <key>, or the number of lines if all keys are less.
+     */
+    private int findFirst(byte[] key, int keyLength) {
+        int low = 0;
+        int high = _numLines;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(mid, key, keyLength) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compare the key of <line> to <key>, as unsigned bytes (which for UTF-8 is the same as comparing code points).
+     */
+    private int compareKey(int line, byte[] key, int keyLength) {
+        int start = _lineStarts[line];
+        int lineKeyLength = _keyEnds[line] - start;
+        int len = Math.min(lineKeyLength, keyLength);
+        for (int i = 0; i < len; i++) {
+            int diff = (_data[start + i] & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return lineKeyLength - keyLength;
+    }
+
+    private int getLineEnd(int line) {
+        int end = (line + 1 < _numLines) ? _lineStarts[line + 1] : _data.length;
+
+        // Back up over the newline(s) that separate us from the next line.
+        while ((end > _lineStarts[line]) && (_data[end - 1] == '\n')) {
+            end--;
+        }
+
+        return end;
+    }
+}
@@ -1,17 +1,12 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.IOUtils;
@@ -20,11 +15,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.model.S3ObjectInputStream;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import crawlercommons.fetcher.AbortedFetchException;
 import crawlercommons.fetcher.AbortedFetchReason;
@@ -47,38 +37,88 @@ import crawlercommons.util.Headers;
  */
 
 @SuppressWarnings("serial")
-public class CommonCrawlFetcher extends BaseHttpFetcher {
+public class CommonCrawlFetcher extends BaseHttpFetcher implements Closeable {
     private static Logger LOGGER = LoggerFactory.getLogger(CommonCrawlFetcher.class);
 
-    // 0,124,148,146)/index.php 20170429211342 {"url": "http://146.148.124.0/index.php", "mim....
-    private static final Pattern CDX_LINE_PATTERN = Pattern
-            .compile("(.+?)[ ]+(\\d+)[ ]+(\\{.+\\})");
-
     private static final Headers EMPTY_HEADERS = new Headers();
     private static final byte[] EMPTY_CONTENT = new byte[0];
 
     protected static final String DEFAULT_CRAWL_ID = "2017-22";
-    protected static final int DEFAULT_CACHE_SIZE = 8 * 1024 * 1024;
+    // Segments are cached decompressed, which is roughly 6x the size of the gzipped data.
+    public static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024L;
 
     private final String _crawlId;
-    private final AmazonS3 _s3Client;
-    private final JsonParser _jsonParser;
+    private final CommonCrawlStorage _storage;
     private final SegmentCache _cache;
+    private final DiskSegmentCache _diskCache;
+    private WarcRangeBatcher _warcBatcher;
+
+    // For reporting the number of storage (e.g. S3) requests per page.
+    private final AtomicLong _numSegmentRequests = new AtomicLong();
+    private final AtomicLong _numPagesFetched = new AtomicLong();
+
+    // True if we got the secondary index map from the SecondaryIndexRegistry, and
+    // have to release it when we're closed.
+    private boolean _releaseSecondaryIndex = false;
     private final SecondaryIndexMap _secondaryIndexMap;
 
-    public CommonCrawlFetcher(AmazonS3 client, String crawlId, int maxThreads, int cacheSize,
+    public CommonCrawlFetcher(AmazonS3 client, String crawlId, int maxThreads, long cacheSize,
             SecondaryIndexMap secondaryIndexMap) throws IOException {
+        this(client, crawlId, maxThreads, cacheSize, secondaryIndexMap, null);
+    }
+
+    public CommonCrawlFetcher(AmazonS3 client, String crawlId, int maxThreads, long cacheSize,
+            SecondaryIndexMap secondaryIndexMap, DiskSegmentCache diskCache) throws IOException {
+        this(new S3CommonCrawlStorage(client), crawlId, maxThreads, cacheSize, secondaryIndexMap,
+                diskCache);
+    }
+
+    public CommonCrawlFetcher(CommonCrawlStorage storage, String crawlId, int maxThreads,
+            long cacheSize, SecondaryIndexMap secondaryIndexMap, DiskSegmentCache diskCache)
+            throws IOException {
         // We don't care about the user agent, since we aren't doing real fetches.
         super(maxThreads, new UserAgent("", "", ""));
 
-        _s3Client = client;
+        _storage = storage;
         _crawlId = crawlId;
-        _jsonParser = new JsonParser();
         _cache = new SegmentCache(cacheSize);
+        _diskCache = diskCache;
+        _warcBatcher = new WarcRangeBatcher(storage);
 
         _secondaryIndexMap = secondaryIndexMap;
     }
 
+    void setReleaseSecondaryIndex(boolean releaseSecondaryIndex) {
+        _releaseSecondaryIndex = releaseSecondaryIndex;
+    }
+
+    /**
+     * Set how long (in ms) we'll wait to batch up requests for WARC records, so that requests for nearby records in
+     * the same WARC file can be combined into one range request. 0 disables batching.
+     * 
+     * @param batchWindow
+     */
+    public void setFetchBatchWindow(long batchWindow) {
+        _warcBatcher = new WarcRangeBatcher(_storage, batchWindow,
+                WarcRangeBatcher.DEFAULT_MAX_BATCH_SIZE, WarcRangeBatcher.DEFAULT_MAX_GAP,
+                WarcRangeBatcher.DEFAULT_MAX_RANGE_SIZE);
+    }
+
+    @Override
+    public synchronized void close() {
+        long numPages = getNumPagesFetched();
+        if (numPages > 0) {
+            LOGGER.info(String.format("Fetched %,d pages using %,d storage requests (%.2f per page)",
+                    numPages, getNumStorageRequests(),
+                    (double) getNumStorageRequests() / numPages));
+        }
+
+        if (_releaseSecondaryIndex) {
+            _releaseSecondaryIndex = false;
+            SecondaryIndexRegistry.release(_crawlId);
+        }
+    }
+
     @Override
     public void abort() {
         // TODO I guess we could try to abort any S3 requests, but they don't
@@ -141,20 +181,22 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
                     RedirectExceptionReason.TOO_MANY_REDIRECTS);
         }
 
-        // Figure out which segment it's in.
-        String targetKey = CommonCrawlUrls.convertToIndexFormat(redirectUrl);
-        SecondaryIndex indexEntry = _secondaryIndexMap.get(targetKey);
+        // Figure out which segment it's in. The key builder is reused by this thread, so the
+        // key bytes are only valid until we recurse for a redirect.
+        IndexKeyBuilder targetKey = IndexKeyBuilder.get().build(redirectUrl);
+        SecondaryIndex indexEntry = _secondaryIndexMap.get(targetKey.getKeyBytes(),
+                targetKey.getKeyBytesLength());
         if (indexEntry == null) {
             return make404FetchResult(redirectUrl, numRedirects, payload);
         }
 
-        JsonObject jsonObj = findUrlInSegment(redirectUrl, targetKey, indexEntry);
-        if (jsonObj == null) {
+        CdxEntry cdxEntry = findUrlInSegment(redirectUrl, targetKey, indexEntry);
+        if (cdxEntry == null) {
             return make404FetchResult(redirectUrl, numRedirects, payload);
         }
 
-        int status = jsonObj.get("status").getAsInt();
-        String mimeType = jsonObj.get("mime").getAsString();
+        int status = cdxEntry.getStatus();
+        String mimeType = cdxEntry.getMime();
 
         // Decide if we should skip due to mime-type. But we only care about that for
         // the case where we were able to get the page.
@@ -163,25 +205,18 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
                     "Invalid mime-type: " + mimeType, AbortedFetchReason.INVALID_MIMETYPE);
         }
 
-        String warcFile = jsonObj.get("filename").getAsString();
-        long length = jsonObj.get("length").getAsLong();
-        long offset = jsonObj.get("offset").getAsLong();
-        long timestamp = jsonObj.get("timestamp").getAsLong();
+        String warcFile = cdxEntry.getFilename();
+        long length = cdxEntry.getLength();
+        long offset = cdxEntry.getOffset();
+        long timestamp = cdxEntry.getTimestamp();
 
         // We have the data required to fetch the WARC entry and return that as a result.
-        GetObjectRequest warcRequest = new GetObjectRequest(S3Utils.getBucket(), warcFile);
-        warcRequest.setRange(offset, offset + length);
-
         String newRedirectUrlAsStr = "";
-        DataInputStream dis = null;
-        S3ObjectInputStream ois = null;
-        try (S3Object warcObject = _s3Client.getObject(warcRequest)) {
-            ois = warcObject.getObjectContent();
-            InputStream warcInputStream = new GZIPInputStream(ois);
-            dis = new DataInputStream(warcInputStream);
+        try (InputStream is = _warcBatcher.openRange(warcFile, offset, length)) {
             long startTime = System.currentTimeMillis();
-            WarcRecordReader warcReader = new WarcRecordReader(dis);
+            WarcRecordReader warcReader = new WarcRecordReader(new GZIPInputStream(is));
             WarcRecord pageRecord = warcReader.readNextRecord();
+            _numPagesFetched.incrementAndGet();
             long deltaTime = Math.max(1L, System.currentTimeMillis() - startTime);
             int bytesRead = warcReader.getBytesRead();
             double responseRateExact = (double) bytesRead / deltaTime;
@@ -293,10 +328,6 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
             throw new UrlFetchException(newRedirectUrlAsStr, e.getMessage());
         } catch (IOException e) {
             throw new IOFetchException(redirectUrl.toString(), e);
-        } finally {
-            if (ois != null) {
-                ois.abort();
-            }
         }
     }
 
@@ -321,73 +352,49 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
         }
     }
 
-    private JsonObject findUrlInSegment(URL url, String targetKey, SecondaryIndex indexEntry)
+    private CdxEntry findUrlInSegment(URL url, IndexKeyBuilder targetKey, SecondaryIndex indexEntry)
             throws IOFetchException {
-        byte[] segmentData = getSegmentData(url, indexEntry);
-        JsonObject result = null;
+        CdxSegment segment = getSegment(url, indexEntry);
+        CdxEntry result = null;
         boolean found = false;
-        long resultTimestamp = 0;
         String protocol = url.getProtocol() + "://";
         
-        try (BufferedReader lineReader = new BufferedReader(
-                new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(segmentData)),
-                        StandardCharsets.UTF_8))) {
-
-            String line;
-            while ((line = lineReader.readLine()) != null) {
-                // 0,124,148,146)/index.php 20170429211342 {"url": "http://146.148.124.0/index.php", "mim....
-                // LOGGER.debug(line);
-
-                Matcher m = CDX_LINE_PATTERN.matcher(line);
-                if (!m.matches()) {
-                    throw new IOException("Invalid CDX line: " + line);
+        try {
+            for (CdxEntry newResult : segment.getEntries(targetKey.getKeyBytes(),
+                    targetKey.getKeyBytesLength())) {
+                // Avoid case of http request redirecting to https, which we don't
+                // have (or vice versa). We only want to check protocol, as doing
+                // the full URL comparison means having exact normalization (which
+                // we don't do yet) to match what CC uses. If we had that, then we
+                // would be passing in the URL normalized the same way, and then we
+                // could do the URL comparison.
+                if (!newResult.getUrl().startsWith(protocol)) {
+                    continue;
                 }
 
-                String entryKey = m.group(1);
-                int sort = targetKey.compareTo(entryKey);
-                if (sort == 0) {
-                    long timestamp = Long.parseLong(m.group(2));
-                    String json = m.group(3);
-                    JsonObject newResult = _jsonParser.parse(json).getAsJsonObject();
-                    String fetchedUrl = newResult.get("url").getAsString();
-                    
-                    // Avoid case of http request redirecting to https, which we don't
-                    // have (or vice versa). We only want to check protocol, as doing
-                    // the full URL comparison means having exact normalization (which
-                    // we don't do yet) to match what CC uses. If we had that, then we
-                    // would be passing in the URL normalized the same way, and then we
-                    // could do the URL comparison.
-                    if (!fetchedUrl.startsWith(protocol)) {
-                        continue;
-                    }
-                    
-                    boolean newWasFound = newResult.get("status").getAsInt() == HttpStatus.SC_OK;
-
-                    // Use the new result if we don't yet have a result, or the previous
-                    // result wasn't found, and this timestamp is newer or this one was found,
-                    // or the previous result was found and this timestamp is newer. We do
-                    // this to try to optimize our chance of getting an actual result, versus
-                    // endless redirects.
-                    boolean useNewResult = false;
-                    if (result == null) {
+                boolean newWasFound = newResult.getStatus() == HttpStatus.SC_OK;
+
+                // Use the new result if we don't yet have a result, or the previous
+                // result wasn't found, and this timestamp is newer or this one was found,
+                // or the previous result was found and this timestamp is newer. We do
+                // this to try to optimize our chance of getting an actual result, versus
+                // endless redirects.
+                boolean useNewResult = false;
+                if (result == null) {
+                    useNewResult = true;
+                } else if (!found) {
+                    if (newResult.getTimestamp() > result.getTimestamp()) {
                         useNewResult = true;
-                    } else if (!found) {
-                        if (timestamp > resultTimestamp) {
-                            useNewResult = true;
-                        } else if (newWasFound) {
-                            useNewResult = true;
-                        }
-                    } else if (newWasFound && (timestamp > resultTimestamp)) {
+                    } else if (newWasFound) {
                         useNewResult = true;
                     }
-                    
-                    if (useNewResult) {
-                        result = newResult;
-                        result.addProperty("timestamp", new Long(timestamp));
-                        found = newWasFound;
-                    }
-                } else if (sort < 0) {
-                    return result;
+                } else if (newWasFound && (newResult.getTimestamp() > result.getTimestamp())) {
+                    useNewResult = true;
+                }
+
+                if (useNewResult) {
+                    result = newResult;
+                    found = newWasFound;
                 }
             }
         } catch (IOException e) {
@@ -398,37 +405,56 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
     }
 
     /**
-     * Fetch (if needed) and cache the segment data for <indexEntry>.
+     * Fetch (if needed), parse and cache the segment for <indexEntry>. Only one thread loads any given segment, so
+     * concurrent requests for URLs in the same segment don't all download it. If we have a disk cache, we check it
+     * before going to S3 (or the local mirror).
      * 
      * @param url
      *            Used for propagating exception if needed.
      * @param indexEntry
      *            Segment entry we need
-     * @return GZipped byte[] of segment data.
+     * @return parsed segment.
      * @throws IOFetchException
      */
-    private byte[] getSegmentData(URL url, SecondaryIndex indexEntry) throws IOFetchException {
-        byte[] result = _cache.get(indexEntry.getSegmentId());
-        if (result != null) {
-            LOGGER.trace("Found segment #{} in our cache for '{}'", indexEntry.getSegmentId(), url);
-            return result;
+    private CdxSegment getSegment(URL url, SecondaryIndex indexEntry) throws IOFetchException {
+        try {
+            return _cache.get(indexEntry.getSegmentId(), new SegmentCache.SegmentLoader() {
+
+                @Override
+                public CdxSegment load(int segmentId) throws IOException {
+                    if (_diskCache == null) {
+                        return CdxSegment.parse(loadSegmentData(url, indexEntry));
+                    }
+
+                    byte[] result = _diskCache.get(segmentId, indexEntry.getSegmentLength());
+                    if (result == null) {
+                        result = loadSegmentData(url, indexEntry);
+                        _diskCache.put(segmentId, result);
+                    } else {
+                        LOGGER.trace("Found segment #{} in disk cache for '{}'", segmentId, url);
+                    }
+
+                    return CdxSegment.parse(result);
+                }
+            });
+        } catch (IOException e) {
+            throw new IOFetchException(url.toString(), e);
         }
+    }
 
+    private byte[] loadSegmentData(URL url, SecondaryIndex indexEntry) throws IOException {
         long length = indexEntry.getSegmentLength();
-        result = new byte[(int) length];
+        byte[] result = new byte[(int) length];
         String indexFilename = indexEntry.getIndexFilename();
-        String s3Path = S3Utils.makeS3FilePath(_crawlId, indexFilename);
-        GetObjectRequest objectRequest = new GetObjectRequest(S3Utils.getBucket(), s3Path);
+        String path = S3Utils.makeS3FilePath(_crawlId, indexFilename);
         long offset = indexEntry.getSegmentOffset();
-        objectRequest.setRange(offset, offset + length);
 
-        S3ObjectInputStream is = null;
-        try (S3Object object = _s3Client.getObject(objectRequest)) {
-            is = object.getObjectContent();
+        _numSegmentRequests.incrementAndGet();
+        try (InputStream is = _storage.openRange(path, offset, length)) {
             long startTime = System.currentTimeMillis();
-            IOUtils.read(is, result);
+            IOUtils.readFully(is, result);
             if (LOGGER.isTraceEnabled()) {
-                long deltaTime = System.currentTimeMillis() - startTime;
+                long deltaTime = Math.max(1L, System.currentTimeMillis() - startTime);
                 double responseRateExact = (double) length / deltaTime;
                 // Response rate is bytes/second, not bytes/millisecond
                 int responseRate = (int) Math.round(responseRateExact * 1000.0);
@@ -438,17 +464,32 @@ public class CommonCrawlFetcher extends BaseHttpFetcher {
                         responseRate, url));
             }
             
-            _cache.put(indexEntry.getSegmentId(), result);
             return result;
-        } catch (IOException e) {
-            throw new IOFetchException(url.toString(), e);
-        } finally {
-            if (is != null) {
-                is.abort();
-            }
         }
     }
 
+    public SegmentCache getSegmentCache() {
+        return _cache;
+    }
+
+    /**
+     * @return number of WARC records we've read, which includes redirects.
+     */
+    public long getNumPagesFetched() {
+        return _numPagesFetched.get();
+    }
+
+    /**
+     * @return number of requests (for index segments and WARC records) we've made to S3 or the local mirror.
+     */
+    public long getNumStorageRequests() {
+        return _numSegmentRequests.get() + _warcBatcher.getNumRangeRequests();
+    }
+
+    public DiskSegmentCache getDiskSegmentCache() {
+        return _diskCache;
+    }
+
     /**
      * Return true if <mimeType> is acceptable. This is always true if the fetcher hasn't been configured to filter by
      * mime-type.
@@ -1,16 +1,16 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,8 +19,6 @@ import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.S3Object;
 import com.scaleunlimited.flinkcrawler.fetcher.BaseHttpFetcherBuilder;
 
 import crawlercommons.fetcher.http.BaseHttpFetcher;
@@ -30,16 +28,37 @@ import crawlercommons.fetcher.http.UserAgent;
 public class CommonCrawlFetcherBuilder extends BaseHttpFetcherBuilder {
     private static Logger LOGGER = LoggerFactory.getLogger(CommonCrawlFetcherBuilder.class);
 
-    private static final String SERIALIZED_SECONDARY_INDEX_FILENAME = "secondary_index.bin.gz";
+    // Not compressed, since we memory-map it.
+    private static final String SERIALIZED_SECONDARY_INDEX_FILENAME = "secondary_index-v2.bin";
     private static final String SECONDARY_INDEX_FILENAME = "cluster.idx";
 
     private String _crawlId;
+    private String _mirrorDir;
     private File _cachedFile;
+    private long _segmentCacheSize = CommonCrawlFetcher.DEFAULT_CACHE_SIZE;
+    private String _segmentCacheDir;
+    private long _diskSegmentCacheSize = DiskSegmentCache.DEFAULT_MAX_CACHE_SIZE;
+    private long _fetchBatchWindow = WarcRangeBatcher.DEFAULT_BATCH_WINDOW;
 
     public CommonCrawlFetcherBuilder(int maxSimultaneousRequests, UserAgent userAgent,
             String crawlId, String cacheDir) {
+        this(maxSimultaneousRequests, userAgent, crawlId, cacheDir, null);
+    }
+
+    /**
+     * @param maxSimultaneousRequests
+     * @param userAgent
+     * @param crawlId
+     * @param cacheDir
+     *            where to cache the serialized secondary index, or null to use a temp dir.
+     * @param mirrorDir
+     *            local directory with a copy of (part of) the CommonCrawl bucket, or null to read from S3.
+     */
+    public CommonCrawlFetcherBuilder(int maxSimultaneousRequests, UserAgent userAgent,
+            String crawlId, String cacheDir, String mirrorDir) {
         super(maxSimultaneousRequests, userAgent);
         _crawlId = crawlId;
+        _mirrorDir = mirrorDir;
         if (cacheDir != null) {
             _cachedFile = makeCacheFile(new File(cacheDir));
             try {
@@ -50,21 +69,63 @@ public class CommonCrawlFetcherBuilder extends BaseHttpFetcherBuilder {
         }
     }
 
+    /**
+     * Set the max number of bytes of (decompressed) CDX index segments that each fetcher caches.
+     * 
+     * @param segmentCacheSize
+     * @return this builder
+     */
+    public CommonCrawlFetcherBuilder setSegmentCacheSize(long segmentCacheSize) {
+        _segmentCacheSize = segmentCacheSize;
+        return this;
+    }
+
+    public long getSegmentCacheSize() {
+        return _segmentCacheSize;
+    }
+
+    /**
+     * Set the local directory for caching segments on disk, below the in-memory cache. This can be shared by all of
+     * the fetchers on a host. If not set, we don't cache segments on disk.
+     * 
+     * @param segmentCacheDir
+     * @return this builder
+     */
+    public CommonCrawlFetcherBuilder setSegmentCacheDir(String segmentCacheDir) {
+        _segmentCacheDir = segmentCacheDir;
+        return this;
+    }
+
+    public CommonCrawlFetcherBuilder setDiskSegmentCacheSize(long diskSegmentCacheSize) {
+        _diskSegmentCacheSize = diskSegmentCacheSize;
+        return this;
+    }
+
+    /**
+     * Set how long (in ms) the fetcher waits to batch up requests for WARC records, so nearby records in the same WARC
+     * file can be read with one range request. 0 disables batching.
+     * 
+     * @param fetchBatchWindow
+     * @return this builder
+     */
+    public CommonCrawlFetcherBuilder setFetchBatchWindow(long fetchBatchWindow) {
+        _fetchBatchWindow = fetchBatchWindow;
+        return this;
+    }
+
     private void prepCache(File cachedFile) throws IOException {
         // Load the cache with the serialized secondary index file.
 
-        AmazonS3 client = makeClient();
         if (!cachedFile.exists()) {
             // Fetch the secondary index file, which we need in memory.
-            String s3Path = S3Utils.makeS3FilePath(_crawlId, SECONDARY_INDEX_FILENAME);
+            String path = S3Utils.makeS3FilePath(_crawlId, SECONDARY_INDEX_FILENAME);
 
             LOGGER.info("Downloading and parsing secondary index file for " + _crawlId + " from "
-                    + s3Path);
+                    + path);
 
-            try (S3Object object = client
-                    .getObject(new GetObjectRequest(S3Utils.getBucket(), s3Path))) {
+            try (InputStream is = makeStorage().open(path)) {
                 BufferedReader br = new BufferedReader(
-                        new InputStreamReader(object.getObjectContent(), StandardCharsets.UTF_8));
+                        new InputStreamReader(is, StandardCharsets.UTF_8));
                 SecondaryIndexMap.Builder builder = new SecondaryIndexMap.Builder(1_100_000);
                 String line;
                 while ((line = br.readLine()) != null) {
@@ -73,19 +134,32 @@ public class CommonCrawlFetcherBuilder extends BaseHttpFetcherBuilder {
 
                 SecondaryIndexMap secondaryIndexMap = builder.build();
 
-                // Serialize the map for next time.
+                // Serialize the map for next time. We write to a temp file and then rename it,
+                // so nobody ever maps a partial file.
                 cachedFile.getParentFile().mkdirs();
-                cachedFile.createNewFile();
                 LOGGER.info("Saving serialized secondary index file for " + _crawlId + " to "
                         + cachedFile);
+                File tempFile = File.createTempFile(cachedFile.getName(), ".tmp",
+                        cachedFile.getParentFile());
                 try (DataOutputStream out = new DataOutputStream(
-                        new GZIPOutputStream(new FileOutputStream(cachedFile)))) {
+                        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
                     secondaryIndexMap.write(out);
                 }
+
+                Files.move(tempFile.toPath(), cachedFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             }
         }
     }
 
+    private CommonCrawlStorage makeStorage() {
+        if (_mirrorDir != null) {
+            return new LocalCommonCrawlStorage(new File(_mirrorDir));
+        } else {
+            return new S3CommonCrawlStorage(makeClient());
+        }
+    }
+
     private AmazonS3 makeClient() {
         return AmazonS3ClientBuilder.standard().withCredentials(new MyS3CredentialsProviderChain())
                 // TODO control the region???
@@ -102,8 +176,38 @@ public class CommonCrawlFetcherBuilder extends BaseHttpFetcherBuilder {
 
     @Override
     public BaseHttpFetcher build() throws Exception {
-        AmazonS3 client = makeClient();
+        CommonCrawlStorage storage = makeStorage();
+
+        // All of the fetchers in this JVM share one secondary index for our crawl id,
+        // so only the first one has to (maybe) download it, and then map it.
+        SecondaryIndexMap secondaryIndexMap = SecondaryIndexRegistry.acquire(_crawlId,
+                new SecondaryIndexRegistry.IndexLoader() {
+
+                    @Override
+                    public SecondaryIndexMap load() throws IOException {
+                        return loadSecondaryIndex();
+                    }
+                });
+
+        try {
+            DiskSegmentCache diskCache = null;
+            if (_segmentCacheDir != null) {
+                diskCache = new DiskSegmentCache(new File(_segmentCacheDir), _crawlId,
+                        _diskSegmentCacheSize);
+            }
+
+            CommonCrawlFetcher result = new CommonCrawlFetcher(storage, _crawlId,
+                    _maxSimultaneousRequests, _segmentCacheSize, secondaryIndexMap, diskCache);
+            result.setReleaseSecondaryIndex(true);
+            result.setFetchBatchWindow(_fetchBatchWindow);
+            return configure(result);
+        } catch (Exception e) {
+            SecondaryIndexRegistry.release(_crawlId);
+            throw e;
+        }
+    }
 
+    private SecondaryIndexMap loadSecondaryIndex() throws IOException {
         // If the caller hasn't set up a cachedFile then we create one in a temp location
         if (_cachedFile == null) {
             File tempDir = File.createTempFile("cache-dir", "");
@@ -113,16 +217,8 @@ public class CommonCrawlFetcherBuilder extends BaseHttpFetcherBuilder {
             prepCache(_cachedFile);
         }
 
-        LOGGER.info("Loading serialized secondary index for cache from " + _cachedFile);
-        try (DataInputStream in = new DataInputStream(
-                new GZIPInputStream(new FileInputStream(_cachedFile)))) {
-            SecondaryIndexMap secondaryIndexMap = new SecondaryIndexMap();
-            secondaryIndexMap.read(in);
-            CommonCrawlFetcher result = new CommonCrawlFetcher(client, _crawlId,
-                    _maxSimultaneousRequests, CommonCrawlFetcher.DEFAULT_CACHE_SIZE,
-                    secondaryIndexMap);
-            return configure(result);
-        }
+        LOGGER.info("Mapping serialized secondary index for cache from " + _cachedFile);
+        return SecondaryIndexMap.map(_cachedFile);
     }
 
     /**
@@ -0,0 +1,33 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where we read CommonCrawl files (cluster.idx, cdx-xxxxx.gz and WARC files) from. Paths are relative to the root of
+ * the CommonCrawl bucket, e.g. "cc-index/collections/CC-MAIN-2017-22/indexes/cluster.idx", so the same paths work
+ * against S3 and against a local mirror of (part of) the bucket.
+ */
+public interface CommonCrawlStorage {
+
+    /**
+     * @param path
+     *            path to the file, relative to the root of the bucket.
+     * @return stream for the entire file.
+     * @throws IOException
+     */
+    InputStream open(String path) throws IOException;
+
+    /**
+     * Return a stream for <length> bytes of the file, starting at <offset>. Closing the stream releases any
+     * resources, even if it hasn't been completely read.
+     *
+     * @param path
+     *            path to the file, relative to the root of the bucket.
+     * @param offset
+     * @param length
+     * @return stream for the range
+     * @throws IOException
+     */
+    InputStream openRange(String path, long offset, long length) throws IOException;
+}
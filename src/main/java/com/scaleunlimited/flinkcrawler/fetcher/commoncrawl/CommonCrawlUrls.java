@@ -1,12 +1,6 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
 public class CommonCrawlUrls {
 
@@ -15,84 +9,11 @@ public class CommonCrawlUrls {
     // https://github.com/iipc/webarchive-commons/blob/master/src/main/java/org/archive/url/HandyURL.java
     // http://crawler.archive.org/articles/user_manual/glossary.html#surt
     // https://kris-sigur.blogspot.com/2016/03/rewriting-cdx-file-format.html
+    //
+    // See IndexKeyBuilder for the details of how we generate the key. Use that directly (via
+    // IndexKeyBuilder.get()) to avoid creating the String, e.g. when comparing against index keys.
     public static String convertToIndexFormat(URL url) {
-        StringBuilder reversedUrl = new StringBuilder();
-
-        String domain = url.getHost();
-        String[] domainParts = domain.split("\\.");
-        for (int i = domainParts.length - 1; i >= 0; i--) {
-            // Skip leading www
-            if ((i > 0) || !domainParts[i].startsWith("www")) {
-                if (reversedUrl.length() > 0) {
-                    reversedUrl.append(',');
-                }
-
-                reversedUrl.append(domainParts[i]);
-            }
-        }
-
-        if (url.getPort() != -1) {
-            reversedUrl.append(':');
-            reversedUrl.append(url.getPort());
-        }
-
-        reversedUrl.append(")");
-
-        boolean hasPath = !url.getPath().isEmpty();
-        boolean hasQuery = url.getQuery() != null;
-        boolean hasHash = url.getRef() != null;
-
-        if (hasPath) {
-            // reversedUrl.append(lowerCaseEncodedChars(url.getPath()));
-            reversedUrl.append(normalizePath(url.getPath()));
-        } else if (hasQuery || hasHash) {
-            reversedUrl.append('/');
-        } else {
-            // TODO figure out why we need a trailing '/'
-            reversedUrl.append('/');
-        }
-
-        if (hasQuery) {
-            reversedUrl.append('?');
-            reversedUrl.append(normalizeQuery(url.getQuery()));
-        }
-
-        if (hasHash) {
-            reversedUrl.append('#');
-            reversedUrl.append(url.getRef());
-        }
-
-        return reversedUrl.toString();
-    }
-
-    private static String normalizePath(String path) {
-        if (path.equals("/")) {
-            return path;
-        }
-
-        return path.toLowerCase(Locale.ROOT).replaceAll("/$", "");
-    }
-
-    private static String normalizeQuery(String query) {
-        StringBuilder result = new StringBuilder();
-        Map<String, String> paramMap = new HashMap<>();
-        List<String> keys = new ArrayList<>();
-        String[] params = query.toLowerCase(Locale.ROOT).split("&");
-        for (String param : params) {
-            String[] pieces = param.split("=", 1);
-            keys.add(pieces[0]);
-            paramMap.put(pieces[0], param);
-        }
-        
-        Collections.sort(keys);
-        for (String key : keys) {
-            if (result.length() > 0) {
-                result.append('&');
-            }
-            result.append(paramMap.get(key));
-        }
-        
-        return result.toString();
+        return IndexKeyBuilder.get().build(url).getKey();
     }
 
     /**
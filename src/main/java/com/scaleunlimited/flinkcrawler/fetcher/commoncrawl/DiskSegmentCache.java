@@ -0,0 +1,273 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second-level cache for segments, which sits below the in-memory SegmentCache. Each segment is a file in a local
+ * directory (one per crawl id), so segments survive restarts, and re-crawls of the same crawl id don't have to go back
+ * to S3.
+ *
+ * Multiple fetchers (in the same or different JVMs on the same host) can share the same directory. New segments are
+ * written to a temp file and then atomically renamed, so readers never see a partial file, and old temp files (from a
+ * put that crashed) are deleted when we start. Recency is the file's last
+ * modified time, which we set (from our clock) on every put and hit, so the LRU order is shared as well. When we think the directory is over
+ * budget we scan it and delete the least recently used files, down to a low-water mark so that we don't have to scan
+ * on every put.
+ */
+public class DiskSegmentCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskSegmentCache.class);
+
+    public static final long DEFAULT_MAX_CACHE_SIZE = 10L * 1024 * 1024 * 1024;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".gz";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Temp files older than this were left behind by a put that crashed, versus one that's still
+    // in progress (possibly in another JVM).
+    private static final long STALE_TEMP_FILE_AGE = 60 * 60 * 1000L;
+
+    // When we evict, we go down to this fraction of the max size.
+    private static final double LOW_WATER_MARK = 0.9;
+
+    private final File _cacheDir;
+    private final long _maxCacheSize;
+    private final Clock _clock;
+
+    // Our estimate of the size of the directory, which doesn't include what other
+    // fetchers have added since we last scanned it.
+    private final AtomicLong _cacheSize = new AtomicLong();
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    public DiskSegmentCache(File cacheDir, String crawlId, long maxCacheSize) throws IOException {
+        this(cacheDir, crawlId, maxCacheSize, Clock.systemUTC());
+    }
+
+    // Default visibility to support testing
+    DiskSegmentCache(File cacheDir, String crawlId, long maxCacheSize, Clock clock)
+            throws IOException {
+        _cacheDir = new File(cacheDir, crawlId);
+        _maxCacheSize = maxCacheSize;
+        _clock = clock;
+
+        Files.createDirectories(_cacheDir.toPath());
+        int numTempFiles = deleteStaleTempFiles();
+        _cacheSize.set(scanCacheSize());
+        LOGGER.info("Using disk segment cache in {} with {} bytes (deleted {} stale temp files)",
+                _cacheDir, _cacheSize.get(), numTempFiles);
+    }
+
+    /**
+     * Return the data for <segmentId>, or null if it's not in the cache.
+     *
+     * @param segmentId
+     * @param segmentLength
+     *            - expected length of the segment, so we can ignore a file that's somehow the wrong size
+     * @return segment data, or null
+     */
+    public byte[] get(int segmentId, long segmentLength) {
+        Path path = makeSegmentFile(segmentId).toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size != segmentLength) {
+                LOGGER.warn("Deleting segment file {} with wrong size ({} != {})", path, size,
+                        segmentLength);
+                channel.close();
+                delete(path, size);
+                _misses.incrementAndGet();
+                return null;
+            }
+
+            byte[] result = new byte[(int) size];
+            ByteBuffer buffer = ByteBuffer.wrap(result);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    throw new EOFException("Segment file is shorter than " + size + " bytes");
+                }
+            }
+
+            touch(path);
+            _hits.incrementAndGet();
+            return result;
+        } catch (NoSuchFileException e) {
+            _misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Error reading segment file " + path, e);
+            _misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Save <data> as the segment data for <segmentId>. Errors are logged, versus thrown, since failing to cache a
+     * segment shouldn't fail the fetch.
+     *
+     * @param segmentId
+     * @param data
+     */
+    public void put(int segmentId, byte[] data) {
+        File segmentFile = makeSegmentFile(segmentId);
+        Path tempPath = null;
+        long replacedSize;
+        try {
+            tempPath = Files.createTempFile(_cacheDir.toPath(), SEGMENT_FILE_PREFIX + segmentId,
+                    TEMP_FILE_SUFFIX);
+            Files.write(tempPath, data);
+
+            // If we're replacing a file (e.g. another fetcher cached the same segment), it's
+            // already part of our size.
+            replacedSize = segmentFile.length();
+            try {
+                Files.move(tempPath, segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            tempPath = null;
+            touch(segmentFile.toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Error saving segment file " + segmentFile, e);
+            return;
+        } finally {
+            if (tempPath != null) {
+                tempPath.toFile().delete();
+            }
+        }
+
+        if (_cacheSize.addAndGet(data.length - replacedSize) > _maxCacheSize) {
+            evict();
+        }
+    }
+
+    public long getCacheSize() {
+        return _cacheSize.get();
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public long getEvictions() {
+        return _evictions.get();
+    }
+
+    private synchronized void evict() {
+        // Some other thread might have just done this.
+        if (_cacheSize.get() <= _maxCacheSize) {
+            return;
+        }
+
+        File[] files = listSegmentFiles();
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long totalSize = 0;
+        for (int i = 0; i < files.length; i++) {
+            // Grab it once, as it can change while we're sorting.
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+            totalSize += files[i].length();
+        }
+
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+
+        long targetSize = (long) (_maxCacheSize * LOW_WATER_MARK);
+        for (int i = 0; (i < order.length) && (totalSize > targetSize); i++) {
+            File file = files[order[i]];
+            long size = file.length();
+            if (file.delete()) {
+                totalSize -= size;
+                _evictions.incrementAndGet();
+            }
+        }
+
+        LOGGER.debug("Evicted segment files in {}, now {} bytes", _cacheDir, totalSize);
+        _cacheSize.set(totalSize);
+    }
+
+    private void delete(Path path, long size) {
+        try {
+            if (Files.deleteIfExists(path)) {
+                _cacheSize.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error deleting segment file " + path, e);
+        }
+    }
+
+    private void touch(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(_clock.millis()));
+        } catch (IOException e) {
+            // Could have been evicted by someone else, which is OK.
+            LOGGER.trace("Error updating time for segment file " + path, e);
+        }
+    }
+
+    /**
+     * Delete temp files left behind by puts that never finished, e.g. because the JVM crashed.
+     *
+     * @return number of files deleted
+     */
+    private int deleteStaleTempFiles() {
+        File[] files = _cacheDir.listFiles((dir, name) -> name.startsWith(SEGMENT_FILE_PREFIX)
+                && name.endsWith(TEMP_FILE_SUFFIX));
+        if (files == null) {
+            return 0;
+        }
+
+        long staleTime = _clock.millis() - STALE_TEMP_FILE_AGE;
+        int result = 0;
+        for (File file : files) {
+            if ((file.lastModified() < staleTime) && file.delete()) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    private long scanCacheSize() {
+        long result = 0;
+        for (File file : listSegmentFiles()) {
+            result += file.length();
+        }
+
+        return result;
+    }
+
+    private File[] listSegmentFiles() {
+        File[] result = _cacheDir.listFiles((dir, name) -> name.startsWith(SEGMENT_FILE_PREFIX)
+                && name.endsWith(SEGMENT_FILE_SUFFIX));
+        return result == null ? new File[0] : result;
+    }
+
+    private File makeSegmentFile(int segmentId) {
+        return new File(_cacheDir, SEGMENT_FILE_PREFIX + segmentId + SEGMENT_FILE_SUFFIX);
+    }
+}
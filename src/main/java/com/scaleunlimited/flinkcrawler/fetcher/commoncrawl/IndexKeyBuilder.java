@@ -0,0 +1,383 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Builds the SURT-format CommonCrawl index key for a URL (see {@link CommonCrawlUrls#convertToIndexFormat(URL)}) in a
+ * single pass, into a reusable buffer, along with its UTF-8 bytes for comparing against the secondary index and CDX
+ * segments.
+ *
+ * The key is identical to what the original split/regex/sort implementation generated, including its quirks: the
+ * first domain label is dropped if it starts with "www", the path (but not the domain) is lowercased and loses one
+ * trailing '/', and the query is lowercased, empty parameters are dropped, and the remaining parameters are sorted.
+ *
+ * A builder isn't thread-safe, so use one per thread (see {@link #get()}).
+ */
+public class IndexKeyBuilder {
+
+    // Above this we sort query parameters as Strings, versus an insertion sort in place.
+    private static final int MAX_IN_PLACE_PARAMS = 32;
+
+    private static final ThreadLocal<IndexKeyBuilder> BUILDERS = new ThreadLocal<IndexKeyBuilder>() {
+
+        @Override
+        protected IndexKeyBuilder initialValue() {
+            return new IndexKeyBuilder();
+        }
+    };
+
+    private char[] _key = new char[256];
+    private int _keyLength = 0;
+
+    private byte[] _keyBytes = new byte[256];
+    private int _keyBytesLength = 0;
+
+    // Scratch space for sorting query parameters.
+    private char[] _query = new char[256];
+    private int[] _paramStarts = new int[16];
+    private int[] _paramEnds = new int[16];
+
+    /**
+     * @return builder for the calling thread.
+     */
+    public static IndexKeyBuilder get() {
+        return BUILDERS.get();
+    }
+
+    /**
+     * Build the key for <url>, replacing any previous key.
+     *
+     * @param url
+     * @return this builder
+     */
+    public IndexKeyBuilder build(URL url) {
+        _keyLength = 0;
+
+        appendReversedHost(url.getHost());
+
+        if (url.getPort() != -1) {
+            append(':');
+            appendInt(url.getPort());
+        }
+
+        append(')');
+
+        String path = url.getPath();
+        if (path.isEmpty() || path.equals("/")) {
+            append('/');
+        } else {
+            appendPath(path);
+        }
+
+        String query = url.getQuery();
+        if (query != null) {
+            append('?');
+            appendQuery(query);
+        }
+
+        String ref = url.getRef();
+        if (ref != null) {
+            append('#');
+            append(ref, 0, ref.length());
+        }
+
+        encodeKey();
+        return this;
+    }
+
+    /**
+     * @return the key as a new String.
+     */
+    public String getKey() {
+        return new String(_key, 0, _keyLength);
+    }
+
+    /**
+     * @return UTF-8 bytes of the key, valid up to {@link #getKeyBytesLength()} until the next call to
+     *         {@link #build(URL)}.
+     */
+    public byte[] getKeyBytes() {
+        return _keyBytes;
+    }
+
+    public int getKeyBytesLength() {
+        return _keyBytesLength;
+    }
+
+    @Override
+    public String toString() {
+        return getKey();
+    }
+
+    /**
+     * Append the labels of <host> in reverse order, separated by commas. Like String.split(), we ignore trailing empty
+     * labels but keep other empty ones.
+     */
+    private void appendReversedHost(String host) {
+        int end = host.length();
+        while ((end > 0) && (host.charAt(end - 1) == '.')) {
+            end--;
+        }
+
+        if (end == 0) {
+            return;
+        }
+
+        while (true) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+
+            // Skip leading www
+            if ((start > 0) || !host.startsWith("www")) {
+                if (_keyLength > 0) {
+                    append(',');
+                }
+
+                append(host, start, end);
+            }
+
+            if (start == 0) {
+                return;
+            }
+
+            end = start - 1;
+        }
+    }
+
+    /**
+     * Append the lowercased <path>, minus a trailing '/'. That used to be a "/$" regex, which also matches a '/' right
+     * before a final line terminator.
+     */
+    private void appendPath(String path) {
+        int start = _keyLength;
+        appendLowerCase(path);
+
+        int end = _keyLength;
+        int slashPos = end - 1;
+        if ((end - start >= 3) && (_key[end - 2] == '\r') && (_key[end - 1] == '\n')) {
+            slashPos = end - 3;
+        } else if ((end - start >= 2) && isLineTerminator(_key[end - 1])) {
+            slashPos = end - 2;
+        }
+
+        if (_key[slashPos] == '/') {
+            System.arraycopy(_key, slashPos + 1, _key, slashPos, end - slashPos - 1);
+            _keyLength--;
+        }
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return (c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028') || (c == '\u2029');
+    }
+
+    /**
+     * Append the lowercased <query>, with empty parameters removed and the remaining parameters sorted.
+     */
+    private void appendQuery(String query) {
+        int queryStart = _keyLength;
+        appendLowerCase(query);
+        int queryEnd = _keyLength;
+
+        // Find the non-empty parameters, and whether they're already in order.
+        int numParams = 0;
+        boolean sorted = true;
+        boolean hasEmpty = false;
+        int paramStart = queryStart;
+        for (int i = queryStart; i <= queryEnd; i++) {
+            if ((i < queryEnd) && (_key[i] != '&')) {
+                continue;
+            }
+
+            if (i == paramStart) {
+                hasEmpty = true;
+            } else {
+                if (numParams == _paramStarts.length) {
+                    _paramStarts = Arrays.copyOf(_paramStarts, numParams * 2);
+                    _paramEnds = Arrays.copyOf(_paramEnds, numParams * 2);
+                }
+
+                _paramStarts[numParams] = paramStart;
+                _paramEnds[numParams] = i;
+                if (sorted && (numParams > 0) && (compare(_key, _paramStarts[numParams - 1],
+                        _paramEnds[numParams - 1], paramStart, i) > 0)) {
+                    sorted = false;
+                }
+
+                numParams++;
+            }
+
+            paramStart = i + 1;
+        }
+
+        if (sorted && !hasEmpty) {
+            return;
+        }
+
+        // Copy the parameters out, and then put them back in sorted order.
+        int queryLength = queryEnd - queryStart;
+        if (_query.length < queryLength) {
+            _query = new char[Math.max(_query.length * 2, queryLength)];
+        }
+
+        System.arraycopy(_key, queryStart, _query, 0, queryLength);
+        _keyLength = queryStart;
+
+        if (!sorted && (numParams > MAX_IN_PLACE_PARAMS)) {
+            String[] params = new String[numParams];
+            for (int i = 0; i < numParams; i++) {
+                params[i] = new String(_query, _paramStarts[i] - queryStart,
+                        _paramEnds[i] - _paramStarts[i]);
+            }
+
+            Arrays.sort(params);
+            for (int i = 0; i < numParams; i++) {
+                if (i > 0) {
+                    append('&');
+                }
+
+                append(params[i], 0, params[i].length());
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < numParams; i++) {
+            _paramStarts[i] -= queryStart;
+            _paramEnds[i] -= queryStart;
+        }
+
+        if (!sorted) {
+            for (int i = 1; i < numParams; i++) {
+                int start = _paramStarts[i];
+                int end = _paramEnds[i];
+                int j = i - 1;
+                while ((j >= 0) && (compare(_query, _paramStarts[j], _paramEnds[j], start, end) > 0)) {
+                    _paramStarts[j + 1] = _paramStarts[j];
+                    _paramEnds[j + 1] = _paramEnds[j];
+                    j--;
+                }
+
+                _paramStarts[j + 1] = start;
+                _paramEnds[j + 1] = end;
+            }
+        }
+
+        for (int i = 0; i < numParams; i++) {
+            if (i > 0) {
+                append('&');
+            }
+
+            int paramLength = _paramEnds[i] - _paramStarts[i];
+            ensureCapacity(paramLength);
+            System.arraycopy(_query, _paramStarts[i], _key, _keyLength, paramLength);
+            _keyLength += paramLength;
+        }
+    }
+
+    /**
+     * Append <s> lowercased using Locale.ROOT, without creating a new String unless it has non-ASCII characters.
+     */
+    private void appendLowerCase(String s) {
+        int start = _keyLength;
+        append(s, 0, s.length());
+        for (int i = start; i < _keyLength; i++) {
+            char c = _key[i];
+            if ((c >= 'A') && (c <= 'Z')) {
+                _key[i] = (char) (c + ('a' - 'A'));
+            } else if (c >= 0x80) {
+                String lowerCase = s.toLowerCase(Locale.ROOT);
+                _keyLength = start;
+                append(lowerCase, 0, lowerCase.length());
+                return;
+            }
+        }
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        _key[_keyLength++] = c;
+    }
+
+    private void append(String s, int start, int end) {
+        ensureCapacity(end - start);
+        s.getChars(start, end, _key, _keyLength);
+        _keyLength += end - start;
+    }
+
+    private void appendInt(int value) {
+        int numDigits = 1;
+        for (int i = value; i >= 10; i /= 10) {
+            numDigits++;
+        }
+
+        ensureCapacity(numDigits);
+        for (int i = _keyLength + numDigits - 1; i >= _keyLength; i--) {
+            _key[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+
+        _keyLength += numDigits;
+    }
+
+    private void ensureCapacity(int numChars) {
+        if (_keyLength + numChars > _key.length) {
+            _key = Arrays.copyOf(_key, Math.max(_key.length * 2, _keyLength + numChars));
+        }
+    }
+
+    /**
+     * Same result as String.compareTo() for the two ranges of <chars>.
+     */
+    private static int compare(char[] chars, int start1, int end1, int start2, int end2) {
+        int length1 = end1 - start1;
+        int length2 = end2 - start2;
+        int minLength = Math.min(length1, length2);
+        for (int i = 0; i < minLength; i++) {
+            int diff = chars[start1 + i] - chars[start2 + i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return length1 - length2;
+    }
+
+    /**
+     * Encode the key as UTF-8, the same way as String.getBytes() does (so unpaired surrogates become '?').
+     */
+    private void encodeKey() {
+        int length = _keyLength;
+        if (_keyBytes.length < length * 3) {
+            _keyBytes = new byte[Math.max(_keyBytes.length * 2, length * 3)];
+        }
+
+        int pos = 0;
+        for (int i = 0; i < length; i++) {
+            char c = _key[i];
+            if (c < 0x80) {
+                _keyBytes[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                _keyBytes[pos++] = (byte) (0xC0 | (c >> 6));
+                _keyBytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && (i + 1 < length)
+                        && Character.isLowSurrogate(_key[i + 1])) {
+                    int cp = Character.toCodePoint(c, _key[++i]);
+                    _keyBytes[pos++] = (byte) (0xF0 | (cp >> 18));
+                    _keyBytes[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    _keyBytes[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    _keyBytes[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    _keyBytes[pos++] = '?';
+                }
+            } else {
+                _keyBytes[pos++] = (byte) (0xE0 | (c >> 12));
+                _keyBytes[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                _keyBytes[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        _keyBytesLength = pos;
+    }
+}
@@ -0,0 +1,118 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read CommonCrawl files from a local directory that's laid out like the CommonCrawl bucket, e.g.
+ * <root>/cc-index/collections/CC-MAIN-2017-22/indexes/cluster.idx, and <root>/crawl-data/... for the WARC files. This
+ * lets us benchmark and test the CommonCrawl fetch path without access to S3.
+ */
+public class LocalCommonCrawlStorage implements CommonCrawlStorage {
+
+    private final File _rootDir;
+
+    public LocalCommonCrawlStorage(File rootDir) {
+        if (!rootDir.isDirectory()) {
+            throw new IllegalArgumentException("CommonCrawl mirror directory doesn't exist: " + rootDir);
+        }
+
+        _rootDir = rootDir;
+    }
+
+    public File getRootDir() {
+        return _rootDir;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return new FileInputStream(getFile(path));
+    }
+
+    @Override
+    public InputStream openRange(String path, long offset, long length) throws IOException {
+        File file = getFile(path);
+        if (offset + length > file.length()) {
+            throw new EOFException(String.format("Range %d+%d is past the end of %s", offset,
+                    length, file));
+        }
+
+        return new RangeInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ),
+                offset, offset + length);
+    }
+
+    private File getFile(String path) throws FileNotFoundException {
+        File result = new File(_rootDir, path);
+        if (!result.isFile()) {
+            throw new FileNotFoundException("No such file in CommonCrawl mirror: " + result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Stream over a range of a file, using positional reads so we never change (or depend on) the channel's position.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel _channel;
+        private final long _end;
+        private long _position;
+
+        public RangeInputStream(FileChannel channel, long start, long end) {
+            _channel = channel;
+            _position = start;
+            _end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            long remaining = _end - _position;
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int n = _channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)),
+                    _position);
+            if (n > 0) {
+                _position += n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, _end - _position));
+            _position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, _end - _position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+
+/**
+ * Read CommonCrawl files from the public S3 bucket.
+ */
+public class S3CommonCrawlStorage implements CommonCrawlStorage {
+
+    private final AmazonS3 _s3Client;
+
+    public S3CommonCrawlStorage(AmazonS3 s3Client) {
+        _s3Client = s3Client;
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        return getObject(new GetObjectRequest(S3Utils.getBucket(), path));
+    }
+
+    @Override
+    public InputStream openRange(String path, long offset, long length) throws IOException {
+        GetObjectRequest request = new GetObjectRequest(S3Utils.getBucket(), path);
+
+        // S3 ranges include the end byte.
+        request.setRange(offset, offset + length - 1);
+        return getObject(request);
+    }
+
+    private InputStream getObject(GetObjectRequest request) throws IOException {
+        final S3Object object;
+        try {
+            object = _s3Client.getObject(request);
+        } catch (AmazonClientException e) {
+            throw new IOException("Can't get " + request.getKey(), e);
+        }
+
+        final S3ObjectInputStream is = object.getObjectContent();
+        return new FilterInputStream(is) {
+
+            @Override
+            public void close() throws IOException {
+                // We often don't read everything (e.g. when the caller hits an error), and
+                // we don't want the client to drain the rest of the response.
+                is.abort();
+                object.close();
+            }
+        };
+    }
+}
@@ -37,6 +37,13 @@ public class SecondaryIndex {
         _segmentId = segmentId;
     }
 
+    SecondaryIndex(int indexFilenumber, long segmentOffset, long segmentLength, int segmentId) {
+        _indexFilenumber = indexFilenumber;
+        _segmentOffset = segmentOffset;
+        _segmentLength = segmentLength;
+        _segmentId = segmentId;
+    }
+
     public String getIndexFilename() {
         return String.format("cdx-%05d.gz", _indexFilenumber);
     }
@@ -1,10 +1,16 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,51 +22,108 @@ import org.slf4j.LoggerFactory;
  * Map from (reversed) URL to information about the primary index file (and offset/length of segment in that file) where
  * the URL would have to be found.
  *
+ * The map is stored in a compact binary format, which is used as-is (typically memory-mapped from a file), versus
+ * being turned into per-entry objects:
+ *
+ * <pre>
+ * header:      version, number of entries, entries per block, number of blocks,
+ *              offset of block index, offset of entries (all ints)
+ * key blocks:  sorted UTF-8 keys, front-coded within each block. The first key in a block is stored as
+ *              (length, bytes), and every other key as (shared prefix length, suffix length, suffix bytes),
+ *              with lengths as varints.
+ * block index: offset of each key block (ints)
+ * entries:     fixed-width records (index file number, segment offset, segment length, segment id)
+ * </pre>
+ *
+ * A lookup does a binary search over the first keys of the blocks, and then decodes keys within one block. Keys are
+ * compared as unsigned UTF-8 bytes, which is the same order as String.compareTo() for everything except supplementary
+ * characters (which don't occur in CommonCrawl's percent-encoded index keys).
  */
-
-// Future - just have SecondaryIndex record which includes URL, do binary search against it.
-// FUTURE - do forward key compression of URL data, by storing offset/length into byte array for
-// forward key, and residual?
-
 public class SecondaryIndexMap {
     static final Logger LOGGER = LoggerFactory.getLogger(SecondaryIndexMap.class);
 
     // We use negative versions here to avoid false positives with previously
     // serialized versions of this map. This version also has to apply to the
     // SecondaryIndex serialization format.
-    static private int SERIALIZED_VERSION = -1;
+    static private int LEGACY_SERIALIZED_VERSION = -1;
+    static private int SERIALIZED_VERSION = -2;
+
+    private static final int DEFAULT_ENTRIES_PER_BLOCK = 32;
+
+    private static final int VERSION_OFFSET = 0;
+    private static final int NUM_ENTRIES_OFFSET = 4;
+    private static final int ENTRIES_PER_BLOCK_OFFSET = 8;
+    private static final int NUM_BLOCKS_OFFSET = 12;
+    private static final int BLOCK_INDEX_OFFSET_OFFSET = 16;
+    private static final int ENTRIES_OFFSET_OFFSET = 20;
+    private static final int HEADER_SIZE = 24;
+
+    // index file number, segment offset, segment length, segment id
+    private static final int ENTRY_SIZE = 4 + 8 + 8 + 4;
 
-    private String[] _secondaryIndexUrls;
-    private SecondaryIndex[] _secondaryIndex;
+    private ByteBuffer _data;
+    private int _numEntries;
+    private int _entriesPerBlock;
+    private int _numBlocks;
+    private int _blockIndexOffset;
+    private int _entriesOffset;
 
     public SecondaryIndexMap() {
         // no-args constructor for deserialization
     }
 
     public SecondaryIndexMap(String[] secondaryIndexUrls, SecondaryIndex[] secondaryIndex) {
-        _secondaryIndexUrls = secondaryIndexUrls;
-        _secondaryIndex = secondaryIndex;
+        this(secondaryIndexUrls, secondaryIndex, DEFAULT_ENTRIES_PER_BLOCK);
+    }
+
+    public SecondaryIndexMap(String[] secondaryIndexUrls, SecondaryIndex[] secondaryIndex,
+            int entriesPerBlock) {
+        setData(ByteBuffer.wrap(encode(secondaryIndexUrls, secondaryIndex, entriesPerBlock)));
+    }
+
+    /**
+     * Memory-map a file previously written by {@link #write(DataOutput)}.
+     *
+     * @param file
+     * @return map that uses the file's data
+     * @throws IOException
+     */
+    public static SecondaryIndexMap map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Secondary index file is too big: " + file);
+            }
+
+            SecondaryIndexMap result = new SecondaryIndexMap();
+            result.setData(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            return result;
+        }
     }
 
     /**
      * Find the secondary index using the key. Return -1 if it can't exist.
-     * 
+     *
      * @param key
      *            "reversed" URL
      * @return SecondaryIndex record that might contain the URL, or null
      */
     public SecondaryIndex get(String key) {
-        int index = Arrays.binarySearch(_secondaryIndexUrls, key);
-        if (index < 0) {
-            index = -(index + 1);
-
-            if (index <= 0) {
-                return null;
-            }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        return get(keyBytes, keyBytes.length);
+    }
 
-            // And now we know that the actual index will be the one before the insertion point,
-            // so back it off by one.
-            index -= 1;
+    /**
+     * Same as {@link #get(String)}, but for the UTF-8 bytes of the key (e.g. from {@link IndexKeyBuilder}).
+     *
+     * @param key
+     * @param keyLength
+     *            number of bytes in <key> to use.
+     * @return SecondaryIndex record that might contain the URL, or null
+     */
+    public SecondaryIndex get(byte[] key, int keyLength) {
+        int index = findEntry(key, keyLength);
+        if (index < 0) {
+            return null;
         }
 
         // TODO if the index is > 0, then we have an issue where the previous segment
@@ -68,45 +131,293 @@ public class SecondaryIndexMap {
         // that have the target URL as their first entry. So we really need to return a
         // list (or start/end) of segment ids.
 
-        return _secondaryIndex[index];
+        int offset = _entriesOffset + (index * ENTRY_SIZE);
+        return new SecondaryIndex(_data.getInt(offset), _data.getLong(offset + 4),
+                _data.getLong(offset + 12), _data.getInt(offset + 20));
     }
 
     public int size() {
-        return _secondaryIndex.length;
+        return _numEntries;
     }
 
     public void write(DataOutput out) throws IOException {
-        out.writeInt(SERIALIZED_VERSION);
-        out.writeInt(_secondaryIndexUrls.length);
-        for (String url : _secondaryIndexUrls) {
-            out.writeUTF(url);
-        }
-
-        for (SecondaryIndex index : _secondaryIndex) {
-            index.write(out);
+        ByteBuffer data = _data.duplicate();
+        data.position(0);
+        byte[] buffer = new byte[64 * 1024];
+        while (data.hasRemaining()) {
+            int length = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, length);
+            out.write(buffer, 0, length);
         }
     }
 
     public void read(DataInput in) throws IOException {
         int version = in.readInt();
-        if (version != SERIALIZED_VERSION) {
+        if (version == LEGACY_SERIALIZED_VERSION) {
+            readLegacy(in);
+            return;
+        } else if (version != SERIALIZED_VERSION) {
             throw new IOException(String.format("Invalid version, expected %d, got %d",
                     SERIALIZED_VERSION, version));
         }
 
+        // We need the total length, which is the end of the entries.
         int numEntries = in.readInt();
-        _secondaryIndexUrls = new String[numEntries];
-        _secondaryIndex = new SecondaryIndex[numEntries];
+        byte[] header = new byte[HEADER_SIZE - 8];
+        in.readFully(header);
+        int entriesOffset = ByteBuffer.wrap(header).getInt(ENTRIES_OFFSET_OFFSET - 8);
+
+        byte[] data = new byte[entriesOffset + (numEntries * ENTRY_SIZE)];
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        bb.putInt(version);
+        bb.putInt(numEntries);
+        bb.put(header);
+        in.readFully(data, HEADER_SIZE, data.length - HEADER_SIZE);
+        setData(bb);
+    }
+
+    /**
+     * Read the previous format, which was all of the keys (as UTF strings) followed by all of the entries.
+     */
+    private void readLegacy(DataInput in) throws IOException {
+        int numEntries = in.readInt();
+        String[] urls = new String[numEntries];
+        SecondaryIndex[] entries = new SecondaryIndex[numEntries];
 
         for (int i = 0; i < numEntries; i++) {
-            _secondaryIndexUrls[i] = in.readUTF();
+            urls[i] = in.readUTF();
         }
 
         for (int i = 0; i < numEntries; i++) {
             SecondaryIndex si = new SecondaryIndex();
             si.read(in);
-            _secondaryIndex[i] = si;
+            entries[i] = si;
+        }
+
+        setData(ByteBuffer.wrap(encode(urls, entries, DEFAULT_ENTRIES_PER_BLOCK)));
+    }
+
+    private void setData(ByteBuffer data) {
+        _data = data;
+
+        int version = data.getInt(VERSION_OFFSET);
+        if (version != SERIALIZED_VERSION) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid version, expected %d, got %d", SERIALIZED_VERSION, version));
+        }
+
+        _numEntries = data.getInt(NUM_ENTRIES_OFFSET);
+        _entriesPerBlock = data.getInt(ENTRIES_PER_BLOCK_OFFSET);
+        _numBlocks = data.getInt(NUM_BLOCKS_OFFSET);
+        _blockIndexOffset = data.getInt(BLOCK_INDEX_OFFSET_OFFSET);
+        _entriesOffset = data.getInt(ENTRIES_OFFSET_OFFSET);
+    }
+
+    /**
+     * @param target
+     *            UTF-8 bytes of key
+     * @param targetLength
+     * @return index of the entry for the first key that's equal to <target>, or if there isn't one then the last key
+     *         that's less than <target>, or -1 if all keys are greater than <target>.
+     */
+    private int findEntry(byte[] target, int targetLength) {
+        // Find the last block whose first key is less than the target. If the
+        // target is equal to the first key of a block, the previous block could
+        // end with the same key.
+        int lo = 0;
+        int hi = _numBlocks - 1;
+        int block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int blockOffset = _data.getInt(_blockIndexOffset + (mid * 4));
+            int keyLength = readVarInt(blockOffset);
+            int keyOffset = blockOffset + varIntSize(keyLength);
+            if (compare(keyOffset, keyLength, target, targetLength) < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (block == -1) {
+            // Every key is >= target, so only an exact match on the very first key works.
+            block = 0;
+        }
+
+        // Now scan keys until we find one that's >= the target. Since keys are sorted and
+        // front-coded, we only need to track how many leading bytes of the current key
+        // match the target, and compare suffix bytes in place (versus decoding each key).
+        // We only use absolute gets on the buffer, since it's shared by all of the fetch threads.
+        int matched = 0;
+        int nextOffset = 0;
+        int lastLess = -1;
+        for (int index = block * _entriesPerBlock; index < _numEntries; index++) {
+            int offset;
+            int prefixLength;
+            if ((index % _entriesPerBlock) == 0) {
+                offset = _data.getInt(_blockIndexOffset + ((index / _entriesPerBlock) * 4));
+                prefixLength = 0;
+                matched = 0;
+            } else {
+                offset = nextOffset;
+                prefixLength = readVarInt(offset);
+                offset += varIntSize(prefixLength);
+            }
+
+            int suffixLength = readVarInt(offset);
+            offset += varIntSize(suffixLength);
+
+            // Position of next key in the block.
+            nextOffset = offset + suffixLength;
+
+            if (prefixLength < matched) {
+                // This key differs from the previous (smaller) key at a position where that key
+                // matched the target, so it's greater than the target.
+                return lastLess;
+            } else if (prefixLength > matched) {
+                // Same as the previous key where that key was less than the target.
+                lastLess = index;
+                continue;
+            }
+
+            int i = 0;
+            while ((i < suffixLength) && (matched < targetLength)
+                    && (_data.get(offset + i) == target[matched])) {
+                i++;
+                matched++;
+            }
+
+            if (i == suffixLength) {
+                if (matched == targetLength) {
+                    return index;
+                }
+
+                // Key is a prefix of the target.
+            } else if ((matched == targetLength)
+                    || ((_data.get(offset + i) & 0xFF) > (target[matched] & 0xFF))) {
+                return lastLess;
+            }
+
+            lastLess = index;
+        }
+
+        return lastLess;
+    }
+
+    private int compare(int offset, int length, byte[] target, int targetLength) {
+        int minLength = Math.min(length, targetLength);
+        for (int i = 0; i < minLength; i++) {
+            int diff = (_data.get(offset + i) & 0xFF) - (target[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
         }
+
+        return length - targetLength;
+    }
+
+    private static int compare(byte[] key, int length, byte[] target) {
+        int minLength = Math.min(length, target.length);
+        for (int i = 0; i < minLength; i++) {
+            int diff = (key[i] & 0xFF) - (target[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return length - target.length;
+    }
+
+    private int readVarInt(int offset) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            byte b = _data.get(offset++);
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+
+            shift += 7;
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int result = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            result++;
+        }
+
+        return result;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static byte[] encode(String[] urls, SecondaryIndex[] entries, int entriesPerBlock) {
+        int numEntries = urls.length;
+        int numBlocks = (numEntries + entriesPerBlock - 1) / entriesPerBlock;
+
+        ByteArrayOutputStream keys = new ByteArrayOutputStream(numEntries * 16);
+        int[] blockOffsets = new int[numBlocks];
+        byte[] prevKey = null;
+        for (int i = 0; i < numEntries; i++) {
+            byte[] key = urls[i].getBytes(StandardCharsets.UTF_8);
+            if ((prevKey != null) && (compare(prevKey, prevKey.length, key) > 0)) {
+                throw new IllegalArgumentException("Keys must be sorted: " + urls[i]);
+            }
+
+            if ((i % entriesPerBlock) == 0) {
+                blockOffsets[i / entriesPerBlock] = HEADER_SIZE + keys.size();
+                writeVarInt(keys, key.length);
+                keys.write(key, 0, key.length);
+            } else {
+                int prefixLength = 0;
+                int maxPrefix = Math.min(prevKey.length, key.length);
+                while ((prefixLength < maxPrefix) && (prevKey[prefixLength] == key[prefixLength])) {
+                    prefixLength++;
+                }
+
+                writeVarInt(keys, prefixLength);
+                writeVarInt(keys, key.length - prefixLength);
+                keys.write(key, prefixLength, key.length - prefixLength);
+            }
+
+            prevKey = key;
+        }
+
+        int blockIndexOffset = HEADER_SIZE + keys.size();
+        int entriesOffset = blockIndexOffset + (numBlocks * 4);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(
+                entriesOffset + (numEntries * ENTRY_SIZE));
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeInt(SERIALIZED_VERSION);
+            out.writeInt(numEntries);
+            out.writeInt(entriesPerBlock);
+            out.writeInt(numBlocks);
+            out.writeInt(blockIndexOffset);
+            out.writeInt(entriesOffset);
+            keys.writeTo(out);
+            for (int blockOffset : blockOffsets) {
+                out.writeInt(blockOffset);
+            }
+
+            for (SecondaryIndex entry : entries) {
+                entry.write(out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible exception", e);
+        }
+
+        return bos.toByteArray();
     }
 
     public static class Builder {
@@ -143,6 +454,10 @@ public class SecondaryIndexMap {
             _entries.add(entry);
         }
 
+        /**
+         * @return map for the lines that were added, which must have been in sorted order (as in the cluster.idx
+         *         file).
+         */
         public SecondaryIndexMap build() {
             String[] urls = _urls.toArray(new String[_urls.size()]);
             SecondaryIndex[] entries = _entries.toArray(new SecondaryIndex[_entries.size()]);
@@ -0,0 +1,91 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-JVM registry of secondary index maps, keyed by crawl id. Every fetcher subtask in a TaskManager builds its own
+ * CommonCrawlFetcher, but they can all share one (read-only) map per crawl id, so the index is only loaded (and, if
+ * needed, downloaded and converted) once. Each {@link #acquire(String, IndexLoader)} must be matched by a
+ * {@link #release(String)}, and the map is dropped when the last user releases it.
+ *
+ * Loading happens while holding the registry lock, which is OK since it's rare, and other subtasks that want the same
+ * map have to wait for it anyway.
+ */
+public class SecondaryIndexRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecondaryIndexRegistry.class);
+
+    public interface IndexLoader {
+        SecondaryIndexMap load() throws IOException;
+    }
+
+    private static class RegistryEntry {
+        private final SecondaryIndexMap _map;
+        private int _refCount = 0;
+
+        public RegistryEntry(SecondaryIndexMap map) {
+            _map = map;
+        }
+    }
+
+    private static final Map<String, RegistryEntry> REGISTRY = new HashMap<>();
+
+    private SecondaryIndexRegistry() {
+        // No instances
+    }
+
+    /**
+     * Return the map for <crawlId>, using <loader> to load it if nobody else is currently using it.
+     *
+     * @param crawlId
+     * @param loader
+     * @return shared map
+     * @throws IOException
+     *             if the map had to be loaded, and that failed
+     */
+    public static SecondaryIndexMap acquire(String crawlId, IndexLoader loader) throws IOException {
+        synchronized (REGISTRY) {
+            RegistryEntry entry = REGISTRY.get(crawlId);
+            if (entry == null) {
+                LOGGER.info("Loading secondary index for crawl " + crawlId);
+                entry = new RegistryEntry(loader.load());
+                REGISTRY.put(crawlId, entry);
+            }
+
+            entry._refCount++;
+            LOGGER.debug("Acquired secondary index for crawl {} ({} users)", crawlId,
+                    entry._refCount);
+            return entry._map;
+        }
+    }
+
+    public static void release(String crawlId) {
+        synchronized (REGISTRY) {
+            RegistryEntry entry = REGISTRY.get(crawlId);
+            if (entry == null) {
+                throw new IllegalStateException("No secondary index registered for crawl " + crawlId);
+            }
+
+            entry._refCount--;
+            if (entry._refCount == 0) {
+                LOGGER.info("Releasing secondary index for crawl " + crawlId);
+                REGISTRY.remove(crawlId);
+            }
+        }
+    }
+
+    /**
+     * @param crawlId
+     * @return number of users of the map for <crawlId>, or 0 if it's not loaded.
+     */
+    public static int getRefCount(String crawlId) {
+        synchronized (REGISTRY) {
+            RegistryEntry entry = REGISTRY.get(crawlId);
+            return entry == null ? 0 : entry._refCount;
+        }
+    }
+}
@@ -1,46 +1,210 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * An LRU cache for segments, referenced by segment id.
+ * An LRU cache for segments, referenced by segment id, with a budget for the total number of bytes of segment data.
+ * We cache the decompressed and indexed form of each segment (see {@link CdxSegment}), so a hit doesn't have to
+ * gunzip and scan the segment again.
  *
+ * Lookups don't lock. Each entry has an access stamp from a global clock, and a separate map from stamp to entry gives
+ * us the least recently used entry when we need to evict something. The total size is tracked as entries are added
+ * and removed, versus being recalculated.
+ *
+ * {@link #get(int, SegmentLoader)} makes sure only one thread loads any given segment; other threads that want the
+ * same segment wait for that load to finish.
  */
 public class SegmentCache {
-    private static final int AVERAGE_SEGMENT_SIZE = 190_000;
 
-    private LinkedHashMap<Integer, byte[]> _cache;
+    public interface SegmentLoader {
+        CdxSegment load(int segmentId) throws IOException;
+    }
 
-    @SuppressWarnings("serial")
-    public SegmentCache(final int maxCacheSize) {
-        int targetEntries = Math.max(1, maxCacheSize / AVERAGE_SEGMENT_SIZE);
-        _cache = new LinkedHashMap<Integer, byte[]>(targetEntries, 0.75f, true) {
+    private static class CacheEntry {
+        private final int _segmentId;
+        private final CdxSegment _segment;
+        private final long _size;
+        private final AtomicLong _stamp;
 
-            @Override
-            protected boolean removeEldestEntry(java.util.Map.Entry<Integer, byte[]> eldest) {
-                return calcCacheSize() > maxCacheSize;
-            }
+        public CacheEntry(int segmentId, CdxSegment segment, long stamp) {
+            _segmentId = segmentId;
+            _segment = segment;
+            _size = segment.getSizeInBytes();
+            _stamp = new AtomicLong(stamp);
+        }
+    }
+
+    private final long _maxCacheSize;
+
+    private final ConcurrentHashMap<Integer, CacheEntry> _cache = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, CacheEntry> _accessOrder = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, CompletableFuture<CdxSegment>> _loading = new ConcurrentHashMap<>();
 
-            private int calcCacheSize() {
-                int curSize = 0;
-                for (byte[] data : values()) {
-                    curSize += data.length;
-                }
+    private final AtomicLong _clock = new AtomicLong();
+    private final AtomicLong _cacheSize = new AtomicLong();
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+
+    public SegmentCache(long maxCacheSize) {
+        _maxCacheSize = maxCacheSize;
+    }
+
+    public void put(int segmentId, CdxSegment segment) {
+        CacheEntry entry = new CacheEntry(segmentId, segment, _clock.incrementAndGet());
+        CacheEntry oldEntry = _cache.put(segmentId, entry);
+        _accessOrder.put(entry._stamp.get(), entry);
+        _cacheSize.addAndGet(entry._size);
+
+        if (oldEntry != null) {
+            _accessOrder.remove(oldEntry._stamp.get(), oldEntry);
+            _cacheSize.addAndGet(-oldEntry._size);
+        }
 
-                return curSize;
+        evict();
+    }
+
+    public CdxSegment get(int segmentId) {
+        CdxSegment result = lookup(segmentId);
+        if (result != null) {
+            _hits.incrementAndGet();
+        } else {
+            _misses.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the data for <segmentId>, using <loader> to load (and then cache) it if it's not in the cache. If another
+     * thread is already loading the same segment, we wait for that load to finish versus loading it again.
+     *
+     * @param segmentId
+     * @param loader
+     * @return parsed segment
+     * @throws IOException
+     *             if the load failed
+     */
+    public CdxSegment get(int segmentId, SegmentLoader loader) throws IOException {
+        CdxSegment result = lookup(segmentId);
+        if (result != null) {
+            _hits.incrementAndGet();
+            return result;
+        }
+
+        _misses.incrementAndGet();
+
+        CompletableFuture<CdxSegment> future = new CompletableFuture<>();
+        CompletableFuture<CdxSegment> curLoad = _loading.putIfAbsent(segmentId, future);
+        if (curLoad != null) {
+            return waitForLoad(curLoad);
+        }
+
+        try {
+            // Some other thread might have finished loading it since we checked.
+            result = lookup(segmentId);
+            if (result == null) {
+                result = loader.load(segmentId);
+                put(segmentId, result);
             }
-        };
+
+            future.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            _loading.remove(segmentId, future);
+        }
+    }
+
+    public int size() {
+        return _cache.size();
+    }
+
+    public long getCacheSize() {
+        return _cacheSize.get();
+    }
+
+    public long getMaxCacheSize() {
+        return _maxCacheSize;
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public long getEvictions() {
+        return _evictions.get();
     }
 
-    public void put(int segmentId, byte[] data) {
-        synchronized (_cache) {
-            _cache.put(segmentId, data);
+    private CdxSegment lookup(int segmentId) {
+        CacheEntry entry = _cache.get(segmentId);
+        if (entry == null) {
+            return null;
+        }
+
+        // Move the entry to the most recently used end. If some other thread changed the
+        // stamp first, then it's already been moved.
+        long oldStamp = entry._stamp.get();
+        long newStamp = _clock.incrementAndGet();
+        if (entry._stamp.compareAndSet(oldStamp, newStamp)) {
+            _accessOrder.remove(oldStamp, entry);
+            _accessOrder.put(newStamp, entry);
+        }
+
+        return entry._segment;
+    }
+
+    private void evict() {
+        while (_cacheSize.get() > _maxCacheSize) {
+            Map.Entry<Long, CacheEntry> eldest = _accessOrder.pollFirstEntry();
+            if (eldest == null) {
+                return;
+            }
+
+            CacheEntry entry = eldest.getValue();
+            if (entry._stamp.get() != eldest.getKey()) {
+                // Entry was accessed after we grabbed it, so it's no longer the eldest. It's been
+                // (or is about to be) added back with its new stamp.
+                continue;
+            }
+
+            // If the entry is no longer in the cache, then it's already been accounted for.
+            if (_cache.remove(entry._segmentId, entry)) {
+                _cacheSize.addAndGet(-entry._size);
+                _evictions.incrementAndGet();
+            }
         }
     }
 
-    public byte[] get(int segmentId) {
-        synchronized (_cache) {
-            return _cache.get(segmentId);
+    private static CdxSegment waitForLoad(CompletableFuture<CdxSegment> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for segment to load");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException(cause);
+            }
         }
     }
 }
@@ -0,0 +1,296 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Groups concurrent requests for WARC records into batches, and coalesces requests for nearby records in the same
+ * WARC file into one range request, which we then split up locally.
+ *
+ * URLs from the same host are typically fetched at about the same time (by different fetch threads), and their
+ * records are often close together in the same WARC file. The first thread to make a request starts a batch, and
+ * waits for up to the batch window (or until the batch is full). Then the batch's requests are grouped by WARC file
+ * and sorted by offset, and ranges that are within <maxGap> bytes of each other are merged (up to <maxRangeSize>).
+ * Each merged range is read once, by whichever of its requesting threads gets to it first.
+ *
+ * Batching is off by default, since every request can wait for up to the batch window. It's worth turning on when
+ * many fetch threads are reading from the same WARC files, e.g. when crawling a single domain.
+ */
+public class WarcRangeBatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarcRangeBatcher.class);
+
+    public static final long DEFAULT_BATCH_WINDOW = 0L;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_MAX_GAP = 64 * 1024L;
+    public static final long DEFAULT_MAX_RANGE_SIZE = 8 * 1024 * 1024L;
+
+    // How long (beyond the batch window) a request waits for its batch to be closed, before
+    // we give up on it.
+    private static final long MAX_EXTRA_WAIT = 10_000L;
+
+    private final CommonCrawlStorage _storage;
+    private final long _batchWindow;
+    private final int _maxBatchSize;
+    private final long _maxGap;
+    private final long _maxRangeSize;
+
+    // Guarded by this.
+    private Batch _curBatch = null;
+
+    private final AtomicLong _numRequests = new AtomicLong();
+    private final AtomicLong _numRangeRequests = new AtomicLong();
+
+    /**
+     * A range of a WARC file that we read once, for one or more requests.
+     */
+    private static class MergedRange {
+        private final String _path;
+        private final long _start;
+        private long _end;
+
+        private byte[] _data = null;
+        private IOException _exception = null;
+
+        public MergedRange(String path, long start, long end) {
+            _path = path;
+            _start = start;
+            _end = end;
+        }
+
+        public synchronized byte[] getData(CommonCrawlStorage storage, AtomicLong numRangeRequests)
+                throws IOException {
+            if ((_data == null) && (_exception == null)) {
+                numRangeRequests.incrementAndGet();
+                byte[] data = new byte[(int) (_end - _start)];
+                try (InputStream is = storage.openRange(_path, _start, data.length)) {
+                    IOUtils.readFully(is, data);
+                    _data = data;
+                } catch (IOException e) {
+                    _exception = e;
+                }
+            }
+
+            if (_exception != null) {
+                throw new IOException("Error reading merged range", _exception);
+            }
+
+            return _data;
+        }
+    }
+
+    private static class Request {
+        private final String _path;
+        private final long _offset;
+        private final long _length;
+
+        // Set when the batch is closed.
+        private MergedRange _range;
+
+        public Request(String path, long offset, long length) {
+            _path = path;
+            _offset = offset;
+            _length = length;
+        }
+    }
+
+    private class Batch {
+        private final List<Request> _requests = new ArrayList<>();
+        private boolean _closed = false;
+
+        public synchronized void add(Request request) {
+            _requests.add(request);
+        }
+
+        public synchronized int size() {
+            return _requests.size();
+        }
+
+        /**
+         * Wait until the batch is closed (by some other thread), or <timeout> ms have elapsed.
+         * 
+         * @return true if the batch was closed.
+         */
+        public synchronized boolean await(long timeout) throws InterruptedIOException {
+            long endTime = System.currentTimeMillis() + timeout;
+            try {
+                while (!_closed) {
+                    long waitTime = endTime - System.currentTimeMillis();
+                    if (waitTime <= 0) {
+                        return false;
+                    }
+
+                    wait(waitTime);
+                }
+
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for WARC batch");
+            }
+        }
+
+        /**
+         * Figure out the merged ranges for all of our requests, and wake up everyone who is waiting.
+         */
+        public synchronized void close() {
+            if (_closed) {
+                return;
+            }
+
+            Map<String, List<Request>> requestsByFile = new HashMap<>();
+            for (Request request : _requests) {
+                List<Request> fileRequests = requestsByFile.get(request._path);
+                if (fileRequests == null) {
+                    fileRequests = new ArrayList<>();
+                    requestsByFile.put(request._path, fileRequests);
+                }
+
+                fileRequests.add(request);
+            }
+
+            int numRanges = 0;
+            for (List<Request> fileRequests : requestsByFile.values()) {
+                Collections.sort(fileRequests, new Comparator<Request>() {
+
+                    @Override
+                    public int compare(Request r1, Request r2) {
+                        return Long.compare(r1._offset, r2._offset);
+                    }
+                });
+
+                MergedRange curRange = null;
+                for (Request request : fileRequests) {
+                    long requestEnd = request._offset + request._length;
+                    if ((curRange != null) && (request._offset - curRange._end <= _maxGap)
+                            && (Math.max(curRange._end, requestEnd) - curRange._start <= _maxRangeSize)) {
+                        curRange._end = Math.max(curRange._end, requestEnd);
+                    } else {
+                        curRange = new MergedRange(request._path, request._offset, requestEnd);
+                        numRanges++;
+                    }
+
+                    request._range = curRange;
+                }
+            }
+
+            LOGGER.trace("Merged {} WARC requests into {} ranges", _requests.size(), numRanges);
+
+            _closed = true;
+            notifyAll();
+        }
+    }
+
+    public WarcRangeBatcher(CommonCrawlStorage storage) {
+        this(storage, DEFAULT_BATCH_WINDOW, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_GAP,
+                DEFAULT_MAX_RANGE_SIZE);
+    }
+
+    /**
+     * @param storage
+     * @param batchWindow
+     *            max time (in ms) to wait for other requests, or 0 to disable batching.
+     * @param maxBatchSize
+     *            max number of requests in one batch
+     * @param maxGap
+     *            max number of unused bytes between two records that we'll read as part of a merged range.
+     * @param maxRangeSize
+     *            max size of a merged range.
+     */
+    public WarcRangeBatcher(CommonCrawlStorage storage, long batchWindow, int maxBatchSize,
+            long maxGap, long maxRangeSize) {
+        _storage = storage;
+        _batchWindow = batchWindow;
+        _maxBatchSize = maxBatchSize;
+        _maxGap = maxGap;
+        _maxRangeSize = maxRangeSize;
+    }
+
+    /**
+     * Return a stream for <length> bytes of the WARC file at <path>, starting at <offset>. This can block for up to the
+     * batch window while we wait for other requests to combine with.
+     *
+     * @param path
+     * @param offset
+     * @param length
+     * @return stream for the range
+     * @throws IOException
+     */
+    public InputStream openRange(String path, long offset, long length) throws IOException {
+        _numRequests.incrementAndGet();
+
+        if (_batchWindow <= 0) {
+            _numRangeRequests.incrementAndGet();
+            return _storage.openRange(path, offset, length);
+        }
+
+        Request request = new Request(path, offset, length);
+        Batch batch;
+        boolean leader = false;
+        boolean full = false;
+        synchronized (this) {
+            if (_curBatch == null) {
+                _curBatch = new Batch();
+                leader = true;
+            }
+
+            batch = _curBatch;
+            batch.add(request);
+            if (batch.size() >= _maxBatchSize) {
+                _curBatch = null;
+                full = true;
+            }
+        }
+
+        if (full) {
+            batch.close();
+        } else if (leader) {
+            try {
+                batch.await(_batchWindow);
+            } finally {
+                // Even if we're interrupted, the batch has to be closed, or everyone waiting on it
+                // (and every later request) would be stuck.
+                synchronized (this) {
+                    if (_curBatch == batch) {
+                        _curBatch = null;
+                    }
+                }
+
+                batch.close();
+            }
+        } else if (!batch.await(_batchWindow + MAX_EXTRA_WAIT)) {
+            throw new IOException("Timed out waiting for WARC batch to be closed");
+        }
+
+        MergedRange range = request._range;
+        byte[] data = range.getData(_storage, _numRangeRequests);
+        return new ByteArrayInputStream(data, (int) (request._offset - range._start),
+                (int) request._length);
+    }
+
+    /**
+     * @return number of calls to {@link #openRange(String, long, long)}.
+     */
+    public long getNumRequests() {
+        return _numRequests.get();
+    }
+
+    /**
+     * @return number of range requests we made to the underlying storage.
+     */
+    public long getNumRangeRequests() {
+        return _numRangeRequests.get();
+    }
+}
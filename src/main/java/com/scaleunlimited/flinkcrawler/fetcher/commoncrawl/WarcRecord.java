@@ -5,8 +5,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  *
@@ -72,6 +74,11 @@ public class WarcRecord {
 
     private WarcHeader warcHeader;
     private List<String> httpHeaders;
+
+    // Lazily parsed versions of the headers, since most users only look at a few
+    // of them (or none).
+    private List<String> rawHeaderMetadata = null;
+    private Map<String, String> httpHeaderMap = null;
     private byte[] warcContent = null;
     private String warcFilePath = "";
 
@@ -82,21 +89,33 @@ public class WarcRecord {
 
     public void setHttpHeaders(List<String> httpHeaders) {
         this.httpHeaders = httpHeaders;
+        httpHeaderMap = null;
     }
 
     public List<String> getHttpHeaders() {
         return httpHeaders;
     }
 
+    /**
+     * @param key
+     *            case-insensitive header name
+     * @return value of the first HTTP header with that name, or null if there isn't one.
+     */
     public String getHttpHeader(String key) {
-        for (String httpHeader : httpHeaders) {
-            String[] keyValue = httpHeader.split(":", 2);
-            if (keyValue[0].equalsIgnoreCase(key)) {
-                return keyValue[1].trim();
+        if (httpHeaderMap == null) {
+            httpHeaderMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String httpHeader : httpHeaders) {
+                int colonPos = httpHeader.indexOf(':');
+                if (colonPos != -1) {
+                    String name = httpHeader.substring(0, colonPos);
+                    if (!httpHeaderMap.containsKey(name)) {
+                        httpHeaderMap.put(name, httpHeader.substring(colonPos + 1).trim());
+                    }
+                }
             }
         }
 
-        return null;
+        return httpHeaderMap.get(key);
     }
 
     public void setWarcFilePath(String path) {
@@ -108,26 +127,61 @@ public class WarcRecord {
     }
 
     public void setWarcRecordType(String recordType) {
+        parseHeaderMetadata();
         warcHeader.recordType = recordType;
     }
 
     public void setWarcContentType(String contentType) {
+        parseHeaderMetadata();
         warcHeader.contentType = contentType;
     }
 
     public void setWarcDate(String dateString) {
+        parseHeaderMetadata();
         warcHeader.dateString = dateString;
     }
 
     public void setWarcUUID(String UUID) {
+        parseHeaderMetadata();
         warcHeader.UUID = UUID;
     }
 
     public void setWarcContentLength(int len) {
+        parseHeaderMetadata();
         warcHeader.contentLength = len;
     }
 
+    /**
+     * Set the raw (unparsed) WARC header lines, which we only parse when the header metadata is first needed.
+     * 
+     * @param headerLines
+     */
+    void setRawHeaderMetadata(List<String> headerLines) {
+        parseHeaderMetadata();
+        rawHeaderMetadata = headerLines;
+    }
+
+    private void parseHeaderMetadata() {
+        if (rawHeaderMetadata == null) {
+            return;
+        }
+
+        List<String> headerLines = rawHeaderMetadata;
+        rawHeaderMetadata = null;
+        for (String headerLine : headerLines) {
+            int colonPos = headerLine.indexOf(':');
+            if (colonPos == -1) {
+                addHeaderMetadata(headerLine, "");
+            } else {
+                addHeaderMetadata(headerLine.substring(0, colonPos).trim(),
+                        headerLine.substring(colonPos + 1).trim());
+            }
+        }
+    }
+
     public void addHeaderMetadata(String key, String value) {
+        parseHeaderMetadata();
+
         // System.out.println("+-- WarRecord.addHeaderMetadata key=" + key + "
         // value=" + value);
         // don't allow addition of known keys
@@ -145,6 +199,7 @@ public class WarcRecord {
     }
 
     public void addHeaderMetadata(String key, int value) {
+        parseHeaderMetadata();
         if (key.equals("Content-Length")) {
             setWarcContentLength(value);
         } else {
@@ -153,14 +208,17 @@ public class WarcRecord {
     }
 
     public void clearHeaderMetadata() {
+        rawHeaderMetadata = null;
         warcHeader.metadata.clear();
     }
 
     public Set<Entry<String, String>> getHeaderMetadata() {
+        parseHeaderMetadata();
         return warcHeader.metadata.entrySet();
     }
 
     public String getHeaderMetadataItem(String key) {
+        parseHeaderMetadata();
         if (key.equals("WARC-Type")) {
             return warcHeader.recordType;
         } else if (key.equals("WARC-Date")) {
@@ -198,11 +256,13 @@ public class WarcRecord {
     }
 
     public String getHeaderRecordType() {
+        parseHeaderMetadata();
         return warcHeader.recordType;
     }
 
     @Override
     public String toString() {
+        parseHeaderMetadata();
         StringBuffer retBuffer = new StringBuffer();
         retBuffer.append(warcHeader.toString());
         retBuffer.append(LINE_ENDING);
@@ -211,6 +271,7 @@ public class WarcRecord {
     }
 
     public String getHeaderString() {
+        parseHeaderMetadata();
         return warcHeader.toString();
     }
 
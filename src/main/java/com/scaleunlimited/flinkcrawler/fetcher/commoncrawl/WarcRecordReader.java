@@ -1,26 +1,47 @@
 package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 
+/**
+ * Reads WARC records from a stream. We read into a reusable buffer and scan it for CRLFs, versus reading a byte at a
+ * time, and header lines are decoded straight from the buffer. The content (payload) array is filled from whatever is
+ * left in the buffer, and then directly from the stream, and returned without any further copying.
+ *
+ * Headers are only parsed (split into names and values) if they're actually used, see {@link WarcRecord}.
+ */
 public class WarcRecordReader {
 
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
     private static final int MAX_LINE_LENGTH = 8192;
 
-    private DataInputStream _input;
+    private final InputStream _input;
+    private final byte[] _buffer;
+    private int _bufferPos;
+    private int _bufferLimit;
     private int _bytesRead;
-    private byte[] _buffer;
 
-    public WarcRecordReader(DataInputStream in) {
+    public WarcRecordReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    WarcRecordReader(InputStream in, int bufferSize) {
+        // We need to be able to hold a max length line, plus the CRLF.
+        if (bufferSize < MAX_LINE_LENGTH + 2) {
+            bufferSize = MAX_LINE_LENGTH + 2;
+        }
+
         _input = in;
+        _buffer = new byte[bufferSize];
+        _bufferPos = 0;
+        _bufferLimit = 0;
         _bytesRead = 0;
-        _buffer = new byte[MAX_LINE_LENGTH];
-
     }
 
     public WarcRecord readNextRecord() throws IOException {
@@ -29,7 +50,7 @@ public class WarcRecordReader {
 
         // first - find our WARC header
         while (true) {
-            String line = readLineFromInputStream().trim();
+            String line = readLine().trim();
             if (line.startsWith(WarcRecord.WARC_VERSION)) {
                 version = line.substring(WarcRecord.WARC_VERSION.length());
                 break;
@@ -44,7 +65,7 @@ public class WarcRecordReader {
         List<String> httpHeaders = new ArrayList<>();
 
         while (true) {
-            String line = readLineFromInputStream().trim();
+            String line = readLine().trim();
             if (line.length() > 0) {
                 warcHeaders.add(line);
                 if (line.startsWith(WarcRecord.WARC_CONTENTLENGTH_FIELDNAME)) {
@@ -63,37 +84,42 @@ public class WarcRecordReader {
         // Assume we have HTTP(S) response headers.
         int httpHeadersLength = 0;
         while (true) {
-            byte[] lineData = readBytesFromInputStream();
+            int lineLength = findLine();
             // We've just consumed this much data, plus the CRLF at end of the line.
-            httpHeadersLength += lineData.length + 2;
+            httpHeadersLength += lineLength + 2;
 
-            if (lineData.length > 0) {
-                httpHeaders.add(new String(lineData, StandardCharsets.UTF_8));
+            if (lineLength > 0) {
+                httpHeaders.add(new String(_buffer, _bufferPos, lineLength, StandardCharsets.UTF_8));
+                consume(lineLength + 2);
             } else {
+                consume(2);
                 break;
             }
         }
 
         // Now we need to read in the content bytes
         contentLength -= httpHeadersLength;
+        if (contentLength < 0) {
+            throw new IOException("HTTP headers are longer than the record's content length");
+        }
+
         byte[] content = new byte[contentLength];
-        if (IOUtils.read(_input, content) != contentLength) {
-            throw new IOException("Not enough bytes for requested content length");
+        int fromBuffer = Math.min(contentLength, _bufferLimit - _bufferPos);
+        System.arraycopy(_buffer, _bufferPos, content, 0, fromBuffer);
+        consume(fromBuffer);
+
+        int remaining = contentLength - fromBuffer;
+        if (remaining > 0) {
+            if (IOUtils.read(_input, content, fromBuffer, remaining) != remaining) {
+                throw new IOException("Not enough bytes for requested content length");
+            }
+
+            _bytesRead += remaining;
         }
 
         WarcRecord result = new WarcRecord(version);
         result.setHttpHeaders(httpHeaders);
-
-        for (String warcHeader : warcHeaders) {
-            String[] pieces = warcHeader.split(":", 2);
-            if (pieces.length != 2) {
-                result.addHeaderMetadata(pieces[0], "");
-            } else {
-                String thisKey = pieces[0].trim();
-                String thisValue = pieces[1].trim();
-                result.addHeaderMetadata(thisKey, thisValue);
-            }
-        }
+        result.setRawHeaderMetadata(warcHeaders);
 
         // set the content
         result.setContent(content);
@@ -105,40 +131,74 @@ public class WarcRecordReader {
         return _bytesRead;
     }
 
-    private String readLineFromInputStream() throws IOException {
-        return new String(readBytesFromInputStream(), StandardCharsets.UTF_8);
+    private String readLine() throws IOException {
+        int lineLength = findLine();
+        String result = new String(_buffer, _bufferPos, lineLength, StandardCharsets.UTF_8);
+        consume(lineLength + 2);
+        return result;
     }
 
-    private byte[] readBytesFromInputStream() throws IOException {
-        int length = 0;
-        boolean hasCR = false;
-
-        while (length < _buffer.length) {
-            byte curByte = _input.readByte();
-            _bytesRead += 1;
+    private void consume(int numBytes) {
+        _bufferPos += numBytes;
+        _bytesRead += numBytes;
+    }
 
-            if (curByte == WarcRecord.CR_BYTE) {
-                if (hasCR) {
-                    throw new IOException("Invalid byte sequence, got CR+CR sequence");
-                } else {
-                    hasCR = true;
-                }
-            } else if (curByte == WarcRecord.LF_BYTE) {
-                if (!hasCR) {
-                    throw new IOException("Invalid byte sequence, got LF without CR");
-                } else {
-                    byte[] result = new byte[length];
-                    System.arraycopy(_buffer, 0, result, 0, length);
-                    return result;
+    /**
+     * Make sure the buffer (starting at _bufferPos) contains a complete CRLF-terminated line.
+     *
+     * @return length of the line, not including the CRLF.
+     * @throws IOException
+     *             if we run out of data, or the line isn't valid.
+     */
+    private int findLine() throws IOException {
+        int scanPos = _bufferPos;
+        while (true) {
+            for (; scanPos < _bufferLimit; scanPos++) {
+                byte curByte = _buffer[scanPos];
+                if (curByte == WarcRecord.LF_BYTE) {
+                    if ((scanPos == _bufferPos) || (_buffer[scanPos - 1] != WarcRecord.CR_BYTE)) {
+                        throw new IOException("Invalid byte sequence, got LF without CR");
+                    }
+
+                    return scanPos - 1 - _bufferPos;
+                } else if ((scanPos > _bufferPos) && (_buffer[scanPos - 1] == WarcRecord.CR_BYTE)) {
+                    if (curByte == WarcRecord.CR_BYTE) {
+                        throw new IOException("Invalid byte sequence, got CR+CR sequence");
+                    } else {
+                        throw new IOException("Invalid byte sequence, got CR without following LF");
+                    }
                 }
-            } else if (hasCR) {
-                throw new IOException("Invalid byte sequence, got CR without following LF");
-            } else {
-                _buffer[length++] = curByte;
             }
-        }
 
-        throw new IOException("No CRLF found in lots of data");
+            if (_bufferLimit - _bufferPos >= MAX_LINE_LENGTH) {
+                throw new IOException("No CRLF found in lots of data");
+            }
+
+            scanPos -= fill();
+        }
     }
 
+    /**
+     * Move any unconsumed data to the start of the buffer, and then read more data.
+     *
+     * @return number of bytes that the unconsumed data was shifted down by.
+     * @throws IOException
+     *             if there's no more data.
+     */
+    private int fill() throws IOException {
+        int shift = _bufferPos;
+        if (shift > 0) {
+            System.arraycopy(_buffer, _bufferPos, _buffer, 0, _bufferLimit - _bufferPos);
+            _bufferLimit -= shift;
+            _bufferPos = 0;
+        }
+
+        int numRead = _input.read(_buffer, _bufferLimit, _buffer.length - _bufferLimit);
+        if (numRead == -1) {
+            throw new EOFException();
+        }
+
+        _bufferLimit += numRead;
+        return shift;
+    }
 }
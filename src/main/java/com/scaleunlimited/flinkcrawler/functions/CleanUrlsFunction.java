@@ -0,0 +1,160 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.flinkcrawler.metrics.CrawlerMetrics;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
+import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlNormalizer;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlValidator;
+import com.scaleunlimited.flinkcrawler.utils.ConcurrentLruCache;
+
+/**
+ * Normalize and validate bundles of (lengthened) URLs, and turn the valid ones into bundles of CrawlStateUrls. The
+ * output is grouped by the PLD of each cleaned URL, which can differ from the PLD of the incoming bundle (e.g. for
+ * lengthened URLs, or seed URLs that aren't bundled by PLD), so that every output bundle can be keyed by its PLD. The
+ * normalized URL is only parsed once, and the validator checks the parsed result (see
+ * {@link BaseUrlValidator#isValid(ValidUrl)}).
+ *
+ * The same raw URLs (navigation links, home pages, etc) show up over and over again, so we keep a bounded cache from
+ * the raw URL to the parsed result (or a marker for an invalid URL). For a cache hit we don't have to normalize,
+ * validate, or parse the URL again, since the parsed fields are copied from the cached ValidUrl.
+ */
+@SuppressWarnings("serial")
+public class CleanUrlsFunction extends BaseFlatMapFunction<RawUrlBundle, CrawlStateUrlBundle> {
+    static final Logger LOGGER = LoggerFactory.getLogger(CleanUrlsFunction.class);
+
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+
+    // Cached result for a URL that isn't valid.
+    private static final ValidUrl INVALID_URL = new ValidUrl();
+
+    private final BaseUrlNormalizer _normalizer;
+    private final BaseUrlValidator _validator;
+    private final int _cacheSize;
+
+    private transient ConcurrentLruCache<String, ValidUrl> _cache;
+    private transient long _cacheLookups;
+    private transient long _cacheHits;
+    private transient Map<String, List<CrawlStateUrl>> _urlsByPld;
+
+    public CleanUrlsFunction(BaseUrlNormalizer normalizer, BaseUrlValidator validator) {
+        this(normalizer, validator, DEFAULT_CACHE_SIZE);
+    }
+
+    public CleanUrlsFunction(BaseUrlNormalizer normalizer, BaseUrlValidator validator,
+            int cacheSize) {
+        super();
+
+        _normalizer = normalizer;
+        _validator = validator;
+        _cacheSize = cacheSize;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+
+        _cache = new ConcurrentLruCache<>(_cacheSize);
+        _cacheLookups = 0;
+        _cacheHits = 0;
+        _urlsByPld = new HashMap<>();
+
+        getRuntimeContext().getMetricGroup().gauge(
+                CrawlerMetrics.GAUGE_URL_CACHE_HIT_RATE.toString(), new Gauge<Float>() {
+                    @Override
+                    public Float getValue() {
+                        return getCacheHitRate();
+                    }
+                });
+    }
+
+    @Override
+    public void flatMap(RawUrlBundle bundle, Collector<CrawlStateUrlBundle> collector)
+            throws Exception {
+        for (int i = 0; i < bundle.size(); i++) {
+            CrawlStateUrl url = cleanUrl(bundle.getUrls()[i]);
+            if (url != null) {
+                List<CrawlStateUrl> urls = _urlsByPld.get(url.getPld());
+                if (urls == null) {
+                    urls = new ArrayList<>();
+                    _urlsByPld.put(url.getPld(), urls);
+                }
+
+                urls.add(url);
+            }
+        }
+
+        for (Map.Entry<String, List<CrawlStateUrl>> entry : _urlsByPld.entrySet()) {
+            List<CrawlStateUrl> urls = entry.getValue();
+            collector.collect(new CrawlStateUrlBundle(entry.getKey(),
+                    urls.toArray(new CrawlStateUrl[urls.size()])));
+        }
+
+        _urlsByPld.clear();
+    }
+
+    /**
+     * @return fraction of URLs that were found in the cache, since we were opened.
+     */
+    public float getCacheHitRate() {
+        long lookups = _cacheLookups;
+        return lookups == 0 ? 0.0f : (float) _cacheHits / lookups;
+    }
+
+    /**
+     * @return cleaned version of <url>, or null if it isn't valid.
+     */
+    private CrawlStateUrl cleanUrl(RawUrl url) {
+        record(this.getClass(), url);
+
+        String rawUrl = url.getUrl();
+        _cacheLookups++;
+        ValidUrl validUrl = _cache.get(rawUrl);
+        if (validUrl != null) {
+            _cacheHits++;
+        } else {
+            validUrl = normalizeAndValidate(rawUrl);
+            _cache.put(rawUrl, validUrl);
+        }
+
+        if (validUrl == INVALID_URL) {
+            // Don't output anything, as we're filtering
+            LOGGER.debug("Filtering invalid URL " + rawUrl);
+            return null;
+        }
+
+        // This copies the already-parsed fields from the cached URL.
+        CrawlStateUrl result = new CrawlStateUrl(validUrl, FetchStatus.UNFETCHED,
+                System.currentTimeMillis());
+        result.setScore(url.getScore());
+        return result;
+    }
+
+    private ValidUrl normalizeAndValidate(String rawUrl) {
+        String normalizedUrl = _normalizer.normalize(rawUrl);
+
+        ValidUrl result;
+        try {
+            result = new ValidUrl(normalizedUrl);
+        } catch (MalformedURLException e) {
+            return INVALID_URL;
+        }
+
+        return _validator.isValid(result) ? result : INVALID_URL;
+    }
+}
@@ -0,0 +1,242 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.flinkcrawler.metrics.CrawlerMetrics;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
+import com.scaleunlimited.flinkcrawler.urldb.BaseUrlStateMerger;
+import com.scaleunlimited.flinkcrawler.urldb.BaseUrlStateMerger.MergeResult;
+
+/**
+ * Subtask-local combiner for new URLs, which sits in front of the keyBy to the UrlDBFunction. Popular targets (home
+ * pages, nav and footer links) get extracted over and over again, so we merge copies of the same URL (using the same
+ * merger as the UrlDBFunction) before they get sent over the network.
+ *
+ * We hold on to a URL for at most <maxDelay> milliseconds, and we never hold more than <maxEntries> URLs; when we're
+ * full, the oldest URL is emitted. Everything we're holding is emitted before a checkpoint barrier is sent downstream,
+ * so there's nothing that needs to be saved in our own state.
+ *
+ * URLs come in and go out as bundles. Whatever we emit in one call (e.g. all of the URLs that have been held too
+ * long) is grouped by PLD, so the UrlDBFunction gets one record per PLD instead of one per URL. The URLsBundled counter
+ * versus Flink's numRecordsOut for this operator gives the average number of URLs per record sent to the keyBy.
+ *
+ * This has to be an operator versus a function, since we need processing time timers (for a non-keyed stream) and a
+ * hook that gets called before the checkpoint barrier.
+ */
+@SuppressWarnings("serial")
+public class CombineUrlsOperator extends AbstractStreamOperator<CrawlStateUrlBundle>
+        implements OneInputStreamOperator<CrawlStateUrlBundle, CrawlStateUrlBundle>,
+        ProcessingTimeCallback {
+    static final Logger LOGGER = LoggerFactory.getLogger(CombineUrlsOperator.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_MAX_DELAY = 1000L;
+
+    private final BaseUrlStateMerger _merger;
+    private final int _maxEntries;
+    private final long _maxDelay;
+
+    private transient Map<Long, PendingUrl> _pendingUrls;
+    private transient CrawlStateUrl _mergedUrl;
+    private transient Map<String, List<CrawlStateUrl>> _outputUrls;
+    private transient StreamRecord<CrawlStateUrlBundle> _reusableRecord;
+    private transient ScheduledFuture<?> _flushTimer;
+    private transient Counter _combinedUrls;
+    private transient Counter _bundledUrls;
+
+    public CombineUrlsOperator(BaseUrlStateMerger merger) {
+        this(merger, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_DELAY);
+    }
+
+    public CombineUrlsOperator(BaseUrlStateMerger merger, int maxEntries, long maxDelay) {
+        _merger = merger;
+        _maxEntries = maxEntries;
+        _maxDelay = maxDelay;
+
+        setChainingStrategy(ChainingStrategy.ALWAYS);
+    }
+
+    @Override
+    public void open() throws Exception {
+        super.open();
+
+        // Insertion order, so the first entry is always the one we've held the longest.
+        _pendingUrls = new LinkedHashMap<>();
+        _mergedUrl = new CrawlStateUrl();
+        _outputUrls = new LinkedHashMap<>();
+        _reusableRecord = new StreamRecord<>(null);
+        _combinedUrls = getMetricGroup().counter(CrawlerMetrics.COUNTER_URLS_COMBINED.toString());
+        _bundledUrls = getMetricGroup().counter(CrawlerMetrics.COUNTER_URLS_BUNDLED.toString());
+
+        registerFlushTimer(getProcessingTimeService().getCurrentProcessingTime());
+    }
+
+    @Override
+    public void processElement(StreamRecord<CrawlStateUrlBundle> element) throws Exception {
+        CrawlStateUrlBundle bundle = element.getValue();
+        for (int i = 0; i < bundle.size(); i++) {
+            combineUrl(bundle.getUrls()[i]);
+        }
+
+        emitBundles();
+    }
+
+    @Override
+    public void onProcessingTime(long timestamp) throws Exception {
+        Iterator<PendingUrl> iter = _pendingUrls.values().iterator();
+        while (iter.hasNext()) {
+            PendingUrl pending = iter.next();
+            if (timestamp - pending._addedTime < _maxDelay) {
+                break;
+            }
+
+            iter.remove();
+            addToBundle(pending._url);
+        }
+
+        emitBundles();
+        registerFlushTimer(timestamp);
+    }
+
+    @Override
+    public void prepareSnapshotPreBarrier(long checkpointId) throws Exception {
+        super.prepareSnapshotPreBarrier(checkpointId);
+
+        LOGGER.debug("Flushing {} pending URLs before checkpoint {}", _pendingUrls.size(),
+                checkpointId);
+        flushAll();
+    }
+
+    @Override
+    public void close() throws Exception {
+        cancelFlushTimer();
+        flushAll();
+
+        super.close();
+    }
+
+    @Override
+    public void dispose() throws Exception {
+        cancelFlushTimer();
+
+        super.dispose();
+    }
+
+    private void combineUrl(CrawlStateUrl url) {
+        Long key = url.makeKey();
+        PendingUrl pending = _pendingUrls.get(key);
+
+        if (pending == null) {
+            _pendingUrls.put(key, new PendingUrl(url, getProcessingTimeService()
+                    .getCurrentProcessingTime()));
+            if (_pendingUrls.size() > _maxEntries) {
+                emitOldest();
+            }
+        } else if (!pending._url.getUrl().equals(url.getUrl())) {
+            // Hash collision, so just pass the new URL through.
+            addToBundle(url);
+        } else {
+            mergeUrls(pending._url, url);
+            _combinedUrls.inc();
+        }
+    }
+
+    private void mergeUrls(CrawlStateUrl pendingUrl, CrawlStateUrl newUrl) {
+        MergeResult result = _merger.doMerge(pendingUrl, newUrl, _mergedUrl);
+
+        switch (result) {
+            case USE_FIRST:
+                break;
+
+            case USE_SECOND:
+                pendingUrl.setFrom(newUrl);
+                break;
+
+            case USE_MERGED:
+                pendingUrl.setFrom(_mergedUrl);
+                break;
+
+            default:
+                throw new RuntimeException("Unknown merge result: " + result);
+        }
+    }
+
+    private void emitOldest() {
+        Iterator<PendingUrl> iter = _pendingUrls.values().iterator();
+        PendingUrl oldest = iter.next();
+        iter.remove();
+        addToBundle(oldest._url);
+    }
+
+    private void flushAll() {
+        if (_pendingUrls == null) {
+            return;
+        }
+
+        for (PendingUrl pending : _pendingUrls.values()) {
+            addToBundle(pending._url);
+        }
+
+        _pendingUrls.clear();
+        emitBundles();
+    }
+
+    private void addToBundle(CrawlStateUrl url) {
+        List<CrawlStateUrl> urls = _outputUrls.get(url.getPld());
+        if (urls == null) {
+            urls = new ArrayList<>();
+            _outputUrls.put(url.getPld(), urls);
+        }
+
+        urls.add(url);
+    }
+
+    private void emitBundles() {
+        for (Map.Entry<String, List<CrawlStateUrl>> entry : _outputUrls.entrySet()) {
+            List<CrawlStateUrl> urls = entry.getValue();
+            output.collect(_reusableRecord.replace(new CrawlStateUrlBundle(entry.getKey(),
+                    urls.toArray(new CrawlStateUrl[urls.size()]))));
+            _bundledUrls.inc(urls.size());
+        }
+
+        _outputUrls.clear();
+    }
+
+    private void registerFlushTimer(long currentTime) {
+        // Check a few times per max delay period, so nothing is held much longer than that.
+        long interval = Math.max(1, _maxDelay / 4);
+        _flushTimer = getProcessingTimeService().registerTimer(currentTime + interval, this);
+    }
+
+    private void cancelFlushTimer() {
+        if (_flushTimer != null) {
+            _flushTimer.cancel(false);
+            _flushTimer = null;
+        }
+    }
+
+    private static class PendingUrl {
+        private CrawlStateUrl _url;
+        private long _addedTime;
+
+        public PendingUrl(CrawlStateUrl url, long addedTime) {
+            _url = url;
+            _addedTime = addedTime;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.scaleunlimited.flinkcrawler.functions;
 
+import java.io.Closeable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -8,12 +9,15 @@ import java.util.Map;
 
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.streaming.api.functions.async.ResultFuture;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.scaleunlimited.flinkcrawler.fetcher.BaseHttpFetcherBuilder;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlFetcher;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.SegmentCache;
 import com.scaleunlimited.flinkcrawler.metrics.CrawlerMetrics;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
@@ -78,6 +82,69 @@ public class FetchUrlsFunction
 
         _fetcher = _fetcherBuilder.build();
         _nextFetch = new HashMap<>();
+
+        if (_fetcher instanceof CommonCrawlFetcher) {
+            addSegmentCacheGauges(((CommonCrawlFetcher) _fetcher).getSegmentCache());
+            addStorageRequestGauges((CommonCrawlFetcher) _fetcher);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+
+        // Some fetchers (e.g. CommonCrawlFetcher) hold shared resources.
+        if (_fetcher instanceof Closeable) {
+            ((Closeable) _fetcher).close();
+        }
+    }
+
+    private void addSegmentCacheGauges(final SegmentCache cache) {
+        MetricGroup metricGroup = getRuntimeContext().getMetricGroup();
+        metricGroup.gauge(CrawlerMetrics.GAUGE_SEGMENT_CACHE_HITS.toString(), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cache.getHits();
+            }
+        });
+        metricGroup.gauge(CrawlerMetrics.GAUGE_SEGMENT_CACHE_MISSES.toString(), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cache.getMisses();
+            }
+        });
+        metricGroup.gauge(CrawlerMetrics.GAUGE_SEGMENT_CACHE_EVICTIONS.toString(),
+                new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return cache.getEvictions();
+                    }
+                });
+        metricGroup.gauge(CrawlerMetrics.GAUGE_SEGMENT_CACHE_BYTES.toString(), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return cache.getCacheSize();
+            }
+        });
+    }
+
+    private void addStorageRequestGauges(final CommonCrawlFetcher fetcher) {
+        MetricGroup metricGroup = getRuntimeContext().getMetricGroup();
+        metricGroup.gauge(CrawlerMetrics.GAUGE_STORAGE_REQUESTS.toString(), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return fetcher.getNumStorageRequests();
+            }
+        });
+        metricGroup.gauge(CrawlerMetrics.GAUGE_STORAGE_REQUESTS_PER_PAGE.toString(),
+                new Gauge<Float>() {
+                    @Override
+                    public Float getValue() {
+                        long numPages = fetcher.getNumPagesFetched();
+                        return numPages == 0 ? 0.0f
+                                : (float) fetcher.getNumStorageRequests() / numPages;
+                    }
+                });
     }
 
     @Override
@@ -112,6 +179,9 @@ public class FetchUrlsFunction
                     FetchResultUrl fetchedUrl = new FetchResultUrl(url, fetchStatus, result.getFetchTime(),
                             result.getFetchedUrl(), result.getHeaders(), result.getContent(),
                             result.getContentType(), result.getResponseRate());
+                    fetchedUrl.setHostAddress(result.getHostAddress());
+                    fetchedUrl.setHttpStatus(result.getStatusCode());
+                    fetchedUrl.setReasonPhrase(result.getReasonPhrase());
 
                     _fetchCounts.increment();
 
@@ -0,0 +1,83 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.async.ResultFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlLengthener;
+
+/**
+ * Lengthen all of the URLs in a bundle, and emit them as a new bundle. Each URL in the bundle is lengthened in
+ * parallel, and the bundle completes when the last URL is done. If lengthening a URL fails, we use the original URL.
+ *
+ * Lengthened URLs can point at a different PLD than the shortened ones, so the result still has the PLD of the
+ * incoming bundle; the CleanUrlsFunction re-bundles URLs using the PLD of each cleaned URL.
+ */
+@SuppressWarnings({
+        "serial"
+})
+public class LengthenUrlBundlesFunction extends BaseAsyncFunction<RawUrlBundle, RawUrlBundle> {
+    static final Logger LOGGER = LoggerFactory.getLogger(LengthenUrlBundlesFunction.class);
+
+    // FUTURE make this settable from command line
+    // See https://github.com/ScaleUnlimited/flink-crawler/issues/50
+    private static final int THREAD_COUNT = 100;
+
+    private BaseUrlLengthener _lengthener;
+
+    public LengthenUrlBundlesFunction(BaseUrlLengthener lengthener) {
+        super(THREAD_COUNT, lengthener.getTimeoutInSeconds());
+
+        _lengthener = lengthener;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        _lengthener.open();
+    }
+
+    @Override
+    public void asyncInvoke(final RawUrlBundle bundle, ResultFuture<RawUrlBundle> future)
+            throws Exception {
+        final RawUrl[] urls = bundle.getUrls();
+        if (bundle.size() == 0) {
+            future.complete(Collections.<RawUrlBundle> emptyList());
+            return;
+        }
+
+        final RawUrl[] lengthenedUrls = new RawUrl[urls.length];
+        final AtomicInteger remaining = new AtomicInteger(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            final int index = i;
+            record(this.getClass(), urls[index]);
+
+            _executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        lengthenedUrls[index] = _lengthener.lengthen(urls[index]);
+                    } catch (Throwable t) {
+                        // Otherwise the bundle would never complete, and we'd lose all of its URLs
+                        // when the async operator times out.
+                        LOGGER.warn("Error lengthening " + urls[index], t);
+                        lengthenedUrls[index] = urls[index];
+                    }
+
+                    if (remaining.decrementAndGet() == 0) {
+                        future.complete(Collections.singleton(
+                                new RawUrlBundle(bundle.getPld(), lengthenedUrls)));
+                    }
+                }
+            });
+        }
+    }
+
+}
@@ -1,7 +1,10 @@
 package com.scaleunlimited.flinkcrawler.functions;
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.util.Collector;
@@ -10,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.scaleunlimited.flinkcrawler.parser.BasePageParser;
+import com.scaleunlimited.flinkcrawler.parser.OutlinkSelector;
 import com.scaleunlimited.flinkcrawler.parser.ParserResult;
 import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
 import com.scaleunlimited.flinkcrawler.pojos.DomainScore;
@@ -17,6 +21,11 @@ import com.scaleunlimited.flinkcrawler.pojos.ExtractedUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
 import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlNormalizer;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlNormalizer;
 
 @SuppressWarnings("serial")
 public class ParseFunction extends BaseProcessFunction<FetchResultUrl, ParsedUrl> {
@@ -24,17 +33,34 @@ public class ParseFunction extends BaseProcessFunction<FetchResultUrl, ParsedUrl
 
     public static final OutputTag<CrawlStateUrl> STATUS_OUTPUT_TAG 
         = new OutputTag<CrawlStateUrl>("status"){};
-    public static final OutputTag<ExtractedUrl> OUTLINK_OUTPUT_TAG 
-        = new OutputTag<ExtractedUrl>("outlink"){};
     public static final OutputTag<DomainScore> SCORE_OUTPUT_TAG
         = new OutputTag<DomainScore>("score"){};
+    public static final OutputTag<RawUrlBundle> OUTLINK_BUNDLE_OUTPUT_TAG 
+        = new OutputTag<RawUrlBundle>("outlink-bundle"){};
     
     private BasePageParser _parser;
     private int _maxOutlinksPerPage;
+    private BaseUrlNormalizer _urlNormalizer;
+
+    private transient OutlinkSelector _outlinkSelector;
 
     public ParseFunction(BasePageParser parser, int maxOutlinksPerPage) {
+        this(parser, maxOutlinksPerPage, new SimpleUrlNormalizer());
+    }
+
+    /**
+     * A page's outlinks are emitted via {@link #OUTLINK_BUNDLE_OUTPUT_TAG}, as one {@link RawUrlBundle} per target
+     * PLD.
+     *
+     * @param urlNormalizer
+     *            used to decide which outlinks from a page point at the same target URL, so that we only emit one
+     *            outlink per target.
+     */
+    public ParseFunction(BasePageParser parser, int maxOutlinksPerPage,
+            BaseUrlNormalizer urlNormalizer) {
         _parser = parser;
         _maxOutlinksPerPage = maxOutlinksPerPage;
+        _urlNormalizer = urlNormalizer;
     }
 
     @Override
@@ -101,28 +127,53 @@ public class ParseFunction extends BaseProcessFunction<FetchResultUrl, ParsedUrl
         // Output score for the page.
         context.output(SCORE_OUTPUT_TAG, new DomainScore(result.getParsedUrl().getPld(), result.getParsedUrl().getScore()));
         
-        // Since we are limiting the number of outlinks, first sort by score and then limit.
-        ExtractedUrl[] extractedUrls = result.getExtractedUrls();
-        Arrays.sort(extractedUrls, new Comparator<ExtractedUrl>() {
+        // Since we are limiting the number of outlinks, merge outlinks to the same target and
+        // then only keep the best ones.
+        ExtractedUrl[] extractedUrls = getOutlinkSelector().select(result.getExtractedUrls());
+        outputBundles(extractedUrls, fetchResultUrl, context);
+    }
 
-            @Override
-            public int compare(ExtractedUrl o1, ExtractedUrl o2) {
-                return (int) (o2.getScore() - o1.getScore());
-            }
-        });
-        
-        int count = 0;
+    private void outputBundles(ExtractedUrl[] extractedUrls, FetchResultUrl fetchResultUrl,
+            Context context) {
+        Map<String, List<RawUrl>> urlsByPld = new LinkedHashMap<>();
         boolean tracing = LOGGER.isTraceEnabled();
         for (ExtractedUrl outlink : extractedUrls) {
             if (tracing) {
                 LOGGER.trace("Extracted '{}' from '{}'", outlink.getUrl(), fetchResultUrl.getUrl());
             }
-            
-            context.output(OUTLINK_OUTPUT_TAG, outlink);
-            count++;
-            if (count >= _maxOutlinksPerPage) {
-                break;
+
+            String pld = getPld(outlink);
+            List<RawUrl> urls = urlsByPld.get(pld);
+            if (urls == null) {
+                urls = new ArrayList<>();
+                urlsByPld.put(pld, urls);
             }
+
+            // We don't need the anchor text or rel attributes downstream, so don't ship them around.
+            urls.add(new RawUrl(outlink.getUrl(), outlink.getScore()));
+        }
+
+        for (Map.Entry<String, List<RawUrl>> entry : urlsByPld.entrySet()) {
+            List<RawUrl> urls = entry.getValue();
+            context.output(OUTLINK_BUNDLE_OUTPUT_TAG,
+                    new RawUrlBundle(entry.getKey(), urls.toArray(new RawUrl[urls.size()])));
+        }
+    }
+
+    private static String getPld(ExtractedUrl outlink) {
+        try {
+            return new ValidUrl(outlink.getUrl()).getPld();
+        } catch (MalformedURLException e) {
+            // Let the URL cleaning steps decide what to do with it.
+            return "";
         }
     }
+
+    private OutlinkSelector getOutlinkSelector() {
+        if (_outlinkSelector == null) {
+            _outlinkSelector = new OutlinkSelector(_urlNormalizer, _maxOutlinksPerPage);
+        }
+        
+        return _outlinkSelector;
+    }
 }
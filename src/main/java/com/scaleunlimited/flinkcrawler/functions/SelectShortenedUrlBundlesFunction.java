@@ -0,0 +1,72 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlLengthener;
+
+/**
+ * Synchronous filter for bundles of outlinks. URLs which the lengthener might change are re-bundled and sent to the
+ * SHORTENED_URL_BUNDLE_OUTPUT_TAG side output, for async lengthening. All of the other URLs are re-bundled and
+ * emitted directly, without going through the async operator.
+ */
+@SuppressWarnings("serial")
+public class SelectShortenedUrlBundlesFunction extends BaseProcessFunction<RawUrlBundle, RawUrlBundle> {
+
+    public static final OutputTag<RawUrlBundle> SHORTENED_URL_BUNDLE_OUTPUT_TAG 
+        = new OutputTag<RawUrlBundle>("shortened-url-bundle"){};
+
+    private BaseUrlLengthener _lengthener;
+
+    private transient List<RawUrl> _shortenedUrls;
+    private transient List<RawUrl> _otherUrls;
+
+    public SelectShortenedUrlBundlesFunction(BaseUrlLengthener lengthener) {
+        _lengthener = lengthener;
+    }
+
+    @Override
+    public void processElement(RawUrlBundle bundle, Context context,
+            Collector<RawUrlBundle> collector) throws Exception {
+        if (bundle.size() == 0) {
+            return;
+        }
+
+        if (_shortenedUrls == null) {
+            _shortenedUrls = new ArrayList<>();
+            _otherUrls = new ArrayList<>();
+        }
+
+        for (RawUrl url : bundle.getUrls()) {
+            record(this.getClass(), url);
+
+            if (_lengthener.needsLengthening(url)) {
+                _shortenedUrls.add(url);
+            } else {
+                _otherUrls.add(url);
+            }
+        }
+
+        if (_shortenedUrls.isEmpty()) {
+            // The common case, where nothing needs lengthening.
+            collector.collect(bundle);
+        } else {
+            context.output(SHORTENED_URL_BUNDLE_OUTPUT_TAG, new RawUrlBundle(bundle.getPld(),
+                    _shortenedUrls.toArray(new RawUrl[_shortenedUrls.size()])));
+
+            if (!_otherUrls.isEmpty()) {
+                collector.collect(new RawUrlBundle(bundle.getPld(),
+                        _otherUrls.toArray(new RawUrl[_otherUrls.size()])));
+            }
+        }
+
+        _shortenedUrls.clear();
+        _otherUrls.clear();
+    }
+
+}
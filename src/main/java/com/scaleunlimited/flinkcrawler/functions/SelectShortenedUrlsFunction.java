@@ -0,0 +1,38 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlLengthener;
+
+/**
+ * Synchronous filter that sends only the URLs which the lengthener might change (e.g. ones from link shortener domains)
+ * to the SHORTENED_URL_OUTPUT_TAG side output, for async lengthening. Everything else goes straight through, so it
+ * doesn't have to wait for a slot in the async operator.
+ */
+@SuppressWarnings("serial")
+public class SelectShortenedUrlsFunction extends BaseProcessFunction<RawUrl, RawUrl> {
+
+    public static final OutputTag<RawUrl> SHORTENED_URL_OUTPUT_TAG 
+        = new OutputTag<RawUrl>("shortened-url"){};
+
+    private BaseUrlLengthener _lengthener;
+
+    public SelectShortenedUrlsFunction(BaseUrlLengthener lengthener) {
+        _lengthener = lengthener;
+    }
+
+    @Override
+    public void processElement(RawUrl url, Context context, Collector<RawUrl> collector)
+            throws Exception {
+        record(this.getClass(), url);
+
+        if (_lengthener.needsLengthening(url)) {
+            context.output(SHORTENED_URL_OUTPUT_TAG, url);
+        } else {
+            collector.collect(url);
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import org.apache.flink.api.java.functions.KeySelector;
+
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
+
+@SuppressWarnings("serial")
+public class UrlBundleKeySelector implements KeySelector<CrawlStateUrlBundle, String> {
+
+    @Override
+    public String getKey(CrawlStateUrlBundle bundle) throws Exception {
+        return bundle.getPld();
+    }
+
+}
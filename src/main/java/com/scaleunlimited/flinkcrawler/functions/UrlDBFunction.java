@@ -28,6 +28,7 @@ import com.scaleunlimited.flinkcrawler.config.CrawlTerminator;
 import com.scaleunlimited.flinkcrawler.metrics.CounterUtils;
 import com.scaleunlimited.flinkcrawler.metrics.CrawlerMetrics;
 import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
 import com.scaleunlimited.flinkcrawler.pojos.DomainScore;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
 import com.scaleunlimited.flinkcrawler.pojos.FetchUrl;
@@ -42,9 +43,12 @@ import com.scaleunlimited.flinkcrawler.utils.FetchQueue;
  * 
  * The use of the fetch queue lets us apply some heuristics to fetching the "best" (approximately) URLs, without having
  * to scan every URL.
+ * 
+ * URLs arrive as bundles, where every URL has the same PLD (our key), so that there are fewer records to send over
+ * the network and to process here.
  */
 @SuppressWarnings("serial")
-public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainScore, FetchUrl> implements CheckpointedFunction {
+public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrlBundle, DomainScore, FetchUrl> implements CheckpointedFunction {
     static final Logger LOGGER = LoggerFactory.getLogger(UrlDBFunction.class);
 
     // When we have to update the status of a URL in the fetch queue (because we're either fetching it, or it's
@@ -75,6 +79,11 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
     private transient ValueState<String> _pld;
     private transient MapState<Long, CrawlStateUrl> _archivedUrls;
     private transient ValueState<Float> _domainScore;
+    private transient ValueState<Integer> _urlKeyVersion;
+
+    // PLDs whose URL keys we know are current, so we only have to check the key version
+    // state once per PLD.
+    private transient Set<String> _migratedPlds;
     
     private transient CrawlStateUrl _mergedUrlState;
 
@@ -136,6 +145,13 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
                 "domain-score", TypeInformation.of(new TypeHint<Float>() {
                 }));
         _domainScore = getRuntimeContext().getState(domainScoreDescriptor);
+
+        // 8. Version of the URL hash used for the keys in the active & archived URL states.
+        // This is missing for state saved before we tracked the version.
+        ValueStateDescriptor<Integer> urlKeyVersionDescriptor = new ValueStateDescriptor<>(
+                "url-key-version", TypeInformation.of(new TypeHint<Integer>() {
+                }));
+        _urlKeyVersion = getRuntimeContext().getState(urlKeyVersionDescriptor);
     }
 
     @Override
@@ -179,14 +195,17 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
         _terminator.open();
 
         _scoredDomains = new HashSet<>();
+        _migratedPlds = new HashSet<>();
         _averageDomainScore = 0.0f;
         
         _inFlightUrls = new HashMap<>();
     }
 
     @Override
-    public void processElement1(CrawlStateUrl url, Context ctx, Collector<FetchUrl> collector) throws Exception {
-        record(this.getClass(), url, FetchStatus.class.getSimpleName(), url.getStatus().toString());
+    public void processElement1(CrawlStateUrlBundle bundle, Context ctx, Collector<FetchUrl> collector) throws Exception {
+        if (bundle.size() == 0) {
+            return;
+        }
 
         // See if we have this domain already. If not, create a timer.
         long processingTime = ctx.timerService().currentProcessingTime();
@@ -196,16 +215,23 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
             // Create entries for this domain in the various states.
             _numActiveUrls.update(0);
             _activeIndex.update(0);
-            _pld.update(url.getPld());
+            _pld.update(bundle.getPld());
+            _urlKeyVersion.update(CrawlStateUrl.KEY_VERSION);
+            _migratedPlds.add(bundle.getPld());
             
             // And we want to create a timer, so we have one per domain
             long nextTime = processingTime + 100;
-            LOGGER.debug("Adding timer for domain {} at {}", url.getPld(), nextTime);
+            LOGGER.debug("Adding timer for domain {} at {}", bundle.getPld(), nextTime);
             ctx.timerService().registerProcessingTimeTimer(nextTime);
+        } else {
+            migrateUrlKeys(bundle.getPld());
         }
 
-        // Now update state for this URL, and potentially emit it if status is 'fetching'.
-        processUrl(url, collector);
+        // Now update state for each URL, and potentially emit it if status is 'fetching'.
+        for (CrawlStateUrl url : bundle.getUrls()) {
+            record(this.getClass(), url, FetchStatus.class.getSimpleName(), url.getStatus().toString());
+            processUrl(url, collector);
+        }
     }
 
     @Override
@@ -213,6 +239,9 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
         super.onTimer(timestamp, ctx, out);
         
         if (!_terminator.isTerminated()) {
+            String pld = _pld.value();
+            migrateUrlKeys(pld);
+
             // See if we've got a URL that we want to add to the fetch queue.
             addUrlToFetchQueue(ctx);
             
@@ -222,11 +251,10 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
             emitUrlFromFetchQueue(ctx);
             
             // Update our average domain score info if needed.
-            String pld = _pld.value();
             updateAverageDomainScore(pld);
             
             // And re-register the timer
-            long fireAt = timestamp + checkIntervalForDomain(_pld.value());
+            long fireAt = timestamp + checkIntervalForDomain(pld);
             LOGGER.debug("Resetting timer for domain {} to fire at {}", pld, fireAt);
             ctx.timerService().registerProcessingTimeTimer(fireAt);
         } else {
@@ -250,6 +278,65 @@ public class UrlDBFunction extends BaseCoProcessFunction<CrawlStateUrl, DomainSc
         super.close();
     }
 
+    /**
+     * If the state for the current key/PLD was saved using an older URL hash, re-key all of the active and archived
+     * URLs using the current hash (from {@link CrawlStateUrl#makeKey()}). This is done lazily, the first time we
+     * touch the state for a PLD after restoring from a checkpoint or savepoint.
+     * 
+     * @param pld
+     *            PLD (key) for the current state
+     * @throws Exception
+     */
+    private void migrateUrlKeys(String pld) throws Exception {
+        if (_migratedPlds.contains(pld)) {
+            return;
+        }
+
+        Integer keyVersion = _urlKeyVersion.value();
+        if ((keyVersion != null) && (keyVersion == CrawlStateUrl.KEY_VERSION)) {
+            _migratedPlds.add(pld);
+            return;
+        }
+
+        Map<Long, Long> newKeys = new HashMap<>();
+        rekeyUrls(_activeUrls, newKeys);
+
+        Integer numUrls = _numActiveUrls.value();
+        if (numUrls != null) {
+            for (int i = 0; i < numUrls; i++) {
+                Long newKey = newKeys.get(_activeUrlsIndex.get(i));
+                if (newKey != null) {
+                    _activeUrlsIndex.put(i, newKey);
+                }
+            }
+        }
+
+        newKeys.clear();
+        rekeyUrls(_archivedUrls, newKeys);
+
+        LOGGER.debug("UrlDBFunction ({}/{}) migrated URL keys for '{}' from version {} to {}",
+                _partition, _parallelism, pld, keyVersion, CrawlStateUrl.KEY_VERSION);
+        _urlKeyVersion.update(CrawlStateUrl.KEY_VERSION);
+        _migratedPlds.add(pld);
+    }
+
+    private void rekeyUrls(MapState<Long, CrawlStateUrl> urls, Map<Long, Long> newKeys)
+            throws Exception {
+        Map<Long, CrawlStateUrl> rekeyedUrls = new HashMap<>();
+        for (Map.Entry<Long, CrawlStateUrl> entry : urls.entries()) {
+            CrawlStateUrl url = entry.getValue();
+            Long newKey = url.makeKey();
+            newKeys.put(entry.getKey(), newKey);
+            if (rekeyedUrls.put(newKey, url) != null) {
+                LOGGER.error("UrlDBFunction ({}/{}) URL hash collision during migration for '{}'",
+                        _partition, _parallelism, url);
+            }
+        }
+
+        urls.clear();
+        urls.putAll(rekeyedUrls);
+    }
+
     /**
      * See if have a URL (for the current key/PLD) in our state that should be 
      * added to the fetch queue.
@@ -8,8 +8,18 @@ public enum CrawlerMetrics {
     GAUGE_URLS_IN_FLIGHT("URLsInFlight"),
     GAUGE_URLS_ACTIVE("URLsActive"),
     GAUGE_UNIQUE_PLDS("UniquePLDs"),
+    GAUGE_URL_CACHE_HIT_RATE("URLCacheHitRate"),
+    GAUGE_SEGMENT_CACHE_HITS("SegmentCacheHits"),
+    GAUGE_SEGMENT_CACHE_MISSES("SegmentCacheMisses"),
+    GAUGE_SEGMENT_CACHE_EVICTIONS("SegmentCacheEvictions"),
+    GAUGE_SEGMENT_CACHE_BYTES("SegmentCacheBytes"),
+    GAUGE_STORAGE_REQUESTS("StorageRequests"),
+    GAUGE_STORAGE_REQUESTS_PER_PAGE("StorageRequestsPerPage"),
+    GAUGE_SEED_URLS_PER_SECOND("SeedURLsPerSecond"),
     COUNTER_PAGES_PARSED("PagesParsed"),
-    COUNTER_PAGES_FAILEDPARSE("PagesFailedParse");
+    COUNTER_PAGES_FAILEDPARSE("PagesFailedParse"),
+    COUNTER_URLS_COMBINED("URLsCombined"),
+    COUNTER_URLS_BUNDLED("URLsBundled");
 
     private String _name;
 
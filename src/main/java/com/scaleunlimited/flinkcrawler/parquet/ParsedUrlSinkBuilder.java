@@ -0,0 +1,139 @@
+package com.scaleunlimited.flinkcrawler.parquet;
+
+import java.io.IOException;
+
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.formats.parquet.ParquetBuilder;
+import org.apache.flink.formats.parquet.ParquetWriterFactory;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+
+import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+
+/**
+ * Writes parsed pages (URL, PLD, score, language, title, metadata and text) to Parquet files in a
+ * directory, using a {@link ParsedUrlSinkOperator}. Each checkpoint finishes the current files, and
+ * they're committed when the checkpoint completes (or when the crawl ends), so checkpointing must
+ * be enabled.
+ * 
+ * Parquet buffers a row group in memory before writing it, so the row group size sets the
+ * (approximate) upper bound on memory used per open file. Dictionary encoding is used for all
+ * columns, which works well for PLD, language and metadata values.
+ * 
+ * The default codec is SNAPPY. ZSTD compresses text better, but Parquet uses Hadoop's
+ * ZStandardCodec for it, which requires Hadoop 2.9 or later with native zstd support.
+ */
+public class ParsedUrlSinkBuilder {
+
+    public static final int DEFAULT_ROW_GROUP_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_PAGE_SIZE = 1024 * 1024;
+
+    private String _basePath;
+    private CompressionCodecName _codec = CompressionCodecName.SNAPPY;
+    private int _rowGroupSize = DEFAULT_ROW_GROUP_SIZE;
+    private int _pageSize = DEFAULT_PAGE_SIZE;
+    private String[] _metaKeys = null;
+
+    public ParsedUrlSinkBuilder(String basePath) {
+        _basePath = basePath;
+    }
+
+    public ParsedUrlSinkBuilder setCompressionCodec(CompressionCodecName codec) {
+        _codec = codec;
+        return this;
+    }
+
+    /**
+     * @param rowGroupSize target size (in bytes) of the row group that's buffered in memory
+     * @return this builder
+     */
+    public ParsedUrlSinkBuilder setRowGroupSize(int rowGroupSize) {
+        _rowGroupSize = rowGroupSize;
+        return this;
+    }
+
+    public ParsedUrlSinkBuilder setPageSize(int pageSize) {
+        _pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * @param metaKeys keys of parsed metadata entries to save, or null to save all of them
+     * @return this builder
+     */
+    public ParsedUrlSinkBuilder setMetaKeys(String... metaKeys) {
+        _metaKeys = metaKeys;
+        return this;
+    }
+
+    public ParsedUrlSinkOperator makeOperator() {
+        return new ParsedUrlSinkOperator(_basePath, "part",
+                new ParquetWriterFactory<ParsedUrl>(makeParquetBuilder()));
+    }
+
+    public SingleOutputStreamOperator<Void> addSink(DataStream<ParsedUrl> parsedUrls) {
+        return parsedUrls.transform("ParsedContentSink", BasicTypeInfo.VOID_TYPE_INFO,
+                makeOperator());
+    }
+
+    /**
+     * @return builder for the Parquet writer used by each part file (package-visible for testing)
+     */
+    ParquetBuilder<ParsedUrl> makeParquetBuilder() {
+        return new ParsedUrlParquetBuilder(_codec, _rowGroupSize, _pageSize, _metaKeys);
+    }
+
+    @SuppressWarnings("serial")
+    private static class ParsedUrlParquetBuilder implements ParquetBuilder<ParsedUrl> {
+
+        private final CompressionCodecName _codec;
+        private final int _rowGroupSize;
+        private final int _pageSize;
+        private final String[] _metaKeys;
+
+        public ParsedUrlParquetBuilder(CompressionCodecName codec, int rowGroupSize, int pageSize,
+                String[] metaKeys) {
+            _codec = codec;
+            _rowGroupSize = rowGroupSize;
+            _pageSize = pageSize;
+            _metaKeys = metaKeys;
+        }
+
+        @Override
+        public ParquetWriter<ParsedUrl> createWriter(OutputFile out) throws IOException {
+            return new ParsedUrlWriterBuilder(out, _metaKeys)
+                    .withCompressionCodec(_codec)
+                    .withDictionaryEncoding(true)
+                    .withRowGroupSize(_rowGroupSize)
+                    .withPageSize(_pageSize)
+                    .build();
+        }
+    }
+
+    private static class ParsedUrlWriterBuilder
+            extends ParquetWriter.Builder<ParsedUrl, ParsedUrlWriterBuilder> {
+
+        private final String[] _metaKeys;
+
+        public ParsedUrlWriterBuilder(OutputFile out, String[] metaKeys) {
+            super(out);
+
+            _metaKeys = metaKeys;
+        }
+
+        @Override
+        protected ParsedUrlWriterBuilder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<ParsedUrl> getWriteSupport(Configuration conf) {
+            return new ParsedUrlWriteSupport(_metaKeys);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.scaleunlimited.flinkcrawler.parquet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.flink.api.common.serialization.BulkWriter;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
+import org.apache.flink.core.fs.RecoverableFsDataOutputStream;
+import org.apache.flink.core.fs.RecoverableWriter;
+import org.apache.flink.core.fs.RecoverableWriter.CommitRecoverable;
+import org.apache.flink.core.io.SimpleVersionedSerialization;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.runtime.state.StateInitializationContext;
+import org.apache.flink.runtime.state.StateSnapshotContext;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+
+/**
+ * Writes parsed pages to Parquet part files in a directory, using Flink's RecoverableWriter. Like
+ * a bulk-format StreamingFileSink, the current file is finished on every checkpoint, and committed
+ * when that checkpoint completes. Unlike StreamingFileSink, the current file is also finished and
+ * committed when our input ends normally (close() versus dispose()), so the pages parsed after the
+ * last checkpoint of a finished crawl aren't lost.
+ *
+ * This operator is chained to the parse function, so pages aren't serialized or sent over the
+ * network before being written.
+ */
+@SuppressWarnings("serial")
+public class ParsedUrlSinkOperator extends AbstractStreamOperator<Void>
+        implements OneInputStreamOperator<ParsedUrl, Void> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParsedUrlSinkOperator.class);
+
+    private static final int STATE_VERSION = 1;
+
+    private final String _basePath;
+    private final String _partPrefix;
+    private final BulkWriter.Factory<ParsedUrl> _writerFactory;
+
+    private transient RecoverableWriter _writer;
+    private transient ListState<byte[]> _pendingState;
+    private transient ListState<Long> _partCounterState;
+    private transient int _subtaskIndex;
+    private transient long _partCounter;
+
+    private transient RecoverableFsDataOutputStream _curStream;
+    private transient BulkWriter<ParsedUrl> _curWriter;
+
+    // Files waiting for their checkpoint to complete.
+    private transient TreeMap<Long, List<CommitRecoverable>> _pendingPerCheckpoint;
+
+    public ParsedUrlSinkOperator(String basePath, String partPrefix,
+            BulkWriter.Factory<ParsedUrl> writerFactory) {
+        _basePath = basePath;
+        _partPrefix = partPrefix;
+        _writerFactory = writerFactory;
+
+        setChainingStrategy(ChainingStrategy.ALWAYS);
+    }
+
+    @Override
+    public void initializeState(StateInitializationContext context) throws Exception {
+        super.initializeState(context);
+
+        _subtaskIndex = getRuntimeContext().getIndexOfThisSubtask();
+        _writer = FileSystem.get(new Path(_basePath).toUri()).createRecoverableWriter();
+        _pendingPerCheckpoint = new TreeMap<>();
+
+        _pendingState = context.getOperatorStateStore().getListState(new ListStateDescriptor<>(
+                "parquet-pending-state", BytePrimitiveArraySerializer.INSTANCE));
+
+        // Union state, so that after rescaling no subtask re-uses a part file name.
+        _partCounterState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("parquet-part-counter", LongSerializer.INSTANCE));
+
+        _partCounter = 0;
+        if (context.isRestored()) {
+            for (Long partCounter : _partCounterState.get()) {
+                _partCounter = Math.max(_partCounter, partCounter);
+            }
+
+            // Everything pending in restored state is from a completed checkpoint.
+            for (byte[] state : _pendingState.get()) {
+                for (CommitRecoverable file : deserializePending(state)) {
+                    _writer.recoverForCommit(file).commitAfterRecovery();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void processElement(StreamRecord<ParsedUrl> element) throws Exception {
+        if (_curWriter == null) {
+            String name = String.format("%s-%d-%d.parquet", _partPrefix, _subtaskIndex,
+                    _partCounter++);
+            _curStream = _writer.open(new Path(_basePath, name));
+            _curWriter = _writerFactory.create(_curStream);
+        }
+
+        _curWriter.addElement(element.getValue());
+    }
+
+    @Override
+    public void snapshotState(StateSnapshotContext context) throws Exception {
+        super.snapshotState(context);
+
+        // Parquet files can't be resumed, so we always finish the current file.
+        List<CommitRecoverable> files = new ArrayList<>();
+        if (_curWriter != null) {
+            files.add(finishPart());
+        }
+
+        _pendingPerCheckpoint.put(context.getCheckpointId(), files);
+
+        _pendingState.clear();
+        _pendingState.add(serializePending());
+        _partCounterState.clear();
+        _partCounterState.add(_partCounter);
+    }
+
+    @Override
+    public void notifyCheckpointComplete(long checkpointId) throws Exception {
+        super.notifyCheckpointComplete(checkpointId);
+
+        Map<Long, List<CommitRecoverable>> completed = _pendingPerCheckpoint.headMap(checkpointId,
+                true);
+        for (List<CommitRecoverable> files : completed.values()) {
+            for (CommitRecoverable file : files) {
+                _writer.recoverForCommit(file).commit();
+            }
+        }
+
+        completed.clear();
+    }
+
+    /**
+     * Only called when our input has ended normally (e.g. the crawl is done), so we can commit
+     * everything we've written.
+     */
+    @Override
+    public void close() throws Exception {
+        super.close();
+
+        if (_curWriter != null) {
+            _writer.recoverForCommit(finishPart()).commit();
+        }
+
+        for (List<CommitRecoverable> files : _pendingPerCheckpoint.values()) {
+            for (CommitRecoverable file : files) {
+                _writer.recoverForCommit(file).commit();
+            }
+        }
+
+        _pendingPerCheckpoint.clear();
+    }
+
+    /**
+     * Called after close(), and also when the task fails or is cancelled. In that case the current
+     * part file is never committed, and its pages are parsed again after recovery.
+     */
+    @Override
+    public void dispose() throws Exception {
+        super.dispose();
+
+        if (_curStream != null) {
+            try {
+                _curStream.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing Parquet part file", e);
+            }
+
+            _curStream = null;
+            _curWriter = null;
+        }
+    }
+
+    private CommitRecoverable finishPart() throws IOException {
+        _curWriter.finish();
+        CommitRecoverable result = _curStream.closeForCommit().getRecoverable();
+        _curWriter = null;
+        _curStream = null;
+        return result;
+    }
+
+    private byte[] serializePending() throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(256);
+        out.writeInt(STATE_VERSION);
+
+        int numFiles = 0;
+        for (List<CommitRecoverable> files : _pendingPerCheckpoint.values()) {
+            numFiles += files.size();
+        }
+
+        out.writeInt(numFiles);
+        for (List<CommitRecoverable> files : _pendingPerCheckpoint.values()) {
+            for (CommitRecoverable file : files) {
+                byte[] bytes = SimpleVersionedSerialization.writeVersionAndSerialize(
+                        _writer.getCommitRecoverableSerializer(), file);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        return out.getCopyOfBuffer();
+    }
+
+    private List<CommitRecoverable> deserializePending(byte[] state) throws IOException {
+        DataInputDeserializer in = new DataInputDeserializer(state);
+        int version = in.readInt();
+        if (version != STATE_VERSION) {
+            throw new IOException("Unknown Parquet sink state version: " + version);
+        }
+
+        int numFiles = in.readInt();
+        List<CommitRecoverable> result = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            result.add(SimpleVersionedSerialization.readVersionAndDeSerialize(
+                    _writer.getCommitRecoverableSerializer(), bytes));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package com.scaleunlimited.flinkcrawler.parquet;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+
+/**
+ * Writes a {@link ParsedUrl} directly to Parquet's record consumer, so we don't need to create an
+ * intermediate (e.g. Avro) record for each page.
+ * 
+ * If a set of metadata keys is provided, only those entries from the parsed metadata are saved,
+ * otherwise all of them are.
+ */
+public class ParsedUrlWriteSupport extends WriteSupport<ParsedUrl> {
+
+    public static final String SCHEMA = "message parsed_url {\n"
+            + "  required binary url (UTF8);\n"
+            + "  optional binary pld (UTF8);\n"
+            + "  required float score;\n"
+            + "  optional binary language (UTF8);\n"
+            + "  optional binary title (UTF8);\n"
+            + "  optional group metadata (MAP) {\n"
+            + "    repeated group key_value {\n"
+            + "      required binary key (UTF8);\n"
+            + "      optional binary value (UTF8);\n"
+            + "    }\n"
+            + "  }\n"
+            + "  optional binary text (UTF8);\n"
+            + "}";
+
+    private static final int URL_INDEX = 0;
+    private static final int PLD_INDEX = 1;
+    private static final int SCORE_INDEX = 2;
+    private static final int LANGUAGE_INDEX = 3;
+    private static final int TITLE_INDEX = 4;
+    private static final int METADATA_INDEX = 5;
+    private static final int TEXT_INDEX = 6;
+
+    private final String[] _metaKeys;
+
+    private RecordConsumer _consumer;
+
+    public ParsedUrlWriteSupport(String[] metaKeys) {
+        _metaKeys = metaKeys;
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(MessageTypeParser.parseMessageType(SCHEMA),
+                Collections.<String, String> emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        _consumer = recordConsumer;
+    }
+
+    @Override
+    public void write(ParsedUrl parsedUrl) {
+        _consumer.startMessage();
+
+        writeString("url", URL_INDEX, parsedUrl.getUrl());
+        writeString("pld", PLD_INDEX, parsedUrl.getPld());
+
+        _consumer.startField("score", SCORE_INDEX);
+        _consumer.addFloat(parsedUrl.getScore());
+        _consumer.endField("score", SCORE_INDEX);
+
+        writeString("language", LANGUAGE_INDEX, parsedUrl.getLanguage());
+        writeString("title", TITLE_INDEX, parsedUrl.getTitle());
+        writeMetadata(parsedUrl.getParsedMeta());
+        writeString("text", TEXT_INDEX, parsedUrl.getParsedText());
+
+        _consumer.endMessage();
+    }
+
+    private void writeMetadata(Map<String, String> metadata) {
+        if ((metadata == null) || metadata.isEmpty()) {
+            return;
+        }
+
+        // Parquet doesn't allow an empty repeated field, so we only start the map once we know
+        // there's at least one entry to write.
+        boolean started = false;
+        if (_metaKeys == null) {
+            for (Map.Entry<String, String> entry : metadata.entrySet()) {
+                started = writeEntry(entry.getKey(), entry.getValue(), started);
+            }
+        } else {
+            for (String key : _metaKeys) {
+                if (metadata.containsKey(key)) {
+                    started = writeEntry(key, metadata.get(key), started);
+                }
+            }
+        }
+
+        if (started) {
+            _consumer.endField("key_value", 0);
+            _consumer.endGroup();
+            _consumer.endField("metadata", METADATA_INDEX);
+        }
+    }
+
+    private boolean writeEntry(String key, String value, boolean started) {
+        if (key == null) {
+            return started;
+        }
+
+        if (!started) {
+            _consumer.startField("metadata", METADATA_INDEX);
+            _consumer.startGroup();
+            _consumer.startField("key_value", 0);
+        }
+
+        _consumer.startGroup();
+        writeString("key", 0, key);
+        writeString("value", 1, value);
+        _consumer.endGroup();
+        return true;
+    }
+
+    private void writeString(String field, int index, String value) {
+        if (value == null) {
+            return;
+        }
+
+        _consumer.startField(field, index);
+        _consumer.addBinary(Binary.fromString(value));
+        _consumer.endField(field, index);
+    }
+}
@@ -0,0 +1,28 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import java.io.Serializable;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Base class for language detectors that get the text of the document via SAX events, as part of the same
+ * TeeContentHandler that feeds the content and link extractors.
+ *
+ * The detector is only used when the document's metadata (Dublin Core, then Content-Language) doesn't already tell us
+ * the language.
+ */
+@SuppressWarnings("serial")
+public abstract class BaseLanguageDetector extends DefaultHandler implements Serializable {
+
+    /**
+     * Prepare for processing a new document.
+     */
+    public abstract void reset();
+
+    /**
+     * @return two character language code, or empty string if the language couldn't be determined with reasonable
+     *         certainty.
+     */
+    public abstract String getLanguage();
+
+}
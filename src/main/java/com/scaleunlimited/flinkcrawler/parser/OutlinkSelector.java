@@ -0,0 +1,177 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.scaleunlimited.flinkcrawler.pojos.ExtractedUrl;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlNormalizer;
+
+/**
+ * Picks the top <maxOutlinks> outlinks (by score) from a page, after merging together all outlinks that point to the
+ * same (normalized) target URL. The merged outlink has the sum of the scores, and the distinct anchor text of all of
+ * the outlinks for that target.
+ *
+ * Selection uses a min-heap of size <maxOutlinks>, so it's O(n log k) versus sorting all of the outlinks. Duplicates
+ * are only merged while their target is in the heap, which keeps memory at O(k) for pages with huge numbers of
+ * outlinks. If a target gets pushed out of the heap, a later outlink to it starts over with just its own score. The
+ * heap is reused between calls, so this class isn't thread-safe.
+ */
+public class OutlinkSelector {
+
+    // Separator we use when merging anchor text from multiple outlinks to the same target.
+    private static final String ANCHOR_TEXT_SEPARATOR = " ";
+
+    private final BaseUrlNormalizer _normalizer;
+    private final ExtractedUrl[] _heap;
+
+    // Normalized target URL for each heap entry, and the reverse mapping, so we can find
+    // duplicates that are in the heap.
+    private final String[] _keys;
+    private final Map<String, Integer> _positions;
+    private int _heapSize;
+
+    // Distinct anchor texts for each target (by normalized URL) that has had outlinks merged into
+    // it, since the merged anchor text can't be split back into whole anchors.
+    private final Map<String, List<String>> _anchors;
+
+    public OutlinkSelector(BaseUrlNormalizer normalizer, int maxOutlinks) {
+        _normalizer = normalizer;
+        _heap = new ExtractedUrl[maxOutlinks];
+        _keys = new String[maxOutlinks];
+        _positions = new HashMap<>();
+        _anchors = new HashMap<>();
+    }
+
+    /**
+     * @param outlinks
+     *            All outlinks extracted from a page. Merged outlinks are modified in place.
+     * @return Best outlinks, in descending order of score, with one entry per target URL.
+     */
+    public ExtractedUrl[] select(ExtractedUrl[] outlinks) {
+        if (_heap.length == 0) {
+            return new ExtractedUrl[0];
+        }
+
+        _heapSize = 0;
+
+        try {
+            for (ExtractedUrl outlink : outlinks) {
+                String key = _normalizer.normalize(outlink.getUrl());
+                Integer position = _positions.get(key);
+                if (position != null) {
+                    // Merging only increases the score, so the entry can only move down in the min-heap.
+                    merge(_heap[position], key, outlink);
+                    siftDown(position);
+                } else if (_heapSize < _heap.length) {
+                    set(_heapSize, outlink, key);
+                    siftUp(_heapSize++);
+                } else if (outlink.getScore() > _heap[0].getScore()) {
+                    _positions.remove(_keys[0]);
+                    _anchors.remove(_keys[0]);
+                    set(0, outlink, key);
+                    siftDown(0);
+                }
+            }
+
+            // Pull entries off the min-heap from the back of the result, so it winds up in
+            // descending order of score.
+            ExtractedUrl[] result = new ExtractedUrl[_heapSize];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = _heap[0];
+                _heapSize--;
+                set(0, _heap[_heapSize], _keys[_heapSize]);
+                _heap[_heapSize] = null;
+                _keys[_heapSize] = null;
+                siftDown(0);
+            }
+
+            return result;
+        } finally {
+            Arrays.fill(_heap, null);
+            Arrays.fill(_keys, null);
+            _positions.clear();
+            _anchors.clear();
+        }
+    }
+
+    private void merge(ExtractedUrl target, String key, ExtractedUrl outlink) {
+        target.setScore(target.getScore() + outlink.getScore());
+
+        String anchorText = outlink.getAnchorText();
+        if ((anchorText != null) && !anchorText.isEmpty()) {
+            String targetAnchorText = target.getAnchorText();
+            List<String> anchors = _anchors.get(key);
+            if (anchors == null) {
+                anchors = new ArrayList<>();
+                if ((targetAnchorText != null) && !targetAnchorText.isEmpty()) {
+                    anchors.add(targetAnchorText);
+                }
+
+                _anchors.put(key, anchors);
+            }
+
+            if (anchors.isEmpty()) {
+                target.setAnchorText(anchorText);
+                anchors.add(anchorText);
+            } else if (!anchors.contains(anchorText)) {
+                target.setAnchorText(targetAnchorText + ANCHOR_TEXT_SEPARATOR + anchorText);
+                anchors.add(anchorText);
+            }
+        }
+
+        if (target.getRelAttributes() == null) {
+            target.setRelAttributes(outlink.getRelAttributes());
+        }
+    }
+
+    private void siftUp(int index) {
+        ExtractedUrl entry = _heap[index];
+        String key = _keys[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (_heap[parent].getScore() <= entry.getScore()) {
+                break;
+            }
+
+            set(index, _heap[parent], _keys[parent]);
+            index = parent;
+        }
+
+        set(index, entry, key);
+    }
+
+    private void siftDown(int index) {
+        if (_heapSize == 0) {
+            return;
+        }
+
+        ExtractedUrl entry = _heap[index];
+        String key = _keys[index];
+        int half = _heapSize >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if ((right < _heapSize) && (_heap[right].getScore() < _heap[child].getScore())) {
+                child = right;
+            }
+
+            if (entry.getScore() <= _heap[child].getScore()) {
+                break;
+            }
+
+            set(index, _heap[child], _keys[child]);
+            index = child;
+        }
+
+        set(index, entry, key);
+    }
+
+    private void set(int index, ExtractedUrl entry, String key) {
+        _heap[index] = entry;
+        _keys[index] = key;
+        _positions.put(key, index);
+    }
+}
@@ -0,0 +1,375 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.tika.language.LanguageIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Language detector that only looks at a bounded prefix of the document text, and stops even earlier once one language
+ * is clearly ahead of all others.
+ *
+ * We use the same 3-gram language profiles that ship with Tika, but we load them once into a compact open-addressed
+ * table of (3-gram => per-language log probability), so scoring a 3-gram is one hash probe plus a pass over a small
+ * float array. The 3-grams are generated the same way as Tika's ProfilingWriter (lower-cased letters, with '_' for word
+ * boundaries), so the profiles match what we extract.
+ */
+@SuppressWarnings("serial")
+public class SampledLanguageDetector extends BaseLanguageDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SampledLanguageDetector.class);
+
+    public static final int DEFAULT_MAX_SAMPLE_CHARS = 4 * 1024;
+
+    // How often (in scored 3-grams) we check whether we can stop early.
+    private static final int CHECK_INTERVAL = 32;
+
+    // We need at least this many scored 3-grams before we'll stop early, and the best language
+    // has to be ahead of the next best by at least EARLY_STOP_MARGIN (natural log units).
+    private static final int MIN_EARLY_STOP_NGRAMS = 64;
+    private static final float EARLY_STOP_MARGIN = 40.0f;
+
+    // Minimum requirements for us to return a language when we run out of text.
+    private static final int MIN_CERTAIN_NGRAMS = 12;
+    private static final float MIN_CERTAIN_MARGIN = 4.0f;
+
+    private int _maxSampleChars;
+
+    private transient float[] _scores;
+    private transient char[] _ngram;
+    private transient int _ngramChars;
+    private transient int _numNgrams;
+    private transient int _numSampledChars;
+    private transient boolean _done;
+
+    public SampledLanguageDetector() {
+        this(DEFAULT_MAX_SAMPLE_CHARS);
+    }
+
+    public SampledLanguageDetector(int maxSampleChars) {
+        _maxSampleChars = maxSampleChars;
+    }
+
+    public int getMaxSampleChars() {
+        return _maxSampleChars;
+    }
+
+    @Override
+    public void reset() {
+        _scores = new float[NgramProfiles.INSTANCE.getNumLanguages()];
+        _ngram = new char[] {
+                0, 0, '_'
+        };
+        _ngramChars = 1;
+        _numNgrams = 0;
+        _numSampledChars = 0;
+        _done = false;
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (_scores == null) {
+            reset();
+        }
+
+        int end = start + length;
+        for (int i = start; (i < end) && !_done; i++) {
+            char c = Character.toLowerCase(ch[i]);
+            if (Character.isLetter(c)) {
+                addChar(c);
+            } else {
+                addChar('_');
+                _ngramChars = 1;
+            }
+
+            if (++_numSampledChars >= _maxSampleChars) {
+                _done = true;
+            }
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    /**
+     * @return true if we've stopped sampling text, either because we hit our sample limit or because we're already
+     *         confident about the language.
+     */
+    public boolean isDone() {
+        return _done;
+    }
+
+    public int getNumSampledChars() {
+        return _numSampledChars;
+    }
+
+    @Override
+    public String getLanguage() {
+        if ((_scores == null) || (_numNgrams < MIN_CERTAIN_NGRAMS)) {
+            return "";
+        }
+
+        int bestIndex = findBest(_scores, -1);
+        int secondIndex = findBest(_scores, bestIndex);
+        if ((secondIndex != -1) && (_scores[bestIndex] - _scores[secondIndex] < MIN_CERTAIN_MARGIN)) {
+            return "";
+        }
+
+        String result = NgramProfiles.INSTANCE.getLanguage(bestIndex);
+        LOGGER.trace("Using language detected from {} sampled chars: {}", _numSampledChars, result);
+        return result;
+    }
+
+    private void addChar(char c) {
+        _ngram[0] = _ngram[1];
+        _ngram[1] = _ngram[2];
+        _ngram[2] = c;
+
+        if (++_ngramChars >= 3) {
+            scoreNgram();
+        }
+    }
+
+    private void scoreNgram() {
+        NgramProfiles profiles = NgramProfiles.INSTANCE;
+        int rowOffset = profiles.findRow(NgramProfiles.makeKey(_ngram[0], _ngram[1], _ngram[2]));
+        if (rowOffset == -1) {
+            // Not in any profile, so it tells us nothing.
+            return;
+        }
+
+        float[] logProbs = profiles.getLogProbs();
+        for (int i = 0; i < _scores.length; i++) {
+            _scores[i] += logProbs[rowOffset + i];
+        }
+
+        _numNgrams++;
+        if ((_numNgrams >= MIN_EARLY_STOP_NGRAMS) && ((_numNgrams % CHECK_INTERVAL) == 0)) {
+            int bestIndex = findBest(_scores, -1);
+            int secondIndex = findBest(_scores, bestIndex);
+            if ((secondIndex == -1)
+                    || (_scores[bestIndex] - _scores[secondIndex] >= EARLY_STOP_MARGIN)) {
+                _done = true;
+            }
+        }
+    }
+
+    private static int findBest(float[] scores, int excludeIndex) {
+        int result = -1;
+        for (int i = 0; i < scores.length; i++) {
+            if ((i != excludeIndex) && ((result == -1) || (scores[i] > scores[result]))) {
+                result = i;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Compact, read-only table of per-language log probabilities for every 3-gram that's in at least one of the
+     * language profiles. Built once per JVM from the Tika profiles.
+     */
+    static class NgramProfiles {
+
+        private static final String PROPERTIES_FILE = "tika.language.properties";
+        private static final String LANGUAGES_KEY = "languages";
+        private static final String PROFILE_SUFFIX = ".ngp";
+
+        // We only keep this many of the most frequent 3-grams for each language.
+        private static final int MAX_NGRAMS_PER_LANGUAGE = 1000;
+
+        // Probability we assign to a 3-gram that's missing from a language's profile, relative
+        // to the smallest count in that profile.
+        private static final float MISSING_NGRAM_FRACTION = 0.5f;
+
+        static final NgramProfiles INSTANCE = new NgramProfiles();
+
+        private final String[] _languages;
+
+        // Open-addressed hash table from 3-gram key to offset of its row in _logProbs.
+        private final long[] _keys;
+        private final int[] _rowOffsets;
+        private final int _mask;
+
+        private final float[] _logProbs;
+
+        private NgramProfiles() {
+            List<String> languages = new ArrayList<>();
+            List<Map<Long, Long>> profiles = new ArrayList<>();
+
+            try {
+                Properties props = new Properties();
+                try (InputStream is = LanguageIdentifier.class.getResourceAsStream(PROPERTIES_FILE)) {
+                    props.load(is);
+                }
+
+                for (String language : props.getProperty(LANGUAGES_KEY).split(",")) {
+                    language = language.trim();
+                    Map<Long, Long> profile = loadProfile(language);
+                    if (profile != null) {
+                        languages.add(language);
+                        profiles.add(profile);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to load language profiles", e);
+            }
+
+            _languages = languages.toArray(new String[languages.size()]);
+            int numLanguages = _languages.length;
+
+            // Assign a row to every 3-gram that's in at least one profile.
+            Map<Long, Integer> rows = new HashMap<>();
+            for (Map<Long, Long> profile : profiles) {
+                for (Long key : profile.keySet()) {
+                    if (!rows.containsKey(key)) {
+                        rows.put(key, rows.size());
+                    }
+                }
+            }
+
+            _logProbs = new float[rows.size() * numLanguages];
+            for (int lang = 0; lang < numLanguages; lang++) {
+                Map<Long, Long> profile = profiles.get(lang);
+                long total = 0;
+                long minCount = Long.MAX_VALUE;
+                for (long count : profile.values()) {
+                    total += count;
+                    minCount = Math.min(minCount, count);
+                }
+
+                float missingLogProb = (float) Math.log((MISSING_NGRAM_FRACTION * minCount) / total);
+                for (int row = 0; row < rows.size(); row++) {
+                    _logProbs[(row * numLanguages) + lang] = missingLogProb;
+                }
+
+                for (Map.Entry<Long, Long> entry : profile.entrySet()) {
+                    int row = rows.get(entry.getKey());
+                    _logProbs[(row * numLanguages) + lang] = (float) Math
+                            .log((double) entry.getValue() / total);
+                }
+            }
+
+            int capacity = Integer.highestOneBit(Math.max(16, rows.size() * 2) - 1) << 1;
+            _keys = new long[capacity];
+            _rowOffsets = new int[capacity];
+            _mask = capacity - 1;
+            for (Map.Entry<Long, Integer> entry : rows.entrySet()) {
+                long key = entry.getKey();
+                int slot = slotFor(key);
+                while (_keys[slot] != 0) {
+                    slot = (slot + 1) & _mask;
+                }
+
+                _keys[slot] = key;
+                _rowOffsets[slot] = entry.getValue() * numLanguages;
+            }
+
+            LOGGER.debug("Loaded {} distinct 3-grams for {} languages", rows.size(), numLanguages);
+        }
+
+        public int getNumLanguages() {
+            return _languages.length;
+        }
+
+        public String getLanguage(int index) {
+            return _languages[index];
+        }
+
+        public float[] getLogProbs() {
+            return _logProbs;
+        }
+
+        /**
+         * @param key
+         *            3-gram key from {@link #makeKey(char, char, char)}
+         * @return offset of the 3-gram's row of per-language log probabilities, or -1 if it's not in any profile.
+         */
+        public int findRow(long key) {
+            int slot = slotFor(key);
+            long curKey;
+            while ((curKey = _keys[slot]) != 0) {
+                if (curKey == key) {
+                    return _rowOffsets[slot];
+                }
+
+                slot = (slot + 1) & _mask;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Pack three chars into a (never zero) long, since every 3-gram contains at least one letter or '_'.
+         */
+        public static long makeKey(char c0, char c1, char c2) {
+            return ((long) c0 << 32) | ((long) c1 << 16) | c2;
+        }
+
+        private int slotFor(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & _mask;
+        }
+
+        private static Map<Long, Long> loadProfile(String language) throws IOException {
+            InputStream is = LanguageIdentifier.class.getResourceAsStream(language + PROFILE_SUFFIX);
+            if (is == null) {
+                LOGGER.warn("No language profile found for '{}'", language);
+                return null;
+            }
+
+            List<Map.Entry<String, Long>> entries = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if ((line.length() == 0) || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    int space = line.indexOf(' ');
+                    if (space != 3) {
+                        // We only use 3-grams
+                        continue;
+                    }
+
+                    String ngram = line.substring(0, space);
+                    long count = Long.parseLong(line.substring(space + 1).trim());
+                    entries.add(new AbstractMap.SimpleEntry<String, Long>(ngram, count));
+                }
+            }
+
+            Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+
+                @Override
+                public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                    return Long.compare(o2.getValue(), o1.getValue());
+                }
+            });
+
+            Map<Long, Long> result = new HashMap<>();
+            for (int i = 0; (i < entries.size()) && (i < MAX_NGRAMS_PER_LANGUAGE); i++) {
+                String ngram = entries.get(i).getKey();
+                result.put(makeKey(ngram.charAt(0), ngram.charAt(1), ngram.charAt(2)),
+                        entries.get(i).getValue());
+            }
+
+            return result.isEmpty() ? null : result;
+        }
+    }
+}
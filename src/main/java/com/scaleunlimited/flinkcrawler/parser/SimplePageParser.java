@@ -31,6 +31,7 @@ public class SimplePageParser extends BasePageParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimplePageParser.class);
 
     private boolean _extractLanguage = true;
+    protected BaseLanguageDetector _languageDetector = new SampledLanguageDetector();
     protected BaseContentExtractor _contentExtractor;
     protected BaseLinkExtractor _linkExtractor;
     protected ParseContext _parseContext;
@@ -154,6 +155,19 @@ public class SimplePageParser extends BasePageParser {
         return _extractLanguage;
     }
 
+    /**
+     * @param languageDetector
+     *            to use instead of new {@link SampledLanguageDetector}() when the page's metadata doesn't tell us
+     *            the language. Use {@link TikaLanguageDetector} to profile the entire page text.
+     */
+    public void setLanguageDetector(BaseLanguageDetector languageDetector) {
+        _languageDetector = languageDetector;
+    }
+
+    public BaseLanguageDetector getLanguageDetector() {
+        return _languageDetector;
+    }
+
     @Override
     public ParserResult parse(FetchResultUrl fetchedUrl) throws Exception {
         if (LOGGER.isTraceEnabled()) {
@@ -177,8 +191,14 @@ public class SimplePageParser extends BasePageParser {
             _contentExtractor.reset();
             _linkExtractor.reset();
 
+            BaseLanguageDetector languageDetector = null;
+            if (isExtractLanguage()) {
+                languageDetector = _languageDetector;
+                languageDetector.reset();
+            }
+
             Callable<ParserResult> c = new TikaCallable(_parser, _contentExtractor, _linkExtractor,
-                    is, metadata, isExtractLanguage(), _parseContext);
+                    is, metadata, languageDetector, _parseContext);
             FutureTask<ParserResult> task = new FutureTask<ParserResult>(c);
             Thread t = new Thread(task);
             t.start();
@@ -8,8 +8,6 @@ import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.tika.language.LanguageIdentifier;
-import org.apache.tika.language.ProfilingHandler;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
@@ -69,30 +67,35 @@ class TikaCallable implements Callable<ParserResult> {
     private BaseLinkExtractor _linkExtractor;
     private InputStream _input;
     private Metadata _metadata;
-    private boolean _extractLanguage;
+    private BaseLanguageDetector _languageDetector;
     private ParseContext _parseContext;
 
     public TikaCallable(Parser parser, BaseContentExtractor contentExtractor,
             BaseLinkExtractor linkExtractor, InputStream input, Metadata metadata) {
-        this(parser, contentExtractor, linkExtractor, input, metadata, true);
+        this(parser, contentExtractor, linkExtractor, input, metadata,
+                new SampledLanguageDetector());
     }
 
+    /**
+     * @param languageDetector
+     *            detector to use when the metadata doesn't specify the language, or null if we shouldn't extract the
+     *            language at all.
+     */
     public TikaCallable(Parser parser, BaseContentExtractor contentExtractor,
             BaseLinkExtractor linkExtractor, InputStream input, Metadata metadata,
-            boolean extractLanguage) {
-        this(parser, contentExtractor, linkExtractor, input, metadata, true, null);
-
+            BaseLanguageDetector languageDetector) {
+        this(parser, contentExtractor, linkExtractor, input, metadata, languageDetector, null);
     }
 
     public TikaCallable(Parser parser, BaseContentExtractor contentExtractor,
             BaseLinkExtractor linkExtractor, InputStream input, Metadata metadata,
-            boolean extractLanguage, ParseContext parseContext) {
+            BaseLanguageDetector languageDetector, ParseContext parseContext) {
         _parser = parser;
         _contentExtractor = contentExtractor;
         _linkExtractor = linkExtractor;
         _input = input;
         _metadata = metadata;
-        _extractLanguage = extractLanguage;
+        _languageDetector = languageDetector;
         _parseContext = parseContext;
     }
 
@@ -100,12 +103,10 @@ class TikaCallable implements Callable<ParserResult> {
     public ParserResult call() throws Exception {
         try {
             TeeContentHandler teeContentHandler;
-            ProfilingHandler profilingHandler = null;
 
-            if (_extractLanguage) {
-                profilingHandler = new ProfilingHandler();
+            if (_languageDetector != null) {
                 teeContentHandler = new TeeContentHandler(_contentExtractor, _linkExtractor,
-                        profilingHandler);
+                        _languageDetector);
             } else {
                 teeContentHandler = new TeeContentHandler(_contentExtractor, _linkExtractor);
             }
@@ -115,7 +116,9 @@ class TikaCallable implements Callable<ParserResult> {
             }
             _parser.parse(_input, teeContentHandler, _metadata, _parseContext);
 
-            String lang = _extractLanguage ? detectLanguage(_metadata, profilingHandler) : "";
+            String lang = (_languageDetector != null)
+                    ? detectLanguage(_metadata, _languageDetector)
+                    : "";
 
             // We have to construct a ValidUrl from a string. We know the URL should be valid, so it should never throw
             // an exception.
@@ -158,13 +161,13 @@ class TikaCallable implements Callable<ParserResult> {
 
     /**
      * See if a language was set by the parser, from meta tags. As a last resort falls back to the result from the
-     * ProfilingHandler.
+     * language detector.
      * 
      * @param metadata
-     * @param profilingHandler
+     * @param languageDetector
      * @return The first language found (two char lang code) or empty string if no language was detected.
      */
-    private static String detectLanguage(Metadata metadata, ProfilingHandler profilingHandler) {
+    private static String detectLanguage(Metadata metadata, BaseLanguageDetector languageDetector) {
         String result = null;
 
         String dubCoreLang = metadata.get(TikaCoreProperties.LANGUAGE);
@@ -179,16 +182,8 @@ class TikaCallable implements Callable<ParserResult> {
         result = getFirstLanguage(result);
 
         if (result == null) {
-            // Language is still unspecified, so use ProfileHandler's result
-            LanguageIdentifier langIdentifier = profilingHandler.getLanguage();
-            // FUTURE KKr - provide config for specifying required certainty level.
-            if (langIdentifier.isReasonablyCertain()) {
-                result = langIdentifier.getLanguage();
-                LOGGER.trace("Using language specified by profiling handler: " + result);
-            } else {
-                result = "";
-            }
-
+            // Language is still unspecified, so use the detector's result
+            result = languageDetector.getLanguage();
         }
 
         return result;
@@ -0,0 +1,54 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import org.apache.tika.language.LanguageIdentifier;
+import org.apache.tika.language.ProfilingHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Language detector that uses Tika's ProfilingHandler, which builds an n-gram profile of the entire document text
+ * before making a decision. This is accurate, but expensive for long documents.
+ */
+@SuppressWarnings("serial")
+public class TikaLanguageDetector extends BaseLanguageDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TikaLanguageDetector.class);
+
+    private transient ProfilingHandler _profilingHandler;
+
+    @Override
+    public void reset() {
+        _profilingHandler = new ProfilingHandler();
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        getProfilingHandler().characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        getProfilingHandler().ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public String getLanguage() {
+        LanguageIdentifier langIdentifier = getProfilingHandler().getLanguage();
+        // FUTURE KKr - provide config for specifying required certainty level.
+        if (langIdentifier.isReasonablyCertain()) {
+            String result = langIdentifier.getLanguage();
+            LOGGER.trace("Using language specified by profiling handler: " + result);
+            return result;
+        } else {
+            return "";
+        }
+    }
+
+    private ProfilingHandler getProfilingHandler() {
+        if (_profilingHandler == null) {
+            reset();
+        }
+
+        return _profilingHandler;
+    }
+}
@@ -36,6 +36,12 @@ public class CrawlStateUrl extends ValidUrl {
         _statusTime = statusTime;
     }
 
+    /**
+     * Version of the hash used by {@link #makeKey()}. This needs to change whenever the hash changes, so that state
+     * keyed by the old hash can be migrated.
+     */
+    public static final int KEY_VERSION = 2;
+
     public long makeKey() {
         return HashUtils.longHash(getUrl());
     }
@@ -0,0 +1,55 @@
+package com.scaleunlimited.flinkcrawler.pojos;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * One or more URLs that all have the same PLD, so that they can be sent through the keyBy to the UrlDBFunction as a
+ * single record. The PLD of every URL in the bundle must match the bundle's PLD, since that's what we key on.
+ */
+@SuppressWarnings("serial")
+public class CrawlStateUrlBundle implements Serializable {
+
+    private String _pld;
+    private CrawlStateUrl[] _urls;
+
+    public CrawlStateUrlBundle() {
+        // For Flink POJO serialization
+    }
+
+    public CrawlStateUrlBundle(CrawlStateUrl url) {
+        this(url.getPld(), new CrawlStateUrl[] {
+                url
+        });
+    }
+
+    public CrawlStateUrlBundle(String pld, CrawlStateUrl[] urls) {
+        _pld = pld;
+        _urls = urls;
+    }
+
+    public String getPld() {
+        return _pld;
+    }
+
+    public void setPld(String pld) {
+        _pld = pld;
+    }
+
+    public CrawlStateUrl[] getUrls() {
+        return _urls;
+    }
+
+    public void setUrls(CrawlStateUrl[] urls) {
+        _urls = urls;
+    }
+
+    public int size() {
+        return _urls == null ? 0 : _urls.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s", _pld, Arrays.toString(_urls));
+    }
+}
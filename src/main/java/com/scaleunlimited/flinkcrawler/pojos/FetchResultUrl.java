@@ -13,6 +13,9 @@ public class FetchResultUrl extends ValidUrl {
     private String _contentType;
     private int _responseRate;
     private long _nextFetchTime = 0L;
+    private String _hostAddress;
+    private int _httpStatus;
+    private String _reasonPhrase;
 
     public FetchResultUrl() {
         super();
@@ -101,6 +104,33 @@ public class FetchResultUrl extends ValidUrl {
         _nextFetchTime = nextFetchTime;
     }
 
+    /**
+     * @return IP address of the server that returned the content, or null if unknown.
+     */
+    public String getHostAddress() {
+        return _hostAddress;
+    }
+
+    public void setHostAddress(String hostAddress) {
+        _hostAddress = hostAddress;
+    }
+
+    public int getHttpStatus() {
+        return _httpStatus;
+    }
+
+    public void setHttpStatus(int httpStatus) {
+        _httpStatus = httpStatus;
+    }
+
+    public String getReasonPhrase() {
+        return _reasonPhrase;
+    }
+
+    public void setReasonPhrase(String reasonPhrase) {
+        _reasonPhrase = reasonPhrase;
+    }
+
     @Override
     public String toString() {
         return String.format("%s (%s)", getUrl(), getContentType());
@@ -0,0 +1,49 @@
+package com.scaleunlimited.flinkcrawler.pojos;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * All of the outlinks from one page that point at the same PLD, so that we can send them through the URL cleaning
+ * steps as a single record.
+ */
+@SuppressWarnings("serial")
+public class RawUrlBundle implements Serializable {
+
+    private String _pld;
+    private RawUrl[] _urls;
+
+    public RawUrlBundle() {
+        // For Flink POJO serialization
+    }
+
+    public RawUrlBundle(String pld, RawUrl[] urls) {
+        _pld = pld;
+        _urls = urls;
+    }
+
+    public String getPld() {
+        return _pld;
+    }
+
+    public void setPld(String pld) {
+        _pld = pld;
+    }
+
+    public RawUrl[] getUrls() {
+        return _urls;
+    }
+
+    public void setUrls(RawUrl[] urls) {
+        _urls = urls;
+    }
+
+    public int size() {
+        return _urls == null ? 0 : _urls.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s", _pld, Arrays.toString(_urls));
+    }
+}
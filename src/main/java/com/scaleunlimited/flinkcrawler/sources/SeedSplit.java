@@ -0,0 +1,72 @@
+package com.scaleunlimited.flinkcrawler.sources;
+
+import java.io.Serializable;
+
+/**
+ * A range of the seed URLs, which is processed by one subtask of the SeedUrlSource. For a seed file this is a byte
+ * range [start, end) of the file, and we own every line that starts in that range. For an in-memory list of URLs it's
+ * a range of indexes.
+ * 
+ * The offset is where we'll continue from, and is what gets checkpointed. It's always the start of a line, except for a
+ * gzipped file, where it's the start of the gzip member that contains the next line, and the offset in member is how
+ * far into that member's uncompressed data the line starts.
+ */
+@SuppressWarnings("serial")
+public class SeedSplit implements Serializable {
+
+    private long _start;
+    private long _end;
+    private long _offset;
+    private long _offsetInMember;
+
+    public SeedSplit() {
+        // For Flink POJO serialization
+    }
+
+    public SeedSplit(long start, long end) {
+        _start = start;
+        _end = end;
+        _offset = start;
+    }
+
+    public long getStart() {
+        return _start;
+    }
+
+    public void setStart(long start) {
+        _start = start;
+    }
+
+    public long getEnd() {
+        return _end;
+    }
+
+    public void setEnd(long end) {
+        _end = end;
+    }
+
+    public long getOffset() {
+        return _offset;
+    }
+
+    public void setOffset(long offset) {
+        _offset = offset;
+    }
+
+    public long getOffsetInMember() {
+        return _offsetInMember;
+    }
+
+    public void setOffsetInMember(long offsetInMember) {
+        _offsetInMember = offsetInMember;
+    }
+
+    @Override
+    public String toString() {
+        if (_offsetInMember == 0) {
+            return String.format("[%d, %d) @ %d", _start, _end, _offset);
+        } else {
+            return String.format("[%d, %d) @ %d+%d", _start, _end, _offset, _offsetInMember);
+        }
+    }
+}
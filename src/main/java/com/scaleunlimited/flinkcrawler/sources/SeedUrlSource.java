@@ -1,60 +1,111 @@
 package com.scaleunlimited.flinkcrawler.sources;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
 import org.apache.flink.configuration.Configuration;
-import org.apache.flink.streaming.api.checkpoint.ListCheckpointed;
-import org.apache.flink.streaming.api.functions.source.RichSourceFunction;
-import org.apache.flink.streaming.api.operators.StreamingRuntimeContext;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.scaleunlimited.flinkcrawler.config.CrawlTerminator;
+import com.scaleunlimited.flinkcrawler.metrics.CrawlerMetrics;
 import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.utils.GzipMemberInputStream;
+import com.scaleunlimited.flinkcrawler.utils.GzipMemberInputStream.MemberStart;
 import com.scaleunlimited.flinkcrawler.utils.S3Utils;
+import com.scaleunlimited.flinkcrawler.utils.TokenBucket;
 
 /**
  * Source for seed URLs.
- * 
+ *
+ * A seed file (local or in S3, optionally gzipped) is read incrementally while we're running, versus being loaded into
+ * memory when the job is created. A plain text file is divided into byte ranges (splits), which are spread across all
+ * of the subtasks of this source; a gzipped file can't be split, so it's always one split. We checkpoint the byte
+ * offset of the next line in each split, so restarting doesn't depend on counting lines. For a gzipped file we
+ * checkpoint the compressed offset of the gzip member that contains the next line, plus the line's offset within that
+ * member, so restarting only has to skip part of one member. This works best for files with many members (e.g. as
+ * written by bgzip); for a single-member file we have to decompress from the start.
+ *
+ * The rate at which URLs are emitted is limited by a token bucket, versus a fixed delay after every URL. The bucket's
+ * rate is driven by backpressure from the rest of the crawl (e.g. the URL DB), which we see as time spent blocked in
+ * the collector. Every second, if we were blocked for more than half of that time we halve our rate, otherwise we
+ * raise it by a tenth of the max rate, up to the max rate set via {@link #setMaxUrlsPerSecond(float)}.
+ *
+ * For a plain text file in S3, we read each split with a bounded range request, plus small follow-on requests for the
+ * end of the last line, which can extend past the end of the split.
  */
 @SuppressWarnings("serial")
-public class SeedUrlSource extends RichSourceFunction<RawUrl> implements ListCheckpointed<Integer> {
+public class SeedUrlSource extends RichParallelSourceFunction<RawUrl>
+        implements CheckpointedFunction {
     static final Logger LOGGER = LoggerFactory.getLogger(SeedUrlSource.class);
 
-    // Delay between calls to the collector to emit elemnts.
-    private static final long DEFAULT_COLLECTOR_DELAY = 10;
+    // Max rate for the source as a whole (across all subtasks), in URLs/second.
+    public static final float DEFAULT_MAX_URLS_PER_SECOND = 10_000.0f;
+
+    public static final long DEFAULT_SPLIT_SIZE = 64 * 1024 * 1024L;
+
+    // How long to wait between checks of the terminator, once we've emitted all of our URLs.
+    private static final long IDLE_DELAY = 100;
+
+    // How often we adjust our rate, based on how much of the time we were blocked by backpressure.
+    private static final long RATE_CHECK_INTERVAL_NANOS = 1_000_000_000L;
+    private static final double MAX_BLOCKED_FRACTION = 0.5;
+
+    // We never drop below this fraction of the max rate, so we keep probing for capacity.
+    private static final double MIN_RATE_FRACTION = 0.01;
+    private static final double RATE_INCREASE_FRACTION = 0.1;
+
+    // Size of the follow-on range requests used to read a line that extends past the end of
+    // a split in S3.
+    private static final long S3_OVERRUN_SIZE = 64 * 1024L;
+
+    private static final String GZIP_SUFFIX = ".gz";
 
     private CrawlTerminator _terminator;
     private float _estimatedScore;
-    private long _collectorDelay = DEFAULT_COLLECTOR_DELAY;
-    
-    // For when we're reading from S3
-    private String _seedUrlsS3Bucket;
-    private String _seedUrlsS3Path;
-    
-    // For when we've read from a local file
+    private float _maxUrlsPerSecond = DEFAULT_MAX_URLS_PER_SECOND;
+    private long _splitSize = DEFAULT_SPLIT_SIZE;
+
+    // For when we're reading from a (local or S3) file
+    private String _seedUrlsFilename;
+
+    // For when we were given the URLs
     private RawUrl[] _urls;
 
     private volatile boolean _keepRunning = false;
 
-    private transient InputStream _s3FileStream;
-    private transient int _urlIndex;
+    private transient ListState<SeedSplit> _splitsState;
+    private transient List<SeedSplit> _splits;
+    private transient TokenBucket _rateLimiter;
+    private transient double _subtaskMaxUrlsPerSecond;
+    private transient long _rateCheckStartTime;
+    private transient long _blockedNanos;
 
     /**
      * Note that we re-order parameters so this doesn't get confused with the constructor that takes a variable length
      * array of urls.
-     * 
+     *
      * @param seedUrlsFilename
      * @param estimatedScore
      * @throws Exception
@@ -62,34 +113,23 @@ public class SeedUrlSource extends RichSourceFunction<RawUrl> implements ListChe
     public SeedUrlSource(String seedUrlsFilename, float estimatedScore) throws Exception {
         _estimatedScore = estimatedScore;
 
-        // If it's an S3 file, we delay processing until we're running, as the file could be really
+        // We delay reading the file until we're running, as the file could be really
         // big so we want to incrementally consume it.
         if (S3Utils.isS3File(seedUrlsFilename)) {
-            if (!S3Utils.fileExists(seedUrlsFilename)) {
+            if (!makeS3Client().doesObjectExist(S3Utils.getBucket(seedUrlsFilename),
+                    S3Utils.getPath(seedUrlsFilename))) {
                 throw new IllegalArgumentException(
                         "Seed urls file doesn't exist in S3: " + seedUrlsFilename);
             }
-
-            _seedUrlsS3Bucket = S3Utils.getBucket(seedUrlsFilename);
-            _seedUrlsS3Path = S3Utils.getPath(seedUrlsFilename);
         } else {
             File seedUrlsFile = new File(seedUrlsFilename);
             if (!seedUrlsFile.exists()) {
                 throw new IllegalArgumentException(
                         "Seed urls file doesn't exist :" + seedUrlsFile.getAbsolutePath());
             }
-
-            List<String> rawUrls = FileUtils.readLines(seedUrlsFile);
-            List<RawUrl> seedUrls = new ArrayList<>(rawUrls.size());
-            for (String seedUrl : rawUrls) {
-                RawUrl parsedUrl = parseSourceLine(seedUrl);
-                if (parsedUrl != null) {
-                    seedUrls.add(parsedUrl);
-                }
-            }
-
-            _urls = seedUrls.toArray(new RawUrl[seedUrls.size()]);
         }
+
+        _seedUrlsFilename = seedUrlsFilename;
     }
 
     public SeedUrlSource(float estimatedScore, String... rawUrls)
@@ -113,70 +153,129 @@ public class SeedUrlSource extends RichSourceFunction<RawUrl> implements ListChe
         _terminator = terminator;
         return oldTerminator;
     }
-    
+
+    /**
+     * Set the max rate for emitting URLs, across all subtasks of the source.
+     *
+     * @param maxUrlsPerSecond
+     *            - max rate, or <= 0 for no limit
+     * @return previous max rate
+     */
+    public float setMaxUrlsPerSecond(float maxUrlsPerSecond) {
+        float oldMaxUrlsPerSecond = _maxUrlsPerSecond;
+        _maxUrlsPerSecond = maxUrlsPerSecond;
+        return oldMaxUrlsPerSecond;
+    }
+
+    /**
+     * Set a fixed delay after emitting each URL. This has been replaced by a max rate (see
+     * {@link #setMaxUrlsPerSecond(float)}), so we just convert the delay into the equivalent rate.
+     *
+     * @param delay
+     *            - delay in milliseconds, or <= 0 for no limit
+     * @return previous delay
+     * @deprecated use {@link #setMaxUrlsPerSecond(float)}
+     */
+    @Deprecated
     public long setCollectorDelay(long delay) {
-        long oldDelay = _collectorDelay;
-        _collectorDelay = delay;
-        return oldDelay;
+        float oldMaxUrlsPerSecond = setMaxUrlsPerSecond(delay <= 0 ? 0.0f : 1000.0f / delay);
+        return oldMaxUrlsPerSecond <= 0 ? 0 : Math.round(1000.0f / oldMaxUrlsPerSecond);
     }
-    
+
+    /**
+     * Set the target size of each split of a (plain text) seed URLs file.
+     *
+     * @param splitSize
+     *            - size in bytes
+     * @return previous split size
+     */
+    public long setSplitSize(long splitSize) {
+        if (splitSize <= 0) {
+            throw new IllegalArgumentException("Split size must be > 0");
+        }
+
+        long oldSplitSize = _splitSize;
+        _splitSize = splitSize;
+        return oldSplitSize;
+    }
+
     @Override
-    public void open(Configuration parameters) throws Exception {
-        super.open(parameters);
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        _splitsState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("seed-splits", SeedSplit.class));
+
+        _splits = new ArrayList<>();
+        if (context.isRestored()) {
+            for (SeedSplit split : _splitsState.get()) {
+                _splits.add(split);
+            }
+
+            LOGGER.info("Restored seed URL source with splits {}", _splits);
+        } else {
+            RuntimeContext runtimeContext = getRuntimeContext();
+            int parallelism = runtimeContext.getNumberOfParallelSubtasks();
+            int subtask = runtimeContext.getIndexOfThisSubtask();
 
-        StreamingRuntimeContext context = (StreamingRuntimeContext) getRuntimeContext();
-        int parallelism = context.getNumberOfParallelSubtasks();
-        if (parallelism != 1) {
-            throw new IllegalStateException("SeedUrlSource only supports a parallelism of 1");
+            List<SeedSplit> allSplits = makeSplits();
+            for (int i = subtask; i < allSplits.size(); i += parallelism) {
+                _splits.add(allSplits.get(i));
+            }
+
+            LOGGER.info("Seed URL source ({}/{}) has {} of {} splits", subtask + 1, parallelism,
+                    _splits.size(), allSplits.size());
         }
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
 
         if (_terminator == null) {
             throw new IllegalStateException("Crawl terminator must be set for the seed URL source");
         }
-        
+
         LOGGER.info("Opening seed URL source");
 
         // Open the terminator, so that it knows when we really started running.
         _terminator.open();
-        
-        _urlIndex = 0;
-        
-        if (useS3File()) {
-            AmazonS3 s3Client = S3Utils.makeS3Client();
-            S3Object object = s3Client
-                    .getObject(new GetObjectRequest(_seedUrlsS3Bucket, _seedUrlsS3Path));
-            _s3FileStream = object.getObjectContent();
-        }
-    }
 
-    @Override
-    public List<Integer> snapshotState(long checkpointId, long timestamp) throws Exception {
-        List<Integer> state = new ArrayList<>();
-        state.add(_urlIndex);
-        return state;
+        // Each subtask gets its share of the total rate, and can burst up to one second's worth.
+        _subtaskMaxUrlsPerSecond = _maxUrlsPerSecond
+                / getRuntimeContext().getNumberOfParallelSubtasks();
+        _rateLimiter = new TokenBucket(_subtaskMaxUrlsPerSecond, _subtaskMaxUrlsPerSecond);
+        _rateCheckStartTime = System.nanoTime();
+        _blockedNanos = 0;
+
+        getRuntimeContext().getMetricGroup().gauge(
+                CrawlerMetrics.GAUGE_SEED_URLS_PER_SECOND.toString(), new Gauge<Double>() {
+                    @Override
+                    public Double getValue() {
+                        return _rateLimiter.getTokensPerSecond();
+                    }
+                });
     }
 
     @Override
-    public void restoreState(List<Integer> state) throws Exception {
-        if (state.size() != 1) {
-            throw new IllegalStateException("State must consist of a list of one integer");
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        // We're called while holding the checkpoint lock, so offsets are consistent
+        // with what we've emitted.
+        _splitsState.clear();
+        for (SeedSplit split : _splits) {
+            _splitsState.add(split);
         }
-        
-        _urlIndex = state.get(0);
     }
 
     @Override
     public void close() throws Exception {
         LOGGER.info("Closing seed URL source");
-        
-        IOUtils.closeQuietly(_s3FileStream);
+
         super.close();
     }
 
     @Override
     public void cancel() {
         LOGGER.info("Cancelling seed URL source");
-        
+
         _keepRunning = false;
     }
 
@@ -186,79 +285,447 @@ public class SeedUrlSource extends RichSourceFunction<RawUrl> implements ListChe
 
         _keepRunning = true;
 
-        if (useS3File()) {
-            runWithS3File(context);
-        } else {
-            runWithInMemoryList(context);
+        while (_keepRunning && !_terminator.isTerminated() && !_splits.isEmpty()) {
+            SeedSplit split = _splits.get(0);
+            boolean done = useFile() ? emitFromFile(context, split) : emitFromList(context, split);
+            if (done) {
+                LOGGER.debug("Finished seed URL split {}", split);
+                synchronized (context.getCheckpointLock()) {
+                    _splits.remove(0);
+                }
+            }
         }
 
-        LOGGER.info("Terminating seed URL source");
-    }
-
-    private void runWithInMemoryList(SourceContext<RawUrl> context) throws IOException {
+        // The rest of the crawl stops if we're done, so keep running until we're terminated.
         while (_keepRunning && !_terminator.isTerminated()) {
-            
-            if (_urlIndex < _urls.length) {
-                RawUrl url = _urls[_urlIndex++];
-                LOGGER.debug("Emitting '{}'", url);
-                context.collect(url);
-            }
-            
             try {
                 // Sleep so we can be interrupted
-                Thread.sleep(_collectorDelay);
+                Thread.sleep(IDLE_DELAY);
             } catch (InterruptedException e) {
                 _keepRunning = false;
             }
         }
+
+        LOGGER.info("Terminating seed URL source");
     }
 
-    private void runWithS3File(SourceContext<RawUrl> context) throws IOException {
-        int s3FileLineIndex = 0;
-        try (BufferedReader s3FileReader = new BufferedReader(new InputStreamReader(_s3FileStream))) {
+    /**
+     * Emit the URLs for <split> from our in-memory list.
+     *
+     * @return true if we've emitted all of the URLs in the split.
+     */
+    private boolean emitFromList(SourceContext<RawUrl> context, SeedSplit split) {
+        while (_keepRunning && !_terminator.isTerminated()) {
+            int index = (int) split.getOffset();
+            if (index >= split.getEnd()) {
+                return true;
+            }
+
+            if (!acquireToken()) {
+                return false;
+            }
+
+            RawUrl url = _urls[index];
+            LOGGER.debug("Emitting '{}'", url);
+            synchronized (context.getCheckpointLock()) {
+                collect(context, url);
+                split.setOffset(index + 1);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Emit the URLs for <split> from our seed file.
+     *
+     * @return true if we've emitted all of the URLs in the split.
+     */
+    private boolean emitFromFile(SourceContext<RawUrl> context, SeedSplit split)
+            throws IOException {
+        if (split.getOffset() >= split.getEnd()) {
+            return true;
+        }
+
+        try (LineReader reader = openSplit(split)) {
             while (_keepRunning && !_terminator.isTerminated()) {
-                String sourceLine = s3FileReader.readLine();
-                if (sourceLine == null) {
-                    break;
+                // We own every line that starts before the end of our split.
+                if (reader.getPosition() >= split.getEnd()) {
+                    return true;
                 }
-                
-                if (s3FileLineIndex++ < _urlIndex) {
-                    // Skip over previously processed lines if we're restarting 
-                    // from checkpointed/saved state. So no delay is needed in
-                    // this case.
-                    continue;
+
+                String sourceLine = reader.readLine();
+                if (sourceLine == null) {
+                    return true;
                 }
 
-                String seedUrl = sourceLine.trim();
-                if (!seedUrl.isEmpty() && !seedUrl.startsWith("#")) {
-                    RawUrl url = new RawUrl(seedUrl, _estimatedScore);
-                    LOGGER.debug("Emitting '{}'", url);
-                    _urlIndex++;
-                    context.collect(url);
+                RawUrl url = parseSourceLine(sourceLine);
+                if ((url != null) && !acquireToken()) {
+                    return false;
                 }
 
-                try {
-                    // Sleep so we can be interrupted
-                    Thread.sleep(_collectorDelay);
-                } catch (InterruptedException e) {
-                    _keepRunning = false;
+                synchronized (context.getCheckpointLock()) {
+                    if (url != null) {
+                        LOGGER.debug("Emitting '{}'", url);
+                        collect(context, url);
+                    }
+
+                    reader.updateOffset(split);
                 }
             }
         }
+
+        return false;
+    }
+
+    /**
+     * Emit <url>, and keep track of how long we're blocked by backpressure.
+     */
+    private void collect(SourceContext<RawUrl> context, RawUrl url) {
+        long startTime = System.nanoTime();
+        context.collect(url);
+        _blockedNanos += System.nanoTime() - startTime;
+    }
+
+    private boolean acquireToken() {
+        updateRate();
+
+        try {
+            _rateLimiter.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            _keepRunning = false;
+            return false;
+        }
+    }
+
+    /**
+     * Adjust our rate (additive increase, multiplicative decrease) based on how much of the time
+     * we've been blocked in the collector since the last check.
+     */
+    private void updateRate() {
+        if (_subtaskMaxUrlsPerSecond <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long elapsed = now - _rateCheckStartTime;
+        if (elapsed < RATE_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+
+        double curRate = _rateLimiter.getTokensPerSecond();
+        double newRate;
+        if ((double) _blockedNanos / elapsed > MAX_BLOCKED_FRACTION) {
+            newRate = Math.max(_subtaskMaxUrlsPerSecond * MIN_RATE_FRACTION, curRate / 2);
+        } else {
+            newRate = Math.min(_subtaskMaxUrlsPerSecond,
+                    curRate + (_subtaskMaxUrlsPerSecond * RATE_INCREASE_FRACTION));
+        }
+
+        if (newRate != curRate) {
+            LOGGER.debug("Changing seed URL rate from {} to {} URLs/second", curRate, newRate);
+            _rateLimiter.setTokensPerSecond(newRate);
+        }
+
+        _rateCheckStartTime = now;
+        _blockedNanos = 0;
+    }
+
+    private LineReader openSplit(SeedSplit split) throws IOException {
+        long offset = split.getOffset();
+        if (isGzipped()) {
+            // We can only start decompressing at the beginning of a member, so skip to the
+            // start of the line within that member.
+            GzipMemberInputStream in = new GzipMemberInputStream(
+                    openFile(offset, split.getEnd()), offset);
+            IOUtils.skipFully(in, split.getOffsetInMember());
+            return new LineReader(in, split.getOffsetInMember());
+        } else if ((offset == split.getStart()) && (offset > 0)) {
+            // We haven't read anything yet, and the first line we own is the first one that
+            // starts at or after our start, so skip everything up to (and including) the
+            // newline that ends the previous line.
+            LineReader result = new LineReader(openFile(offset - 1, split.getEnd()), offset - 1);
+            result.skipLine();
+            return result;
+        } else {
+            // Offset is always the start of a line.
+            return new LineReader(openFile(offset, split.getEnd()), offset);
+        }
+    }
+
+    /**
+     * Open the seed file, for reading from <offset>. We'll read up to <end> (or the end of the
+     * file, if that's Long.MAX_VALUE), plus the rest of the line that's at <end>.
+     */
+    private InputStream openFile(long offset, long end) throws IOException {
+        if (S3Utils.isS3File(_seedUrlsFilename)) {
+            return new S3RangeInputStream(makeS3Client(),
+                    S3Utils.getBucket(_seedUrlsFilename), S3Utils.getPath(_seedUrlsFilename),
+                    offset, end);
+        } else {
+            FileInputStream result = new FileInputStream(_seedUrlsFilename);
+            result.getChannel().position(offset);
+            return result;
+        }
+    }
+
+    private List<SeedSplit> makeSplits() {
+        if (!useFile()) {
+            return Collections.singletonList(new SeedSplit(0, _urls.length));
+        } else if (isGzipped()) {
+            // Unsplittable, and we don't know the uncompressed length.
+            return Collections.singletonList(new SeedSplit(0, Long.MAX_VALUE));
+        }
+
+        long fileLength = getFileLength();
+        List<SeedSplit> result = new ArrayList<>();
+        for (long start = 0; start < fileLength; start += _splitSize) {
+            result.add(new SeedSplit(start, Math.min(start + _splitSize, fileLength)));
+        }
+
+        return result;
     }
 
-    private boolean useS3File() {
-        return _seedUrlsS3Bucket != null;
+    private long getFileLength() {
+        if (S3Utils.isS3File(_seedUrlsFilename)) {
+            AmazonS3 s3Client = makeS3Client();
+            return s3Client.getObjectMetadata(S3Utils.getBucket(_seedUrlsFilename),
+                    S3Utils.getPath(_seedUrlsFilename)).getContentLength();
+        } else {
+            return new File(_seedUrlsFilename).length();
+        }
     }
 
-    private RawUrl parseSourceLine(String sourceLine) throws Exception {
+    /**
+     * Note that this is called from our constructor, so it can't depend on the state of a subclass.
+     *
+     * @return client for reading the seed file from S3, which tests can override to use a fake.
+     */
+    protected AmazonS3 makeS3Client() {
+        return S3Utils.makeS3Client();
+    }
+
+    private boolean useFile() {
+        return _seedUrlsFilename != null;
+    }
+
+    private boolean isGzipped() {
+        return _seedUrlsFilename.endsWith(GZIP_SUFFIX);
+    }
+
+    private RawUrl parseSourceLine(String sourceLine) {
         String seedUrl = sourceLine.trim();
         if (seedUrl.isEmpty() || seedUrl.startsWith("#")) {
             return null;
         }
-        
+
         return new RawUrl(seedUrl, _estimatedScore);
     }
 
+    /**
+     * Reads a byte range of an S3 object. The first request is for <start> up to <end>; after that, we read whatever
+     * follows in <S3_OVERRUN_SIZE> requests, since the caller reads past <end> to finish its last line. If <end> is
+     * Long.MAX_VALUE, we make one open-ended request.
+     */
+    private static class S3RangeInputStream extends InputStream {
+
+        private final AmazonS3 _s3Client;
+        private final String _bucket;
+        private final String _path;
+        private long _position;
+        private long _rangeEnd;
+        private InputStream _in;
+        private boolean _eof;
+
+        public S3RangeInputStream(AmazonS3 s3Client, String bucket, String path, long start,
+                long end) {
+            _s3Client = s3Client;
+            _bucket = bucket;
+            _path = path;
+            _position = start;
+            _rangeEnd = end;
+        }
 
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int numRead = read(b, 0, 1);
+            return numRead == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (!_eof) {
+                if (_in == null) {
+                    _in = openRange();
+                    if (_in == null) {
+                        _eof = true;
+                        break;
+                    }
+                }
+
+                int numRead = _in.read(b, off, len);
+                if (numRead > 0) {
+                    _position += numRead;
+                    return numRead;
+                }
+
+                // Done with this range, so the next read (if any) gets the overrun.
+                _in.close();
+                _in = null;
+                if (_rangeEnd == Long.MAX_VALUE) {
+                    _eof = true;
+                } else {
+                    _rangeEnd = _position + S3_OVERRUN_SIZE;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _eof = true;
+            if (_in != null) {
+                _in.close();
+                _in = null;
+            }
+        }
+
+        /**
+         * @return stream for the range from our current position, or null if we're at the end of the object.
+         */
+        private InputStream openRange() {
+            GetObjectRequest request = new GetObjectRequest(_bucket, _path);
+            if (_rangeEnd == Long.MAX_VALUE) {
+                if (_position > 0) {
+                    request.withRange(_position);
+                }
+            } else {
+                // Range end is inclusive.
+                request.withRange(_position, _rangeEnd - 1);
+            }
+
+            try {
+                S3Object object = _s3Client.getObject(request);
+                return object.getObjectContent();
+            } catch (AmazonS3Exception e) {
+                // Requested range starts past the end of the object.
+                if (e.getStatusCode() == 416) {
+                    return null;
+                }
+
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Reads UTF-8 lines from a stream, while keeping track of the byte position of the next line.
+     */
+    private static class LineReader implements Closeable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final InputStream _in;
+        private final GzipMemberInputStream _gzipIn;
+        private final byte[] _buffer = new byte[BUFFER_SIZE];
+        private int _bufferPos = 0;
+        private int _bufferLimit = 0;
+        private long _position;
+
+        private byte[] _line = new byte[256];
+
+        public LineReader(InputStream in, long position) {
+            _in = in;
+            _gzipIn = (in instanceof GzipMemberInputStream) ? (GzipMemberInputStream) in : null;
+            _position = position;
+        }
+
+        public long getPosition() {
+            return _position;
+        }
+
+        /**
+         * Set the offset of <split> to where we'd restart reading, which is the start of the next line.
+         *
+         * @param split
+         */
+        public void updateOffset(SeedSplit split) {
+            if (_gzipIn == null) {
+                split.setOffset(_position);
+            } else {
+                MemberStart memberStart = _gzipIn.getMemberStart(_position);
+                split.setOffset(memberStart.getCompressedOffset());
+                split.setOffsetInMember(_position - memberStart.getUncompressedOffset());
+            }
+        }
+
+        /**
+         * @return the next line (without the line terminator), or null if we're at the end of the stream.
+         * @throws IOException
+         */
+        public String readLine() throws IOException {
+            int lineLength = 0;
+            boolean gotData = false;
+            while (true) {
+                if ((_bufferPos == _bufferLimit) && !fillBuffer()) {
+                    if (!gotData) {
+                        return null;
+                    }
+
+                    break;
+                }
+
+                gotData = true;
+                byte b = _buffer[_bufferPos++];
+                _position++;
+                if (b == '\n') {
+                    break;
+                }
+
+                if (lineLength == _line.length) {
+                    _line = Arrays.copyOf(_line, lineLength * 2);
+                }
+
+                _line[lineLength++] = b;
+            }
+
+            if ((lineLength > 0) && (_line[lineLength - 1] == '\r')) {
+                lineLength--;
+            }
+
+            return new String(_line, 0, lineLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skip past the next newline.
+         *
+         * @throws IOException
+         */
+        public void skipLine() throws IOException {
+            while ((_bufferPos < _bufferLimit) || fillBuffer()) {
+                _position++;
+                if (_buffer[_bufferPos++] == '\n') {
+                    return;
+                }
+            }
+        }
+
+        private boolean fillBuffer() throws IOException {
+            int numRead = _in.read(_buffer);
+            if (numRead <= 0) {
+                return false;
+            }
+
+            _bufferPos = 0;
+            _bufferLimit = numRead;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
 }
@@ -19,8 +19,7 @@ import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
 import com.scaleunlimited.flinkcrawler.sources.SeedUrlSource;
 import com.scaleunlimited.flinkcrawler.topology.CrawlTopologyBuilder;
 import com.scaleunlimited.flinkcrawler.urls.BaseUrlLengthener;
-import com.scaleunlimited.flinkcrawler.urls.SimpleUrlValidator;
-import com.scaleunlimited.flinkcrawler.urls.SingleDomainUrlValidator;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlValidator;
 import com.scaleunlimited.flinkcrawler.utils.CrawlToolUtils;
 
 import crawlercommons.fetcher.http.UserAgent;
@@ -78,9 +77,7 @@ public class CrawlTool {
 
         // TODO Complain if -cachedir is specified when not running locally?
 
-        SimpleUrlValidator urlValidator = (options.isSingleDomain()
-                ? new SingleDomainUrlValidator(options.getSingleDomain())
-                : new SimpleUrlValidator());
+        BaseUrlValidator urlValidator = CrawlToolUtils.getUrlValidator(options);
 
         UserAgent userAgent = (options.isCommonCrawl()
                 ? new UserAgent("unused-common-crawl-user-agent", "", "") : options.getUserAgent());
@@ -100,10 +97,15 @@ public class CrawlTool {
             pageFetcherBuilder.setValidMimeTypes(validMimeTypes);
         }
 
+        SeedUrlSource seedUrlSource = new SeedUrlSource(options.getSeedUrlsFilename(),
+                RawUrl.DEFAULT_SCORE);
+        seedUrlSource.setMaxUrlsPerSecond(options.getMaxSeedUrlsPerSecond());
+        seedUrlSource.setSplitSize(options.getSeedSplitSize());
+
         CrawlTopologyBuilder builder = new CrawlTopologyBuilder(env)
                 .setUserAgent(userAgent)
                 .setUrlLengthener(urlLengthener)
-                .setUrlSource(new SeedUrlSource(options.getSeedUrlsFilename(), RawUrl.DEFAULT_SCORE))
+                .setUrlSource(seedUrlSource)
                 .setCrawlTerminator(new DurationCrawlTerminator(options.getMaxCrawlDurationSec()))
                 .setRobotsFetcherBuilder(robotsFetcherBuilder).setUrlFilter(urlValidator)
                 .setSiteMapFetcherBuilder(siteMapFetcherBuilder)
@@ -114,10 +116,21 @@ public class CrawlTool {
                 .setIterationTimeout(options.getIterationTimeoutSec() * 1000L)
                 .setMaxOutlinksPerPage(options.getMaxOutlinksPerPage());
 
+        if (options.getWARCContentPathString() != null) {
+            builder.setWARCContentPath(options.getWARCContentPathString())
+                    .setWARCGzipPerRecord(options.isWARCGzipPerRecord())
+                    .setWARCRollOnCheckpoint(options.isWARCRollOnCheckpoint());
+        }
+
         if (options.getTextContentPathString() != null) {
             builder.setTextContentPath(options.getTextContentPathString());
         }
 
+        if (options.getParsedContentPathString() != null) {
+            builder.setParsedContentPath(options.getParsedContentPathString())
+                    .setParsedContentCodec(options.getParsedContentCodec());
+        }
+
         builder.build().execute();
     }
 }
@@ -1,8 +1,13 @@
 package com.scaleunlimited.flinkcrawler.tools;
 
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.kohsuke.args4j.Option;
 
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlFetcher;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.DiskSegmentCache;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.WarcRangeBatcher;
 import com.scaleunlimited.flinkcrawler.parser.SimpleLinkExtractor;
+import com.scaleunlimited.flinkcrawler.sources.SeedUrlSource;
 import com.scaleunlimited.flinkcrawler.topology.CrawlTopologyBuilder;
 
 import crawlercommons.fetcher.http.SimpleHttpFetcher;
@@ -12,14 +17,22 @@ public class CrawlToolOptions {
 
     private UserAgent _userAgent = null;
     private String _urlsFilename;
+    private float _maxSeedUrlsPerSecond = SeedUrlSource.DEFAULT_MAX_URLS_PER_SECOND;
+    private long _seedSplitSize = SeedUrlSource.DEFAULT_SPLIT_SIZE;
     private String _singleDomain;
+    private String _allowedDomainsFilename;
+    private String _blockedDomainsFilename;
     private long _forceCrawlDelay = CrawlTool.DO_NOT_FORCE_CRAWL_DELAY;
     private long _defaultCrawlDelayMS = 10 * 1000L;
     private int _maxContentSize = SimpleHttpFetcher.DEFAULT_MAX_CONTENT_SIZE;
     private int _fetchersPerTask = 1;
     private int _parallelism = CrawlTopologyBuilder.DEFAULT_PARALLELISM;
     private String _warcContentPathString = null;
+    private boolean _warcGzipPerRecord = false;
+    private boolean _warcRollOnCheckpoint = false;
     private String _textContentPathString = null;
+    private String _parsedContentPathString = null;
+    private CompressionCodecName _parsedContentCodec = CompressionCodecName.SNAPPY;
     private boolean _htmlOnly = false;
     private boolean _noLengthen = false;
     private String _checkpointDir = null;
@@ -29,6 +42,11 @@ public class CrawlToolOptions {
     
     private String _cacheDir;
     private String _commonCrawlId = null;
+    private long _segmentCacheSize = CommonCrawlFetcher.DEFAULT_CACHE_SIZE;
+    private String _segmentCacheDir = null;
+    private long _segmentDiskCacheSize = DiskSegmentCache.DEFAULT_MAX_CACHE_SIZE;
+    private String _commonCrawlMirrorDir = null;
+    private long _fetchBatchWindow = WarcRangeBatcher.DEFAULT_BATCH_WINDOW;
 
     @Option(name = "-agent", usage = "user agent info, format:'name,email,website'", required = false)
     public void setUserAgent(String agentNameWebsiteEmailString) {
@@ -62,11 +80,31 @@ public class CrawlToolOptions {
         _urlsFilename = urlsFilename;
     }
 
+    @Option(name = "-seedurlspersecond", usage = "max rate (URLs/second) for emitting seed URLs, across all source tasks (0 for no limit)", required = false)
+    public void setMaxSeedUrlsPerSecond(float maxSeedUrlsPerSecond) {
+        _maxSeedUrlsPerSecond = maxSeedUrlsPerSecond;
+    }
+
+    @Option(name = "-seedsplitsize", usage = "size (in MB) of each split of a (non-gzipped) seed URLs file", required = false)
+    public void setSeedSplitSize(int seedSplitSizeMB) {
+        _seedSplitSize = seedSplitSizeMB * 1024L * 1024L;
+    }
+
     @Option(name = "-singledomain", usage = "only fetch URLs within this domain (and its sub-domains)", required = false)
     public void setSingleDomain(String singleDomain) {
         _singleDomain = singleDomain;
     }
 
+    @Option(name = "-alloweddomains", usage = "text file containing list of domains to crawl (and their sub-domains)", required = false)
+    public void setAllowedDomainsFilename(String allowedDomainsFilename) {
+        _allowedDomainsFilename = allowedDomainsFilename;
+    }
+
+    @Option(name = "-blockeddomains", usage = "text file containing list of domains (and their sub-domains) to never crawl", required = false)
+    public void setBlockedDomainsFilename(String blockedDomainsFilename) {
+        _blockedDomainsFilename = blockedDomainsFilename;
+    }
+
     @Option(name = "-forcecrawldelay", usage = "use this crawl delay (ms) even if robots.txt provides something else", required = false)
     public void setForceCrawlDelay(long forceCrawlDelay) {
         _forceCrawlDelay = forceCrawlDelay;
@@ -92,6 +130,31 @@ public class CrawlToolOptions {
         _cacheDir = cacheDir;
     }
 
+    @Option(name = "-segmentcachesize", usage = "size (in MB) of each CommonCrawl.org fetcher's index segment cache", required = false)
+    public void setCommonCrawlSegmentCacheSize(int segmentCacheSizeMB) {
+        _segmentCacheSize = segmentCacheSizeMB * 1024L * 1024L;
+    }
+
+    @Option(name = "-segmentcachedir", usage = "local directory for caching CommonCrawl.org index segments", required = false)
+    public void setCommonCrawlSegmentCacheDir(String segmentCacheDir) {
+        _segmentCacheDir = segmentCacheDir;
+    }
+
+    @Option(name = "-segmentdiskcachesize", usage = "size (in MB) of the local directory cache for CommonCrawl.org index segments", required = false)
+    public void setCommonCrawlSegmentDiskCacheSize(int segmentDiskCacheSizeMB) {
+        _segmentDiskCacheSize = segmentDiskCacheSizeMB * 1024L * 1024L;
+    }
+
+    @Option(name = "-commoncrawlmirror", usage = "local directory laid out like the CommonCrawl.org bucket, used instead of S3", required = false)
+    public void setCommonCrawlMirrorDir(String commonCrawlMirrorDir) {
+        _commonCrawlMirrorDir = commonCrawlMirrorDir;
+    }
+
+    @Option(name = "-fetchbatchwindow", usage = "max time (ms) to wait to combine CommonCrawl.org WARC requests (default is 0, disabled)", required = false)
+    public void setCommonCrawlFetchBatchWindow(long fetchBatchWindow) {
+        _fetchBatchWindow = fetchBatchWindow;
+    }
+
     @Option(name = "-fetcherspertask", usage = "fetchers per task", required = false)
     public void setFetchersPerTask(int fetchersPerTask) {
         _fetchersPerTask = fetchersPerTask;
@@ -107,11 +170,31 @@ public class CrawlToolOptions {
         _warcContentPathString = pathString;
     }
 
+    @Option(name = "-warcgzipperrecord", usage = "Gzip each WARC record separately (standard .warc.gz files). A CDX index is written for each WARC file either way", required = false)
+    public void setWARCGzipPerRecord(boolean warcGzipPerRecord) {
+        _warcGzipPerRecord = warcGzipPerRecord;
+    }
+
+    @Option(name = "-warcrolloncheckpoint", usage = "Start a new WARC file after every checkpoint", required = false)
+    public void setWARCRollOnCheckpoint(boolean warcRollOnCheckpoint) {
+        _warcRollOnCheckpoint = warcRollOnCheckpoint;
+    }
+
     @Option(name = "-textcontentfile", usage = "Local text file to store fetched content (testing only)", required = false)
     public void setTextContentPath(String pathString) {
         _textContentPathString = pathString;
     }
 
+    @Option(name = "-parsedcontentpath", usage = "Path to store parsed content as Parquet files", required = false)
+    public void setParsedContentPath(String pathString) {
+        _parsedContentPathString = pathString;
+    }
+
+    @Option(name = "-parsedcontentcodec", usage = "Compression codec for Parquet files (e.g. SNAPPY, GZIP, ZSTD)", required = false)
+    public void setParsedContentCodec(CompressionCodecName codec) {
+        _parsedContentCodec = codec;
+    }
+
     @Option(name = "-checkpointdir", usage = "URI to directory to store checkpoint (enables checkpointing)", required = false)
     public void setCheckpointDir(String checkpointDir) {
         _checkpointDir = checkpointDir;
@@ -152,6 +235,30 @@ public class CrawlToolOptions {
                 throw new RuntimeException("user agent not used in common crawl mode");
             }
         }
+
+        // WARC files are only committed when a checkpoint completes (or the crawl ends), so a
+        // long-running crawl without checkpointing would never make any of them visible.
+        if ((_warcContentPathString != null) && (_checkpointDir == null)) {
+            throw new RuntimeException("-warccontentpath requires -checkpointdir");
+        }
+
+        if ((_parsedContentPathString != null) && (_checkpointDir == null)) {
+            throw new RuntimeException("-parsedcontentpath requires -checkpointdir");
+        }
+
+        if ((_singleDomain != null)
+                && ((_allowedDomainsFilename != null) || (_blockedDomainsFilename != null))) {
+            throw new RuntimeException(
+                    "-singledomain can't be used with -alloweddomains or -blockeddomains");
+        }
+
+        if (_seedSplitSize <= 0) {
+            throw new RuntimeException("-seedsplitsize must be > 0");
+        }
+
+        if (_segmentDiskCacheSize <= 0) {
+            throw new RuntimeException("-segmentdiskcachesize must be > 0");
+        }
     }
 
     public UserAgent getUserAgent() {
@@ -164,6 +271,16 @@ public class CrawlToolOptions {
         return _urlsFilename;
     }
 
+    public float getMaxSeedUrlsPerSecond() {
+        validate();
+        return _maxSeedUrlsPerSecond;
+    }
+
+    public long getSeedSplitSize() {
+        validate();
+        return _seedSplitSize;
+    }
+
     public boolean isSingleDomain() {
         validate();
         return (_singleDomain != null);
@@ -174,6 +291,16 @@ public class CrawlToolOptions {
         return _singleDomain;
     }
 
+    public String getAllowedDomainsFilename() {
+        validate();
+        return _allowedDomainsFilename;
+    }
+
+    public String getBlockedDomainsFilename() {
+        validate();
+        return _blockedDomainsFilename;
+    }
+
     public long getForceCrawlDelay() {
         validate();
         return _forceCrawlDelay;
@@ -204,6 +331,31 @@ public class CrawlToolOptions {
         return _cacheDir;
     }
 
+    public long getCommonCrawlSegmentCacheSize() {
+        validate();
+        return _segmentCacheSize;
+    }
+
+    public String getCommonCrawlSegmentCacheDir() {
+        validate();
+        return _segmentCacheDir;
+    }
+
+    public long getCommonCrawlSegmentDiskCacheSize() {
+        validate();
+        return _segmentDiskCacheSize;
+    }
+
+    public String getCommonCrawlMirrorDir() {
+        validate();
+        return _commonCrawlMirrorDir;
+    }
+
+    public long getCommonCrawlFetchBatchWindow() {
+        validate();
+        return _fetchBatchWindow;
+    }
+
     public int getFetchersPerTask() {
         validate();
         return _fetchersPerTask;
@@ -219,11 +371,31 @@ public class CrawlToolOptions {
         return _warcContentPathString;
     }
 
+    public boolean isWARCGzipPerRecord() {
+        validate();
+        return _warcGzipPerRecord;
+    }
+
+    public boolean isWARCRollOnCheckpoint() {
+        validate();
+        return _warcRollOnCheckpoint;
+    }
+
     public String getTextContentPathString() {
         validate();
         return _textContentPathString;
     }
 
+    public String getParsedContentPathString() {
+        validate();
+        return _parsedContentPathString;
+    }
+
+    public CompressionCodecName getParsedContentCodec() {
+        validate();
+        return _parsedContentCodec;
+    }
+
     public String getCheckpointDir() {
         validate();
         return _checkpointDir;
@@ -7,9 +7,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import org.apache.flink.api.common.functions.MapFunction;
-import org.apache.flink.api.java.hadoop.mapreduce.HadoopOutputFormat;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
 import org.apache.flink.api.java.typeutils.ListTypeInfo;
@@ -25,35 +25,41 @@ import org.apache.flink.streaming.api.datastream.SplitStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
 import org.apache.flink.streaming.api.functions.sink.SinkFunction;
-import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
-import org.apache.hadoop.mapreduce.Job;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 
 import com.scaleunlimited.flinkcrawler.config.CrawlTerminator;
 import com.scaleunlimited.flinkcrawler.fetcher.BaseHttpFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.fetcher.SimpleHttpFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.functions.CheckUrlWithRobotsFunction;
+import com.scaleunlimited.flinkcrawler.functions.CleanUrlsFunction;
+import com.scaleunlimited.flinkcrawler.functions.CombineUrlsOperator;
 import com.scaleunlimited.flinkcrawler.functions.DomainScoreKeySelector;
 import com.scaleunlimited.flinkcrawler.functions.FetchUrlsFunction;
+import com.scaleunlimited.flinkcrawler.functions.LengthenUrlBundlesFunction;
 import com.scaleunlimited.flinkcrawler.functions.LengthenUrlsFunction;
 import com.scaleunlimited.flinkcrawler.functions.MovingAverageFunction;
-import com.scaleunlimited.flinkcrawler.functions.NormalizeUrlsFunction;
 import com.scaleunlimited.flinkcrawler.functions.OutlinkToStateUrlFunction;
 import com.scaleunlimited.flinkcrawler.functions.ParseFunction;
 import com.scaleunlimited.flinkcrawler.functions.ParseSiteMapFunction;
 import com.scaleunlimited.flinkcrawler.functions.PldKeySelector;
+import com.scaleunlimited.flinkcrawler.functions.SelectShortenedUrlBundlesFunction;
+import com.scaleunlimited.flinkcrawler.functions.SelectShortenedUrlsFunction;
+import com.scaleunlimited.flinkcrawler.functions.UrlBundleKeySelector;
 import com.scaleunlimited.flinkcrawler.functions.UrlDBFunction;
-import com.scaleunlimited.flinkcrawler.functions.ValidUrlsFilter;
+import com.scaleunlimited.flinkcrawler.parquet.ParsedUrlSinkBuilder;
 import com.scaleunlimited.flinkcrawler.parser.BasePageParser;
 import com.scaleunlimited.flinkcrawler.parser.SimpleLinkExtractor;
 import com.scaleunlimited.flinkcrawler.parser.SimplePageParser;
 import com.scaleunlimited.flinkcrawler.parser.SimpleSiteMapParser;
 import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
 import com.scaleunlimited.flinkcrawler.pojos.DomainScore;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchUrl;
 import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
 import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
 import com.scaleunlimited.flinkcrawler.sources.SeedUrlSource;
 import com.scaleunlimited.flinkcrawler.tools.CrawlTool;
 import com.scaleunlimited.flinkcrawler.urldb.DefaultUrlStateMerger;
@@ -65,7 +71,7 @@ import com.scaleunlimited.flinkcrawler.urls.SimpleUrlNormalizer;
 import com.scaleunlimited.flinkcrawler.urls.SimpleUrlValidator;
 import com.scaleunlimited.flinkcrawler.utils.FetchQueue;
 import com.scaleunlimited.flinkcrawler.warc.CreateWARCWritableFunction;
-import com.scaleunlimited.flinkcrawler.warc.WARCOutputFormat;
+import com.scaleunlimited.flinkcrawler.warc.WARCSinkBuilder;
 import com.scaleunlimited.flinkcrawler.warc.WARCWritable;
 
 import crawlercommons.fetcher.http.UserAgent;
@@ -73,12 +79,11 @@ import crawlercommons.robots.SimpleRobotRulesParser;
 import de.javakaffee.kryoserializers.UnmodifiableCollectionsSerializer;
 
 public class CrawlTopologyBuilder {
-
     private static final UserAgent INVALID_USER_AGENT = new UserAgent(
             "DO NOT USE THIS USER AGENT (i.e., MAKE YOUR OWN)!", "flink-crawler@scaleunlimited.com",
             "https://github.com/ScaleUnlimited/flink-crawler/wiki/Crawler-Policy");
 
-    private static final String TABS_AND_RETURNS_PATTERN = "[\t\r\n]";
+    private static final Pattern TABS_AND_RETURNS_PATTERN = Pattern.compile("[\t\r\n]");
 
     public static final int DEFAULT_PARALLELISM = -1;
     
@@ -103,6 +108,10 @@ public class CrawlTopologyBuilder {
 
     private BaseUrlLengthener _urlLengthener = new SimpleUrlLengthener(INVALID_USER_AGENT, 1);
     private String _warcContentPathString;
+    private boolean _warcGzipPerRecord = false;
+    private boolean _warcRollOnCheckpoint = false;
+    private String _parsedContentPathString;
+    private CompressionCodecName _parsedContentCodec = CompressionCodecName.SNAPPY;
     private String _textContentPathString;
     private BaseUrlNormalizer _urlNormalizer = new SimpleUrlNormalizer();
     private BaseUrlValidator _urlFilter = new SimpleUrlValidator();
@@ -211,6 +220,45 @@ public class CrawlTopologyBuilder {
         return this;
     }
 
+    /**
+     * If true, each WARC record is gzipped separately (see {@link WARCSinkBuilder}).
+     * 
+     * @param warcGzipPerRecord
+     * @return this builder
+     */
+    public CrawlTopologyBuilder setWARCGzipPerRecord(boolean warcGzipPerRecord) {
+        _warcGzipPerRecord = warcGzipPerRecord;
+        return this;
+    }
+
+    /**
+     * If true, the WARC sink starts a new file after every checkpoint, versus only rolling based on
+     * size and time.
+     * 
+     * @param warcRollOnCheckpoint
+     * @return this builder
+     */
+    public CrawlTopologyBuilder setWARCRollOnCheckpoint(boolean warcRollOnCheckpoint) {
+        _warcRollOnCheckpoint = warcRollOnCheckpoint;
+        return this;
+    }
+
+    /**
+     * Save parsed pages as Parquet files in this directory (see {@link ParsedUrlSinkBuilder}).
+     * 
+     * @param pathString
+     * @return this builder
+     */
+    public CrawlTopologyBuilder setParsedContentPath(String pathString) {
+        _parsedContentPathString = pathString;
+        return this;
+    }
+
+    public CrawlTopologyBuilder setParsedContentCodec(CompressionCodecName codec) {
+        _parsedContentCodec = codec;
+        return this;
+    }
+
     public CrawlTopologyBuilder setTextContentPath(String pathString) {
         _textContentPathString = pathString;
         return this;
@@ -268,7 +316,7 @@ public class CrawlTopologyBuilder {
         DataStream<RawUrl> seedUrls = _env.addSource(_urlSource)
                 .name("Seed urls source");
 
-        IterativeStream<CrawlStateUrl> urlDbIteration = cleanUrls(seedUrls)
+        IterativeStream<CrawlStateUrlBundle> urlDbIteration = cleanUrls(seedUrls)
                 .iterate(_iterationTimeout);
 
         // Create an empty domain score stream that we'll close with a stream of 
@@ -279,7 +327,8 @@ public class CrawlTopologyBuilder {
         
         SingleOutputStreamOperator<FetchUrl> postUrlDbUrls = urlDbIteration
                 .connect(domainScoresIter)
-                .keyBy(new PldKeySelector<CrawlStateUrl>(), new DomainScoreKeySelector())
+                // URLs are bundled by PLD, so the key is the same as for a single URL.
+                .keyBy(new UrlBundleKeySelector(), new DomainScoreKeySelector())
                 .process(new UrlDBFunction(_terminator, new DefaultUrlStateMerger(), _fetchQueue))
                 .name("UrlDBFunction");
 
@@ -351,13 +400,13 @@ public class CrawlTopologyBuilder {
 
         // Split off rejected URLs. These will get unioned (merged) with the status of URLs that we
         // attempt to fetch, and then fed back into the crawl DB via the inner iteration.
-        DataStream<CrawlStateUrl> robotBlockedUrls = blockedOrPassedOrSitemapUrls.select("blocked")
-                .map(new MapFunction<Tuple3<CrawlStateUrl, FetchUrl, FetchUrl>, CrawlStateUrl>() {
+        DataStream<CrawlStateUrlBundle> robotBlockedUrls = blockedOrPassedOrSitemapUrls.select("blocked")
+                .map(new MapFunction<Tuple3<CrawlStateUrl, FetchUrl, FetchUrl>, CrawlStateUrlBundle>() {
 
                     @Override
-                    public CrawlStateUrl map(Tuple3<CrawlStateUrl, FetchUrl, FetchUrl> blockedUrl)
+                    public CrawlStateUrlBundle map(Tuple3<CrawlStateUrl, FetchUrl, FetchUrl> blockedUrl)
                             throws Exception {
-                        return blockedUrl.f0;
+                        return new CrawlStateUrlBundle(blockedUrl.f0);
                     }
                 }).name("Select blocked URLs");
 
@@ -391,24 +440,30 @@ public class CrawlTopologyBuilder {
                 .flatMap(new CreateWARCWritableFunction(_userAgentString))
                 .name("Create WARC writable");
         
-        DataStreamSink<Tuple2<NullWritable, WARCWritable>> contentSinkUsingOutputFormat = null;
         if (_warcContentPathString != null) {
-            Job job = Job.getInstance();
-            WARCOutputFormat.setOutputPath(job, new Path(_warcContentPathString));
-            HadoopOutputFormat<NullWritable, WARCWritable> hadoopOutputFormat = new HadoopOutputFormat<NullWritable, WARCWritable>(new WARCOutputFormat(), job);
-            contentSinkUsingOutputFormat = warcStream.writeUsingOutputFormat(hadoopOutputFormat);
+            // WARC files are only committed on checkpoints, so without checkpointing a running
+            // crawl would never make any of them visible.
+            if (!_env.getCheckpointConfig().isCheckpointingEnabled()) {
+                throw new IllegalStateException(String.format(
+                        "Checkpointing must be enabled to write WARC files to '%s'",
+                        _warcContentPathString));
+            }
+
+            new WARCSinkBuilder(_warcContentPathString)
+                    .setCompress(_warcGzipPerRecord)
+                    .setRollOnCheckpoint(_warcRollOnCheckpoint)
+                    .setUserAgentString(_userAgentString)
+                    .addSink(warcStream);
         } else {
             SinkFunction<Tuple2<NullWritable, WARCWritable>> discardingSink = 
                     new DiscardingSink<Tuple2<NullWritable, WARCWritable>>();
-            contentSinkUsingOutputFormat = warcStream.addSink(discardingSink);
+            warcStream.addSink(discardingSink)
+                    .name("Content Sink");
         }
-
-        contentSinkUsingOutputFormat
-                .name("Content Sink");
         
         final int parseParallelism = getRealParallelism() * 4;
         SingleOutputStreamOperator<ParsedUrl> parsedUrls = fetchResultUrls
-                .process(new ParseFunction(_pageParser, _maxOutlinksPerPage))
+                .process(new ParseFunction(_pageParser, _maxOutlinksPerPage, _urlNormalizer))
                 .name("ParseFunction")
                 // Parsing is CPU intensive, so we want to use more slots for it.
                 .setParallelism(parseParallelism);
@@ -422,65 +477,138 @@ public class CrawlTopologyBuilder {
             .setParallelism(1);
         domainScoresIter.closeWith(domainScores);
         
-        DataStream<RawUrl> newRawUrls = parsedUrls.getSideOutput(ParseFunction.OUTLINK_OUTPUT_TAG)
-                .map(new OutlinkToStateUrlFunction())
-                .name("OutlinkToStateUrlFunction")
-                .setParallelism(parseParallelism)
-                .union(newSiteMapExtractedUrls);
+        // Outlinks come out of the parse function bundled by PLD, so that each page has only a few
+        // records going through the (async) lengthener, the cleaning functions, and the keyBy to
+        // the UrlDBFunction, which is where they finally get unbundled. Only bundles of URLs that
+        // might need lengthening are sent to the lengthener.
+        SingleOutputStreamOperator<RawUrlBundle> selectedOutlinks = parsedUrls
+                .getSideOutput(ParseFunction.OUTLINK_BUNDLE_OUTPUT_TAG)
+                .process(new SelectShortenedUrlBundlesFunction(_urlLengthener))
+                .name("SelectShortenedUrlBundlesFunction")
+                // Match the parse function, so it's chained to it versus getting rebalanced.
+                .setParallelism(parseParallelism);
 
-        DataStream<CrawlStateUrl> newUrls = cleanUrls(newRawUrls);
+        DataStream<RawUrlBundle> lengthenedOutlinks = AsyncDataStream
+                .unorderedWait(selectedOutlinks.getSideOutput(
+                        SelectShortenedUrlBundlesFunction.SHORTENED_URL_BUNDLE_OUTPUT_TAG),
+                        new LengthenUrlBundlesFunction(_urlLengthener),
+                        _urlLengthener.getTimeoutInSeconds(), TimeUnit.SECONDS)
+                .name("LengthenUrlBundlesFunction")
+                .union(selectedOutlinks);
+
+        DataStream<CrawlStateUrlBundle> cleanedNewUrls = normalizeAndValidateUrls(
+                bundleUrls(lengthenUrls(newSiteMapExtractedUrls)).union(lengthenedOutlinks));
+
+        // Popular URLs get extracted from lots of pages, so combine copies locally before they're
+        // sent on to the UrlDBFunction.
+        DataStream<CrawlStateUrlBundle> newUrls = cleanedNewUrls
+                .transform("CombineUrlsOperator", cleanedNewUrls.getType(),
+                        new CombineUrlsOperator(new DefaultUrlStateMerger()));
 
         // We need to merge robotBlockedUrls with the "queued status" stream from putting URLs onto the
         // fetch queue and the "status" stream from the fetch attempts and all of the new URLs from outlinks and sitemaps.
-        DataStream<CrawlStateUrl> queuedStatusUrls = postUrlDbUrls.getSideOutput(UrlDBFunction.STATUS_OUTPUT_TAG);
-        DataStream<CrawlStateUrl> fetchStatusUrls = parsedUrls.getSideOutput(ParseFunction.STATUS_OUTPUT_TAG);
+        DataStream<CrawlStateUrlBundle> queuedStatusUrls = postUrlDbUrls
+                .getSideOutput(UrlDBFunction.STATUS_OUTPUT_TAG)
+                .map(new BundleUrlFunction())
+                .name("Bundle queued status URLs");
+        DataStream<CrawlStateUrlBundle> fetchStatusUrls = parsedUrls
+                .getSideOutput(ParseFunction.STATUS_OUTPUT_TAG)
+                .map(new BundleUrlFunction())
+                .name("Bundle fetch status URLs")
+                .setParallelism(parseParallelism);
         urlDbIteration.closeWith(robotBlockedUrls.union(queuedStatusUrls, fetchStatusUrls, newUrls));
 
-        // Save off parsed page content text. But first replace all tabs and returns with a space, since we 
-        // are outputting one record per line.
-        DataStream<String> contentText = parsedUrls
-                .map(new MapFunction<ParsedUrl, String>() {
-        
-                    @Override
-                    public String map(ParsedUrl parsedUrl) throws Exception {
-                        String contentField = 
-                            parsedUrl.getParsedText().replaceAll(TABS_AND_RETURNS_PATTERN, " ");
-                        return parsedUrl.getUrl() + "\t" + contentField;
-                    }
-                    
-                })
-                .name("Select fetched content text")
-                .setParallelism(parseParallelism);
+        if (_parsedContentPathString != null) {
+            // Parquet files are only finished on checkpoints, so without checkpointing a
+            // running crawl would keep writing to one file per subtask until it ended.
+            if (!_env.getCheckpointConfig().isCheckpointingEnabled()) {
+                throw new IllegalStateException(String.format(
+                        "Checkpointing must be enabled to write parsed content to '%s'",
+                        _parsedContentPathString));
+            }
+
+            new ParsedUrlSinkBuilder(_parsedContentPathString)
+                    .setCompressionCodec(_parsedContentCodec)
+                    .addSink(parsedUrls)
+                    .setParallelism(parseParallelism);
+        }
 
-        DataStreamSink<String> contentTextSink;
-        if (_textContentPathString != null) {
-            contentTextSink = contentText.writeAsText(_textContentPathString, WriteMode.OVERWRITE);
-        } else {
-            contentTextSink = contentText.print();
+        // Save off parsed page content text (for testing). But first replace all tabs and returns with a
+        // space, since we are outputting one record per line.
+        if ((_textContentPathString != null) || (_parsedContentPathString == null)) {
+            DataStream<String> contentText = parsedUrls
+                    .map(new MapFunction<ParsedUrl, String>() {
+
+                        @Override
+                        public String map(ParsedUrl parsedUrl) throws Exception {
+                            String contentField = TABS_AND_RETURNS_PATTERN
+                                    .matcher(parsedUrl.getParsedText()).replaceAll(" ");
+                            return parsedUrl.getUrl() + "\t" + contentField;
+                        }
+
+                    })
+                    .name("Select fetched content text")
+                    .setParallelism(parseParallelism);
+
+            DataStreamSink<String> contentTextSink;
+            if (_textContentPathString != null) {
+                contentTextSink = contentText.writeAsText(_textContentPathString, WriteMode.OVERWRITE);
+            } else {
+                contentTextSink = contentText.print();
+            }
+
+            contentTextSink.name("ContentTextSink")
+                .setParallelism(parseParallelism);
         }
-        
-        contentTextSink.name("ContentTextSink")
-            .setParallelism(parseParallelism);
 
         return new CrawlTopology(_env, _jobName);
     }
 
     /**
      * Create a snippet of the topology that takes a RawUrl DataStream and applies an async lengthener, then a
-     * normalizer and a validator. What we get out is a CrawlStateUrl DataStream.
+     * normalizer and a validator. What we get out is a DataStream of CrawlStateUrl bundles (one PLD per bundle).
      * 
      * @param rawUrls
      * @return
      */
-    private DataStream<CrawlStateUrl> cleanUrls(DataStream<RawUrl> rawUrls) {
+    private DataStream<CrawlStateUrlBundle> cleanUrls(DataStream<RawUrl> rawUrls) {
+        return normalizeAndValidateUrls(bundleUrls(lengthenUrls(rawUrls)));
+    }
+
+    /**
+     * Wrap each URL in its own bundle, for URLs (seeds, sitemap URLs) that don't come to us
+     * bundled by PLD. The CleanUrlsFunction sets the bundle's PLD.
+     * 
+     * @param rawUrls
+     * @return
+     */
+    private DataStream<RawUrlBundle> bundleUrls(DataStream<RawUrl> rawUrls) {
+        return rawUrls
+                .map(new BundleRawUrlFunction())
+                .name("BundleRawUrlFunction");
+    }
+
+    private DataStream<RawUrl> lengthenUrls(DataStream<RawUrl> rawUrls) {
+        // Most URLs can't be lengthened, so only send the ones that might be (e.g. from link
+        // shorteners) through the async function.
+        SingleOutputStreamOperator<RawUrl> selectedUrls = rawUrls
+                .process(new SelectShortenedUrlsFunction(_urlLengthener))
+                .name("SelectShortenedUrlsFunction");
+
         return AsyncDataStream
-                .unorderedWait(rawUrls, new LengthenUrlsFunction(_urlLengthener),
+                .unorderedWait(selectedUrls.getSideOutput(
+                        SelectShortenedUrlsFunction.SHORTENED_URL_OUTPUT_TAG),
+                        new LengthenUrlsFunction(_urlLengthener),
                         _urlLengthener.getTimeoutInSeconds(), TimeUnit.SECONDS)
                 .name("LengthenUrlsFunction")
-                .flatMap(new NormalizeUrlsFunction(_urlNormalizer))
-                .name("NormalizeUrlsFunction")
-                .flatMap(new ValidUrlsFilter(_urlFilter))
-                .name("ValidUrlsFilter");
+                .union(selectedUrls);
+    }
+
+    private DataStream<CrawlStateUrlBundle> normalizeAndValidateUrls(
+            DataStream<RawUrlBundle> lengthenedUrls) {
+        return lengthenedUrls
+                .flatMap(new CleanUrlsFunction(_urlNormalizer, _urlFilter))
+                .name("CleanUrlsFunction");
     }
 
     private static RawUrl makeDefaultSeedUrl() {
@@ -491,6 +619,26 @@ public class CrawlTopologyBuilder {
         }
     }
 
+    @SuppressWarnings("serial")
+    private static class BundleRawUrlFunction implements MapFunction<RawUrl, RawUrlBundle> {
+
+        @Override
+        public RawUrlBundle map(RawUrl url) throws Exception {
+            return new RawUrlBundle(null, new RawUrl[] {
+                    url
+            });
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class BundleUrlFunction implements MapFunction<CrawlStateUrl, CrawlStateUrlBundle> {
+
+        @Override
+        public CrawlStateUrlBundle map(CrawlStateUrl url) throws Exception {
+            return new CrawlStateUrlBundle(url);
+        }
+    }
+
     @SuppressWarnings("serial")
     private static class NullTerminator extends CrawlTerminator {
 
@@ -11,6 +11,18 @@ public abstract class BaseUrlLengthener implements Serializable {
 
     public abstract RawUrl lengthen(RawUrl url);
 
+    /**
+     * Quick (synchronous) check for whether <url> might be changed by {@link #lengthen(RawUrl)}. This gets called
+     * without {@link #open()} having been called, so that URLs which can't be lengthened don't have to go through the
+     * async lengthening function.
+     * 
+     * @param url
+     * @return false if lengthen() would just return <url>.
+     */
+    public boolean needsLengthening(RawUrl url) {
+        return true;
+    }
+
     public abstract int getTimeoutInSeconds();
 
 }
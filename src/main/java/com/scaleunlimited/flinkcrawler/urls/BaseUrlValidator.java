@@ -18,6 +18,8 @@ package com.scaleunlimited.flinkcrawler.urls;
 
 import java.io.Serializable;
 
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
 /**
  * Validate urls
  * 
@@ -31,4 +33,12 @@ public abstract class BaseUrlValidator implements Serializable {
      */
     public abstract boolean isValid(String url);
 
+    /**
+     * Return true if the (already parsed) url is valid. Subclasses can override this to use the
+     * parsed fields, versus parsing the url again.
+     */
+    public boolean isValid(ValidUrl url) {
+        return isValid(url.getUrl());
+    }
+
 }
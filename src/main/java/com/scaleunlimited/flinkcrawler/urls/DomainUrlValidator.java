@@ -0,0 +1,87 @@
+package com.scaleunlimited.flinkcrawler.urls;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+import com.scaleunlimited.flinkcrawler.utils.SuffixTrie;
+
+import crawlercommons.domains.PaidLevelDomain;
+
+/**
+ * Validator that only accepts URLs whose hostname is within one of a set of allowed domains (if any are given), and not
+ * within any of a set of blocked domains. A hostname is "within" a domain if it's the same as the domain or one of its
+ * sub-domains, and the domain is at least the paid-level domain of the hostname.
+ *
+ * The domains are kept in tries of reversed names, so checking a URL takes time proportional to the length of its
+ * hostname, even with many thousands of domains (e.g. an allow-list for a vertical crawl).
+ */
+@SuppressWarnings("serial")
+public class DomainUrlValidator extends SimpleUrlValidator {
+
+    private SuffixTrie _allowedDomains;
+    private SuffixTrie _blockedDomains;
+
+    /**
+     * @param allowedDomains
+     *            - domains to accept, or null to accept all domains not in <blockedDomains>
+     * @param blockedDomains
+     *            - domains to reject, or null
+     * @param invalidSuffixes
+     *            - optional list of URL suffixes (e.g. file extensions) to reject
+     */
+    public DomainUrlValidator(Collection<String> allowedDomains,
+            Collection<String> blockedDomains, String... invalidSuffixes) {
+        super(invalidSuffixes);
+
+        _allowedDomains = makeDomainTrie(allowedDomains);
+        _blockedDomains = makeDomainTrie(blockedDomains);
+    }
+
+    @Override
+    public boolean isValid(String urlString) {
+        if (!(super.isValid(urlString))) {
+            return false;
+        } else if (!hasDomains()) {
+            return true;
+        }
+
+        try {
+            return isHostnameValid(new URL(urlString).getHost());
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isValid(ValidUrl url) {
+        return super.isValid(url) && isHostnameValid(url.getHostname());
+    }
+
+    public boolean isHostnameValid(String hostname) {
+        // Don't pay for the PLD lookup if there's nothing to check.
+        if (!hasDomains()) {
+            return true;
+        }
+
+        int pldLength = PaidLevelDomain.getPLD(hostname).length();
+        if ((_allowedDomains != null) && !_allowedDomains.hasDomainSuffix(hostname, pldLength)) {
+            return false;
+        }
+
+        return (_blockedDomains == null) || !_blockedDomains.hasDomainSuffix(hostname, pldLength);
+    }
+
+    private boolean hasDomains() {
+        return (_allowedDomains != null) || (_blockedDomains != null);
+    }
+
+    private static SuffixTrie makeDomainTrie(Collection<String> domains) {
+        if (domains == null) {
+            return null;
+        }
+
+        return new SuffixTrie(true, domains);
+    }
+}
@@ -20,6 +20,11 @@ public class NoopUrlLengthener extends BaseUrlLengthener {
         return url;
     }
 
+    @Override
+    public boolean needsLengthening(RawUrl url) {
+        return false;
+    }
+
     @Override
     public int getTimeoutInSeconds() {
         return 10;
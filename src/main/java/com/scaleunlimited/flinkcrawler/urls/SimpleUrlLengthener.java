@@ -4,9 +4,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -19,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import com.scaleunlimited.flinkcrawler.fetcher.BaseHttpFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.fetcher.FetchUtils;
 import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.utils.ConcurrentLruCache;
 
 import crawlercommons.fetcher.BaseFetchException;
 import crawlercommons.fetcher.FetchedResult;
@@ -32,13 +31,12 @@ public class SimpleUrlLengthener extends BaseUrlLengthener {
 
     private static final Pattern HOSTNAME_PATTERN = Pattern.compile("^https?://([^/:?]{3,})");
     private static final int LRU_CACHE_CAPACITY = 10_000;
-    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
     private BaseHttpFetcherBuilder _fetcherBuilder;
 
     private transient BaseHttpFetcher _fetcher;
-    private transient Set<String> _urlShorteners;
-    private transient Map<RawUrl, RawUrl> _lengthenedUrlMap;
+    private transient volatile Set<String> _urlShorteners;
+    private transient ConcurrentLruCache<String, String> _lengthenedUrlCache;
 
     public SimpleUrlLengthener(UserAgent userAgent, int maxConnectionsPerHost) {
         this(FetchUtils.makeRedirectFetcherBuilder(maxConnectionsPerHost, userAgent)
@@ -50,48 +48,50 @@ public class SimpleUrlLengthener extends BaseUrlLengthener {
         _fetcherBuilder = fetcherBuilder;
     }
     
-    // Default visibility to support testing
-    static <K, V> Map<K, V> makeLruCache(int maxSize) {
-        return new LinkedHashMap<K, V>( Math.round(maxSize/DEFAULT_LOAD_FACTOR), 
-                                        DEFAULT_LOAD_FACTOR, 
-                                        true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-                return size() > maxSize;
-            }
-        };
-    }
-
     @Override
     public void open() throws Exception {
         _fetcher = _fetcherBuilder.build();
         _urlShorteners = loadUrlShorteners();
-        _lengthenedUrlMap = makeLruCache(LRU_CACHE_CAPACITY);
+        _lengthenedUrlCache = new ConcurrentLruCache<>(LRU_CACHE_CAPACITY);
     }
 
     @Override
-    public RawUrl lengthen(RawUrl url) {
-        
-        if (_lengthenedUrlMap.containsKey(url)) {
-            return _lengthenedUrlMap.get(url);
-        }
+    public boolean needsLengthening(RawUrl url) {
+        // We can get called before open(), e.g. when filtering URLs before the async lengthening function.
+        Set<String> urlShorteners = _urlShorteners;
+        if (urlShorteners == null) {
+            try {
+                urlShorteners = loadUrlShorteners();
+            } catch (IOException e) {
+                throw new RuntimeException("Can't load list of URL shorteners", e);
+            }
 
-        // If the domain is a link shortener, lengthen it.
+            _urlShorteners = urlShorteners;
+        }
 
-        String urlString = url.getUrl();
-        
-        Matcher m = HOSTNAME_PATTERN.matcher(urlString);
+        // Only a URL from a link shortener domain needs to be lengthened.
+        Matcher m = HOSTNAME_PATTERN.matcher(url.getUrl());
         if (!m.find()) {
-            return url;
+            return false;
         }
 
-        String hostname = m.group(1);
-        if (!_urlShorteners.contains(hostname)) {
-            // FUTURE - see if this looks like a shortened URL
+        // FUTURE - see if this looks like a shortened URL
+        return urlShorteners.contains(m.group(1));
+    }
+
+    @Override
+    public RawUrl lengthen(RawUrl url) {
+        if (!needsLengthening(url)) {
             return url;
         }
 
-        String redirectedUrl = urlString;
+        String urlString = url.getUrl();
+        String redirectedUrl = _lengthenedUrlCache.get(urlString);
+        if (redirectedUrl != null) {
+            return redirectedUrl.equals(urlString) ? url : new RawUrl(redirectedUrl, url.getScore());
+        }
+
+        redirectedUrl = urlString;
         LOGGER.trace("Checking redirection of '{}'", urlString);
 
         try {
@@ -118,9 +118,8 @@ public class SimpleUrlLengthener extends BaseUrlLengthener {
                     e);
         }
 
-        RawUrl result = new RawUrl(redirectedUrl, url.getScore());
-        _lengthenedUrlMap.put(url, result);
-        return result;
+        _lengthenedUrlCache.put(urlString, redirectedUrl);
+        return new RawUrl(redirectedUrl, url.getScore());
     }
 
     private String extractRedirectUrl(FetchedResult fr, String originalUrlAsString) {
@@ -16,18 +16,23 @@
  */
 package com.scaleunlimited.flinkcrawler.urls;
 
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.scaleunlimited.flinkcrawler.utils.StringUtils;
-
+/**
+ * Normalizer for (mostly) http/https URLs.
+ * 
+ * This runs on every outlink, so it's written to make a single pass over the URL for the common case. The regular
+ * expressions below are only used when a (cheap) check says that they might match, and all of the re-encoding happens
+ * in one output buffer.
+ */
 @SuppressWarnings("serial")
 public class SimpleUrlNormalizer extends BaseUrlNormalizer {
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleUrlNormalizer.class);
@@ -49,6 +54,13 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
 
     private static final String HEX_CODES = "0123456789abcdefABCDEF";
 
+    private static final char[] LOWER_HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // Lookup tables (for chars < 0x80) built from the above.
+    private static final boolean[] RESERVED_PATH_TABLE = makeCharTable(RESERVED_PATH_CHARS);
+    private static final boolean[] RESERVED_QUERY_TABLE = makeCharTable(RESERVED_QUERY_CHARS);
+    private static final boolean[] LITERAL_TABLE = makeCharTable(UNRESERVED_CHARS + RESERVED_CHARS);
+
     // Match "/xx/../" in the url, where xx consists of chars, different then "/"
     // (slash) and needs to have at least one char different from "."
     // Also match a leading "/../" in the URL. Both can be replaced by just "/"
@@ -60,20 +72,39 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
             "/((?i)index|default)\\.((?i)js[pf]{1}?[afx]?|cgi|cfm|asp[x]?|[psx]?htm[l]?|php[3456]?)(\\?|&|#|$)");
 
     // Remove things that look like the (invalid) jsession ids prefixing or suffixing the query portion of a URL.
+    private static final String JSESSION_ID_PREFIX = ";jsessionid=";
     private static final Pattern JSESSION_ID_PATTERN = Pattern
             .compile("(?:;jsessionid=.*?)(\\?|&|#|$)");
 
     // Remove things that look like session ids from the query portion of a URL.
-    private static final Pattern SESSION_ID_PATTERN = Pattern.compile(
-            "(\\?|&)(?:(?i)sid|phpsessid|sessionid|session_id|bv_sessionid|jsessionid|-session|session|session_key)=.*?(&|#|$)");
+    private static final String[] SESSION_ID_PARAMETERS = {
+            "sid", "phpsessid", "sessionid", "session_id", "bv_sessionid", "jsessionid", "-session",
+            "session", "session_key"
+    };
+    private static final Pattern SESSION_ID_PATTERN = makeParameterPattern(SESSION_ID_PARAMETERS);
 
     // Remove other common unwanted parameters from the query portion of a URL.
-    private static final Pattern OTHER_IGNORED_QUERY_PARAMETERS_PATTERN = Pattern.compile(
-            "(\\?|&)(?:(?i)width|format|country|height|src|user|username|uname|return_url|returnurl|sort|sort_by|sortby|sort_direction|sort_key|order_by|orderby|sortorder|collate)=.*?(&|#|$)");
+    private static final String[] OTHER_IGNORED_QUERY_PARAMETERS = {
+            "width", "format", "country", "height", "src", "user", "username", "uname", "return_url",
+            "returnurl", "sort", "sort_by", "sortby", "sort_direction", "sort_key", "order_by", "orderby",
+            "sortorder", "collate"
+    };
+    private static final Pattern OTHER_IGNORED_QUERY_PARAMETERS_PATTERN = makeParameterPattern(
+            OTHER_IGNORED_QUERY_PARAMETERS);
 
     // Remove even more common unwanted parameters from the query portion of a URL.
-    private static final Pattern AGGRESSIVE_IGNORED_QUERY_PARAMETERS_PATTERN = Pattern
-            .compile("(\\?|&)(?:(?i)user|usr|user_id|userid|memberid)=.*?(&|#|$)");
+    private static final String[] AGGRESSIVE_IGNORED_QUERY_PARAMETERS = {
+            "user", "usr", "user_id", "userid", "memberid"
+    };
+    private static final Pattern AGGRESSIVE_IGNORED_QUERY_PARAMETERS_PATTERN = makeParameterPattern(
+            AGGRESSIVE_IGNORED_QUERY_PARAMETERS);
+
+    // Flags for which set(s) of ignored parameters a name is in.
+    private static final int SESSION_ID_PARAMETER = 0x01;
+    private static final int OTHER_IGNORED_PARAMETER = 0x02;
+    private static final int AGGRESSIVE_IGNORED_PARAMETER = 0x04;
+
+    private static final IgnoredParameters IGNORED_PARAMETERS = new IgnoredParameters();
 
     private boolean _treatRefAsQuery;
     private boolean _isAggressive;
@@ -91,80 +122,10 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
         _isAggressive = isAggressive;
     }
 
-    private String encodeCodePoint(int codepoint) {
-        try {
-            int[] codepoints = {
-                    codepoint
-            };
-            byte[] bytes = new String(codepoints, 0, 1).getBytes("UTF-8");
-
-            StringBuilder result = new StringBuilder();
-            for (byte value : bytes) {
-                result.append(String.format("%%%02x", value));
-            }
-
-            return result.toString();
-        } catch (UnsupportedEncodingException e) {
-            LOGGER.error("Unexpected exception during URL encoding: " + e);
-            return "";
-        }
-    }
-
-    private String encodeUrlComponent(String component, String specialChars) {
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < component.length();) {
-            int codePoint = component.codePointAt(i);
-            if (codePoint == 0x0020) {
-                result.append('+');
-            } else if (codePoint >= 0x007F) {
-                result.append(encodeCodePoint(codePoint));
-            } else if ((codePoint < 0x0020) || (specialChars.indexOf((char) codePoint) != -1)) {
-                // It's either a control char or a "special" char, which is a reserved char
-                // that has special meaning for this component of the URL. In either case we
-                // have to encode it.
-                result.append(String.format("%%%02x", codePoint));
-            } else if ((UNRESERVED_CHARS.indexOf((char) codePoint) == -1)
-                    && (RESERVED_CHARS.indexOf((char) codePoint) == -1)) {
-                // It's not an unreserved or a reserved char, so we have to encode it.
-                result.append(String.format("%%%02x", codePoint));
-            } else {
-                result.append((char) codePoint);
-            }
-
-            i += Character.charCount(codePoint);
-        }
-
-        return result.toString();
-    }
-
     public String decodeUrl(String url) {
-        // FUTURE - handle unsupported %uHHHH sequences for Unicode code points.
-        // FUTURE - detect & handle incorrectly encoded URLs
-
-        // First, try to catch unescaped '%' characters.
-        int offset = 0;
-        while ((offset = url.indexOf('%', offset)) != -1) {
-            offset += 1;
-            boolean needsEscaping = false;
-            if (offset > (url.length() - 2)) {
-                needsEscaping = true;
-            } else if ((HEX_CODES.indexOf(url.charAt(offset)) == -1)
-                    || (HEX_CODES.indexOf(url.charAt(offset + 1)) == -1)) {
-                needsEscaping = true;
-            }
-
-            if (needsEscaping) {
-                url = url.substring(0, offset) + "25" + url.substring(offset);
-                offset += 1;
-            }
-        }
-
-        try {
-            return URLDecoder.decode(url, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            LOGGER.error("Unexpected exception during URL decoding: " + e);
-            return url;
-        }
+        StringBuilder result = new StringBuilder(url.length());
+        decodeUrl(url, 0, url.length(), result);
+        return result.toString();
     }
 
     public String normalizeHostname(String hostname) {
@@ -186,40 +147,9 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
     // Now we get to re-encode the path and query portions of the URL, but we have
     // to split up the path as otherwise '/' => %2F.
     public String normalizePath(String path) {
-        // First, handle relative paths
-        Matcher matcher = RELATIVE_PATH_PATTERN.matcher(path);
-        while (matcher.find()) {
-            path = path.substring(0, matcher.start()) + "/" + path.substring(matcher.end());
-            matcher = RELATIVE_PATH_PATTERN.matcher(path);
-        }
-
-        // Next, get rid of any default page.
-        matcher = DEFAULT_PAGE_PATTERN.matcher(path);
-        if (matcher.find()) {
-            path = path.substring(0, matcher.start()) + "/" + matcher.group(3)
-                    + path.substring(matcher.end());
-        }
-
-        String[] pathParts = path.split("/");
-
-        StringBuilder newPath = new StringBuilder();
-        for (String pathPart : pathParts) {
-            if (pathPart.length() > 0) {
-                newPath.append('/');
-                newPath.append(encodeUrlComponent(decodeUrl(pathPart), RESERVED_PATH_CHARS));
-            }
-        }
-
-        if (newPath.length() == 0) {
-            return "/";
-        }
-
-        // Preserve state of final / in path
-        if (path.endsWith("/") && (newPath.charAt(newPath.length() - 1) != '/')) {
-            newPath.append('/');
-        }
-
-        return newPath.toString();
+        StringBuilder result = new StringBuilder(path.length() + 1);
+        normalizePath(path, result, new StringBuilder());
+        return result.toString();
     }
 
     // For the query portion, handle decoding and then re-encoding the portions
@@ -229,38 +159,9 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
             return "";
         }
 
-        StringBuilder newQuery = new StringBuilder();
-        String[] queryParts = query.split("&");
-        for (String queryPart : queryParts) {
-            if (queryPart.length() == 0) {
-                // Strip out empty query parts, e.g. q=1&&z=2
-                continue;
-            }
-
-            String[] keyValues = StringUtils.splitOnChar(queryPart, '=');
-            if (keyValues.length == 1) {
-                newQuery.append(encodeUrlComponent(decodeUrl(keyValues[0]), RESERVED_QUERY_CHARS));
-                if (queryPart.endsWith("=")) {
-                    newQuery.append("=");
-                }
-            } else {
-                for (String kvPart : keyValues) {
-                    newQuery.append(encodeUrlComponent(decodeUrl(kvPart), RESERVED_QUERY_CHARS));
-                    newQuery.append('=');
-                }
-
-                newQuery.setLength(newQuery.length() - 1);
-            }
-
-            newQuery.append('&');
-        }
-
-        // Remove last '&'
-        if ((newQuery.length() > 0) && (newQuery.charAt(newQuery.length() - 1) == '&')) {
-            newQuery.setLength(newQuery.length() - 1);
-        }
-
-        return newQuery.toString();
+        StringBuilder result = new StringBuilder(query.length());
+        normalizeQuery(query, result, new StringBuilder());
+        return result.toString();
     }
 
     public String normalize(String url) {
@@ -275,30 +176,27 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
         // Danger, hack! Some sites have session ids that look like http://domain.com/page.html;jsessionid=xxx,
         // or even http://domain.com/page.html;jsessionid=xxx&q=z. So we always want to try to get rid of
         // session ids first, before doing any other processing.
-        Matcher matcher = JSESSION_ID_PATTERN.matcher(result);
-        if (matcher.find()) {
-            result = result.substring(0, matcher.start()) + matcher.group(1)
-                    + result.substring(matcher.end());
+        if (result.indexOf(JSESSION_ID_PREFIX) != -1) {
+            Matcher matcher = JSESSION_ID_PATTERN.matcher(result);
+            if (matcher.find()) {
+                result = result.substring(0, matcher.start()) + matcher.group(1)
+                        + result.substring(matcher.end());
+            }
         }
 
-        matcher = SESSION_ID_PATTERN.matcher(result);
-        if (matcher.find()) {
-            result = result.substring(0, matcher.start()) + matcher.group(1) + matcher.group(2)
-                    + result.substring(matcher.end());
+        // Only run the (slow) parameter-removal patterns if the URL has a parameter
+        // name that one of them might match.
+        int ignoredParameters = IGNORED_PARAMETERS.find(result);
+        if ((ignoredParameters & SESSION_ID_PARAMETER) != 0) {
+            result = removeParameter(SESSION_ID_PATTERN, result);
         }
 
-        matcher = OTHER_IGNORED_QUERY_PARAMETERS_PATTERN.matcher(result);
-        if (matcher.find()) {
-            result = result.substring(0, matcher.start()) + matcher.group(1) + matcher.group(2)
-                    + result.substring(matcher.end());
+        if ((ignoredParameters & OTHER_IGNORED_PARAMETER) != 0) {
+            result = removeParameter(OTHER_IGNORED_QUERY_PARAMETERS_PATTERN, result);
         }
 
-        if (_isAggressive) {
-            matcher = AGGRESSIVE_IGNORED_QUERY_PARAMETERS_PATTERN.matcher(result);
-            if (matcher.find()) {
-                result = result.substring(0, matcher.start()) + matcher.group(1) + matcher.group(2)
-                        + result.substring(matcher.end());
-            }
+        if (_isAggressive && ((ignoredParameters & AGGRESSIVE_IGNORED_PARAMETER) != 0)) {
+            result = removeParameter(AGGRESSIVE_IGNORED_QUERY_PARAMETERS_PATTERN, result);
         }
 
         URL testUrl;
@@ -306,7 +204,6 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
         try {
             String decodedUrl = result.replace("+", "%20");
             testUrl = new URL(decodedUrl);
-            url = testUrl.toExternalForm();
         } catch (MalformedURLException e) {
             // Not a valid URL we know about, so in this case we're just going to
             // return it as-is, other than the stripping we did.
@@ -327,7 +224,22 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
             port = -1;
         }
 
-        String path = normalizePath(testUrl.getPath());
+        StringBuilder normalized = new StringBuilder(result.length() + 16);
+        StringBuilder scratch = new StringBuilder();
+
+        normalized.append(protocol);
+        normalized.append(':');
+        if (!hostname.isEmpty() || (port != -1)) {
+            normalized.append("//");
+            normalized.append(hostname);
+            if (port != -1) {
+                normalized.append(':');
+                normalized.append(port);
+            }
+        }
+
+        int fileOffset = normalized.length();
+        normalizePath(testUrl.getPath(), normalized, scratch);
 
         // Danger, hack! Some sites (like StumbleUpon) use anchor text as query text, so they
         // have a URL that looks like http://www.stumbleupon.com/toolbar/#url=...
@@ -340,28 +252,429 @@ public class SimpleUrlNormalizer extends BaseUrlNormalizer {
         String query = testUrl.getQuery();
         String anchor = testUrl.getRef();
 
-        int pos = url.indexOf("#" + anchor);
-        if (_treatRefAsQuery && (anchor != null) && (query == null) && (pos != -1)
-                && (url.charAt(pos - 1) == '/')) {
-            anchor = "#" + normalizeQuery(anchor);
-            query = "";
-        } else {
-            anchor = "";
-            query = normalizeQuery(query);
-
-            if (query.length() > 0) {
-                query = "?" + query;
+        if (_treatRefAsQuery && (anchor != null) && (query == null)
+                && isRefAfterSlash(testUrl.toExternalForm(), anchor)) {
+            normalized.append('#');
+            normalizeQuery(anchor, normalized, scratch);
+        } else if (query != null) {
+            int queryOffset = normalized.length();
+            normalized.append('?');
+            normalizeQuery(query, normalized, scratch);
+
+            if (normalized.length() == queryOffset + 1) {
+                normalized.setLength(queryOffset);
             }
         }
 
+        if (isSimpleHostname(hostname)) {
+            return normalized.toString();
+        }
+
+        // Let java.net.URL decide whether an unusual hostname is valid, and how it
+        // should be formatted.
         try {
-            testUrl = new URL(protocol, hostname, port, path + query + anchor);
+            return new URL(protocol, hostname, port, normalized.substring(fileOffset))
+                    .toExternalForm();
         } catch (MalformedURLException e) {
             LOGGER.error("Unexpected exception during normalization: " + e);
             return result;
         }
+    }
 
-        return testUrl.toExternalForm();
+    private static boolean isRefAfterSlash(String url, String anchor) {
+        int pos = url.indexOf("#" + anchor);
+        return (pos != -1) && (url.charAt(pos - 1) == '/');
     }
 
+    /**
+     * @param hostname
+     * @return true if we know that java.net.URL would use <hostname> as-is.
+     */
+    private static boolean isSimpleHostname(String hostname) {
+        for (int i = 0; i < hostname.length(); i++) {
+            char c = hostname.charAt(i);
+            if (!(((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9')) || (c == '.')
+                    || (c == '-') || (c == '_'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String removeParameter(Pattern pattern, String url) {
+        Matcher matcher = pattern.matcher(url);
+        if (matcher.find()) {
+            return url.substring(0, matcher.start()) + matcher.group(1) + matcher.group(2)
+                    + url.substring(matcher.end());
+        } else {
+            return url;
+        }
+    }
+
+    private static void normalizePath(String path, StringBuilder out, StringBuilder scratch) {
+        // First, handle relative paths
+        if (path.indexOf("/../") != -1) {
+            Matcher matcher = RELATIVE_PATH_PATTERN.matcher(path);
+            while (matcher.find()) {
+                path = path.substring(0, matcher.start()) + "/" + path.substring(matcher.end());
+                matcher = RELATIVE_PATH_PATTERN.matcher(path);
+            }
+        }
+
+        // Next, get rid of any default page.
+        if (hasDefaultPageName(path)) {
+            Matcher matcher = DEFAULT_PAGE_PATTERN.matcher(path);
+            if (matcher.find()) {
+                path = path.substring(0, matcher.start()) + "/" + matcher.group(3)
+                        + path.substring(matcher.end());
+            }
+        }
+
+        int pathOffset = out.length();
+        int len = path.length();
+        int start = 0;
+        while (start < len) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = len;
+            }
+
+            if (end > start) {
+                out.append('/');
+                decodeAndEncode(path, start, end, RESERVED_PATH_TABLE, out, scratch);
+            }
+
+            start = end + 1;
+        }
+
+        if (out.length() == pathOffset) {
+            out.append('/');
+        } else if (path.endsWith("/")) {
+            // Preserve state of final / in path
+            out.append('/');
+        }
+    }
+
+    private static boolean hasDefaultPageName(String path) {
+        int offset = 0;
+        while ((offset = path.indexOf('/', offset)) != -1) {
+            offset += 1;
+            if (path.regionMatches(true, offset, "index.", 0, 6)
+                    || path.regionMatches(true, offset, "default.", 0, 8)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void normalizeQuery(String query, StringBuilder out, StringBuilder scratch) {
+        int queryOffset = out.length();
+        int len = query.length();
+        int start = 0;
+        while (start < len) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = len;
+            }
+
+            // Strip out empty query parts, e.g. q=1&&z=2
+            if (end > start) {
+                if (out.length() > queryOffset) {
+                    out.append('&');
+                }
+
+                int kvStart = start;
+                while (true) {
+                    int kvEnd = query.indexOf('=', kvStart);
+                    if ((kvEnd == -1) || (kvEnd > end)) {
+                        kvEnd = end;
+                    }
+
+                    decodeAndEncode(query, kvStart, kvEnd, RESERVED_QUERY_TABLE, out, scratch);
+                    if (kvEnd == end) {
+                        break;
+                    }
+
+                    out.append('=');
+                    kvStart = kvEnd + 1;
+                }
+            }
+
+            start = end + 1;
+        }
+    }
+
+    private static void decodeAndEncode(String str, int start, int end, boolean[] specialChars,
+            StringBuilder out, StringBuilder scratch) {
+        boolean needsDecoding = false;
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if ((c == '%') || (c == '+')) {
+                needsDecoding = true;
+                break;
+            }
+        }
+
+        if (needsDecoding) {
+            scratch.setLength(0);
+            decodeUrl(str, start, end, scratch);
+            encodeUrlComponent(scratch, 0, scratch.length(), specialChars, out);
+        } else {
+            encodeUrlComponent(str, start, end, specialChars, out);
+        }
+    }
+
+    /**
+     * Same results as URLDecoder.decode(url, "UTF-8"), but we first escape any '%' that isn't followed by two hex
+     * digits, so we never throw an exception.
+     */
+    private static void decodeUrl(String url, int start, int end, StringBuilder out) {
+        // FUTURE - handle unsupported %uHHHH sequences for Unicode code points.
+        // FUTURE - detect & handle incorrectly encoded URLs
+
+        byte[] bytes = null;
+        int i = start;
+        while (i < end) {
+            char c = url.charAt(i);
+            if (c == '+') {
+                out.append(' ');
+                i++;
+            } else if (c != '%') {
+                out.append(c);
+                i++;
+            } else {
+                // Collect a run of escaped bytes, so multi-byte UTF-8 sequences get decoded properly.
+                if (bytes == null) {
+                    bytes = new byte[end - i];
+                }
+
+                int numBytes = 0;
+                while ((i < end) && (url.charAt(i) == '%')) {
+                    int high = hexValue(url, i + 1, end);
+                    int low = (high == -1) ? -1 : hexValue(url, i + 2, end);
+                    if (low == -1) {
+                        // Treat as an escaped (literal) '%'
+                        bytes[numBytes++] = '%';
+                        i += 1;
+                    } else {
+                        bytes[numBytes++] = (byte) ((high << 4) + low);
+                        i += 3;
+                    }
+                }
+
+                out.append(new String(bytes, 0, numBytes, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static int hexValue(String str, int index, int end) {
+        if (index >= end) {
+            return -1;
+        }
+
+        char c = str.charAt(index);
+        if (HEX_CODES.indexOf(c) == -1) {
+            return -1;
+        }
+
+        return Character.digit(c, 16);
+    }
+
+    private static void encodeUrlComponent(CharSequence component, int start, int end,
+            boolean[] specialChars, StringBuilder out) {
+        for (int i = start; i < end;) {
+            int codePoint = Character.codePointAt(component, i);
+            if (codePoint == 0x0020) {
+                out.append('+');
+            } else if (codePoint >= 0x007F) {
+                encodeCodePoint(codePoint, out);
+            } else if ((codePoint < 0x0020) || specialChars[codePoint]) {
+                // It's either a control char or a "special" char, which is a reserved char
+                // that has special meaning for this component of the URL. In either case we
+                // have to encode it.
+                appendEscapedByte(codePoint, out);
+            } else if (!LITERAL_TABLE[codePoint]) {
+                // It's not an unreserved or a reserved char, so we have to encode it.
+                appendEscapedByte(codePoint, out);
+            } else {
+                out.append((char) codePoint);
+            }
+
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    /**
+     * Append the UTF-8 bytes for <codepoint> as %xx escapes. An unpaired surrogate can't be encoded, so (like
+     * String.getBytes) we use '?' instead.
+     */
+    private static void encodeCodePoint(int codePoint, StringBuilder out) {
+        if (codePoint < 0x80) {
+            appendEscapedByte(codePoint, out);
+        } else if (codePoint < 0x800) {
+            appendEscapedByte(0xC0 | (codePoint >> 6), out);
+            appendEscapedByte(0x80 | (codePoint & 0x3F), out);
+        } else if ((codePoint >= Character.MIN_SURROGATE) && (codePoint <= Character.MAX_SURROGATE)) {
+            appendEscapedByte('?', out);
+        } else if (codePoint < 0x10000) {
+            appendEscapedByte(0xE0 | (codePoint >> 12), out);
+            appendEscapedByte(0x80 | ((codePoint >> 6) & 0x3F), out);
+            appendEscapedByte(0x80 | (codePoint & 0x3F), out);
+        } else {
+            appendEscapedByte(0xF0 | (codePoint >> 18), out);
+            appendEscapedByte(0x80 | ((codePoint >> 12) & 0x3F), out);
+            appendEscapedByte(0x80 | ((codePoint >> 6) & 0x3F), out);
+            appendEscapedByte(0x80 | (codePoint & 0x3F), out);
+        }
+    }
+
+    private static void appendEscapedByte(int value, StringBuilder out) {
+        out.append('%');
+        out.append(LOWER_HEX_DIGITS[(value >> 4) & 0x0F]);
+        out.append(LOWER_HEX_DIGITS[value & 0x0F]);
+    }
+
+    private static boolean[] makeCharTable(String chars) {
+        boolean[] result = new boolean[0x80];
+        for (int i = 0; i < chars.length(); i++) {
+            result[chars.charAt(i)] = true;
+        }
+
+        return result;
+    }
+
+    private static Pattern makeParameterPattern(String[] names) {
+        StringBuilder regex = new StringBuilder("(\\?|&)(?:(?i)");
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                regex.append('|');
+            }
+
+            regex.append(names[i]);
+        }
+
+        regex.append(")=.*?(&|#|$)");
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Precomputed (case-insensitive) hash set of all of the parameter names that we might remove, so we can check all
+     * of the parameters in a URL with one pass.
+     */
+    private static class IgnoredParameters {
+
+        private final int[] _hashes;
+        private final String[] _names;
+        private final int[] _flags;
+        private final int _maxNameLength;
+
+        public IgnoredParameters() {
+            String[][] nameSets = {
+                    SESSION_ID_PARAMETERS, OTHER_IGNORED_QUERY_PARAMETERS,
+                    AGGRESSIVE_IGNORED_QUERY_PARAMETERS
+            };
+            int[] setFlags = {
+                    SESSION_ID_PARAMETER, OTHER_IGNORED_PARAMETER, AGGRESSIVE_IGNORED_PARAMETER
+            };
+
+            int numNames = 0;
+            for (String[] nameSet : nameSets) {
+                numNames += nameSet.length;
+            }
+
+            long[] entries = new long[numNames];
+            String[] allNames = new String[numNames];
+            int[] allFlags = new int[numNames];
+            int maxNameLength = 0;
+            int index = 0;
+            for (int i = 0; i < nameSets.length; i++) {
+                for (String name : nameSets[i]) {
+                    allNames[index] = name;
+                    allFlags[index] = setFlags[i];
+                    // Sort by hash, but remember where the name came from.
+                    entries[index] = ((long) hash(name, 0, name.length()) << 32) | index;
+                    maxNameLength = Math.max(maxNameLength, name.length());
+                    index++;
+                }
+            }
+
+            Arrays.sort(entries);
+
+            _hashes = new int[numNames];
+            _names = new String[numNames];
+            _flags = new int[numNames];
+            for (int i = 0; i < numNames; i++) {
+                int nameIndex = (int) entries[i];
+                _hashes[i] = (int) (entries[i] >> 32);
+                _names[i] = allNames[nameIndex];
+                _flags[i] = allFlags[nameIndex];
+            }
+
+            _maxNameLength = maxNameLength;
+        }
+
+        /**
+         * @param url
+         * @return flags for all of the ignored parameter sets that have a name which follows a '?' or '&' in <url>.
+         */
+        public int find(String url) {
+            int result = 0;
+            int len = url.length();
+            for (int i = 0; i < len; i++) {
+                char c = url.charAt(i);
+                if ((c != '?') && (c != '&')) {
+                    continue;
+                }
+
+                int nameStart = i + 1;
+                int nameEnd = url.indexOf('=', nameStart);
+                if (nameEnd == -1) {
+                    // No more parameter values, so no more matches.
+                    break;
+                }
+
+                int nameLength = nameEnd - nameStart;
+                if ((nameLength == 0) || (nameLength > _maxNameLength)) {
+                    continue;
+                }
+
+                int hash = hash(url, nameStart, nameEnd);
+                int index = Arrays.binarySearch(_hashes, hash);
+                if (index < 0) {
+                    continue;
+                }
+
+                // Back up to the first entry with this hash, in case of collisions.
+                while ((index > 0) && (_hashes[index - 1] == hash)) {
+                    index--;
+                }
+
+                for (; (index < _hashes.length) && (_hashes[index] == hash); index++) {
+                    String name = _names[index];
+                    if ((name.length() == nameLength)
+                            && url.regionMatches(true, nameStart, name, 0, nameLength)) {
+                        result |= _flags[index];
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        private static int hash(String str, int start, int end) {
+            int result = 0;
+            for (int i = start; i < end; i++) {
+                char c = str.charAt(i);
+                if ((c >= 'A') && (c <= 'Z')) {
+                    c = (char) (c + ('a' - 'A'));
+                }
+
+                result = (31 * result) + c;
+            }
+
+            return result;
+        }
+    }
 }
@@ -20,11 +20,19 @@ import java.net.URI;
 import java.net.URL;
 import java.util.regex.Pattern;
 
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+import com.scaleunlimited.flinkcrawler.utils.SuffixTrie;
+
 @SuppressWarnings("serial")
 public class SimpleUrlValidator extends BaseUrlValidator {
     private static final Pattern HTTP_PATTERN = Pattern.compile("^(http|https):");
 
-    private Pattern _invalidSuffixes;
+    // ASCII characters that java.net.URI accepts anywhere in a path, query or fragment (other than
+    // '%', which has to start an escape).
+    private static final boolean[] URI_CHARS = makeUriChars();
+
+    // Trie of ".<suffix>" strings, so checking is independent of the number of suffixes.
+    private SuffixTrie _invalidSuffixes;
 
     public SimpleUrlValidator() {
         super();
@@ -35,19 +43,10 @@ public class SimpleUrlValidator extends BaseUrlValidator {
     public SimpleUrlValidator(String... suffixes) {
         super();
 
-        StringBuilder patternStr = new StringBuilder(".(");
-        boolean firstSuffix = true;
+        _invalidSuffixes = new SuffixTrie(false);
         for (String suffix : suffixes) {
-            if (firstSuffix) {
-                firstSuffix = false;
-            } else {
-                patternStr.append("|");
-            }
-            patternStr.append(suffix);
+            _invalidSuffixes.add("." + suffix);
         }
-
-        patternStr.append(")$");
-        _invalidSuffixes = Pattern.compile(patternStr.toString());
     }
 
     @Override
@@ -72,10 +71,215 @@ public class SimpleUrlValidator extends BaseUrlValidator {
             if (_invalidSuffixes == null) {
                 return true;
             } else {
-                return !_invalidSuffixes.matcher(urlString).find();
+                return !_invalidSuffixes.hasSuffix(urlString);
             }
         } catch (Exception e) {
             return false;
         }
     }
+
+    /**
+     * The same checks as {@link #isValid(String)}, but using the fields of an already-parsed URL.
+     * Instead of parsing it again with java.net.URI, we check that the URL only has characters
+     * that URI accepts, and a hostname that URI accepts. The exception is an IPv6 literal host,
+     * where URI's rules (e.g. for scope ids) are too involved to copy, so we fall back to
+     * {@link #isValid(String)}.
+     */
+    @Override
+    public boolean isValid(ValidUrl url) {
+        String urlString = url.getUrl();
+        if ((urlString == null) || !HTTP_PATTERN.matcher(urlString).find()) {
+            return false;
+        }
+
+        String hostname = url.getHostname();
+        if ((hostname == null) || (hostname.length() == 0)) {
+            return false;
+        } else if (hostname.charAt(0) == '[') {
+            return isValid(urlString);
+        } else if (!isUriHostname(hostname) || !hasOnlyUriChars(urlString)) {
+            return false;
+        }
+
+        if (_invalidSuffixes == null) {
+            return true;
+        } else {
+            return !_invalidSuffixes.hasSuffix(urlString);
+        }
+    }
+
+    /**
+     * @return true if java.net.URI would parse <hostname> (which isn't an IPv6 literal) as the host
+     *         of a server-based authority, which is either an IPv4 address, or labels of letters,
+     *         digits and (inner) dashes, where the last label starts with a letter.
+     */
+    private static boolean isUriHostname(String hostname) {
+        if (isIPv4Address(hostname)) {
+            return true;
+        }
+
+        int len = hostname.length();
+        int lastLabel = 0;
+        int pos = 0;
+        while (pos < len) {
+            if (!isAlphaNum(hostname.charAt(pos))) {
+                return false;
+            }
+
+            lastLabel = pos;
+            while ((pos < len)
+                    && (isAlphaNum(hostname.charAt(pos)) || (hostname.charAt(pos) == '-'))) {
+                pos++;
+            }
+
+            if (hostname.charAt(pos - 1) == '-') {
+                return false;
+            }
+
+            // A trailing '.' is OK.
+            if (pos < len) {
+                if (hostname.charAt(pos) != '.') {
+                    return false;
+                }
+
+                pos++;
+            }
+        }
+
+        return (lastLabel == 0) || isAlpha(hostname.charAt(lastLabel));
+    }
+
+    private static boolean isIPv4Address(String hostname) {
+        int numParts = 0;
+        int pos = 0;
+        int len = hostname.length();
+        while (pos <= len) {
+            int value = 0;
+            int start = pos;
+            while ((pos < len) && (hostname.charAt(pos) >= '0') && (hostname.charAt(pos) <= '9')) {
+                value = Math.min(value * 10 + (hostname.charAt(pos) - '0'), 256);
+                pos++;
+            }
+
+            if ((pos == start) || (value > 255)) {
+                return false;
+            }
+
+            numParts++;
+            if (pos == len) {
+                break;
+            } else if (hostname.charAt(pos) != '.') {
+                return false;
+            }
+
+            pos++;
+        }
+
+        return numParts == 4;
+    }
+
+    /**
+     * @return true if every character after the scheme is one that java.net.URI accepts where it
+     *         occurs. Brackets are only allowed around an IPv6 host, and in the query and fragment,
+     *         and there can only be one fragment.
+     */
+    private static boolean hasOnlyUriChars(String url) {
+        int len = url.length();
+        int start = url.indexOf(':') + 1;
+
+        // Find where the host starts (after any user info) and the authority ends.
+        int hostStart = start;
+        int authorityEnd = start;
+        if (url.startsWith("//", start)) {
+            start += 2;
+            hostStart = start;
+            authorityEnd = start;
+            while (authorityEnd < len) {
+                char c = url.charAt(authorityEnd);
+                if ((c == '/') || (c == '?') || (c == '#')) {
+                    break;
+                } else if (c == '@') {
+                    hostStart = authorityEnd + 1;
+                }
+
+                authorityEnd++;
+            }
+
+            // The port (if any) has to be all digits.
+            int portStart = url.lastIndexOf(':', authorityEnd - 1) + 1;
+            if ((portStart > hostStart) && (url.lastIndexOf(']', authorityEnd - 1) < portStart)) {
+                for (int i = portStart; i < authorityEnd; i++) {
+                    if ((url.charAt(i) < '0') || (url.charAt(i) > '9')) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        boolean inQuery = false;
+        boolean inFragment = false;
+        for (int i = start; i < len; i++) {
+            char c = url.charAt(i);
+            if (c >= 0x80) {
+                if (Character.isSpaceChar(c) || Character.isISOControl(c)) {
+                    return false;
+                }
+            } else if (c == '%') {
+                if ((i + 2 >= len) || !isHexDigit(url.charAt(i + 1))
+                        || !isHexDigit(url.charAt(i + 2))) {
+                    return false;
+                }
+
+                i += 2;
+            } else if (c == '#') {
+                if (inFragment) {
+                    return false;
+                }
+
+                inFragment = true;
+            } else if (c == '?') {
+                inQuery = true;
+            } else if ((c == '[') || (c == ']')) {
+                boolean inHost = (i >= hostStart) && (i < authorityEnd);
+                if (!inHost && !inQuery && !inFragment) {
+                    return false;
+                }
+            } else if (!URI_CHARS[c]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean[] makeUriChars() {
+        boolean[] result = new boolean[128];
+        for (char c = '0'; c <= '9'; c++) {
+            result[c] = true;
+        }
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            result[c] = true;
+            result[Character.toUpperCase(c)] = true;
+        }
+
+        for (char c : "-_.!~*'();/?:@&=+$,".toCharArray()) {
+            result[c] = true;
+        }
+
+        return result;
+    }
+
+    private static boolean isAlpha(char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'));
+    }
+
+    private static boolean isAlphaNum(char c) {
+        return isAlpha(c) || ((c >= '0') && (c <= '9'));
+    }
+
+    private static boolean isHexDigit(char c) {
+        return ((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f'))
+                || ((c >= 'A') && (c <= 'F'));
+    }
 }
@@ -3,6 +3,8 @@ package com.scaleunlimited.flinkcrawler.urls;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
 import crawlercommons.domains.PaidLevelDomain;
 
 @SuppressWarnings("serial")
@@ -22,6 +24,11 @@ public class SingleDomainUrlValidator extends SimpleUrlValidator {
         return isUrlWithinDomain(urlString, _singleDomain);
     }
 
+    @Override
+    public boolean isValid(ValidUrl url) {
+        return super.isValid(url) && isHostnameWithinDomain(url.getHostname(), _singleDomain);
+    }
+
     /**
      * Check whether the domain of the URL is the given domain or a subdomain of the given domain.
      * 
@@ -31,17 +38,35 @@ public class SingleDomainUrlValidator extends SimpleUrlValidator {
      */
     public static boolean isUrlWithinDomain(String url, String domain) {
         try {
-            for (String urlDomain = new URL(url)
-                    .getHost(); urlDomain != null; urlDomain = getSuperDomain(urlDomain)) {
-                if (urlDomain.equalsIgnoreCase(domain)) {
-                    return true;
-                }
-            }
+            return isHostnameWithinDomain(new URL(url).getHost(), domain);
         } catch (MalformedURLException e) {
             return false;
         }
+    }
+
+    /**
+     * Check whether the hostname is the given domain or a subdomain of the given domain. This gives the same result as
+     * walking up the super-domains of the hostname (see {@link #getSuperDomain(String)}), but only needs to find the
+     * paid-level domain once.
+     * 
+     * @param hostname
+     * @param domain
+     * @return true iff hostname is "within" domain
+     */
+    public static boolean isHostnameWithinDomain(String hostname, String domain) {
+        int hostnameLength = hostname.length();
+        int domainLength = domain.length();
+        if (hostnameLength == domainLength) {
+            return hostname.equalsIgnoreCase(domain);
+        } else if ((hostnameLength < domainLength)
+                || (hostname.charAt(hostnameLength - domainLength - 1) != '.')
+                || !hostname.regionMatches(true, hostnameLength - domainLength, domain, 0,
+                        domainLength)) {
+            return false;
+        }
 
-        return false;
+        // We never walk up past the paid-level domain.
+        return domainLength >= PaidLevelDomain.getPLD(hostname).length();
     }
 
     /**
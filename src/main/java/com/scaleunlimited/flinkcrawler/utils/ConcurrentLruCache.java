@@ -0,0 +1,88 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache that can be used by many threads at once. Entries are spread over a number of independently locked
+ * LRU maps (stripes) by key hash, so threads only contend when they hit the same stripe. Eviction is LRU within each
+ * stripe, which is close enough to a global LRU for caching.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentLruCache<K, V> {
+
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    private static final int DEFAULT_NUM_STRIPES = 16;
+
+    private final Map<K, V>[] _stripes;
+
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, DEFAULT_NUM_STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int maxSize, int numStripes) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be at least 1");
+        }
+
+        numStripes = Math.max(1, Math.min(numStripes, maxSize));
+        _stripes = new Map[numStripes];
+
+        // Divide up the capacity, with any remainder going to the first stripes.
+        for (int i = 0; i < numStripes; i++) {
+            final int stripeSize = (maxSize / numStripes) + (i < (maxSize % numStripes) ? 1 : 0);
+            _stripes[i] = new LinkedHashMap<K, V>(Math.round(stripeSize / DEFAULT_LOAD_FACTOR),
+                    DEFAULT_LOAD_FACTOR, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > stripeSize;
+                }
+            };
+        }
+    }
+
+    public V get(K key) {
+        Map<K, V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+    public void put(K key, V value) {
+        Map<K, V> stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.put(key, value);
+        }
+    }
+
+    public int size() {
+        int result = 0;
+        for (Map<K, V> stripe : _stripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
+        }
+
+        return result;
+    }
+
+    public void clear() {
+        for (Map<K, V> stripe : _stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private Map<K, V> getStripe(K key) {
+        int hash = key.hashCode();
+        // Spread the high bits, since String hashes of similar URLs differ mostly in the low bits.
+        hash ^= (hash >>> 16);
+        return _stripes[(hash & 0x7FFFFFFF) % _stripes.length];
+    }
+}
@@ -1,6 +1,12 @@
 package com.scaleunlimited.flinkcrawler.utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
 
 import com.scaleunlimited.flinkcrawler.fetcher.BaseHttpFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.fetcher.NoopHttpFetcherBuilder;
@@ -8,8 +14,12 @@ import com.scaleunlimited.flinkcrawler.fetcher.SimpleHttpFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlFetcherBuilder;
 import com.scaleunlimited.flinkcrawler.tools.CrawlToolOptions;
 import com.scaleunlimited.flinkcrawler.urls.BaseUrlLengthener;
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlValidator;
+import com.scaleunlimited.flinkcrawler.urls.DomainUrlValidator;
 import com.scaleunlimited.flinkcrawler.urls.NoopUrlLengthener;
 import com.scaleunlimited.flinkcrawler.urls.SimpleUrlLengthener;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlValidator;
+import com.scaleunlimited.flinkcrawler.urls.SingleDomainUrlValidator;
 
 import crawlercommons.fetcher.http.UserAgent;
 import crawlercommons.sitemaps.SiteMapParser;
@@ -28,11 +38,55 @@ public class CrawlToolUtils {
         return new SimpleUrlLengthener(userAgent, maxConnectionsPerHost);
     }
 
+    public static BaseUrlValidator getUrlValidator(CrawlToolOptions options) throws IOException {
+        if (options.isSingleDomain()) {
+            return new SingleDomainUrlValidator(options.getSingleDomain());
+        }
+
+        if ((options.getAllowedDomainsFilename() != null)
+                || (options.getBlockedDomainsFilename() != null)) {
+            return new DomainUrlValidator(readDomains(options.getAllowedDomainsFilename()),
+                    readDomains(options.getBlockedDomainsFilename()));
+        }
+
+        return new SimpleUrlValidator();
+    }
+
+    /**
+     * Read a list of domains, one per line. Blank lines and lines starting with '#' are ignored.
+     * 
+     * @param filename
+     *            - file to read, or null
+     * @return list of domains, or null if <filename> is null
+     * @throws IOException
+     */
+    private static List<String> readDomains(String filename) throws IOException {
+        if (filename == null) {
+            return null;
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String line : FileUtils.readLines(new File(filename), StandardCharsets.UTF_8)) {
+            String domain = line.trim();
+            if (!domain.isEmpty() && !domain.startsWith("#")) {
+                result.add(domain);
+            }
+        }
+
+        return result;
+    }
+
     public static BaseHttpFetcherBuilder getPageFetcherBuilder(CrawlToolOptions options,
             UserAgent userAgent) throws IOException {
         if (options.isCommonCrawl()) {
             return new CommonCrawlFetcherBuilder(options.getFetchersPerTask(), userAgent,
-                    options.getCommonCrawlId(), options.getCommonCrawlCacheDir());
+                    options.getCommonCrawlId(), options.getCommonCrawlCacheDir(),
+                    options.getCommonCrawlMirrorDir())
+                            .setSegmentCacheSize(options.getCommonCrawlSegmentCacheSize())
+                            .setSegmentCacheDir(options.getCommonCrawlSegmentCacheDir())
+                            .setDiskSegmentCacheSize(
+                                    options.getCommonCrawlSegmentDiskCacheSize())
+                            .setFetchBatchWindow(options.getCommonCrawlFetchBatchWindow());
         }
 
         return new SimpleHttpFetcherBuilder(options.getFetchersPerTask(), userAgent)
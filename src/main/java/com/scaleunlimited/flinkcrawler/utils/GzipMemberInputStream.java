@@ -0,0 +1,273 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompressing stream for (possibly multi-member) gzip data, which keeps track of where each member starts in both
+ * the compressed and uncompressed data. Any member start is a point where decompression can be restarted from scratch,
+ * so a caller can checkpoint its position as the member's compressed offset plus the number of uncompressed bytes into
+ * that member, and later resume by opening the compressed data at that offset and skipping (at most) one member's worth
+ * of uncompressed data.
+ *
+ * Files written by tools like bgzip, or by concatenating gzip files, have lots of members. A file that's a single
+ * member still works, but then resuming means decompressing from the start of the file.
+ */
+public class GzipMemberInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    // Header flags
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    public static class MemberStart {
+        private final long _compressedOffset;
+        private final long _uncompressedOffset;
+
+        public MemberStart(long compressedOffset, long uncompressedOffset) {
+            _compressedOffset = compressedOffset;
+            _uncompressedOffset = uncompressedOffset;
+        }
+
+        public long getCompressedOffset() {
+            return _compressedOffset;
+        }
+
+        public long getUncompressedOffset() {
+            return _uncompressedOffset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d", _compressedOffset, _uncompressedOffset);
+        }
+    }
+
+    private final InputStream _in;
+    private final Inflater _inflater = new Inflater(true);
+    private final CRC32 _crc = new CRC32();
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+    private final byte[] _oneByte = new byte[1];
+
+    // Compressed offset of _buffer[0]
+    private long _bufferOffset;
+    private int _bufferPos = 0;
+    private int _bufferLimit = 0;
+
+    private long _uncompressedOffset = 0;
+    private boolean _eof = false;
+
+    // Member starts that callers might still ask about, oldest first.
+    private final ArrayDeque<MemberStart> _memberStarts = new ArrayDeque<>();
+
+    /**
+     * @param in
+     *            - compressed data, which must start at the beginning of a gzip member
+     * @param compressedOffset
+     *            - offset of <in> in the compressed file, which is used for the offsets we report
+     * @throws IOException
+     */
+    public GzipMemberInputStream(InputStream in, long compressedOffset) throws IOException {
+        _in = in;
+        _bufferOffset = compressedOffset;
+
+        if (!startMember()) {
+            throw new EOFException("No gzip data");
+        }
+    }
+
+    /**
+     * Return the start of the member that contains <uncompressedOffset> (relative to where we started reading), which
+     * can't be before any offset previously passed to this method, nor after the current position of this stream.
+     *
+     * Older member starts are discarded, so memory use doesn't depend on the number of members.
+     *
+     * @param uncompressedOffset
+     * @return start of the member containing that offset.
+     */
+    public MemberStart getMemberStart(long uncompressedOffset) {
+        while (_memberStarts.size() > 1) {
+            MemberStart first = _memberStarts.removeFirst();
+            if (_memberStarts.peekFirst().getUncompressedOffset() > uncompressedOffset) {
+                _memberStarts.addFirst(first);
+                break;
+            }
+        }
+
+        return _memberStarts.peekFirst();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(_oneByte, 0, 1) == -1 ? -1 : _oneByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!_eof) {
+            int numInflated;
+            try {
+                numInflated = _inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+
+            if (numInflated > 0) {
+                _crc.update(b, off, numInflated);
+                _uncompressedOffset += numInflated;
+                return numInflated;
+            }
+
+            if (_inflater.finished()) {
+                _bufferPos = _bufferLimit - _inflater.getRemaining();
+                finishMember();
+                _eof = !startMember();
+            } else if (_inflater.needsInput()) {
+                if (!fillBuffer()) {
+                    throw new EOFException("Unexpected end of gzip data");
+                }
+
+                _inflater.setInput(_buffer, _bufferPos, _bufferLimit - _bufferPos);
+            } else if (_inflater.needsDictionary()) {
+                throw new ZipException("Gzip data needs a dictionary");
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _inflater.end();
+        _in.close();
+    }
+
+    /**
+     * Read the header of the next member, if there is one.
+     *
+     * @return true if we started a new member, false if we're at the end of the data.
+     * @throws IOException
+     */
+    private boolean startMember() throws IOException {
+        long memberOffset = _bufferOffset + _bufferPos;
+
+        // Like GZIPInputStream, we ignore anything after the last member that isn't the
+        // start of another member.
+        int magic = readByte();
+        if (magic == -1) {
+            return false;
+        }
+
+        int magic2 = readByte();
+        if ((magic2 == -1) || (((magic2 << 8) | magic) != GZIP_MAGIC)) {
+            if (_memberStarts.isEmpty()) {
+                throw new ZipException("Not in gzip format");
+            }
+
+            return false;
+        }
+
+        if (readRequiredByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+
+        int flags = readRequiredByte();
+
+        // Skip mtime, extra flags, and OS
+        skipBytes(6);
+
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readRequiredByte() | (readRequiredByte() << 8));
+        }
+
+        if ((flags & FNAME) != 0) {
+            while (readRequiredByte() != 0) {
+            }
+        }
+
+        if ((flags & FCOMMENT) != 0) {
+            while (readRequiredByte() != 0) {
+            }
+        }
+
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+
+        _memberStarts.addLast(new MemberStart(memberOffset, _uncompressedOffset));
+        _inflater.reset();
+        _inflater.setInput(_buffer, _bufferPos, _bufferLimit - _bufferPos);
+        _crc.reset();
+        return true;
+    }
+
+    private void finishMember() throws IOException {
+        long crc = readInt() & 0xFFFFFFFFL;
+        long size = readInt() & 0xFFFFFFFFL;
+        if (crc != _crc.getValue()) {
+            throw new ZipException("Corrupt gzip data (bad CRC)");
+        }
+
+        // Size is modulo 2^32
+        if (size != (_inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt gzip data (bad size)");
+        }
+    }
+
+    private int readInt() throws IOException {
+        return readRequiredByte() | (readRequiredByte() << 8) | (readRequiredByte() << 16)
+                | (readRequiredByte() << 24);
+    }
+
+    private void skipBytes(int numBytes) throws IOException {
+        for (int i = 0; i < numBytes; i++) {
+            readRequiredByte();
+        }
+    }
+
+    private int readRequiredByte() throws IOException {
+        int result = readByte();
+        if (result == -1) {
+            throw new EOFException("Unexpected end of gzip data");
+        }
+
+        return result;
+    }
+
+    private int readByte() throws IOException {
+        if ((_bufferPos == _bufferLimit) && !fillBuffer()) {
+            return -1;
+        }
+
+        return _buffer[_bufferPos++] & 0xFF;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        _bufferOffset += _bufferLimit;
+        _bufferPos = 0;
+        _bufferLimit = 0;
+
+        int numRead = _in.read(_buffer);
+        if (numRead <= 0) {
+            return false;
+        }
+
+        _bufferLimit = numRead;
+        return true;
+    }
+}
@@ -4,11 +4,116 @@ import java.nio.charset.StandardCharsets;
 
 public class HashUtils {
 
-    public static long longHash(String s) {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Return a 64-bit xxHash64 fingerprint of <s>. This works directly on the chars of the string (without allocating
+     * anything), and gives the same result as running xxHash64 (seed 0) over the UTF-16LE bytes of <s>.
+     * 
+     * @param s
+     * @return 64-bit hash
+     */
+    public static long longHash(CharSequence s) {
+        final int numChars = s.length();
+        final long numBytes = 2L * numChars;
+        int i = 0;
+        long result;
+
+        if (numChars >= 16) {
+            // Process 32 bytes (16 chars) at a time, in four lanes.
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+
+            final int limit = numChars - 16;
+            do {
+                v1 = round(v1, getLane(s, i));
+                v2 = round(v2, getLane(s, i + 4));
+                v3 = round(v3, getLane(s, i + 8));
+                v4 = round(v4, getLane(s, i + 12));
+                i += 16;
+            } while (i <= limit);
+
+            result = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+                    + Long.rotateLeft(v4, 18);
+            result = mergeRound(result, v1);
+            result = mergeRound(result, v2);
+            result = mergeRound(result, v3);
+            result = mergeRound(result, v4);
+        } else {
+            result = PRIME64_5;
+        }
+
+        result += numBytes;
+
+        // Then 8 bytes (4 chars) at a time
+        while (i + 4 <= numChars) {
+            result ^= round(0, getLane(s, i));
+            result = (Long.rotateLeft(result, 27) * PRIME64_1) + PRIME64_4;
+            i += 4;
+        }
+
+        // Then 4 bytes (2 chars)
+        if (i + 2 <= numChars) {
+            long k = (s.charAt(i) | ((long) s.charAt(i + 1) << 16)) & 0x0FFFFFFFFL;
+            result ^= k * PRIME64_1;
+            result = (Long.rotateLeft(result, 23) * PRIME64_2) + PRIME64_3;
+            i += 2;
+        }
+
+        // And finally the two bytes of the last char (if any).
+        if (i < numChars) {
+            char c = s.charAt(i);
+            result ^= (c & 0x0FF) * PRIME64_5;
+            result = Long.rotateLeft(result, 11) * PRIME64_1;
+            result ^= ((c >> 8) & 0x0FF) * PRIME64_5;
+            result = Long.rotateLeft(result, 11) * PRIME64_1;
+        }
+
+        // Avalanche
+        result ^= result >>> 33;
+        result *= PRIME64_2;
+        result ^= result >>> 29;
+        result *= PRIME64_3;
+        result ^= result >>> 32;
+
+        return result;
+    }
+
+    /**
+     * The (JOAAT-based) hash we used before {@link #longHash(CharSequence)}. This is only needed when dealing with
+     * hashes that were saved by older versions of the crawler.
+     * 
+     * @param s
+     * @return 64-bit hash
+     */
+    @Deprecated
+    public static long legacyLongHash(String s) {
         byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
         return getLongHash(bytes, 0, bytes.length);
     }
 
+    private static long getLane(CharSequence s, int offset) {
+        return s.charAt(offset) | ((long) s.charAt(offset + 1) << 16)
+                | ((long) s.charAt(offset + 2) << 32) | ((long) s.charAt(offset + 3) << 48);
+    }
+
+    private static long round(long acc, long lane) {
+        acc += lane * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return (acc * PRIME64_1) + PRIME64_4;
+    }
+
     /**
      * Return a 32-bit JOAAT hash for <k>, where we initialize the resulting hash value with <initValue>.
      * 
@@ -0,0 +1,142 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Trie of reversed strings, for checking whether a string ends with any of a (potentially large) set of suffixes. A
+ * lookup walks backwards from the end of the string, so it takes time proportional to the length of the longest
+ * matching suffix, independent of the number of suffixes in the trie.
+ *
+ * Domains are a special case, where we only want matches that end on a label boundary (so "foo.com" matches
+ * "www.foo.com" but not "barfoo.com"); see {@link #hasDomainSuffix(String, int)}.
+ */
+@SuppressWarnings("serial")
+public class SuffixTrie implements Serializable {
+
+    private final boolean _ignoreCase;
+    private final Node _root = new Node();
+    private int _size = 0;
+
+    public SuffixTrie(boolean ignoreCase) {
+        _ignoreCase = ignoreCase;
+    }
+
+    public SuffixTrie(boolean ignoreCase, Iterable<String> suffixes) {
+        this(ignoreCase);
+
+        for (String suffix : suffixes) {
+            add(suffix);
+        }
+    }
+
+    public SuffixTrie add(String suffix) {
+        Node node = _root;
+        for (int i = suffix.length() - 1; i >= 0; i--) {
+            node = node.getOrAddChild(normalize(suffix.charAt(i)));
+        }
+
+        if (!node._isSuffix) {
+            node._isSuffix = true;
+            _size++;
+        }
+
+        return this;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * @param str
+     * @return true if <str> ends with one of our suffixes.
+     */
+    public boolean hasSuffix(CharSequence str) {
+        Node node = _root;
+        for (int i = str.length() - 1; i >= 0; i--) {
+            node = node.getChild(normalize(str.charAt(i)));
+            if (node == null) {
+                return false;
+            } else if (node._isSuffix) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if <hostname> is, or is a sub-domain of, one of the domains in the trie. Matches only count if they're at
+     * least <minLength> characters long, which lets the caller exclude matches that are shorter than the paid-level
+     * domain of the hostname (e.g. "co.uk").
+     *
+     * @param hostname
+     * @param minLength
+     * @return true if <hostname> is within one of our domains.
+     */
+    public boolean hasDomainSuffix(String hostname, int minLength) {
+        int length = hostname.length();
+        Node node = _root;
+        for (int i = length - 1; i >= 0; i--) {
+            node = node.getChild(normalize(hostname.charAt(i)));
+            if (node == null) {
+                return false;
+            }
+
+            // We've matched the characters from i to the end, so we need to be at the start of a label.
+            if (node._isSuffix && ((length - i) >= minLength)
+                    && ((i == 0) || (hostname.charAt(i - 1) == '.'))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private char normalize(char c) {
+        return _ignoreCase ? Character.toLowerCase(c) : c;
+    }
+
+    private static class Node implements Serializable {
+        private static final char[] NO_CHARS = new char[0];
+        private static final Node[] NO_NODES = new Node[0];
+
+        // Sorted, so we can do a binary search.
+        private char[] _chars = NO_CHARS;
+        private Node[] _children = NO_NODES;
+        private boolean _isSuffix = false;
+
+        public Node getChild(char c) {
+            int index = Arrays.binarySearch(_chars, c);
+            return index < 0 ? null : _children[index];
+        }
+
+        public Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(_chars, c);
+            if (index >= 0) {
+                return _children[index];
+            }
+
+            index = -(index + 1);
+            int numChildren = _chars.length;
+            char[] chars = new char[numChildren + 1];
+            Node[] children = new Node[numChildren + 1];
+            System.arraycopy(_chars, 0, chars, 0, index);
+            System.arraycopy(_children, 0, children, 0, index);
+            System.arraycopy(_chars, index, chars, index + 1, numChildren - index);
+            System.arraycopy(_children, index, children, index + 1, numChildren - index);
+
+            Node result = new Node();
+            chars[index] = c;
+            children[index] = result;
+            _chars = chars;
+            _children = children;
+            return result;
+        }
+    }
+}
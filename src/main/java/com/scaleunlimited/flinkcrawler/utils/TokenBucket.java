@@ -0,0 +1,106 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import java.io.Serializable;
+
+/**
+ * Simple token bucket rate limiter. Tokens are added at <tokensPerSecond>, up to <maxTokens>, and each call to
+ * {@link #acquire()} takes one token, waiting if none are available. This lets a caller burst up to <maxTokens> after
+ * being idle (or blocked by backpressure), while still averaging no more than the target rate.
+ * 
+ * Not thread-safe.
+ */
+@SuppressWarnings("serial")
+public class TokenBucket implements Serializable {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private double _tokensPerSecond;
+    private final double _maxTokens;
+
+    private transient double _tokens;
+    private transient long _lastRefillTime;
+    private transient boolean _started;
+
+    /**
+     * @param tokensPerSecond
+     *            - average rate, or <= 0 for no limit
+     * @param maxTokens
+     *            - max number of tokens that can build up
+     */
+    public TokenBucket(double tokensPerSecond, double maxTokens) {
+        _tokensPerSecond = tokensPerSecond;
+        _maxTokens = Math.max(1.0, maxTokens);
+    }
+
+    public double getTokensPerSecond() {
+        return _tokensPerSecond;
+    }
+
+    /**
+     * Change the rate, e.g. in response to backpressure. Tokens that have already been added are kept.
+     * 
+     * @param tokensPerSecond
+     *            - average rate, or <= 0 for no limit
+     */
+    public void setTokensPerSecond(double tokensPerSecond) {
+        if (_started) {
+            refill(System.nanoTime());
+        }
+
+        _tokensPerSecond = tokensPerSecond;
+    }
+
+    /**
+     * Wait until a token is available, and take it.
+     * 
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        if (_tokensPerSecond <= 0) {
+            return;
+        }
+
+        refill(System.nanoTime());
+        if (_tokens < 1.0) {
+            long waitNanos = (long) Math.ceil(((1.0 - _tokens) * NANOS_PER_SECOND) / _tokensPerSecond);
+            Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+            refill(System.nanoTime());
+        }
+
+        // We might still be a tiny bit short, due to sleep granularity, in which case we go
+        // a bit negative and wait a bit longer next time.
+        _tokens -= 1.0;
+    }
+
+    /**
+     * Take a token if one is available, without waiting.
+     * 
+     * @return true if we got a token.
+     */
+    public boolean tryAcquire() {
+        if (_tokensPerSecond <= 0) {
+            return true;
+        }
+
+        refill(System.nanoTime());
+        if (_tokens < 1.0) {
+            return false;
+        }
+
+        _tokens -= 1.0;
+        return true;
+    }
+
+    private void refill(long now) {
+        if (!_started) {
+            // First call, so start out with one token.
+            _tokens = 1.0;
+            _started = true;
+        } else {
+            double elapsedSeconds = (double) (now - _lastRefillTime) / NANOS_PER_SECOND;
+            _tokens = Math.min(_maxTokens, _tokens + (elapsedSeconds * _tokensPerSecond));
+        }
+
+        _lastRefillTime = now;
+    }
+}
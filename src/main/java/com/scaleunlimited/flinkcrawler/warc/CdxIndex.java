@@ -0,0 +1,272 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlUrls;
+
+/**
+ * Collects CDX lines for the records in one WARC file, and writes them out sorted. The format is the same as
+ * CommonCrawl's index files, so each page can be fetched with one range read (and our CommonCrawl fetcher can read
+ * it):
+ *
+ * <pre>
+ * surt-key timestamp {"url": "...", "mime": "...", "status": "200", "length": "...", "offset": "...", "filename": "..."}
+ * </pre>
+ *
+ * Only records for captured content (response, resource and revisit records) are indexed.
+ */
+public class CdxIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CdxIndex.class);
+
+    private final List<String> _lines = new ArrayList<>();
+
+    /**
+     * Add a line for <record>, which was written (compressed) to <filename> at <offset>, using <length> bytes.
+     *
+     * @param record
+     * @param filename
+     * @param offset
+     * @param length
+     * @return true if the record was indexed.
+     */
+    public boolean add(WARCRecord record, String filename, long offset, long length) {
+        String linePrefix = makeLinePrefix(record);
+        if (linePrefix == null) {
+            return false;
+        }
+
+        add(linePrefix, filename, offset, length);
+        return true;
+    }
+
+    /**
+     * Add a line for a record that was written to <filename> at <offset>, using <length> bytes.
+     *
+     * @param linePrefix
+     *            - the part of the line that only depends on the record, from {@link #makeLinePrefix(WARCRecord)}
+     * @param filename
+     * @param offset
+     * @param length
+     */
+    public void add(String linePrefix, String filename, long offset, long length) {
+        StringBuilder line = new StringBuilder(linePrefix);
+        line.append(", \"length\": \"");
+        line.append(length);
+        line.append("\", \"offset\": \"");
+        line.append(offset);
+        line.append("\", \"filename\": ");
+        appendJsonString(line, filename);
+        line.append('}');
+
+        _lines.add(line.toString());
+    }
+
+    /**
+     * Make the part of the CDX line for <record> that doesn't depend on where it's written (everything but the
+     * length, offset and filename). This lets the record be encoded somewhere other than where it's written.
+     *
+     * @param record
+     * @return line prefix, or null if the record shouldn't be indexed.
+     */
+    public static String makeLinePrefix(WARCRecord record) {
+        WARCRecord.Header header = record.getHeader();
+        String recordType = header.getRecordType();
+        String url = header.getTargetURI();
+        if ((url == null) || !("response".equals(recordType) || "resource".equals(recordType)
+                || "revisit".equals(recordType))) {
+            return null;
+        }
+
+        String key;
+        try {
+            key = CommonCrawlUrls.convertToIndexFormat(new URL(url));
+        } catch (MalformedURLException e) {
+            LOGGER.warn("Can't index record with invalid URL '{}'", url);
+            return null;
+        }
+
+        String mime;
+        int status;
+        if ("resource".equals(recordType)) {
+            // We only write resource records for pages we fetched.
+            mime = header.getContentType();
+            status = 200;
+        } else {
+            // Records we build have the HTTP headers as a separate prefix, so avoid combining
+            // them with the payload.
+            byte[] httpResponse = record.getContentPrefix();
+            if (httpResponse.length == 0) {
+                httpResponse = record.getContent();
+            }
+
+            mime = getHttpField(httpResponse, "Content-Type");
+            status = getHttpStatus(httpResponse);
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(key);
+        line.append(' ');
+        line.append(makeTimestamp(header.getDateString()));
+        line.append(" {\"url\": ");
+        appendJsonString(line, url);
+        line.append(", \"mime\": ");
+        appendJsonString(line, normalizeMime(mime));
+        line.append(", \"status\": \"");
+        line.append(status == -1 ? "-" : Integer.toString(status));
+        line.append('"');
+        return line.toString();
+    }
+
+    public int size() {
+        return _lines.size();
+    }
+
+    /**
+     * @return the (unsorted) lines added so far, e.g. to save in checkpointed state.
+     */
+    List<String> getLines() {
+        return Collections.unmodifiableList(_lines);
+    }
+
+    /**
+     * Add a line previously returned by {@link #getLines()}.
+     */
+    void addLine(String line) {
+        _lines.add(line);
+    }
+
+    public void clear() {
+        _lines.clear();
+    }
+
+    /**
+     * Write all of the lines, sorted (by key, and then timestamp), to <out>.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(OutputStream out) throws IOException {
+        Collections.sort(_lines);
+
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        for (String line : _lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Convert a WARC-Date (2017-05-22T12:00:00Z) into a CDX timestamp (20170522120000).
+     */
+    private static String makeTimestamp(String warcDate) {
+        StringBuilder result = new StringBuilder(14);
+        if (warcDate != null) {
+            for (int i = 0; (i < warcDate.length()) && (result.length() < 14); i++) {
+                char c = warcDate.charAt(i);
+                if ((c >= '0') && (c <= '9')) {
+                    result.append(c);
+                }
+            }
+        }
+
+        while (result.length() < 14) {
+            result.append('0');
+        }
+
+        return result.toString();
+    }
+
+    private static String normalizeMime(String mime) {
+        if (mime == null) {
+            return "unk";
+        }
+
+        int paramStart = mime.indexOf(';');
+        return (paramStart == -1 ? mime : mime.substring(0, paramStart)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return status from the HTTP status line at the start of <content>, or -1 if there isn't one.
+     */
+    private static int getHttpStatus(byte[] content) {
+        // HTTP/1.1 200 OK
+        int pos = 0;
+        while ((pos < content.length) && (content[pos] != ' ')) {
+            if (content[pos] == '\r' || content[pos] == '\n') {
+                return -1;
+            }
+
+            pos++;
+        }
+
+        int status = 0;
+        int numDigits = 0;
+        for (pos++; (pos < content.length) && (content[pos] >= '0') && (content[pos] <= '9'); pos++) {
+            status = (status * 10) + (content[pos] - '0');
+            numDigits++;
+        }
+
+        return numDigits == 3 ? status : -1;
+    }
+
+    /**
+     * @return value of the HTTP header <field> from <content> (HTTP headers followed by the body), or null.
+     */
+    private static String getHttpField(byte[] content, String field) {
+        int lineStart = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while ((lineEnd < content.length) && (content[lineEnd] != '\n')) {
+                lineEnd++;
+            }
+
+            String line = new String(content, lineStart, lineEnd - lineStart,
+                    StandardCharsets.ISO_8859_1).trim();
+            if (line.isEmpty()) {
+                // End of the headers.
+                return null;
+            }
+
+            if (line.regionMatches(true, 0, field, 0, field.length())
+                    && (line.length() > field.length()) && (line.charAt(field.length()) == ':')) {
+                return line.substring(field.length() + 1).trim();
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return null;
+    }
+
+    private static void appendJsonString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                out.append('\\');
+                out.append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+
+        out.append('"');
+    }
+}
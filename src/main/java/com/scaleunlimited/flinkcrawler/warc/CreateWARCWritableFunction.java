@@ -1,12 +1,11 @@
 package com.scaleunlimited.flinkcrawler.warc;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.util.Collector;
@@ -16,15 +15,37 @@ import com.scaleunlimited.flinkcrawler.functions.BaseFlatMapFunction;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
 
+import crawlercommons.util.Headers;
+
+/**
+ * For each fetched page, emit a `response` record (the HTTP status line and headers, followed by the
+ * content), a `request` record, and a `metadata` record with crawl information, all linked via
+ * WARC-Concurrent-To. The sink writes a `warcinfo` record at the start of each WARC file (see
+ * {@link WARCSinkOperator}), so records don't reference one via WARC-Warcinfo-ID, which would
+ * point to a record in a different file.
+ *
+ * The fetched content is never copied - the response record references it, along with a separate
+ * (small) array for the HTTP headers, and both are only serialized when the (chained)
+ * {@link EncodeWARCRecordFunction} encodes the record.
+ */
 @SuppressWarnings("serial")
 public class CreateWARCWritableFunction
         extends BaseFlatMapFunction<FetchResultUrl, Tuple2<NullWritable, WARCWritable>> {
 
-    private static String SOFTWARE = "flink-crawler";
+    private static final byte[] EMPTY_CONTENT = new byte[0];
+    private static final String CRLF = "\r\n";
+
+    // The content we have has already been decoded (and de-chunked), so these headers
+    // no longer describe it. We keep the original values, but under a different name.
+    private static final String[] REWRITTEN_HEADERS = {
+            "content-encoding", "content-length", "transfer-encoding"
+    };
+    private static final String REWRITTEN_HEADER_PREFIX = "X-Crawler-";
 
-    private SimpleDateFormat _dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
     private String _userAgentString;
-    private boolean _isWarcInfoEmitted;
+
+    private transient WARCDigester _digester;
+    private transient StringBuilder _text;
 
     public CreateWARCWritableFunction(String userAgentString) {
         _userAgentString = userAgentString;
@@ -33,7 +54,8 @@ public class CreateWARCWritableFunction
     @Override
     public void open(Configuration parameters) throws Exception {
         super.open(parameters);
-        _isWarcInfoEmitted = false;
+        _digester = new WARCDigester();
+        _text = new StringBuilder();
     }
 
     @Override
@@ -44,69 +66,151 @@ public class CreateWARCWritableFunction
             return;
         }
 
-        if (!_isWarcInfoEmitted) {
-            outputWARCInfoRecord(collector);
-            _isWarcInfoEmitted = true;
+        String responseID = WARCRecord.makeRecordID();
+        outputWARCResponseRecord(collector, fetchResultUrl, responseID);
+        outputWARCRequestRecord(collector, fetchResultUrl, responseID);
+        outputWARCMetadataRecord(collector, fetchResultUrl, responseID);
+    }
+
+    private void outputWARCResponseRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector,
+            FetchResultUrl fetchResultUrl, String responseID) throws IOException {
+
+        byte[] content = fetchResultUrl.getContent();
+        if (content == null) {
+            content = EMPTY_CONTENT;
         }
 
-        outputWARCResourceRecord(collector, fetchResultUrl);
+        byte[] httpHeaders = makeHttpResponseHeaders(fetchResultUrl, content.length);
+        WARCRecord record = new WARCRecord.Builder("response")
+                .setTargetURI(fetchResultUrl.getFetchedUrl())
+                .setDate(fetchResultUrl.getStatusTime())
+                .setRecordID(responseID)
+                .setContentType("application/http; msgtype=response")
+                .setField("WARC-IP-Address", fetchResultUrl.getHostAddress())
+                .setField("WARC-Block-Digest", _digester.digest(httpHeaders, content))
+                .setField("WARC-Payload-Digest", _digester.digest(content))
+                .setField("WARC-Identified-Payload-Type", fetchResultUrl.getContentType())
+                .setContent(httpHeaders, content)
+                .build();
+        collect(collector, record);
     }
 
-    private void outputWARCInfoRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector)
-            throws IOException {
-    
-        StringBuffer content = new StringBuffer();
-    
-        content.append(String.format("software: %s\r\n", SOFTWARE));
-        content.append(String.format("http-header-user-agent': %s\r\n", _userAgentString));
-        content.append("format: WARC File Format 1.0\r\n");
-        content.append(
-                "conformsTo: http://bibnum.bnf.fr/WARC/WARC_ISO_28500_version1_latestdraft.pdf\r\n");
-    
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("WARC/1.0\r\n");
-        buffer.append("WARC-Type: warcinfo\r\n");
-        buffer.append(String.format("WARC-Date: %s\r\n", _dateFormat.format(new Date())));
-        // TODO create the WARC-Record-ID for the info record - it is a mandatory field...
-        // buffer.append(String.format("WARC-Record-ID: <urn:uuid:%s>\r\n", ?));
-        buffer.append(String.format("Content-Length: %d\r\n", content.length()));
-        buffer.append("Content-Type: application/warc-fields\r\n");
-        buffer.append("\r\n");
-        buffer.append(content);
-        buffer.append("\r\n");
-        buffer.append("\r\n");
-        buffer.append("\r\n");
-        DataInputStream stream = new DataInputStream(
-                new ByteArrayInputStream(buffer.toString().getBytes("UTF-8")));
-        WARCRecord record = new WARCRecord(stream);
-        WARCWritable writable = new WARCWritable(record);
-        collector.collect(new Tuple2<NullWritable, WARCWritable>(NullWritable.get(), writable));
-        stream.close();
+    /**
+     * We don't have the actual request that was sent, so we recreate it from the fetched URL and
+     * our user agent.
+     */
+    private void outputWARCRequestRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector,
+            FetchResultUrl fetchResultUrl, String responseID) throws IOException {
+
+        String fetchedUrl = fetchResultUrl.getFetchedUrl();
+        URL url;
+        try {
+            url = new URL(fetchedUrl);
+        } catch (MalformedURLException e) {
+            // Shouldn't happen, since we fetched it.
+            return;
+        }
+
+        String path = url.getFile();
+        _text.setLength(0);
+        _text.append("GET ").append(path.isEmpty() ? "/" : path).append(" HTTP/1.1").append(CRLF);
+        _text.append("Host: ").append(url.getHost());
+        if (url.getPort() != -1) {
+            _text.append(':').append(url.getPort());
+        }
+        _text.append(CRLF);
+        _text.append("User-Agent: ").append(_userAgentString).append(CRLF);
+        _text.append(CRLF);
+
+        outputConcurrentRecord(collector, fetchResultUrl, responseID, "request",
+                "application/http; msgtype=request");
     }
 
-    private void outputWARCResourceRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector,
-            FetchResultUrl fetchResultUrl) throws IOException {
+    private void outputWARCMetadataRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector,
+            FetchResultUrl fetchResultUrl, String responseID) throws IOException {
 
-        byte[] content = fetchResultUrl.getContent();
-        StringBuffer buffer = new StringBuffer();
-        buffer.append("WARC/1.0\r\n");
-        buffer.append("WARC-Type: resource\r\n");
-        buffer.append(String.format("WARC-Target-URI: %s\r\n", fetchResultUrl.getFetchedUrl()));
-        buffer.append(String.format("WARC-Date: %s\r\n", _dateFormat.format(new Date())));
-         buffer.append(String.format("WARC-Record-ID: <%s>\r\n", fetchResultUrl.getUrl()));
-        buffer.append(String.format("Content-Type: %s\r\n", fetchResultUrl.getContentType()));
-        buffer.append(String.format("Content-Length: %d\r\n", content.length));
-        buffer.append("\r\n");
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        bos.write(buffer.toString().getBytes("UTF-8"));
-        bos.write(content);
-        bos.write("\r\n\r\n\r\n".getBytes("UTF-8"));
-        DataInputStream stream = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
-        bos.close();
-        WARCRecord record = new WARCRecord(stream);
-        WARCWritable writable = new WARCWritable(record);
-        collector.collect(new Tuple2<NullWritable, WARCWritable>(NullWritable.get(), writable));
-        stream.close();
+        _text.setLength(0);
+        if (!fetchResultUrl.getUrl().equals(fetchResultUrl.getFetchedUrl())) {
+            _text.append("originalUrl: ").append(fetchResultUrl.getUrl()).append(CRLF);
+        }
+        _text.append("fetchTimeMs: ").append(fetchResultUrl.getStatusTime()).append(CRLF);
+        if (fetchResultUrl.getHostAddress() != null) {
+            _text.append("ip: ").append(fetchResultUrl.getHostAddress()).append(CRLF);
+        }
+        _text.append("responseRate: ").append(fetchResultUrl.getResponseRate()).append(CRLF);
+
+        outputConcurrentRecord(collector, fetchResultUrl, responseID, "metadata",
+                "application/warc-fields");
+    }
+
+    /**
+     * Output a record of type <recordType>, using the text we've built up as the content, that's
+     * linked to the response record with <responseID>.
+     */
+    private void outputConcurrentRecord(Collector<Tuple2<NullWritable, WARCWritable>> collector,
+            FetchResultUrl fetchResultUrl, String responseID, String recordType,
+            String contentType) {
+        byte[] content = _text.toString().getBytes(StandardCharsets.UTF_8);
+        WARCRecord record = new WARCRecord.Builder(recordType)
+                .setTargetURI(fetchResultUrl.getFetchedUrl())
+                .setDate(fetchResultUrl.getStatusTime())
+                .setRecordID(WARCRecord.makeRecordID())
+                .setContentType(contentType)
+                .setField("WARC-Concurrent-To", responseID)
+                .setField("WARC-Block-Digest", _digester.digest(content))
+                .setContent(content)
+                .build();
+        collect(collector, record);
+    }
+
+    private byte[] makeHttpResponseHeaders(FetchResultUrl fetchResultUrl, int contentLength) {
+        // We only get here for FETCHED results, which are always a 200.
+        int httpStatus = fetchResultUrl.getHttpStatus() == 0 ? 200 : fetchResultUrl.getHttpStatus();
+        String reasonPhrase = fetchResultUrl.getReasonPhrase();
+        if ((reasonPhrase == null) || reasonPhrase.isEmpty()) {
+            reasonPhrase = (httpStatus == 200) ? "OK" : "";
+        }
+
+        _text.setLength(0);
+        _text.append("HTTP/1.1 ").append(httpStatus).append(' ').append(reasonPhrase).append(CRLF);
+
+        Headers headers = fetchResultUrl.getHeaders();
+        if (headers != null) {
+            for (String name : headers.getNames()) {
+                List<String> values = headers.getValues(name);
+                if (values == null) {
+                    continue;
+                }
+
+                boolean rewrite = isRewrittenHeader(name);
+                for (String value : values) {
+                    if (rewrite) {
+                        _text.append(REWRITTEN_HEADER_PREFIX);
+                    }
+
+                    _text.append(name).append(": ").append(value).append(CRLF);
+                }
+            }
+        }
+
+        _text.append("Content-Length: ").append(contentLength).append(CRLF);
+        _text.append(CRLF);
+        return _text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isRewrittenHeader(String name) {
+        for (String rewritten : REWRITTEN_HEADERS) {
+            if (rewritten.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void collect(Collector<Tuple2<NullWritable, WARCWritable>> collector,
+            WARCRecord record) {
+        collector.collect(new Tuple2<NullWritable, WARCWritable>(NullWritable.get(),
+                new WARCWritable(record)));
     }
 }
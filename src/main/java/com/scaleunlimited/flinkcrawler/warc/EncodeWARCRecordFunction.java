@@ -0,0 +1,51 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.Collector;
+import org.apache.hadoop.io.NullWritable;
+
+import com.scaleunlimited.flinkcrawler.functions.BaseFlatMapFunction;
+
+/**
+ * Serializes (and optionally gzips) WARC records before they get to the {@link WARCSinkOperator}. This is chained to
+ * whatever creates the records, so compression happens in that task, and the sink's thread only has to append bytes
+ * to the current part file.
+ */
+@SuppressWarnings("serial")
+public class EncodeWARCRecordFunction
+        extends BaseFlatMapFunction<Tuple2<NullWritable, WARCWritable>, EncodedWARCRecord> {
+
+    private final boolean _compress;
+
+    private transient WARCRecordEncoder _encoder;
+
+    public EncodeWARCRecordFunction(boolean compress) {
+        _compress = compress;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        super.open(parameters);
+        _encoder = new WARCRecordEncoder(_compress);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (_encoder != null) {
+            _encoder.close();
+            _encoder = null;
+        }
+
+        super.close();
+    }
+
+    @Override
+    public void flatMap(Tuple2<NullWritable, WARCWritable> in,
+            Collector<EncodedWARCRecord> collector) throws Exception {
+        WARCRecord record = in.f1.getRecord();
+        if (record != null) {
+            collector.collect(_encoder.encode(record));
+        }
+    }
+}
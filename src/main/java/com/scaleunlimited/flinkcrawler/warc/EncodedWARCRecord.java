@@ -0,0 +1,51 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.io.Serializable;
+
+/**
+ * A WARC record that's already been serialized (and optionally gzipped, as a single member), along with the start of
+ * its CDX index line. The sink only has to append the bytes to the current part file, and finish the index line with
+ * the part file's name and the record's offset.
+ */
+@SuppressWarnings("serial")
+public class EncodedWARCRecord implements Serializable {
+
+    private byte[] _data;
+    private String _cdxLinePrefix;
+
+    public EncodedWARCRecord() {
+        // For Flink POJO serialization
+    }
+
+    /**
+     * @param data
+     *            - serialized record
+     * @param cdxLinePrefix
+     *            - from {@link CdxIndex#makeLinePrefix(WARCRecord)}, or null if the record isn't indexed
+     */
+    public EncodedWARCRecord(byte[] data, String cdxLinePrefix) {
+        _data = data;
+        _cdxLinePrefix = cdxLinePrefix;
+    }
+
+    public byte[] getData() {
+        return _data;
+    }
+
+    public void setData(byte[] data) {
+        _data = data;
+    }
+
+    public String getCdxLinePrefix() {
+        return _cdxLinePrefix;
+    }
+
+    public void setCdxLinePrefix(String cdxLinePrefix) {
+        _cdxLinePrefix = cdxLinePrefix;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bytes: %s", _data == null ? 0 : _data.length, _cdxLinePrefix);
+    }
+}
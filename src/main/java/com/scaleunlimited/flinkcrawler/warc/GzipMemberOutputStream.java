@@ -0,0 +1,96 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes everything between {@link #start(OutputStream)} and {@link #finish()} to the target stream as a single gzip
+ * member. A sequence of members is a valid gzip file, but each member can also be decompressed on its own, which is
+ * how WARC files support random access to records.
+ *
+ * We reuse one Deflater for all members, versus creating a GZIPOutputStream (and its native zlib state) per record.
+ * Call {@link #close()} to release the Deflater; the target stream is never closed.
+ */
+public class GzipMemberOutputStream extends OutputStream {
+
+    // Magic number, deflate, no flags/mtime, no extra flags, unknown OS.
+    private static final byte[] GZIP_HEADER = {
+            (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final Deflater _deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 _crc = new CRC32();
+    private final byte[] _buffer = new byte[64 * 1024];
+    private final byte[] _singleByte = new byte[1];
+
+    private OutputStream _out;
+
+    /**
+     * Start a new gzip member, which will be written to <out>.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void start(OutputStream out) throws IOException {
+        _out = out;
+        _deflater.reset();
+        _crc.reset();
+        _out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _singleByte[0] = (byte) b;
+        write(_singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+
+        _crc.update(b, off, len);
+        _deflater.setInput(b, off, len);
+        while (!_deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * Write the rest of the compressed data and the gzip trailer for the current member.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        _deflater.finish();
+        while (!_deflater.finished()) {
+            deflate();
+        }
+
+        writeIntLE((int) _crc.getValue());
+        writeIntLE((int) _deflater.getBytesRead());
+        _out = null;
+    }
+
+    private void deflate() throws IOException {
+        int len = _deflater.deflate(_buffer, 0, _buffer.length);
+        if (len > 0) {
+            _out.write(_buffer, 0, len);
+        }
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        _out.write(value & 0xFF);
+        _out.write((value >> 8) & 0xFF);
+        _out.write((value >> 16) & 0xFF);
+        _out.write((value >> 24) & 0xFF);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _deflater.end();
+    }
+}
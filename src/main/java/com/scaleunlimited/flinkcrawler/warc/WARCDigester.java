@@ -0,0 +1,62 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates WARC-Block-Digest and WARC-Payload-Digest values, in the usual "sha1:<base32>" format. The digest is
+ * calculated over one or more arrays without combining them, so a record's block digest doesn't need a copy of the
+ * HTTP headers plus content.
+ * 
+ * Not thread-safe, since we reuse one MessageDigest.
+ */
+public class WARCDigester {
+
+    private static final String ALGORITHM = "sha1";
+    private static final char[] BASE32_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+    private final MessageDigest _digest;
+
+    public WARCDigester() {
+        try {
+            _digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Impossible error, SHA-1 isn't supported", e);
+        }
+    }
+
+    /**
+     * @param data
+     * @return digest of the concatenation of all of the arrays in <data>
+     */
+    public String digest(byte[]... data) {
+        for (byte[] bytes : data) {
+            _digest.update(bytes);
+        }
+
+        return ALGORITHM + ":" + base32(_digest.digest());
+    }
+
+    /**
+     * Encode <bytes> using RFC 4648 base32, without padding (a SHA-1 digest is 20 bytes, so it never needs any).
+     */
+    protected static String base32(byte[] bytes) {
+        StringBuilder result = new StringBuilder((bytes.length * 8 + 4) / 5);
+        int buffer = 0;
+        int numBits = 0;
+        for (byte b : bytes) {
+            buffer = (buffer << 8) | (b & 0xFF);
+            numBits += 8;
+            while (numBits >= 5) {
+                numBits -= 5;
+                result.append(BASE32_CHARS[(buffer >> numBits) & 0x1F]);
+            }
+        }
+
+        if (numBits > 0) {
+            result.append(BASE32_CHARS[(buffer << (5 - numBits)) & 0x1F]);
+        }
+
+        return result.toString();
+    }
+}
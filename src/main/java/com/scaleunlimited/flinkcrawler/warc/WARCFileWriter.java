@@ -5,6 +5,7 @@ import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
@@ -32,10 +33,20 @@ import org.slf4j.LoggerFactory;
  * target size for a segment, you can set the `warc.output.segment.size` key in the Hadoop
  * configuration to the number of bytes. (Files may actually be a bit larger than this threshold,
  * since we finish writing the current record before opening a new file.)
+ *
+ * If the `warc.output.gzip.per.record` key is true, then instead of compressing the whole file as
+ * one stream, each record is written as a separate gzip member (which is still a valid .warc.gz
+ * file). We track the compressed offset and length of each record, and when a segment is closed we
+ * write a sorted CDX index for it (see {@link CdxIndex}) next to the segment, with a .cdx extension.
+ * This means a single record can be read with one range request, the same as for CommonCrawl.
  */
 public class WARCFileWriter {
     private static final Logger logger = LoggerFactory.getLogger(WARCFileWriter.class);
     public static final long DEFAULT_MAX_SEGMENT_SIZE = 1_000_000_000L; // 1 GB
+    public static final String GZIP_PER_RECORD_KEY = "warc.output.gzip.per.record";
+
+    private static final String GZIP_EXTENSION = ".warc.gz";
+    private static final String CDX_EXTENSION = ".cdx";
 
     private final Configuration _conf;
     private final CompressionCodec _codec;
@@ -43,10 +54,17 @@ public class WARCFileWriter {
     private final Progressable _progress;
     private final String _extensionFormat;
     private final long _maxSegmentSize;
+    private final boolean _gzipPerRecord;
     private long _segmentsCreated = 0, _segmentsAttempted = 0, _bytesWritten = 0;
     private CountingOutputStream _byteStream;
     private DataOutputStream _dataStream;
 
+    // Only used when we're gzipping each record separately.
+    private Path _segmentPath;
+    private GzipMemberOutputStream _gzipStream;
+    private DataOutputStream _recordStream;
+    private CdxIndex _index;
+
     /**
      * Creates a WARC file, and opens it for writing. If a file with the same name already exists,
      * an attempt number in the filename is incremented until we find a file that doesn't already
@@ -90,9 +108,18 @@ public class WARCFileWriter {
         this._codec = codec;
         this._workOutputPath = workOutputPath;
         this._progress = progress;
-        this._extensionFormat = ".seg-%05d.attempt-%05d.warc"
-                + (codec == null ? "" : codec.getDefaultExtension());
         this._maxSegmentSize = conf.getLong("warc.output.segment.size", DEFAULT_MAX_SEGMENT_SIZE);
+        this._gzipPerRecord = conf.getBoolean(GZIP_PER_RECORD_KEY, false);
+        if (_gzipPerRecord) {
+            this._extensionFormat = ".seg-%05d.attempt-%05d" + GZIP_EXTENSION;
+            this._gzipStream = new GzipMemberOutputStream();
+            this._recordStream = new DataOutputStream(_gzipStream);
+            this._index = new CdxIndex();
+        } else {
+            this._extensionFormat = ".seg-%05d.attempt-%05d.warc"
+                    + (codec == null ? "" : codec.getDefaultExtension());
+        }
+
         createSegment();
     }
 
@@ -140,8 +167,9 @@ public class WARCFileWriter {
                 FSDataOutputStream fsStream = (_progress == null) ? fs.create(path, false)
                         : fs.create(path, _progress);
                 _byteStream = new CountingOutputStream(new BufferedOutputStream(fsStream));
-                _dataStream = new DataOutputStream(
-                        _codec == null ? _byteStream : _codec.createOutputStream(_byteStream));
+                _dataStream = new DataOutputStream((_codec == null || _gzipPerRecord) ? _byteStream
+                        : _codec.createOutputStream(_byteStream));
+                _segmentPath = path;
                 _segmentsCreated++;
                 logger.info("Writing to output file: {}", path);
                 success = true;
@@ -166,10 +194,20 @@ public class WARCFileWriter {
      */
     public void write(WARCRecord record) throws IOException {
         if (_bytesWritten > _maxSegmentSize) {
-            _dataStream.close();
+            closeSegment();
             createSegment();
         }
-        record.write(_dataStream);
+
+        if (_gzipPerRecord) {
+            long offset = _bytesWritten;
+            _gzipStream.start(_byteStream);
+            record.write(_recordStream);
+            _recordStream.flush();
+            _gzipStream.finish();
+            _index.add(record, _segmentPath.getName(), offset, _bytesWritten - offset);
+        } else {
+            record.write(_dataStream);
+        }
     }
 
     /**
@@ -190,7 +228,31 @@ public class WARCFileWriter {
      * @throws IOException
      */
     public void close() throws IOException {
+        closeSegment();
+
+        if (_gzipStream != null) {
+            _gzipStream.close();
+        }
+    }
+
+    /**
+     * Close the current segment file, and write its index if we're gzipping each record.
+     */
+    private void closeSegment() throws IOException {
         _dataStream.close();
+
+        if (_gzipPerRecord) {
+            String name = _segmentPath.getName();
+            Path indexPath = new Path(_segmentPath.getParent(),
+                    name.substring(0, name.length() - GZIP_EXTENSION.length()) + CDX_EXTENSION);
+            FileSystem fs = indexPath.getFileSystem(_conf);
+            try (OutputStream out = new BufferedOutputStream(fs.create(indexPath, true))) {
+                _index.write(out);
+            }
+
+            logger.info("Wrote {} index entries to {}", _index.size(), indexPath);
+            _index.clear();
+        }
     }
 
     private class CountingOutputStream extends FilterOutputStream {
@@ -8,8 +8,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Pattern;
 
 /**
@@ -17,7 +23,7 @@ import java.util.regex.Pattern;
  * (c) 2014 Martin Kleppmann. MIT License.
  * 
  * Immutable implementation of a record in a WARC file. You create a {@link WARCRecord} by parsing
- * it out of a {@link DataInput} stream.
+ * it out of a {@link DataInput} stream, or from header fields and content via a {@link Builder}.
  *
  * The file format is documented in the [ISO
  * Standard](http://bibnum.bnf.fr/warc/WARC_ISO_28500_version1_latestdraft.pdf). In a nutshell, it's
@@ -42,8 +48,21 @@ public class WARCRecord {
     private static final byte[] CRLF_BYTES = {
             13, 10
     };
+    private static final byte[] FIELD_SEPARATOR_BYTES = {
+            ':', ' '
+    };
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+
+    // Most records are written in the same second as the previous one, so we
+    // reuse the last formatted date. Immutable, so it's safe to share between threads.
+    private static volatile FormattedDate _lastFormattedDate = new FormattedDate(0,
+            DATE_FORMATTER.format(Instant.EPOCH));
 
     private final Header _header;
+    private final byte[] _contentPrefix;
     private final byte[] _content;
 
     /**
@@ -55,11 +74,62 @@ public class WARCRecord {
      */
     public WARCRecord(DataInput in) throws IOException {
         _header = readHeader(in);
+        _contentPrefix = EMPTY_BYTES;
         _content = new byte[_header.getContentLength()];
         in.readFully(_content);
         readSeparator(in);
     }
 
+    private WARCRecord(Header header, byte[] contentPrefix, byte[] content) {
+        _header = header;
+        _contentPrefix = contentPrefix;
+        _content = content;
+    }
+
+    /**
+     * Make a new, globally unique WARC-Record-ID (a random UUID URN, in angle brackets). We use
+     * ThreadLocalRandom versus UUID.randomUUID(), which shares one SecureRandom between all
+     * threads.
+     * 
+     * @return record ID
+     */
+    public static String makeRecordID() {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+
+        // Set the version (4) and variant (IETF) bits.
+        long msb = (rand.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (rand.nextLong() & ~(0x3L << 62)) | (0x2L << 62);
+        return "<urn:uuid:" + new UUID(msb, lsb) + ">";
+    }
+
+    /**
+     * Format <timeMillis> as a WARC-Date (UTC, to the second). This is thread-safe.
+     * 
+     * @param timeMillis
+     * @return formatted date
+     */
+    public static String formatDate(long timeMillis) {
+        long seconds = Math.floorDiv(timeMillis, 1000L);
+        FormattedDate lastDate = _lastFormattedDate;
+        if (lastDate._seconds == seconds) {
+            return lastDate._formatted;
+        }
+
+        String formatted = DATE_FORMATTER.format(Instant.ofEpochSecond(seconds));
+        _lastFormattedDate = new FormattedDate(seconds, formatted);
+        return formatted;
+    }
+
+    private static class FormattedDate {
+        private final long _seconds;
+        private final String _formatted;
+
+        public FormattedDate(long seconds, String formatted) {
+            _seconds = seconds;
+            _formatted = formatted;
+        }
+    }
+
     private static Header readHeader(DataInput in) throws IOException {
         String versionLine = readLine(in);
         if (!VERSION_PATTERN.matcher(versionLine).matches()) {
@@ -127,8 +197,34 @@ public class WARCRecord {
      * depends on the type of record (see {@link Header#getRecordType()}). For example, in the case
      * of a `response` type header, the body consists of the full HTTP response returned by the
      * server (HTTP headers followed by the body).
+     * 
+     * If the record was built with a separate content prefix, this returns a new array with the
+     * prefix and content, so use {@link #getContentPrefix()} and {@link #getPayload()} if possible.
      */
     public byte[] getContent() {
+        if (_contentPrefix.length == 0) {
+            return _content;
+        }
+
+        byte[] result = new byte[_contentPrefix.length + _content.length];
+        System.arraycopy(_contentPrefix, 0, result, 0, _contentPrefix.length);
+        System.arraycopy(_content, 0, result, _contentPrefix.length, _content.length);
+        return result;
+    }
+
+    /**
+     * Returns the part of the body that was set separately from the payload when the record was
+     * built (e.g. the HTTP status line and headers of a `response` record), or an empty array.
+     * Records parsed from a {@link DataInput} never have a prefix.
+     */
+    public byte[] getContentPrefix() {
+        return _contentPrefix;
+    }
+
+    /**
+     * Returns the body of the record, minus any content prefix.
+     */
+    public byte[] getPayload() {
         return _content;
     }
 
@@ -144,6 +240,7 @@ public class WARCRecord {
     public void write(DataOutput out) throws IOException {
         _header.write(out);
         out.write(CRLF_BYTES);
+        out.write(_contentPrefix);
         out.write(_content);
         out.write(CRLF_BYTES);
         out.write(CRLF_BYTES);
@@ -347,7 +444,18 @@ public class WARCRecord {
          * @throws IOException
          */
         public void write(DataOutput out) throws IOException {
-            out.write(toString().getBytes("UTF-8"));
+            writeString(out, WARC_VERSION);
+            out.write(CRLF_BYTES);
+            for (Map.Entry<String, String> field : _fields.entrySet()) {
+                writeString(out, field.getKey());
+                out.write(FIELD_SEPARATOR_BYTES);
+                writeString(out, field.getValue());
+                out.write(CRLF_BYTES);
+            }
+        }
+
+        private static void writeString(DataOutput out, String s) throws IOException {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
         }
 
         /**
@@ -368,4 +476,70 @@ public class WARCRecord {
             return buf.toString();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates a {@link WARCRecord} directly from header fields and content, versus formatting the
+     * record and then parsing it back. The content array is used as-is (not copied), so it must not
+     * be modified afterwards. Fields are written in the order they're set, and Content-Length is
+     * always set from the content (including any prefix).
+     */
+    public static class Builder {
+        private final LinkedHashMap<String, String> _fields = new LinkedHashMap<String, String>();
+        private byte[] _contentPrefix = EMPTY_BYTES;
+        private byte[] _content = EMPTY_BYTES;
+
+        public Builder(String recordType) {
+            _fields.put("WARC-Type", recordType);
+        }
+
+        public Builder setTargetURI(String targetURI) {
+            return setField("WARC-Target-URI", targetURI);
+        }
+
+        public Builder setDate(long timeMillis) {
+            return setField("WARC-Date", formatDate(timeMillis));
+        }
+
+        public Builder setRecordID(String recordID) {
+            return setField("WARC-Record-ID", recordID);
+        }
+
+        public Builder setContentType(String contentType) {
+            return setField("Content-Type", contentType);
+        }
+
+        /**
+         * Set <field> to <value>, or remove it if <value> is null.
+         */
+        public Builder setField(String field, String value) {
+            if (value == null) {
+                _fields.remove(field);
+            } else {
+                _fields.put(field, value);
+            }
+
+            return this;
+        }
+
+        public Builder setContent(byte[] content) {
+            return setContent(EMPTY_BYTES, content);
+        }
+
+        /**
+         * Set the record's body to <prefix> followed by <content>, without combining them into one
+         * array. This is how a `response` record holds the HTTP headers and the fetched content.
+         */
+        public Builder setContent(byte[] prefix, byte[] content) {
+            _contentPrefix = prefix;
+            _content = content;
+            return this;
+        }
+
+        public WARCRecord build() {
+            LinkedHashMap<String, String> fields = new LinkedHashMap<String, String>(_fields);
+            fields.remove("Content-Length");
+            fields.put("Content-Length", Integer.toString(_contentPrefix.length + _content.length));
+            return new WARCRecord(new Header(fields), _contentPrefix, _content);
+        }
+    }
+}
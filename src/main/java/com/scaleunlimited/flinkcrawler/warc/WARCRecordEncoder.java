@@ -0,0 +1,48 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Serializes WARC records into byte arrays. If compression is on, each record is a separate gzip member (the
+ * standard .warc.gz format), so it can be decompressed on its own. The buffer and Deflater are reused between
+ * records, so this class isn't thread-safe. Call {@link #close()} to release the Deflater.
+ */
+public class WARCRecordEncoder implements Closeable {
+
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream(64 * 1024);
+    private final DataOutputStream _dataStream;
+    private final GzipMemberOutputStream _gzipStream;
+
+    public WARCRecordEncoder(boolean compress) {
+        if (compress) {
+            _gzipStream = new GzipMemberOutputStream();
+            _dataStream = new DataOutputStream(_gzipStream);
+        } else {
+            _gzipStream = null;
+            _dataStream = new DataOutputStream(_bytes);
+        }
+    }
+
+    public EncodedWARCRecord encode(WARCRecord record) throws IOException {
+        _bytes.reset();
+        if (_gzipStream != null) {
+            _gzipStream.start(_bytes);
+            record.write(_dataStream);
+            _gzipStream.finish();
+        } else {
+            record.write(_dataStream);
+        }
+
+        return new EncodedWARCRecord(_bytes.toByteArray(), CdxIndex.makeLinePrefix(record));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_gzipStream != null) {
+            _gzipStream.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.hadoop.io.NullWritable;
+
+/**
+ * Writes WARC records to files in a directory (local, HDFS, or S3 via Flink's S3 filesystem), along with a CDX index
+ * for each file, using a {@link WARCSinkOperator}. Part files are only committed when the checkpoint that contains
+ * them completes (or when the crawl ends normally), so only complete, committed files are ever visible. Records may
+ * still be duplicated across part files after recovery, since replayed records are written again. This means
+ * checkpointing has to be enabled.
+ */
+public class WARCSinkBuilder {
+
+    public static final long DEFAULT_ROLLOVER_INTERVAL = TimeUnit.MINUTES.toMillis(60);
+    public static final long DEFAULT_INACTIVITY_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_BUCKET_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    public static final String DEFAULT_PART_PREFIX = "part";
+
+    private String _basePath;
+    private String _partPrefix = DEFAULT_PART_PREFIX;
+    private boolean _compress = true;
+    private long _maxPartSize = WARCFileWriter.DEFAULT_MAX_SEGMENT_SIZE;
+    private long _rolloverInterval = DEFAULT_ROLLOVER_INTERVAL;
+    private long _inactivityInterval = DEFAULT_INACTIVITY_INTERVAL;
+    private long _bucketCheckInterval = DEFAULT_BUCKET_CHECK_INTERVAL;
+    private boolean _rollOnCheckpoint = false;
+    private String _userAgentString;
+
+    public WARCSinkBuilder(String basePath) {
+        _basePath = basePath;
+    }
+
+    public WARCSinkBuilder setPartPrefix(String partPrefix) {
+        _partPrefix = partPrefix;
+        return this;
+    }
+
+    /**
+     * @param compress if true, each record is a separate gzip member (standard .warc.gz format)
+     * @return this builder
+     */
+    public WARCSinkBuilder setCompress(boolean compress) {
+        _compress = compress;
+        return this;
+    }
+
+    public WARCSinkBuilder setMaxPartSize(long maxPartSize) {
+        _maxPartSize = maxPartSize;
+        return this;
+    }
+
+    /**
+     * @param rolloverInterval max time (in milliseconds) that a part file stays open
+     * @return this builder
+     */
+    public WARCSinkBuilder setRolloverInterval(long rolloverInterval) {
+        _rolloverInterval = rolloverInterval;
+        return this;
+    }
+
+    /**
+     * @param inactivityInterval time (in milliseconds) without any new records, after which the part file is closed
+     * @return this builder
+     */
+    public WARCSinkBuilder setInactivityInterval(long inactivityInterval) {
+        _inactivityInterval = inactivityInterval;
+        return this;
+    }
+
+    /**
+     * @param bucketCheckInterval how often (in milliseconds) to check the time-based rolling conditions
+     * @return this builder
+     */
+    public WARCSinkBuilder setBucketCheckInterval(long bucketCheckInterval) {
+        _bucketCheckInterval = bucketCheckInterval;
+        return this;
+    }
+
+    /**
+     * @param rollOnCheckpoint if true, a new part file is started after every checkpoint, so that records are
+     *        visible (in a finished file) as soon as the checkpoint completes.
+     * @return this builder
+     */
+    public WARCSinkBuilder setRollOnCheckpoint(boolean rollOnCheckpoint) {
+        _rollOnCheckpoint = rollOnCheckpoint;
+        return this;
+    }
+
+    /**
+     * @param userAgentString user agent to record in the warcinfo record at the start of each file
+     * @return this builder
+     */
+    public WARCSinkBuilder setUserAgentString(String userAgentString) {
+        _userAgentString = userAgentString;
+        return this;
+    }
+
+    public WARCSinkOperator makeOperator() {
+        return new WARCSinkOperator(_basePath, _partPrefix, _compress, _maxPartSize,
+                _rolloverInterval, _inactivityInterval, _bucketCheckInterval, _rollOnCheckpoint,
+                _userAgentString);
+    }
+
+    /**
+     * Records are serialized (and gzipped) by an {@link EncodeWARCRecordFunction} that's chained to whatever creates
+     * them, and the sink runs in its own task, so its thread never blocks on compression.
+     */
+    public SingleOutputStreamOperator<Void> addSink(
+            DataStream<Tuple2<NullWritable, WARCWritable>> records) {
+        return records.flatMap(new EncodeWARCRecordFunction(_compress))
+                .name("Encode WARC records")
+                .transform("Content Sink", BasicTypeInfo.VOID_TYPE_INFO, makeOperator());
+    }
+}
@@ -0,0 +1,464 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeutils.base.LongSerializer;
+import org.apache.flink.api.common.typeutils.base.array.BytePrimitiveArraySerializer;
+import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
+import org.apache.flink.core.fs.RecoverableFsDataOutputStream;
+import org.apache.flink.core.fs.RecoverableWriter;
+import org.apache.flink.core.fs.RecoverableWriter.CommitRecoverable;
+import org.apache.flink.core.fs.RecoverableWriter.ResumeRecoverable;
+import org.apache.flink.core.io.SimpleVersionedSerialization;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.runtime.state.StateInitializationContext;
+import org.apache.flink.runtime.state.StateSnapshotContext;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes WARC records to part files in a directory (local, HDFS, or S3 via Flink's S3 filesystem), with a CDX index
+ * for each part file. We use Flink's RecoverableWriter, so files only become visible (are committed) once the
+ * checkpoint that contains them has completed, and after a failure we never wind up with partial files. We don't
+ * prevent duplicates, though: the crawl checkpoints in AT_LEAST_ONCE mode, so after recovery records that were
+ * replayed can show up again in a later part file. Files are rolled based on size, age, inactivity and
+ * (optionally) every checkpoint.
+ *
+ * This is an operator, versus a sink function, because we need to know when the input has ended normally (close()
+ * versus dispose()), so that we can commit the current part file. Otherwise everything written since the last
+ * checkpoint of a finished crawl would never be committed.
+ *
+ * Records arrive already serialized (and gzipped, one member per record) by {@link EncodeWARCRecordFunction}, which
+ * is chained to whatever creates the records. This operator starts a new chain, so compression never blocks the
+ * sink's thread, which only appends bytes to the part file. Only the compressed bytes are sent between the two tasks.
+ *
+ * Each part file starts with a warcinfo record, which describes the crawler and the file.
+ *
+ * The CDX lines for the current part file are kept in memory (and in checkpointed state) until the file is rolled,
+ * which is when they're sorted and written.
+ */
+@SuppressWarnings("serial")
+public class WARCSinkOperator extends AbstractStreamOperator<Void>
+        implements OneInputStreamOperator<EncodedWARCRecord, Void>,
+        ProcessingTimeCallback {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WARCSinkOperator.class);
+
+    private static final int STATE_VERSION = 1;
+
+    private static final String SOFTWARE = "flink-crawler";
+    private static final String CRLF = "\r\n";
+
+    private final String _basePath;
+    private final String _partPrefix;
+    private final boolean _compress;
+    private final long _maxPartSize;
+    private final long _rolloverInterval;
+    private final long _inactivityInterval;
+    private final long _checkInterval;
+    private final boolean _rollOnCheckpoint;
+    private final String _userAgentString;
+
+    private transient RecoverableWriter _writer;
+    private transient ListState<byte[]> _partState;
+    private transient ListState<Long> _partCounterState;
+    private transient int _subtaskIndex;
+    private transient long _partCounter;
+
+    private transient PartFile _curPart;
+
+    // Files that have been rolled since the last checkpoint, and files waiting for their
+    // checkpoint to complete.
+    private transient List<CommitRecoverable> _pendingFiles;
+    private transient TreeMap<Long, List<CommitRecoverable>> _pendingPerCheckpoint;
+
+    // Only used for the warcinfo record at the start of each part file.
+    private transient WARCRecordEncoder _warcInfoEncoder;
+
+    /**
+     * The part file we're currently writing to. Writes are buffered, and we keep track of the position (for the CDX
+     * index) ourselves.
+     */
+    private static class PartFile extends OutputStream {
+        private final String _name;
+        private final RecoverableFsDataOutputStream _stream;
+        private final BufferedOutputStream _bufferedStream;
+        private final CdxIndex _index = new CdxIndex();
+        private final long _creationTime;
+
+        private long _pos;
+        private long _lastUpdateTime;
+
+        public PartFile(String name, RecoverableFsDataOutputStream stream, long creationTime)
+                throws IOException {
+            _name = name;
+            _stream = stream;
+            _bufferedStream = new BufferedOutputStream(stream, 64 * 1024);
+            _creationTime = creationTime;
+            _lastUpdateTime = creationTime;
+            _pos = stream.getPos();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _bufferedStream.write(b);
+            _pos++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _bufferedStream.write(b, off, len);
+            _pos += len;
+        }
+
+        /**
+         * Write buffered data to the underlying stream (which doesn't flush that stream).
+         */
+        @Override
+        public void flush() throws IOException {
+            _bufferedStream.flush();
+        }
+    }
+
+    public WARCSinkOperator(String basePath, String partPrefix, boolean compress,
+            long maxPartSize, long rolloverInterval, long inactivityInterval, long checkInterval,
+            boolean rollOnCheckpoint, String userAgentString) {
+        _basePath = basePath;
+        _partPrefix = partPrefix;
+        _compress = compress;
+        _maxPartSize = maxPartSize;
+        _rolloverInterval = rolloverInterval;
+        _inactivityInterval = inactivityInterval;
+        _checkInterval = checkInterval;
+        _rollOnCheckpoint = rollOnCheckpoint;
+        _userAgentString = userAgentString;
+
+        // Run in a separate task from the encoder.
+        setChainingStrategy(ChainingStrategy.HEAD);
+    }
+
+    @Override
+    public void initializeState(StateInitializationContext context) throws Exception {
+        super.initializeState(context);
+
+        _subtaskIndex = getRuntimeContext().getIndexOfThisSubtask();
+        _writer = FileSystem.get(new Path(_basePath).toUri()).createRecoverableWriter();
+        _pendingFiles = new ArrayList<>();
+        _pendingPerCheckpoint = new TreeMap<>();
+
+        _partState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("warc-part-state", BytePrimitiveArraySerializer.INSTANCE));
+
+        // Union state, so that after rescaling no subtask re-uses a part file name.
+        _partCounterState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("warc-part-counter", LongSerializer.INSTANCE));
+
+        _partCounter = 0;
+        if (context.isRestored()) {
+            for (Long partCounter : _partCounterState.get()) {
+                _partCounter = Math.max(_partCounter, partCounter);
+            }
+
+            for (byte[] state : _partState.get()) {
+                restoreState(state);
+            }
+        }
+    }
+
+    @Override
+    public void open() throws Exception {
+        super.open();
+
+        _warcInfoEncoder = new WARCRecordEncoder(_compress);
+
+        long now = getProcessingTimeService().getCurrentProcessingTime();
+        getProcessingTimeService().registerTimer(now + _checkInterval, this);
+    }
+
+    @Override
+    public void processElement(StreamRecord<EncodedWARCRecord> element) throws Exception {
+        long now = getProcessingTimeService().getCurrentProcessingTime();
+        if (_curPart == null) {
+            openPart(now);
+        }
+
+        writeRecord(element.getValue());
+        _curPart._lastUpdateTime = now;
+
+        if (_curPart._pos >= _maxPartSize) {
+            rollPart();
+        }
+    }
+
+    @Override
+    public void onProcessingTime(long timestamp) throws Exception {
+        if ((_curPart != null) && ((timestamp - _curPart._creationTime >= _rolloverInterval)
+                || (timestamp - _curPart._lastUpdateTime >= _inactivityInterval))) {
+            rollPart();
+        }
+
+        getProcessingTimeService().registerTimer(timestamp + _checkInterval, this);
+    }
+
+    @Override
+    public void snapshotState(StateSnapshotContext context) throws Exception {
+        super.snapshotState(context);
+
+        if ((_curPart != null) && _rollOnCheckpoint) {
+            rollPart();
+        }
+
+        _pendingPerCheckpoint.put(context.getCheckpointId(), _pendingFiles);
+        _pendingFiles = new ArrayList<>();
+
+        _partState.clear();
+        _partState.add(serializeState());
+        _partCounterState.clear();
+        _partCounterState.add(_partCounter);
+    }
+
+    @Override
+    public void notifyCheckpointComplete(long checkpointId) throws Exception {
+        super.notifyCheckpointComplete(checkpointId);
+
+        Map<Long, List<CommitRecoverable>> completed = _pendingPerCheckpoint.headMap(checkpointId,
+                true);
+        for (List<CommitRecoverable> files : completed.values()) {
+            for (CommitRecoverable file : files) {
+                _writer.recoverForCommit(file).commit();
+            }
+        }
+
+        completed.clear();
+    }
+
+    /**
+     * Only called when our input has ended normally (e.g. the crawl is done), so we can commit
+     * everything we've written.
+     */
+    @Override
+    public void close() throws Exception {
+        super.close();
+
+        if (_curPart != null) {
+            rollPart();
+        }
+
+        for (List<CommitRecoverable> files : _pendingPerCheckpoint.values()) {
+            for (CommitRecoverable file : files) {
+                _writer.recoverForCommit(file).commit();
+            }
+        }
+
+        for (CommitRecoverable file : _pendingFiles) {
+            _writer.recoverForCommit(file).commit();
+        }
+
+        _pendingPerCheckpoint.clear();
+        _pendingFiles.clear();
+    }
+
+    /**
+     * Called after close(), and also when the task fails or is cancelled. In that case we leave the
+     * current part file uncommitted, and it's recovered from the last checkpoint.
+     */
+    @Override
+    public void dispose() throws Exception {
+        super.dispose();
+
+        if (_curPart != null) {
+            try {
+                _curPart._stream.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing WARC part file " + _curPart._name, e);
+            }
+
+            _curPart = null;
+        }
+
+        if (_warcInfoEncoder != null) {
+            _warcInfoEncoder.close();
+            _warcInfoEncoder = null;
+        }
+    }
+
+    private void openPart(long now) throws IOException {
+        String name = String.format("%s-%d-%d%s", _partPrefix, _subtaskIndex, _partCounter++,
+                _compress ? ".warc.gz" : ".warc");
+        _curPart = new PartFile(name, _writer.open(new Path(_basePath, name)), now);
+        writeRecord(_warcInfoEncoder.encode(makeWarcInfoRecord(name, now)));
+    }
+
+    private WARCRecord makeWarcInfoRecord(String filename, long now) {
+        StringBuilder content = new StringBuilder();
+        content.append("software: ").append(SOFTWARE).append(CRLF);
+        if (_userAgentString != null) {
+            content.append("http-header-user-agent: ").append(_userAgentString).append(CRLF);
+        }
+
+        content.append("format: WARC File Format 1.0").append(CRLF);
+        content.append(
+                "conformsTo: http://bibnum.bnf.fr/WARC/WARC_ISO_28500_version1_latestdraft.pdf")
+                .append(CRLF);
+
+        return new WARCRecord.Builder("warcinfo")
+                .setDate(now)
+                .setRecordID(WARCRecord.makeRecordID())
+                .setField("WARC-Filename", filename)
+                .setContentType("application/warc-fields")
+                .setContent(content.toString().getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private void writeRecord(EncodedWARCRecord record) throws IOException {
+        long offset = _curPart._pos;
+        byte[] data = record.getData();
+        _curPart.write(data, 0, data.length);
+
+        if (record.getCdxLinePrefix() != null) {
+            _curPart._index.add(record.getCdxLinePrefix(), _curPart._name, offset, data.length);
+        }
+    }
+
+    /**
+     * Close the current part file, and write its CDX index. Both files are committed when the next
+     * checkpoint completes.
+     */
+    private void rollPart() throws IOException {
+        _curPart.flush();
+        _pendingFiles.add(_curPart._stream.closeForCommit().getRecoverable());
+
+        CommitRecoverable index = writeIndex(_curPart._name, _curPart._index);
+        if (index != null) {
+            _pendingFiles.add(index);
+        }
+
+        _curPart = null;
+    }
+
+    private CommitRecoverable writeIndex(String partName, CdxIndex index) throws IOException {
+        if (index.size() == 0) {
+            return null;
+        }
+
+        String indexName = partName.replaceFirst("\\.warc(\\.gz)?$", "") + ".cdx";
+        RecoverableFsDataOutputStream indexStream = _writer.open(new Path(_basePath, indexName));
+        BufferedOutputStream out = new BufferedOutputStream(indexStream, 64 * 1024);
+        index.write(out);
+        out.flush();
+        return indexStream.closeForCommit().getRecoverable();
+    }
+
+    private byte[] serializeState() throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(1024);
+        out.writeInt(STATE_VERSION);
+
+        out.writeBoolean(_curPart != null);
+        if (_curPart != null) {
+            _curPart.flush();
+            ResumeRecoverable resumable = _curPart._stream.persist();
+            out.writeUTF(_curPart._name);
+            out.writeLong(_curPart._creationTime);
+            writeBytes(out, SimpleVersionedSerialization.writeVersionAndSerialize(
+                    _writer.getResumeRecoverableSerializer(), resumable));
+
+            List<String> lines = _curPart._index.getLines();
+            out.writeInt(lines.size());
+            for (String line : lines) {
+                writeBytes(out, line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        out.writeInt(_pendingPerCheckpoint.size());
+        for (Map.Entry<Long, List<CommitRecoverable>> entry : _pendingPerCheckpoint.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (CommitRecoverable file : entry.getValue()) {
+                writeBytes(out, SimpleVersionedSerialization.writeVersionAndSerialize(
+                        _writer.getCommitRecoverableSerializer(), file));
+            }
+        }
+
+        return out.getCopyOfBuffer();
+    }
+
+    /**
+     * Everything in restored state is from a completed checkpoint, so we can commit all of the pending files. An
+     * in-progress part file is truncated to where it was when the checkpoint was taken. If the file system supports
+     * it we continue writing to that file (as Flink's StreamingFileSink does), otherwise it's committed along with
+     * its index.
+     */
+    private void restoreState(byte[] state) throws IOException {
+        DataInputDeserializer in = new DataInputDeserializer(state);
+        int version = in.readInt();
+        if (version != STATE_VERSION) {
+            throw new IOException("Unknown WARC sink state version: " + version);
+        }
+
+        if (in.readBoolean()) {
+            String name = in.readUTF();
+            long creationTime = in.readLong();
+            ResumeRecoverable resumable = SimpleVersionedSerialization.readVersionAndDeSerialize(
+                    _writer.getResumeRecoverableSerializer(), readBytes(in));
+
+            CdxIndex index = new CdxIndex();
+            int numLines = in.readInt();
+            for (int i = 0; i < numLines; i++) {
+                index.addLine(new String(readBytes(in), StandardCharsets.UTF_8));
+            }
+
+            // After scaling down we can get more than one in-progress file, but we only
+            // write to one of them.
+            if (_writer.supportsResume() && (_curPart == null)) {
+                _curPart = new PartFile(name, _writer.recover(resumable), creationTime);
+                for (String line : index.getLines()) {
+                    _curPart._index.addLine(line);
+                }
+            } else {
+                _writer.recoverForCommit(resumable).commitAfterRecovery();
+
+                CommitRecoverable indexFile = writeIndex(name, index);
+                if (indexFile != null) {
+                    _writer.recoverForCommit(indexFile).commit();
+                }
+            }
+        }
+
+        int numCheckpoints = in.readInt();
+        for (int i = 0; i < numCheckpoints; i++) {
+            in.readLong();
+            int numFiles = in.readInt();
+            for (int j = 0; j < numFiles; j++) {
+                CommitRecoverable file = SimpleVersionedSerialization.readVersionAndDeSerialize(
+                        _writer.getCommitRecoverableSerializer(), readBytes(in));
+                _writer.recoverForCommit(file).commitAfterRecovery();
+            }
+        }
+    }
+
+    private static void writeBytes(DataOutputSerializer out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputDeserializer in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class CdxSegmentTest {
+
+    private static final String[] LINES = new String[] {
+            "com,bar)/ 20170429211342 {\"url\": \"http://bar.com/\", \"mime\": \"text/html\", \"status\": \"200\", \"digest\": \"AAAA\", \"length\": \"1000\", \"offset\": \"5000\", \"filename\": \"crawl-data/bar.warc.gz\"}",
+            "com,foo)/ 20170429211342 {\"url\": \"http://foo.com/\", \"mime\": \"text/html\", \"status\": \"301\", \"length\": \"100\", \"offset\": \"200\", \"filename\": \"crawl-data/foo-1.warc.gz\"}",
+            "com,foo)/ 20170430112233 {\"url\": \"https://foo.com/\", \"mime\": \"text/html\", \"status\": \"200\", \"length\": \"101\", \"offset\": \"201\", \"filename\": \"crawl-data/foo-2.warc.gz\"}",
+            "com,foo)/a 20170429211342 {\"url\": \"http://foo.com/a\", \"mime\": \"application/pdf\", \"status\": \"200\", \"length\": \"102\", \"offset\": \"202\", \"filename\": \"crawl-data/foo-3.warc.gz\"}",
+            "com,foo)/a-b 20170429211342 {\"url\": \"http://foo.com/a-b?q=\\\"x\\\"\", \"mime\": \"text/html\", \"status\": \"404\", \"length\": \"103\", \"offset\": \"203\", \"filename\": \"crawl-data/foo-4.warc.gz\"}",
+            "org,zoo)/ 20170429211342 {\"url\": \"http://zoo.org/\", \"mime\": \"text/html\", \"status\": \"200\", \"length\": \"104\", \"offset\": \"204\", \"filename\": \"crawl-data/zoo.warc.gz\"}"
+    };
+
+    @Test
+    public void testGetEntries() throws Exception {
+        CdxSegment segment = CdxSegment.parse(makeGzippedSegment(LINES));
+        assertEquals(LINES.length, segment.size());
+
+        List<CdxEntry> entries = segment.getEntries("com,foo)/");
+        assertEquals(2, entries.size());
+
+        CdxEntry entry = entries.get(0);
+        assertEquals("http://foo.com/", entry.getUrl());
+        assertEquals(20170429211342L, entry.getTimestamp());
+        assertEquals(301, entry.getStatus());
+        assertEquals("text/html", entry.getMime());
+        assertEquals("crawl-data/foo-1.warc.gz", entry.getFilename());
+        assertEquals(200, entry.getOffset());
+        assertEquals(100, entry.getLength());
+
+        assertEquals("https://foo.com/", entries.get(1).getUrl());
+        assertEquals(20170430112233L, entries.get(1).getTimestamp());
+
+        // Keys that are prefixes of other keys.
+        assertEquals(1, segment.getEntries("com,foo)/a").size());
+        assertEquals("application/pdf", segment.getEntries("com,foo)/a").get(0).getMime());
+        assertEquals("http://foo.com/a-b?q=\"x\"", segment.getEntries("com,foo)/a-b").get(0).getUrl());
+
+        // First and last lines
+        assertEquals(1000, segment.getEntries("com,bar)/").get(0).getLength());
+        assertEquals("crawl-data/zoo.warc.gz", segment.getEntries("org,zoo)/").get(0).getFilename());
+
+        // Missing keys, before, between and after lines.
+        assertTrue(segment.getEntries("com,aaa)/").isEmpty());
+        assertTrue(segment.getEntries("com,foo)/b").isEmpty());
+        assertTrue(segment.getEntries("zzz,zoo)/").isEmpty());
+    }
+
+    @Test
+    public void testInvalidLines() throws Exception {
+        try {
+            new CdxSegment("com,foo)/\n".getBytes(StandardCharsets.UTF_8));
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // We only find out about bad JSON when we need the entry.
+        CdxSegment segment = CdxSegment.parse(makeGzippedSegment(new String[] {
+                "com,foo)/ 20170429211342 {\"url\": \"http://foo.com/\", \"status\": \"200\"}"
+        }));
+
+        try {
+            segment.getEntries("com,foo)/");
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] makeGzippedSegment(String[] lines) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) {
+            for (String line : lines) {
+                gzos.write(line.getBytes(StandardCharsets.UTF_8));
+                gzos.write('\n');
+            }
+        }
+
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,52 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+
+import crawlercommons.fetcher.FetchedResult;
+import crawlercommons.fetcher.http.UserAgent;
+
+public class CommonCrawlFetcherTest {
+
+    private static final String CRAWL_ID = "2017-22";
+
+    @Test
+    public void testFetchingFromLocalMirror() throws Exception {
+        File testDir = new File("target/CommonCrawlFetcherTest/");
+        FileUtils.deleteDirectory(testDir);
+        File mirrorDir = new File(testDir, "mirror");
+        File cacheDir = new File(testDir, "cache");
+
+        // Small segments, so we have lots of them.
+        final int numPages = 250;
+        List<String> urls = CommonCrawlMirror.generate(mirrorDir, CRAWL_ID, numPages, 20);
+
+        CommonCrawlFetcher fetcher = (CommonCrawlFetcher) new CommonCrawlFetcherBuilder(1,
+                new UserAgent("unused-common-crawl-user-agent", "", ""), CRAWL_ID,
+                cacheDir.getAbsolutePath(), mirrorDir.getAbsolutePath()).build();
+
+        try {
+            for (int i = 0; i < numPages; i += 7) {
+                FetchedResult result = fetcher.get(urls.get(i), null);
+                assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+                assertEquals("text/html", result.getContentType());
+                assertEquals(CommonCrawlMirror.makeHtml(i, numPages),
+                        new String(result.getContent(), StandardCharsets.UTF_8));
+            }
+
+            assertEquals(HttpStatus.SC_NOT_FOUND,
+                    fetcher.get("http://domain0.com/missing.html", null).getStatusCode());
+            assertEquals(HttpStatus.SC_NOT_FOUND,
+                    fetcher.get("http://aaa.com/", null).getStatusCode());
+        } finally {
+            fetcher.close();
+        }
+    }
+}
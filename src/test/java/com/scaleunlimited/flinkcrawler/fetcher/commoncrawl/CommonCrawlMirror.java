@@ -0,0 +1,198 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a small local mirror of the CommonCrawl bucket, for use with {@link LocalCommonCrawlStorage}. We create
+ * <numPages> HTML pages spread over a number of domains, where each page links to a few other pages. Each page is a
+ * gzipped WARC response record in one of the WARC files, and has a line in the (sorted, segmented) cdx-00000.gz
+ * file, and every segment has a line in cluster.idx.
+ */
+public class CommonCrawlMirror {
+
+    public static final String TIMESTAMP = "20170522120000";
+    public static final String WARC_DATE = "2017-05-22T12:00:00Z";
+
+    private static final int PAGES_PER_DOMAIN = 100;
+    private static final int PAGES_PER_WARC_FILE = 1000;
+    private static final int LINKS_PER_PAGE = 5;
+
+    private static final String CRLF = "\r\n";
+
+    private static class CdxLine {
+        private String _url;
+        private String _warcFile;
+        private long _offset;
+        private long _length;
+    }
+
+    /**
+     * Create the mirror in <rootDir>.
+     *
+     * @param rootDir
+     * @param crawlId
+     * @param numPages
+     * @param linesPerSegment
+     *            number of CDX lines per segment (CommonCrawl uses 3000)
+     * @return list of the URLs of all pages.
+     * @throws IOException
+     */
+    public static List<String> generate(File rootDir, String crawlId, int numPages,
+            int linesPerSegment) throws IOException {
+        List<String> urls = new ArrayList<>(numPages);
+        for (int i = 0; i < numPages; i++) {
+            urls.add(makeUrl(i));
+        }
+
+        // Write the WARC files, and collect the CDX lines sorted by key.
+        TreeMap<String, CdxLine> cdxLines = new TreeMap<>();
+        for (int fileIndex = 0; fileIndex * PAGES_PER_WARC_FILE < numPages; fileIndex++) {
+            String warcPath = String.format(
+                    "crawl-data/CC-MAIN-%s/segments/0/warc/fixture-%05d.warc.gz", crawlId, fileIndex);
+            File warcFile = new File(rootDir, warcPath);
+            warcFile.getParentFile().mkdirs();
+
+            try (FileOutputStream fos = new FileOutputStream(warcFile)) {
+                long offset = 0;
+                int endPage = Math.min(numPages, (fileIndex + 1) * PAGES_PER_WARC_FILE);
+                for (int i = fileIndex * PAGES_PER_WARC_FILE; i < endPage; i++) {
+                    byte[] record = gzip(makeWarcRecord(urls.get(i), makeHtml(i, numPages)));
+                    fos.write(record);
+
+                    CdxLine line = new CdxLine();
+                    line._url = urls.get(i);
+                    line._warcFile = warcPath;
+                    line._offset = offset;
+                    line._length = record.length;
+                    cdxLines.put(CommonCrawlUrls.convertToIndexFormat(new URL(urls.get(i))), line);
+
+                    offset += record.length;
+                }
+            }
+        }
+
+        // Write the CDX file, with one gzip member per segment, and the cluster.idx file
+        // that has the first key of each segment.
+        File indexDir = new File(rootDir, S3Utils.makeS3FilePath(crawlId, ""));
+        indexDir.mkdirs();
+
+        try (OutputStream cdxOut = new FileOutputStream(new File(indexDir, "cdx-00000.gz"));
+                Writer idxOut = new OutputStreamWriter(
+                        new FileOutputStream(new File(indexDir, "cluster.idx")),
+                        StandardCharsets.UTF_8)) {
+            long segmentOffset = 0;
+            int segmentId = 0;
+            StringBuilder segment = new StringBuilder();
+            String firstKey = null;
+            int numLines = 0;
+
+            for (Map.Entry<String, CdxLine> entry : cdxLines.entrySet()) {
+                if (firstKey == null) {
+                    firstKey = entry.getKey();
+                }
+
+                CdxLine line = entry.getValue();
+                segment.append(String.format(
+                        "%s %s {\"url\": \"%s\", \"mime\": \"text/html\", \"status\": \"200\", \"length\": \"%d\", \"offset\": \"%d\", \"filename\": \"%s\"}\n",
+                        entry.getKey(), TIMESTAMP, line._url, line._length, line._offset,
+                        line._warcFile));
+
+                if ((++numLines == linesPerSegment) || (entry.getKey().equals(cdxLines.lastKey()))) {
+                    byte[] segmentData = gzip(segment.toString().getBytes(StandardCharsets.UTF_8));
+                    cdxOut.write(segmentData);
+                    idxOut.write(String.format("%s %s\tcdx-00000.gz\t%d\t%d\t%d\n", firstKey,
+                            TIMESTAMP, segmentOffset, segmentData.length, segmentId));
+
+                    segmentOffset += segmentData.length;
+                    segmentId++;
+                    segment.setLength(0);
+                    firstKey = null;
+                    numLines = 0;
+                }
+            }
+        }
+
+        return urls;
+    }
+
+    public static String makeUrl(int pageIndex) {
+        return String.format("http://domain%d.com/page%d.html", pageIndex / PAGES_PER_DOMAIN,
+                pageIndex);
+    }
+
+    public static String makeHtml(int pageIndex, int numPages) {
+        StringBuilder result = new StringBuilder();
+        result.append("<html><head><title>Page ");
+        result.append(pageIndex);
+        result.append("</title></head><body><p>This is page ");
+        result.append(pageIndex);
+        result.append(" of the CommonCrawl fixture.</p>\n");
+        for (int i = 1; i <= LINKS_PER_PAGE; i++) {
+            String url = makeUrl((int) ((pageIndex * 31L + i * 7919L) % numPages));
+            result.append(String.format("<a href=\"%s\">link %d</a>\n", url, i));
+        }
+
+        result.append("</body></html>\n");
+        return result.toString();
+    }
+
+    static byte[] makeWarcRecord(String url, String html) {
+        byte[] content = html.getBytes(StandardCharsets.UTF_8);
+        String httpHeaders = "HTTP/1.1 200 OK" + CRLF
+                + "Content-Type: text/html" + CRLF
+                + "Content-Length: " + content.length + CRLF
+                + CRLF;
+        byte[] httpHeaderBytes = httpHeaders.getBytes(StandardCharsets.UTF_8);
+
+        String warcHeaders = "WARC/1.0" + CRLF
+                + "WARC-Type: response" + CRLF
+                + "WARC-Date: " + WARC_DATE + CRLF
+                + "WARC-Target-URI: " + url + CRLF
+                + "WARC-IP-Address: 10.0.0.1" + CRLF
+                + "Content-Type: application/http; msgtype=response" + CRLF
+                + "Content-Length: " + (httpHeaderBytes.length + content.length) + CRLF
+                + CRLF;
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] warcHeaderBytes = warcHeaders.getBytes(StandardCharsets.UTF_8);
+        result.write(warcHeaderBytes, 0, warcHeaderBytes.length);
+        result.write(httpHeaderBytes, 0, httpHeaderBytes.length);
+        result.write(content, 0, content.length);
+
+        byte[] trailer = (CRLF + CRLF).getBytes(StandardCharsets.UTF_8);
+        result.write(trailer, 0, trailer.length);
+        return result.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) {
+            gzos.write(data);
+        }
+
+        return bos.toByteArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: CommonCrawlMirror <output dir> <crawl id> <number of pages>");
+            System.exit(-1);
+        }
+
+        List<String> urls = generate(new File(args[0]), args[1], Integer.parseInt(args[2]), 3000);
+        System.out.println(String.format("Generated %,d pages in %s", urls.size(), args[0]));
+    }
+}
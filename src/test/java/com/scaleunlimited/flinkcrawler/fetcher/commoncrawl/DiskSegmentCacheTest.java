@@ -0,0 +1,150 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskSegmentCacheTest {
+
+    private File _testDir;
+
+    @Before
+    public void setUp() throws Exception {
+        _testDir = new File("target/DiskSegmentCacheTest/");
+        FileUtils.deleteDirectory(_testDir);
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        DiskSegmentCache cache = new DiskSegmentCache(_testDir, "2017-22", 1000);
+        assertNull(cache.get(1, 3));
+
+        byte[] data = new byte[] {1, 2, 3};
+        cache.put(1, data);
+        assertArrayEquals(data, cache.get(1, 3));
+        assertEquals(3, cache.getCacheSize());
+
+        // Wrong size means we ignore (and get rid of) the file.
+        assertNull(cache.get(1, 4));
+        assertNull(cache.get(1, 3));
+        assertEquals(0, cache.getCacheSize());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        DiskSegmentCache cache = new DiskSegmentCache(_testDir, "2017-22", 1000);
+        cache.put(1, new byte[10]);
+
+        // Another instance (e.g. after a restart, or in another subtask) sees the same segments,
+        // but only for the same crawl id.
+        cache = new DiskSegmentCache(_testDir, "2017-22", 1000);
+        assertEquals(10, cache.getCacheSize());
+        assertNotNull(cache.get(1, 10));
+
+        cache = new DiskSegmentCache(_testDir, "2017-26", 1000);
+        assertNull(cache.get(1, 10));
+    }
+
+    @Test
+    public void testReplacingSegment() throws Exception {
+        DiskSegmentCache cache = new DiskSegmentCache(_testDir, "2017-22", 1000);
+        cache.put(1, new byte[10]);
+
+        // Another put of the same segment (e.g. by another fetcher) replaces the file, so it
+        // doesn't add to the size.
+        cache.put(1, new byte[10]);
+        assertEquals(10, cache.getCacheSize());
+        assertNotNull(cache.get(1, 10));
+    }
+
+    @Test
+    public void testDeletingStaleTempFiles() throws Exception {
+        ManualClock clock = new ManualClock();
+        File cacheDir = new File(_testDir, "2017-22");
+        cacheDir.mkdirs();
+
+        // A put that crashed a while ago, and one that could still be in progress.
+        File staleFile = new File(cacheDir, "segment-11234.tmp");
+        FileUtils.writeByteArrayToFile(staleFile, new byte[10]);
+        staleFile.setLastModified(clock.millis() - (2 * 60 * 60 * 1000L));
+        File activeFile = new File(cacheDir, "segment-25678.tmp");
+        FileUtils.writeByteArrayToFile(activeFile, new byte[10]);
+        activeFile.setLastModified(clock.millis());
+
+        DiskSegmentCache cache = new DiskSegmentCache(_testDir, "2017-22", 1000, clock);
+        assertFalse(staleFile.exists());
+        assertTrue(activeFile.exists());
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ManualClock clock = new ManualClock();
+        DiskSegmentCache cache = new DiskSegmentCache(_testDir, "2017-22", 100, clock);
+        cache.put(1, new byte[40]);
+        clock.advance();
+        cache.put(2, new byte[40]);
+        clock.advance();
+
+        // Segment 1 is now the most recently used.
+        assertNotNull(cache.get(1, 40));
+        clock.advance();
+
+        cache.put(3, new byte[40]);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(80, cache.getCacheSize());
+        assertNull(cache.get(2, 40));
+        assertNotNull(cache.get(1, 40));
+        assertNotNull(cache.get(3, 40));
+    }
+
+    /**
+     * Clock that only moves when we tell it to. Each step is big enough that it shows up in file
+     * modification times, even on file systems with coarse (one second) resolution.
+     */
+    private static class ManualClock extends Clock {
+        private static final long STEP_MS = 10 * 1000L;
+
+        private long _millis = 1_000_000_000_000L;
+
+        public void advance() {
+            _millis += STEP_MS;
+        }
+
+        @Override
+        public long millis() {
+            return _millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(_millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class IndexKeyBuilderTest {
+
+    // Keys (and the URLs they're for) from CommonCrawl's CDX files.
+    private static final String[][] CDX_KEYS = new String[][] {
+        {"http://146.148.124.0/index.php", "0,124,148,146)/index.php"},
+        {"http://www.swellinfo.com/tropical/index.html?anim=1&config=&forecast=pass&pass=tropsatellites&region=watl&sattype=bwir",
+            "com,swellinfo)/tropical/index.html?anim=1&config=&forecast=pass&pass=tropsatellites&region=watl&sattype=bwir"},
+        {"http://124.118.207.146/InterviewPicServlet?sort=picAll&curpage=0",
+            "146,207,118,124)/interviewpicservlet?curpage=0&sort=picall"},
+        {"https://en.wikipedia.org/wiki/Main_Page", "org,wikipedia,en)/wiki/main_page"},
+        {"http://www.example.com:8080/Dir/", "com,example:8080)/dir"},
+    };
+
+    private static final String[] URL_PARTS = new String[] {
+        "a", "B", "www", "www2", ".", ".", "/", "/", "?", "&", "&", "=", "#", "%2F", "%e2",
+        "\u00e9", "\u0130", "\u00df", "\uD83D\uDE00", "\uD83D", "\n", "\r\n", "\u2028", ":80"
+    };
+
+    @Test
+    public void testCdxKeys() throws Exception {
+        IndexKeyBuilder builder = new IndexKeyBuilder();
+        for (String[] urlAndKey : CDX_KEYS) {
+            assertEquals(urlAndKey[1], builder.build(new URL(urlAndKey[0])).getKey());
+            checkKeyBytes(builder);
+        }
+    }
+
+    @Test
+    public void testQuirks() throws Exception {
+        checkKey("http://domain.com?b=1&&a=2&", "com,domain)/?a=2&b=1");
+        checkKey("http://domain.com/?&", "com,domain)/?");
+        checkKey("http://domain.com/#Ref", "com,domain)/#Ref");
+        checkKey("http://Www.Domain.com/A/", "com,Domain,Www)/a");
+        checkKey("http://www.com", "com)/");
+        checkKey("http://a..b/", "b,,a)/");
+        checkKey("http://domain.com./x/", "com,domain)/x");
+        checkKey("http://domain.com/x?b=1&b=1&a", "com,domain)/x?a&b=1&b=1");
+    }
+
+    @Test
+    public void testMatchesLegacyImplementation() throws Exception {
+        Random rand = new Random(1L);
+        IndexKeyBuilder builder = new IndexKeyBuilder();
+        int numChecked = 0;
+        while (numChecked < 50_000) {
+            URL url = makeUrl(rand);
+            if (url == null) {
+                continue;
+            }
+
+            assertEquals(url.toString(), legacyConvertToIndexFormat(url), builder.build(url).getKey());
+            checkKeyBytes(builder);
+            numChecked++;
+        }
+    }
+
+    @Test
+    public void testManyQueryParameters() throws Exception {
+        StringBuilder url = new StringBuilder("http://domain.com/path?");
+        for (int i = 100; i > 0; i--) {
+            url.append(String.format("p%d=%d&", i * 7 % 100, i));
+        }
+
+        checkKey(url.toString(), legacyConvertToIndexFormat(new URL(url.toString())));
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkConversion() throws Exception {
+        Random rand = new Random(1L);
+        List<URL> urls = new ArrayList<>();
+        while (urls.size() < 10_000) {
+            urls.add(new URL(String.format("http://www.domain%d.com/Path/To/Page%d.html?b=%d&a=%d",
+                    rand.nextInt(1000), rand.nextInt(), rand.nextInt(), rand.nextInt())));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            long startTime = System.nanoTime();
+            for (int j = 0; j < 100; j++) {
+                for (URL url : urls) {
+                    legacyConvertToIndexFormat(url);
+                }
+            }
+            long legacyTime = System.nanoTime() - startTime;
+
+            IndexKeyBuilder builder = new IndexKeyBuilder();
+            startTime = System.nanoTime();
+            for (int j = 0; j < 100; j++) {
+                for (URL url : urls) {
+                    builder.build(url);
+                }
+            }
+            long builderTime = System.nanoTime() - startTime;
+
+            System.out.println(String.format("Legacy: %dns/url, builder: %dns/url",
+                    legacyTime / 1_000_000, builderTime / 1_000_000));
+        }
+    }
+
+    private static void checkKey(String url, String expected) throws MalformedURLException {
+        IndexKeyBuilder builder = new IndexKeyBuilder();
+        assertEquals(expected, builder.build(new URL(url)).getKey());
+        checkKeyBytes(builder);
+        assertEquals(legacyConvertToIndexFormat(new URL(url)), builder.getKey());
+    }
+
+    private static void checkKeyBytes(IndexKeyBuilder builder) {
+        byte[] expected = builder.getKey().getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, builder.getKeyBytesLength());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], builder.getKeyBytes()[i]);
+        }
+    }
+
+    private static URL makeUrl(Random rand) {
+        StringBuilder url = new StringBuilder(rand.nextBoolean() ? "http://" : "https://");
+        int numParts = 1 + rand.nextInt(20);
+        for (int i = 0; i < numParts; i++) {
+            url.append(URL_PARTS[rand.nextInt(URL_PARTS.length)]);
+        }
+
+        try {
+            return new URL(url.toString());
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The original implementation of CommonCrawlUrls.convertToIndexFormat(), which we use as the reference.
+     */
+    private static String legacyConvertToIndexFormat(URL url) {
+        StringBuilder reversedUrl = new StringBuilder();
+
+        String domain = url.getHost();
+        String[] domainParts = domain.split("\\.");
+        for (int i = domainParts.length - 1; i >= 0; i--) {
+            // Skip leading www
+            if ((i > 0) || !domainParts[i].startsWith("www")) {
+                if (reversedUrl.length() > 0) {
+                    reversedUrl.append(',');
+                }
+
+                reversedUrl.append(domainParts[i]);
+            }
+        }
+
+        if (url.getPort() != -1) {
+            reversedUrl.append(':');
+            reversedUrl.append(url.getPort());
+        }
+
+        reversedUrl.append(")");
+
+        boolean hasPath = !url.getPath().isEmpty();
+        boolean hasQuery = url.getQuery() != null;
+        boolean hasHash = url.getRef() != null;
+
+        if (hasPath) {
+            String path = url.getPath();
+            if (path.equals("/")) {
+                reversedUrl.append(path);
+            } else {
+                reversedUrl.append(path.toLowerCase(Locale.ROOT).replaceAll("/$", ""));
+            }
+        } else {
+            reversedUrl.append('/');
+        }
+
+        if (hasQuery) {
+            reversedUrl.append('?');
+
+            StringBuilder result = new StringBuilder();
+            Map<String, String> paramMap = new HashMap<>();
+            List<String> keys = new ArrayList<>();
+            String[] params = url.getQuery().toLowerCase(Locale.ROOT).split("&");
+            for (String param : params) {
+                String[] pieces = param.split("=", 1);
+                keys.add(pieces[0]);
+                paramMap.put(pieces[0], param);
+            }
+
+            Collections.sort(keys);
+            for (String key : keys) {
+                if (result.length() > 0) {
+                    result.append('&');
+                }
+                result.append(paramMap.get(key));
+            }
+
+            reversedUrl.append(result);
+        }
+
+        if (hasHash) {
+            reversedUrl.append('#');
+            reversedUrl.append(url.getRef());
+        }
+
+        return reversedUrl.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class LocalCommonCrawlStorageTest {
+
+    @Test
+    public void testRangeReads() throws Exception {
+        File rootDir = new File("target/LocalCommonCrawlStorageTest/");
+        FileUtils.deleteDirectory(rootDir);
+        File dataFile = new File(rootDir, "crawl-data/test.txt");
+        dataFile.getParentFile().mkdirs();
+        FileUtils.writeStringToFile(dataFile, "0123456789abcdef", StandardCharsets.UTF_8);
+
+        LocalCommonCrawlStorage storage = new LocalCommonCrawlStorage(rootDir);
+        try (InputStream is = storage.open("crawl-data/test.txt")) {
+            assertEquals("0123456789abcdef", IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+
+        try (InputStream is = storage.openRange("crawl-data/test.txt", 4, 6)) {
+            assertArrayEquals("456789".getBytes(StandardCharsets.UTF_8), IOUtils.toByteArray(is));
+        }
+
+        // Two ranges of the same file, read in an interleaved fashion.
+        try (InputStream is1 = storage.openRange("crawl-data/test.txt", 0, 4);
+                InputStream is2 = storage.openRange("crawl-data/test.txt", 10, 6)) {
+            assertEquals('0', is1.read());
+            assertEquals('a', is2.read());
+            assertEquals('1', is1.read());
+            assertEquals(5, is2.skip(10));
+            assertEquals(-1, is2.read());
+        }
+
+        try {
+            storage.openRange("crawl-data/test.txt", 10, 7);
+            fail("Should have thrown exception");
+        } catch (EOFException e) {
+            // Expected
+        }
+
+        try {
+            storage.open("crawl-data/missing.txt");
+            fail("Should have thrown exception");
+        } catch (FileNotFoundException e) {
+            // Expected
+        }
+    }
+}
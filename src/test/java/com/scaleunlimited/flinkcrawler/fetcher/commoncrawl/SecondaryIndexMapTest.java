@@ -0,0 +1,255 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class SecondaryIndexMapTest {
+
+    @Test
+    public void testGet() throws Exception {
+        SecondaryIndexMap map = makeMap(new String[] {"com,foo)/", "com,foo)/bar", "com,zoo)/"});
+
+        // Before the first key
+        assertNull(map.get("com,aaa)/"));
+
+        assertEquals(0, map.get("com,foo)/").getSegmentId());
+        assertEquals(0, map.get("com,foo)/a").getSegmentId());
+        assertEquals(1, map.get("com,foo)/bar").getSegmentId());
+        assertEquals(1, map.get("com,foo)/baz").getSegmentId());
+        assertEquals(2, map.get("com,zoo)/").getSegmentId());
+        assertEquals(2, map.get("org,foo)/").getSegmentId());
+    }
+
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        String[] keys = new String[10];
+        Arrays.fill(keys, 0, 5, "com,foo)/");
+        Arrays.fill(keys, 5, 10, "com,zoo)/");
+
+        // Small blocks, so duplicates span blocks. We want the first segment that
+        // starts with the target key.
+        SecondaryIndexMap map = makeMap(keys, 2);
+        assertEquals(0, map.get("com,foo)/").getSegmentId());
+        assertEquals(5, map.get("com,zoo)/").getSegmentId());
+        assertEquals(4, map.get("com,goo)/").getSegmentId());
+    }
+
+    @Test
+    public void testMatchesBinarySearch() throws Exception {
+        Random rand = new Random(1L);
+        TreeSet<String> keySet = new TreeSet<>();
+        while (keySet.size() < 10_000) {
+            keySet.add(makeKey(rand));
+        }
+
+        String[] keys = keySet.toArray(new String[keySet.size()]);
+        SecondaryIndexMap map = makeMap(keys, 7);
+
+        for (int i = 0; i < 10_000; i++) {
+            String key = (i % 2 == 0) ? keys[rand.nextInt(keys.length)] : makeKey(rand);
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                index = -(index + 1) - 1;
+            }
+
+            SecondaryIndex entry = map.get(key);
+            if (index < 0) {
+                assertNull(entry);
+            } else {
+                assertNotNull(entry);
+                assertEquals(index, entry.getSegmentId());
+                assertEquals(index * 1000L, entry.getSegmentOffset());
+                assertEquals(100 + index, entry.getSegmentLength());
+            }
+        }
+    }
+
+    @Test
+    public void testGetWithKeyBytes() throws Exception {
+        // Keys from a small alphabet, so that lots of them are prefixes of each other.
+        Random rand = new Random(1L);
+        TreeSet<String> keySet = new TreeSet<>();
+        while (keySet.size() < 1_000) {
+            keySet.add(makeKey(rand, 3));
+        }
+
+        String[] keys = keySet.toArray(new String[keySet.size()]);
+        SecondaryIndexMap map = makeMap(keys, 5);
+
+        for (int i = 0; i < 10_000; i++) {
+            String key = (i % 2 == 0) ? keys[rand.nextInt(keys.length)] : makeKey(rand, 3);
+            int index = Arrays.binarySearch(keys, key);
+            if (index < 0) {
+                index = -(index + 1) - 1;
+            }
+
+            // Key bytes are in a bigger (reused) buffer.
+            byte[] keyBytes = Arrays.copyOf(key.getBytes(StandardCharsets.UTF_8), 256);
+            Arrays.fill(keyBytes, key.length(), keyBytes.length, (byte) 'z');
+            SecondaryIndex entry = map.get(keyBytes, key.length());
+            if (index < 0) {
+                assertNull(entry);
+            } else {
+                assertNotNull(entry);
+                assertEquals(index, entry.getSegmentId());
+            }
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        String[] keys = new String[] {"com,foo)/", "com,foo)/bar", "com,zoo)/"};
+        SecondaryIndexMap map = makeMap(keys);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            map.write(out);
+        }
+
+        SecondaryIndexMap map2 = new SecondaryIndexMap();
+        map2.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(3, map2.size());
+        assertEquals(1, map2.get("com,foo)/baz").getSegmentId());
+        assertEquals("cdx-00001.gz", map2.get("com,foo)/baz").getIndexFilename());
+
+        File testDir = new File("target/SecondaryIndexMapTest/");
+        testDir.mkdirs();
+        File mapFile = new File(testDir, "secondary_index.bin");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mapFile)))) {
+            map.write(out);
+        }
+
+        SecondaryIndexMap map3 = SecondaryIndexMap.map(mapFile);
+        assertEquals(3, map3.size());
+        assertEquals(2, map3.get("org,foo)/").getSegmentId());
+    }
+
+    @Test
+    public void testReadingLegacyFormat() throws Exception {
+        String[] keys = new String[] {"com,foo)/", "com,foo)/bar", "com,zoo)/"};
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeInt(-1);
+            out.writeInt(keys.length);
+            for (String key : keys) {
+                out.writeUTF(key);
+            }
+
+            for (int i = 0; i < keys.length; i++) {
+                makeEntry(i).write(out);
+            }
+        }
+
+        SecondaryIndexMap map = new SecondaryIndexMap();
+        map.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals(3, map.size());
+        assertEquals(1, map.get("com,foo)/baz").getSegmentId());
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkLoading() throws Exception {
+        // Roughly the size of a real cluster.idx file.
+        final int numEntries = 1_100_000;
+        Random rand = new Random(1L);
+        TreeSet<String> keySet = new TreeSet<>();
+        while (keySet.size() < numEntries) {
+            keySet.add(makeKey(rand));
+        }
+
+        String[] keys = keySet.toArray(new String[keySet.size()]);
+        keySet = null;
+
+        File testDir = new File("target/SecondaryIndexMapTest/");
+        testDir.mkdirs();
+        File mapFile = new File(testDir, "secondary_index-benchmark.bin");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mapFile)))) {
+            makeMap(keys).write(out);
+        }
+
+        keys = null;
+        System.gc();
+        long startHeap = usedHeap();
+        long startTime = System.nanoTime();
+        SecondaryIndexMap map = SecondaryIndexMap.map(mapFile);
+        long loadTime = System.nanoTime() - startTime;
+        long heap = usedHeap() - startHeap;
+
+        startTime = System.nanoTime();
+        int numFound = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            if (map.get(makeKey(rand)) != null) {
+                numFound++;
+            }
+        }
+        long lookupTime = System.nanoTime() - startTime;
+
+        System.out.println(String.format(
+                "%,d byte file, loaded in %,dus using %,d bytes of heap, %dns/lookup (%d)",
+                mapFile.length(), loadTime / 1000, heap, lookupTime / 1_000_000, numFound));
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String makeKey(Random rand) {
+        return makeKey(rand, 26);
+    }
+
+    private static String makeKey(Random rand, int numLetters) {
+        StringBuilder result = new StringBuilder("com,");
+        result.append("domain");
+        result.append(rand.nextInt(100_000 * numLetters / 26));
+        result.append(")/");
+        int numChars = rand.nextInt(30);
+        for (int i = 0; i < numChars; i++) {
+            result.append((char) ('a' + rand.nextInt(numLetters)));
+        }
+
+        return result.toString();
+    }
+
+    private static SecondaryIndex makeEntry(int index) {
+        return new SecondaryIndex(String.format("cdx-%05d.gz", index % 300), index * 1000L,
+                100 + index, index);
+    }
+
+    private static SecondaryIndexMap makeMap(String[] keys) {
+        return new SecondaryIndexMap(keys, makeEntries(keys.length));
+    }
+
+    private static SecondaryIndexMap makeMap(String[] keys, int entriesPerBlock) {
+        return new SecondaryIndexMap(keys, makeEntries(keys.length), entriesPerBlock);
+    }
+
+    private static SecondaryIndex[] makeEntries(int numEntries) {
+        SecondaryIndex[] result = new SecondaryIndex[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            result[i] = makeEntry(i);
+        }
+
+        return result;
+    }
+}
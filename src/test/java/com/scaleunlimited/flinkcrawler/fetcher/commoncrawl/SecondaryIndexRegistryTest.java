@@ -0,0 +1,69 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.SecondaryIndexRegistry.IndexLoader;
+
+public class SecondaryIndexRegistryTest {
+
+    @Test
+    public void testSharing() throws Exception {
+        final String crawlId = "SecondaryIndexRegistryTest-testSharing";
+        final AtomicInteger numLoads = new AtomicInteger();
+        IndexLoader loader = new IndexLoader() {
+
+            @Override
+            public SecondaryIndexMap load() throws IOException {
+                numLoads.incrementAndGet();
+                return makeMap();
+            }
+        };
+
+        SecondaryIndexMap map1 = SecondaryIndexRegistry.acquire(crawlId, loader);
+        SecondaryIndexMap map2 = SecondaryIndexRegistry.acquire(crawlId, loader);
+        assertSame(map1, map2);
+        assertEquals(1, numLoads.get());
+        assertEquals(2, SecondaryIndexRegistry.getRefCount(crawlId));
+
+        SecondaryIndexRegistry.release(crawlId);
+        assertEquals(1, SecondaryIndexRegistry.getRefCount(crawlId));
+        SecondaryIndexRegistry.release(crawlId);
+        assertEquals(0, SecondaryIndexRegistry.getRefCount(crawlId));
+
+        // Once everyone has released it, it has to be loaded again.
+        SecondaryIndexRegistry.acquire(crawlId, loader);
+        assertEquals(2, numLoads.get());
+        SecondaryIndexRegistry.release(crawlId);
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+        final String crawlId = "SecondaryIndexRegistryTest-testFailedLoad";
+        try {
+            SecondaryIndexRegistry.acquire(crawlId, new IndexLoader() {
+
+                @Override
+                public SecondaryIndexMap load() throws IOException {
+                    throw new IOException("Can't load index");
+                }
+            });
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(0, SecondaryIndexRegistry.getRefCount(crawlId));
+    }
+
+    private static SecondaryIndexMap makeMap() {
+        return new SecondaryIndexMap(new String[] {"com,foo)/"},
+                new SecondaryIndex[] {new SecondaryIndex("cdx-00000.gz", 0, 100, 0)});
+    }
+}
@@ -2,11 +2,16 @@ package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.SegmentCache.SegmentLoader;
+
 public class SegmentCacheTest {
 
     @Test
@@ -15,7 +20,7 @@ public class SegmentCacheTest {
         SegmentCache cache = new SegmentCache(entrySize * 2);
 
         for (int i = 0; i < 100; i++) {
-            cache.put(i, new byte[entrySize]);
+            cache.put(i, makeSegment(entrySize));
             cache.get(0);
         }
 
@@ -27,7 +32,7 @@ public class SegmentCacheTest {
 
     @Test
     public void testMultithreading() throws Exception {
-        final int entrySize = 1;
+        final int entrySize = 10;
         final SegmentCache cache = new SegmentCache(entrySize * 2);
         final Random rand = new Random(1L);
         final AtomicInteger numExceptions = new AtomicInteger();
@@ -41,7 +46,7 @@ public class SegmentCacheTest {
                 public void run() {
                     for (int j = 0; j < 10000; j++) {
                         if (rand.nextBoolean()) {
-                            cache.put(j, new byte[entrySize]);
+                            cache.put(j, makeSegment(entrySize));
                         } else {
                             cache.get(j);
                         }
@@ -67,4 +72,122 @@ public class SegmentCacheTest {
         assertEquals(0, numExceptions.get());
     }
 
+    @Test
+    public void testSizeTracking() {
+        SegmentCache cache = new SegmentCache(100);
+
+        cache.put(0, makeSegment(40));
+        cache.put(1, makeSegment(40));
+        assertEquals(80, cache.getCacheSize());
+
+        // Replacing an entry shouldn't count its size twice.
+        cache.put(1, makeSegment(30));
+        assertEquals(70, cache.getCacheSize());
+
+        // Pushes us over the limit, so the least recently used entry (0) gets evicted.
+        cache.get(1);
+        cache.put(2, makeSegment(40));
+        assertEquals(70, cache.getCacheSize());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(0));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(2));
+
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testSingleFlightLoading() throws Exception {
+        final SegmentCache cache = new SegmentCache(1000);
+        final AtomicInteger numLoads = new AtomicInteger();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicInteger numFailures = new AtomicInteger();
+
+        final SegmentLoader loader = new SegmentLoader() {
+
+            @Override
+            public CdxSegment load(int segmentId) throws IOException {
+                numLoads.incrementAndGet();
+                try {
+                    // Give other threads time to ask for the same segment.
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+
+                return makeSegment(10);
+            }
+        };
+
+        Thread[] threads = new Thread[10];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        if (cache.get(7, loader).getSizeInBytes() != 10) {
+                            numFailures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        numFailures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        startLatch.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, numFailures.get());
+        assertEquals(1, numLoads.get());
+        assertEquals(10, cache.getCacheSize());
+    }
+
+    @Test
+    public void testFailedLoad() throws Exception {
+        SegmentCache cache = new SegmentCache(1000);
+        try {
+            cache.get(1, new SegmentLoader() {
+
+                @Override
+                public CdxSegment load(int segmentId) throws IOException {
+                    throw new IOException("Failed to load");
+                }
+            });
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            assertEquals("Failed to load", e.getMessage());
+        }
+
+        // A failed load isn't cached, so we can try again.
+        assertEquals(20, cache.get(1, new SegmentLoader() {
+
+            @Override
+            public CdxSegment load(int segmentId) throws IOException {
+                return makeSegment(20);
+            }
+        }).getSizeInBytes());
+    }
+
+    /**
+     * @return a single-line segment that's <size> bytes (including per-line overhead) in the cache.
+     */
+    private static CdxSegment makeSegment(int size) {
+        byte[] data = new byte[size - 8];
+        Arrays.fill(data, (byte) 'x');
+        data[1] = ' ';
+
+        try {
+            return new CdxSegment(data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
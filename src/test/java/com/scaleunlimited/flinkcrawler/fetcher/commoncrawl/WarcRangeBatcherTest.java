@@ -0,0 +1,208 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class WarcRangeBatcherTest {
+
+    private static final int RECORD_SIZE = 100;
+
+    @Test
+    public void testCoalescing() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testCoalescing");
+
+        // Records 0-9 are adjacent, 10-19 have small gaps, and then 50 is far away
+        // (compared to the max gap).
+        final int[] records = new int[] {3, 0, 9, 5, 1, 7, 2, 8, 4, 6, 10, 12, 14, 16, 18, 50};
+        WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 5000L, records.length,
+                RECORD_SIZE * 2, 1024 * 1024);
+
+        assertEquals(0, readConcurrently(batcher, records));
+        assertEquals(records.length, batcher.getNumRequests());
+        assertEquals(2, batcher.getNumRangeRequests());
+    }
+
+    @Test
+    public void testMaxRangeSize() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testMaxRangeSize");
+
+        final int[] records = new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 5000L, records.length, 0,
+                RECORD_SIZE * 5);
+
+        assertEquals(0, readConcurrently(batcher, records));
+        assertEquals(2, batcher.getNumRangeRequests());
+    }
+
+    @Test
+    public void testNoBatching() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testNoBatching");
+
+        final int[] records = new int[] {0, 1, 2, 3};
+        WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 0, 100, RECORD_SIZE, 1024 * 1024);
+
+        assertEquals(0, readConcurrently(batcher, records));
+        assertEquals(records.length, batcher.getNumRangeRequests());
+    }
+
+    @Test
+    public void testBatchWindow() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testBatchWindow");
+
+        // A single request shouldn't wait (much) longer than the window.
+        WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 10L, 100, RECORD_SIZE, 1024 * 1024);
+        long startTime = System.currentTimeMillis();
+        try (InputStream is = batcher.openRange("warc.gz", RECORD_SIZE, RECORD_SIZE)) {
+            checkRecord(1, IOUtils.toByteArray(is));
+        }
+
+        assertTrue(System.currentTimeMillis() - startTime < 1000L);
+    }
+
+    @Test
+    public void testFailedRead() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testFailedRead");
+        WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 10L, 100, RECORD_SIZE, 1024 * 1024);
+
+        try {
+            batcher.openRange("warc.gz", 1000 * RECORD_SIZE, RECORD_SIZE);
+            fail("Should have thrown exception");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Failures don't break later requests.
+        try (InputStream is = batcher.openRange("warc.gz", 0, RECORD_SIZE)) {
+            checkRecord(0, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testInterruptedLeader() throws Exception {
+        LocalCommonCrawlStorage storage = makeStorage("testInterruptedLeader");
+        final WarcRangeBatcher batcher = new WarcRangeBatcher(storage, 2000L, 100, RECORD_SIZE,
+                1024 * 1024);
+
+        final AtomicInteger numFailures = new AtomicInteger();
+        Thread leader = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try (InputStream is = batcher.openRange("warc.gz", 0, RECORD_SIZE)) {
+                    fail("Should have been interrupted");
+                } catch (IOException e) {
+                    // Expected
+                } catch (Throwable t) {
+                    numFailures.incrementAndGet();
+                }
+            }
+        });
+        leader.start();
+        waitForRequests(batcher, 1);
+
+        Thread follower = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try (InputStream is = batcher.openRange("warc.gz", RECORD_SIZE, RECORD_SIZE)) {
+                    checkRecord(1, IOUtils.toByteArray(is));
+                } catch (Throwable t) {
+                    numFailures.incrementAndGet();
+                }
+            }
+        });
+        follower.start();
+        waitForRequests(batcher, 2);
+
+        // The follower gets its data as soon as the leader is interrupted, versus waiting
+        // for the batch window.
+        long startTime = System.currentTimeMillis();
+        leader.interrupt();
+        leader.join();
+        follower.join();
+        assertTrue(System.currentTimeMillis() - startTime < 1000L);
+        assertEquals(0, numFailures.get());
+
+        // Later requests start a new batch.
+        try (InputStream is = batcher.openRange("warc.gz", 2 * RECORD_SIZE, RECORD_SIZE)) {
+            checkRecord(2, IOUtils.toByteArray(is));
+        }
+    }
+
+    private static void waitForRequests(WarcRangeBatcher batcher, int numRequests)
+            throws InterruptedException {
+        while (batcher.getNumRequests() < numRequests) {
+            Thread.sleep(1L);
+        }
+
+        // The count is incremented just before the request is added to the batch.
+        Thread.sleep(100L);
+    }
+
+    private static int readConcurrently(final WarcRangeBatcher batcher, int[] records)
+            throws InterruptedException {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicInteger numFailures = new AtomicInteger();
+
+        Thread[] threads = new Thread[records.length];
+        for (int i = 0; i < records.length; i++) {
+            final int record = records[i];
+            threads[i] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        try (InputStream is = batcher.openRange("warc.gz",
+                                record * RECORD_SIZE, RECORD_SIZE)) {
+                            checkRecord(record, IOUtils.toByteArray(is));
+                        }
+                    } catch (Throwable t) {
+                        numFailures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        startLatch.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        return numFailures.get();
+    }
+
+    private static void checkRecord(int record, byte[] data) {
+        assertEquals(RECORD_SIZE, data.length);
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            assertEquals((byte) record, data[i]);
+        }
+    }
+
+    private static LocalCommonCrawlStorage makeStorage(String testName) throws IOException {
+        File rootDir = new File("target/WarcRangeBatcherTest/" + testName);
+        FileUtils.deleteDirectory(rootDir);
+        rootDir.mkdirs();
+
+        // 100 "records", where every byte of a record is the record number.
+        byte[] data = new byte[100 * RECORD_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i / RECORD_SIZE);
+        }
+
+        FileUtils.writeByteArrayToFile(new File(rootDir, "warc.gz"), data);
+        return new LocalCommonCrawlStorage(rootDir);
+    }
+}
@@ -0,0 +1,120 @@
+package com.scaleunlimited.flinkcrawler.fetcher.commoncrawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class WarcRecordReaderTest {
+
+    @Test
+    public void testReadingRecords() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final int numRecords = 200;
+        for (int i = 0; i < numRecords; i++) {
+            bos.write(CommonCrawlMirror.makeWarcRecord(CommonCrawlMirror.makeUrl(i), makeHtml(i)));
+        }
+
+        // Use the smallest buffer, so lines and content span buffer refills.
+        WarcRecordReader reader = new WarcRecordReader(
+                new ByteArrayInputStream(bos.toByteArray()), 0);
+        for (int i = 0; i < numRecords; i++) {
+            WarcRecord record = reader.readNextRecord();
+            assertEquals(makeHtml(i), record.getContentUTF8());
+            assertEquals("response", record.getHeaderRecordType());
+            assertEquals(CommonCrawlMirror.makeUrl(i), record.getHeaderMetadataItem("WARC-Target-URI"));
+            assertEquals("10.0.0.1", record.getHeaderMetadataItem("WARC-IP-Address"));
+            assertNull(record.getHeaderMetadataItem("WARC-Truncated"));
+
+            assertEquals("HTTP/1.1 200 OK", record.getHttpHeaders().get(0));
+            assertEquals("text/html", record.getHttpHeader("Content-Type"));
+            assertEquals("text/html", record.getHttpHeader("content-type"));
+            assertNull(record.getHttpHeader("Location"));
+        }
+
+        // All that's left is the trailing CRLFs of the last record.
+        assertEquals(bos.size() - 4, reader.getBytesRead());
+
+        try {
+            reader.readNextRecord();
+            fail("Should have thrown exception");
+        } catch (EOFException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInvalidLineEndings() throws Exception {
+        checkInvalid("WARC/1.0\nContent-Length: 0\r\n\r\n\r\n");
+        checkInvalid("WARC/1.0\r\rContent-Length: 0\r\n\r\n\r\n");
+        checkInvalid("WARC/1.0\rContent-Length: 0\r\n\r\n\r\n");
+        checkInvalid("WARC/1.0\r\nWARC-Type: response\r\n\r\n\r\n");
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkReading() throws Exception {
+        // Roughly the size of an average CommonCrawl HTML page.
+        StringBuilder html = new StringBuilder();
+        while (html.length() < 50_000) {
+            html.append(makeHtml(html.length()));
+        }
+
+        byte[] record = CommonCrawlMirror.makeWarcRecord("http://domain.com/page.html",
+                html.toString());
+
+        // Records are gzipped in CommonCrawl WARC files, and we read them via a GZIPInputStream.
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) {
+            gzos.write(record);
+        }
+
+        byte[] gzippedRecord = bos.toByteArray();
+        for (int i = 0; i < 5; i++) {
+            final int numRecords = 10_000;
+            long startTime = System.nanoTime();
+            for (int j = 0; j < numRecords; j++) {
+                WarcRecord warcRecord = new WarcRecordReader(
+                        new GZIPInputStream(new ByteArrayInputStream(gzippedRecord)))
+                                .readNextRecord();
+                warcRecord.getHttpHeader("Location");
+                warcRecord.getHeaderMetadataItem("WARC-IP-Address");
+            }
+
+            long deltaTime = System.nanoTime() - startTime;
+            System.out.println(String.format("%,.1f MB/s", (double) record.length * numRecords
+                    / (1024 * 1024) / (deltaTime / 1_000_000_000.0)));
+        }
+    }
+
+    private static void checkInvalid(String record) throws Exception {
+        try {
+            new WarcRecordReader(new ByteArrayInputStream(record.getBytes(StandardCharsets.UTF_8)))
+                    .readNextRecord();
+            fail("Should have thrown exception for " + record);
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static String makeHtml(int index) {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("<html><body><p>Page %d</p>\r\n", index));
+        for (int i = 0; i < index % 100; i++) {
+            result.append("<p>Some text</p>\n");
+        }
+
+        result.append("</body></html>");
+        return result.toString();
+    }
+}
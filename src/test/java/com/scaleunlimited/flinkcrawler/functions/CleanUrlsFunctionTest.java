@@ -0,0 +1,123 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.flink.streaming.api.operators.StreamFlatMap;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.OneInputStreamOperatorTestHarness;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
+import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlNormalizer;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlValidator;
+
+public class CleanUrlsFunctionTest {
+
+    private CleanUrlsFunction _function;
+    private OneInputStreamOperatorTestHarness<RawUrlBundle, CrawlStateUrlBundle> _harness;
+
+    @Before
+    public void setUp() throws Exception {
+        _function = new CleanUrlsFunction(new SimpleUrlNormalizer(), new SimpleUrlValidator(),
+                10);
+        _harness = new OneInputStreamOperatorTestHarness<>(new StreamFlatMap<>(_function));
+        _harness.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _harness.close();
+    }
+
+    @Test
+    public void testNormalizingAndValidating() throws Exception {
+        _harness.processElement(makeBundle(new RawUrl(" http://www.foo.com/foo.html#ref ", 10.0f)), 0);
+        _harness.processElement(makeBundle(new RawUrl("ftp://www.foo.com/foo.html", 1.0f)), 0);
+
+        List<CrawlStateUrl> urls = getOutputUrls();
+        assertEquals(1, urls.size());
+
+        CrawlStateUrl url = urls.get(0);
+        assertEquals("http://www.foo.com/foo.html", url.getUrl());
+        assertEquals(10.0f, url.getScore(), 0.0001f);
+        assertEquals(FetchStatus.UNFETCHED, url.getStatus());
+        assertEquals("foo.com", url.getPld());
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        _harness.processElement(makeBundle(new RawUrl("http://www.foo.com/", 1.0f)), 0);
+        _harness.processElement(makeBundle(new RawUrl("http://www.foo.com/", 2.0f)), 0);
+        _harness.processElement(makeBundle(new RawUrl("ftp://www.foo.com/", 1.0f)), 0);
+        _harness.processElement(makeBundle(new RawUrl("ftp://www.foo.com/", 1.0f)), 0);
+
+        // Second copy of each URL is a cache hit, and we still use the score
+        // from the incoming URL.
+        assertEquals(0.5f, _function.getCacheHitRate(), 0.0001f);
+
+        List<CrawlStateUrl> urls = getOutputUrls();
+        assertEquals(2, urls.size());
+        assertEquals("http://www.foo.com/", urls.get(1).getUrl());
+        assertEquals(2.0f, urls.get(1).getScore(), 0.0001f);
+        assertEquals("www.foo.com", urls.get(1).getHostname());
+    }
+
+    @Test
+    public void testBundlingByPld() throws Exception {
+        // Shortened or seed URLs can point at any PLD, so the output is re-bundled.
+        _harness.processElement(new StreamRecord<>(new RawUrlBundle("bit.ly", new RawUrl[] {
+                new RawUrl("http://www.foo.com/page1", 1.0f),
+                new RawUrl("http://www.bar.com/", 1.0f),
+                new RawUrl("ftp://www.foo.com/", 1.0f),
+                new RawUrl("http://blog.foo.com/page2", 1.0f)
+        })), 0);
+
+        List<CrawlStateUrlBundle> bundles = getOutputBundles();
+        assertEquals(2, bundles.size());
+        for (CrawlStateUrlBundle bundle : bundles) {
+            for (CrawlStateUrl url : bundle.getUrls()) {
+                assertEquals(bundle.getPld(), url.getPld());
+            }
+        }
+
+        assertEquals(3, getOutputUrls().size());
+    }
+
+    private static StreamRecord<RawUrlBundle> makeBundle(RawUrl url) {
+        return new StreamRecord<>(new RawUrlBundle(null, new RawUrl[] {
+                url
+        }));
+    }
+
+    private List<CrawlStateUrlBundle> getOutputBundles() {
+        List<CrawlStateUrlBundle> result = new ArrayList<>();
+        for (Object o : _harness.getOutput()) {
+            if (o instanceof StreamRecord) {
+                @SuppressWarnings("unchecked")
+                StreamRecord<CrawlStateUrlBundle> record = (StreamRecord<CrawlStateUrlBundle>) o;
+                result.add(record.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private List<CrawlStateUrl> getOutputUrls() {
+        List<CrawlStateUrl> result = new ArrayList<>();
+        for (CrawlStateUrlBundle bundle : getOutputBundles()) {
+            result.addAll(Arrays.asList(bundle.getUrls()));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package com.scaleunlimited.flinkcrawler.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.OneInputStreamOperatorTestHarness;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
+import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+import com.scaleunlimited.flinkcrawler.urldb.DefaultUrlStateMerger;
+
+public class CombineUrlsOperatorTest {
+
+    private static final int MAX_ENTRIES = 3;
+    private static final long MAX_DELAY = 1000L;
+
+    private CombineUrlsOperator _operator;
+    private OneInputStreamOperatorTestHarness<CrawlStateUrlBundle, CrawlStateUrlBundle> _harness;
+
+    @Before
+    public void setUp() throws Exception {
+        _operator = new CombineUrlsOperator(new DefaultUrlStateMerger(), MAX_ENTRIES, MAX_DELAY);
+        _harness = new OneInputStreamOperatorTestHarness<>(_operator);
+        _harness.setProcessingTime(0);
+        _harness.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (_harness != null) {
+            _harness.close();
+        }
+    }
+
+    @Test
+    public void testCombiningScores() throws Exception {
+        _harness.processElement(makeBundle("http://domain.com/", 1.0f), 0);
+        _harness.processElement(makeBundle("http://domain.com/", 2.0f), 0);
+        _harness.processElement(makeBundle("http://domain.com/page", 0.5f), 0);
+        _harness.processElement(makeBundle("http://domain.com/", 0.25f), 0);
+        assertEquals(0, getOutputUrls().size());
+
+        _operator.prepareSnapshotPreBarrier(1L);
+        List<CrawlStateUrl> urls = getOutputUrls();
+        assertEquals(2, urls.size());
+        assertEquals("http://domain.com/", urls.get(0).getUrl());
+        assertEquals(3.25f, urls.get(0).getScore(), 0.0001f);
+        assertEquals("http://domain.com/page", urls.get(1).getUrl());
+        assertEquals(0.5f, urls.get(1).getScore(), 0.0001f);
+    }
+
+    @Test
+    public void testFlushOnSize() throws Exception {
+        for (int i = 0; i < MAX_ENTRIES + 2; i++) {
+            _harness.processElement(makeBundle("http://domain.com/page" + i, 1.0f), 0);
+        }
+
+        // The oldest entries get pushed out once we're full.
+        List<CrawlStateUrl> urls = getOutputUrls();
+        assertEquals(2, urls.size());
+        assertEquals("http://domain.com/page0", urls.get(0).getUrl());
+        assertEquals("http://domain.com/page1", urls.get(1).getUrl());
+    }
+
+    @Test
+    public void testFlushOnTime() throws Exception {
+        _harness.processElement(makeBundle("http://domain.com/page1", 1.0f), 0);
+
+        _harness.setProcessingTime(MAX_DELAY / 2);
+        _harness.processElement(makeBundle("http://domain.com/page2", 1.0f), 0);
+        assertEquals(0, getOutputUrls().size());
+
+        _harness.setProcessingTime(MAX_DELAY);
+        List<CrawlStateUrl> urls = getOutputUrls();
+        assertEquals(1, urls.size());
+        assertEquals("http://domain.com/page1", urls.get(0).getUrl());
+
+        _harness.setProcessingTime(MAX_DELAY * 2);
+        assertEquals(2, getOutputUrls().size());
+    }
+
+    @Test
+    public void testFlushOnClose() throws Exception {
+        _harness.processElement(makeBundle("http://domain.com/page1", 1.0f), 0);
+        _harness.close();
+
+        assertEquals(1, getOutputUrls().size());
+        _harness = null;
+    }
+
+    @Test
+    public void testBundlingByPld() throws Exception {
+        _harness.processElement(new StreamRecord<>(new CrawlStateUrlBundle("domain1.com",
+                new CrawlStateUrl[] {
+                        makeUrl("http://domain1.com/page1", 1.0f),
+                        makeUrl("http://domain1.com/page2", 1.0f)
+                })), 0);
+        _harness.processElement(makeBundle("http://domain2.com/page1", 1.0f), 0);
+        _harness.processElement(makeBundle("http://domain1.com/page1", 2.0f), 0);
+
+        // Everything we flush at once is grouped by PLD.
+        _operator.prepareSnapshotPreBarrier(1L);
+        List<CrawlStateUrlBundle> bundles = getOutputBundles();
+        assertEquals(2, bundles.size());
+        assertEquals("domain1.com", bundles.get(0).getPld());
+        assertEquals(2, bundles.get(0).size());
+        assertEquals("domain2.com", bundles.get(1).getPld());
+        assertEquals(1, bundles.get(1).size());
+    }
+
+    private List<CrawlStateUrlBundle> getOutputBundles() {
+        List<CrawlStateUrlBundle> result = new ArrayList<>();
+        for (Object o : _harness.getOutput()) {
+            if (o instanceof StreamRecord) {
+                @SuppressWarnings("unchecked")
+                StreamRecord<CrawlStateUrlBundle> record = (StreamRecord<CrawlStateUrlBundle>) o;
+                result.add(record.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private List<CrawlStateUrl> getOutputUrls() {
+        List<CrawlStateUrl> result = new ArrayList<>();
+        for (CrawlStateUrlBundle bundle : getOutputBundles()) {
+            for (CrawlStateUrl url : bundle.getUrls()) {
+                assertEquals(bundle.getPld(), url.getPld());
+            }
+
+            result.addAll(Arrays.asList(bundle.getUrls()));
+        }
+
+        return result;
+    }
+
+    private static StreamRecord<CrawlStateUrlBundle> makeBundle(String url, float score)
+            throws Exception {
+        return new StreamRecord<>(new CrawlStateUrlBundle(makeUrl(url, score)));
+    }
+
+    private static CrawlStateUrl makeUrl(String url, float score) throws Exception {
+        CrawlStateUrl result = new CrawlStateUrl(new ValidUrl(url), FetchStatus.UNFETCHED, 0);
+        result.setScore(score);
+        return result;
+    }
+}
@@ -1,5 +1,6 @@
 package com.scaleunlimited.flinkcrawler.functions;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -21,6 +22,9 @@ import com.scaleunlimited.flinkcrawler.pojos.ExtractedUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
 import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrlBundle;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlNormalizer;
 
 public class ParseFunctionTest {
 
@@ -58,11 +62,74 @@ public class ParseFunctionTest {
         verify(parserContext, times(1)).output( eq(ParseFunction.STATUS_OUTPUT_TAG), 
                                                 argThat(new MatchCrawlStateUrl(fetchResultUrl)));
         
-        // Verify that we only get the top 2 links
-        verify(parserContext, times(2)).output( eq(ParseFunction.OUTLINK_OUTPUT_TAG), 
-                                                argThat(new MatchExtractedUrls(2)));
+        // Verify that we only get the top 2 links (in one bundle, as they don't have a PLD)
+        verify(parserContext, times(1)).output( eq(ParseFunction.OUTLINK_BUNDLE_OUTPUT_TAG), 
+                                                argThat(new MatchBundle("", 2, 2)));
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testOutlinkBundles() throws MalformedURLException, Exception {
+        BasePageParser basePageParser = mock(BasePageParser.class);
+        ParseFunction func = new ParseFunction(basePageParser, 10, new SimpleUrlNormalizer());
+        Collector<ParsedUrl> parsedUrlCollector = mock(Collector.class);
+        ParseFunction.Context parserContext = mock(Context.class);
+        FetchResultUrl fetchResultUrl = new FetchResultUrl();
+        fetchResultUrl.setFetchedUrl("http://foo.com");
+        fetchResultUrl.setStatus(FetchStatus.FETCHED);
+
+        ParserResult parserResult = mock(ParserResult.class);
+        when(basePageParser.parse(fetchResultUrl)).thenReturn(parserResult);
+        ParsedUrl parsedUrl = mock(ParsedUrl.class);
+        when(parserResult.getParsedUrl()).thenReturn(parsedUrl);
+        when(parsedUrl.getScore()).thenReturn(0f);
+
+        // Two outlinks to one PLD, and one to another
+        ExtractedUrl[] extractedUrls = {
+                new ExtractedUrl("http://www.domain1.com/page1", null, null, 1),
+                new ExtractedUrl("http://domain2.com/page1", null, null, 2),
+                new ExtractedUrl("http://sub.domain1.com/page2", null, null, 3)
+        };
+        when(parserResult.getExtractedUrls()).thenReturn(extractedUrls);
+
+        func.processElement(fetchResultUrl, parserContext, parsedUrlCollector);
+
+        verify(parserContext, times(2)).output(eq(ParseFunction.OUTLINK_BUNDLE_OUTPUT_TAG),
+                any(RawUrlBundle.class));
+        verify(parserContext, times(1)).output(eq(ParseFunction.OUTLINK_BUNDLE_OUTPUT_TAG),
+                argThat(new MatchBundle("domain1.com", 2, 0)));
+        verify(parserContext, times(1)).output(eq(ParseFunction.OUTLINK_BUNDLE_OUTPUT_TAG),
+                argThat(new MatchBundle("domain2.com", 1, 0)));
+    }
+    
+    private static class MatchBundle implements ArgumentMatcher<RawUrlBundle> {
+
+        private String _pld;
+        private int _numUrls;
+        private float _minScore;
+
+        public MatchBundle(String pld, int numUrls, float minScore) {
+            _pld = pld;
+            _numUrls = numUrls;
+            _minScore = minScore;
+        }
+
+        @Override
+        public boolean matches(RawUrlBundle bundle) {
+            if ((bundle == null) || !bundle.getPld().equals(_pld) || (bundle.size() != _numUrls)) {
+                return false;
+            }
+
+            for (RawUrl url : bundle.getUrls()) {
+                if (url.getScore() < _minScore) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
     private static class MatchCrawlStateUrl
             implements ArgumentMatcher<CrawlStateUrl> {
 
@@ -81,22 +148,4 @@ public class ParseFunctionTest {
         
     }
 
-    private static class MatchExtractedUrls
-            implements ArgumentMatcher<ExtractedUrl> {
-
-        private float _minScore;
-
-        public MatchExtractedUrls(float minScore) {
-            _minScore = minScore;
-        }
-
-        @Override
-        public boolean matches(ExtractedUrl extractedUrl) {
-            if (extractedUrl.getScore() < _minScore) {
-                return false;
-            }
-            return true;
-        }
-    }
-
 }
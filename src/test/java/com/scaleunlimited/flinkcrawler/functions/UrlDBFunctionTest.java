@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import com.scaleunlimited.flinkcrawler.config.CrawlTerminator;
 import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrl;
+import com.scaleunlimited.flinkcrawler.pojos.CrawlStateUrlBundle;
 import com.scaleunlimited.flinkcrawler.pojos.DomainScore;
 import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
 import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
@@ -50,13 +51,13 @@ public class UrlDBFunctionTest {
     private static final int MAX_PARALLELISM = 10;
 
     ManualCrawlTerminator _terminator;
-    PldKeySelector<CrawlStateUrl> _pldKeySelector;
+    UrlBundleKeySelector _urlBundleKeySelector;
     DomainScoreKeySelector _domainScoreKeySelector;
-    KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> _testHarnesses[];
+    KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> _testHarnesses[];
 
     @Before
     public void setUp() throws Exception {
-        _pldKeySelector = new PldKeySelector<CrawlStateUrl>();
+        _urlBundleKeySelector = new UrlBundleKeySelector();
         _domainScoreKeySelector = new DomainScoreKeySelector();
     }
 
@@ -319,16 +320,27 @@ public class UrlDBFunctionTest {
 
     /**
      * @param urls
-     *            to partition and send to the appropriate instance of UrlDBFunction via that
-     *            partition's test harness
+     *            to bundle (runs of URLs with the same PLD), partition, and send to the
+     *            appropriate instance of UrlDBFunction via that partition's test harness
      * @throws Exception
      */
     private void processUrls(List<CrawlStateUrl> urls) throws Exception {
         int parallelism = _testHarnesses.length;
-        for (CrawlStateUrl url : urls) {
-            String key = _pldKeySelector.getKey(url);
+        int start = 0;
+        while (start < urls.size()) {
+            String pld = urls.get(start).getPld();
+            int end = start + 1;
+            while ((end < urls.size()) && urls.get(end).getPld().equals(pld)) {
+                end++;
+            }
+
+            List<CrawlStateUrl> bundleUrls = urls.subList(start, end);
+            CrawlStateUrlBundle bundle = new CrawlStateUrlBundle(pld,
+                    bundleUrls.toArray(new CrawlStateUrl[bundleUrls.size()]));
+            String key = _urlBundleKeySelector.getKey(bundle);
             int subTaskIndex = FlinkUtils.getOperatorIndexForKey(key, MAX_PARALLELISM, parallelism);
-            _testHarnesses[subTaskIndex].processElement1(new StreamRecord<>(url));
+            _testHarnesses[subTaskIndex].processElement1(new StreamRecord<>(bundle));
+            start = end;
         }
     }
 
@@ -519,7 +531,7 @@ public class UrlDBFunctionTest {
 
     private void setProcessingTime(long newTime) throws Exception {
         for (int subTaskIndex = 0; subTaskIndex < _testHarnesses.length; subTaskIndex++) {
-            KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> testHarness = _testHarnesses[subTaskIndex];
+            KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> testHarness = _testHarnesses[subTaskIndex];
             LOGGER.debug("Test harness ({}/{}) processing time is now {}", subTaskIndex + 1,
                     _testHarnesses.length, newTime);
             testHarness.setProcessingTime(newTime);
@@ -528,7 +540,7 @@ public class UrlDBFunctionTest {
 
     private void addProcessingTime(long extraTime) throws Exception {
         for (int subTaskIndex = 0; subTaskIndex < _testHarnesses.length; subTaskIndex++) {
-            KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> testHarness = _testHarnesses[subTaskIndex];
+            KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> testHarness = _testHarnesses[subTaskIndex];
             long newTime = testHarness.getProcessingTime() + extraTime;
             LOGGER.debug("Test harness ({}/{}) processing time is now {}", subTaskIndex + 1,
                     _testHarnesses.length, newTime);
@@ -538,11 +550,11 @@ public class UrlDBFunctionTest {
 
     // Methods to manipulate the test harness in which UrlDBFunction executes
 
-    private KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl>[] makeTestHarnesses(
+    private KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl>[] makeTestHarnesses(
             int parallelism, OperatorSubtaskState savedState) throws Exception {
 
         @SuppressWarnings("unchecked")
-        KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> result[] = new KeyedTwoInputStreamOperatorTestHarness[parallelism];
+        KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> result[] = new KeyedTwoInputStreamOperatorTestHarness[parallelism];
 
         _terminator = new ManualCrawlTerminator();
         for (int i = 0; i < parallelism; i++) {
@@ -551,15 +563,15 @@ public class UrlDBFunctionTest {
         return result;
     }
 
-    private KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> makeTestHarness(
+    private KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> makeTestHarness(
             int parallelism, int subTaskIndex, OperatorSubtaskState savedState) throws Exception {
 
         BaseUrlStateMerger merger = new DefaultUrlStateMerger();
         FetchQueue fetchQueue = new ReFetchingQueue();
-        KeyedCoProcessOperator<String, CrawlStateUrl, DomainScore, FetchUrl> operator = new KeyedCoProcessOperator<>(
+        KeyedCoProcessOperator<String, CrawlStateUrlBundle, DomainScore, FetchUrl> operator = new KeyedCoProcessOperator<>(
                 new UrlDBFunction(_terminator, merger, fetchQueue));
-        KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> result = new KeyedTwoInputStreamOperatorTestHarness<>(
-                operator, _pldKeySelector, _domainScoreKeySelector, BasicTypeInfo.STRING_TYPE_INFO,
+        KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> result = new KeyedTwoInputStreamOperatorTestHarness<>(
+                operator, _urlBundleKeySelector, _domainScoreKeySelector, BasicTypeInfo.STRING_TYPE_INFO,
                 MAX_PARALLELISM, parallelism, subTaskIndex);
         result.setStateBackend(new MemoryStateBackend());
         result.setup();
@@ -571,7 +583,7 @@ public class UrlDBFunctionTest {
     }
 
     private void closeTestHarnesses() throws Exception {
-        for (KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrl, DomainScore, FetchUrl> harness : _testHarnesses) {
+        for (KeyedTwoInputStreamOperatorTestHarness<String, CrawlStateUrlBundle, DomainScore, FetchUrl> harness : _testHarnesses) {
             harness.close();
         }
     }
@@ -0,0 +1,104 @@
+package com.scaleunlimited.flinkcrawler.parquet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.OneInputStreamOperatorTestHarness;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
+public class ParsedUrlSinkOperatorTest {
+
+    @Test
+    public void testCommitOnCheckpointAndClose() throws Exception {
+        File testDir = makeTestDir("testCommitOnCheckpointAndClose");
+        OneInputStreamOperatorTestHarness<ParsedUrl, Void> harness = new OneInputStreamOperatorTestHarness<>(
+                new ParsedUrlSinkBuilder(testDir.getAbsolutePath()).makeOperator());
+        harness.open();
+
+        for (int i = 0; i < 10; i++) {
+            harness.processElement(makeParsedUrl(i), 0);
+        }
+
+        // Files aren't visible until the checkpoint that contains them completes.
+        harness.snapshot(1L, 0);
+        assertEquals(0, getCommittedFiles(testDir).length);
+
+        harness.notifyOfCompletedCheckpoint(1L);
+        assertEquals(1, getCommittedFiles(testDir).length);
+        assertEquals(10, countRows(new File(testDir, "part-0-0.parquet")));
+
+        // The end of the input commits the rest, without waiting for another checkpoint.
+        for (int i = 10; i < 15; i++) {
+            harness.processElement(makeParsedUrl(i), 0);
+        }
+
+        harness.close();
+        assertEquals(2, getCommittedFiles(testDir).length);
+        assertEquals(5, countRows(new File(testDir, "part-0-1.parquet")));
+    }
+
+    @Test
+    public void testNoCommitOnFailure() throws Exception {
+        File testDir = makeTestDir("testNoCommitOnFailure");
+        ParsedUrlSinkOperator operator = new ParsedUrlSinkBuilder(testDir.getAbsolutePath())
+                .makeOperator();
+        OneInputStreamOperatorTestHarness<ParsedUrl, Void> harness = new OneInputStreamOperatorTestHarness<>(
+                operator);
+        harness.open();
+
+        for (int i = 0; i < 10; i++) {
+            harness.processElement(makeParsedUrl(i), 0);
+        }
+
+        operator.dispose();
+        assertEquals(0, getCommittedFiles(testDir).length);
+    }
+
+    private static File makeTestDir(String testName) throws Exception {
+        File testDir = new File("target/ParsedUrlSinkOperatorTest/" + testName + "/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+        return testDir;
+    }
+
+    /**
+     * @return files that have been committed (in-progress files are hidden).
+     */
+    private static File[] getCommittedFiles(File testDir) {
+        File[] result = testDir.listFiles((dir, name) -> !name.startsWith("."));
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int countRows(File file) throws Exception {
+        int result = 0;
+        try (ParquetReader<Group> reader = ParquetReader
+                .builder(new GroupReadSupport(), new Path(file.getAbsolutePath()))
+                .withConf(new Configuration()).build()) {
+            while (reader.read() != null) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    private static StreamRecord<ParsedUrl> makeParsedUrl(int index) throws Exception {
+        String url = String.format("http://www.domain%d.com/page%d.html", index % 10, index);
+        return new StreamRecord<>(new ParsedUrl(new ValidUrl(url), "Page " + index, "en",
+                "Title " + index, new HashMap<String, String>(), index / 10.0f));
+    }
+}
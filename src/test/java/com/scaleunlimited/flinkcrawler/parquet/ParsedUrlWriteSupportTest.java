@@ -0,0 +1,141 @@
+package com.scaleunlimited.flinkcrawler.parquet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.pojos.ParsedUrl;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
+public class ParsedUrlWriteSupportTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File testDir = new File("target/ParsedUrlWriteSupportTest/testWriteAndRead/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+
+        Configuration conf = new Configuration();
+        Path path = new Path(new File(testDir, "parsed.parquet").getAbsolutePath());
+
+        final int numPages = 100;
+        writePages(new ParsedUrlSinkBuilder(testDir.getAbsolutePath())
+                .setCompressionCodec(CompressionCodecName.GZIP)
+                .setMetaKeys("description", "keywords"), conf, path, numPages);
+
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), path)
+                .withConf(conf).build()) {
+            for (int i = 0; i < numPages; i++) {
+                Group group = reader.read();
+                assertEquals(makeUrl(i), group.getString("url", 0));
+                assertEquals("domain" + (i % 10) + ".com", group.getString("pld", 0));
+                assertEquals(i / 10.0f, group.getFloat("score", 0), 0.0001f);
+                assertEquals("en", group.getString("language", 0));
+                assertEquals("Page\t" + i, group.getString("text", 0));
+
+                if ((i % 2) == 0) {
+                    assertEquals("Title " + i, group.getString("title", 0));
+
+                    // Only the selected entries are saved, in the order they were selected.
+                    Group metadata = group.getGroup("metadata", 0);
+                    assertEquals(1, metadata.getFieldRepetitionCount("key_value"));
+                    Group entry = metadata.getGroup("key_value", 0);
+                    assertEquals("description", entry.getString("key", 0));
+                    assertEquals("Description " + i, entry.getString("value", 0));
+                } else {
+                    assertEquals(0, group.getFieldRepetitionCount("title"));
+                    assertEquals(0, group.getFieldRepetitionCount("metadata"));
+                }
+            }
+
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testWriterSettings() throws Exception {
+        File testDir = new File("target/ParsedUrlWriteSupportTest/testWriterSettings/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+
+        Configuration conf = new Configuration();
+        Path path = new Path(new File(testDir, "parsed.parquet").getAbsolutePath());
+
+        final int numPages = 1000;
+        writePages(new ParsedUrlSinkBuilder(testDir.getAbsolutePath())
+                .setCompressionCodec(CompressionCodecName.GZIP)
+                .setRowGroupSize(4 * 1024), conf, path, numPages);
+
+        try (ParquetFileReader reader = ParquetFileReader
+                .open(HadoopInputFile.fromPath(path, conf))) {
+            List<BlockMetaData> rowGroups = reader.getFooter().getBlocks();
+
+            // The small row group size means we get more than one.
+            assertTrue(rowGroups.size() > 1);
+
+            long numRows = 0;
+            for (BlockMetaData rowGroup : rowGroups) {
+                numRows += rowGroup.getRowCount();
+
+                for (ColumnChunkMetaData column : rowGroup.getColumns()) {
+                    assertEquals(CompressionCodecName.GZIP, column.getCodec());
+
+                    // Only 10 different PLDs, so they're always dictionary encoded.
+                    if (column.getPath().toDotString().equals("pld")) {
+                        assertTrue(column.getEncodings().contains(Encoding.PLAIN_DICTIONARY));
+                    }
+                }
+            }
+
+            assertEquals(numPages, numRows);
+        }
+    }
+
+    private static void writePages(ParsedUrlSinkBuilder builder, Configuration conf, Path path,
+            int numPages) throws Exception {
+        try (ParquetWriter<ParsedUrl> writer = builder.makeParquetBuilder()
+                .createWriter(HadoopOutputFile.fromPath(path, conf))) {
+            for (int i = 0; i < numPages; i++) {
+                writer.write(makeParsedUrl(i));
+            }
+        }
+    }
+
+    private static ParsedUrl makeParsedUrl(int index) throws Exception {
+        Map<String, String> meta = new HashMap<>();
+        meta.put("generator", "test");
+        String title = null;
+        if ((index % 2) == 0) {
+            meta.put("description", "Description " + index);
+            title = "Title " + index;
+        }
+
+        return new ParsedUrl(new ValidUrl(makeUrl(index)), "Page\t" + index, "en", title,
+                meta, index / 10.0f);
+    }
+
+    private static String makeUrl(int index) {
+        return String.format("http://www.domain%d.com/page%d.html", index % 10, index);
+    }
+}
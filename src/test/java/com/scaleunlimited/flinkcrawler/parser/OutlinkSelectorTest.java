@@ -0,0 +1,120 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.pojos.ExtractedUrl;
+import com.scaleunlimited.flinkcrawler.urls.SimpleUrlNormalizer;
+
+public class OutlinkSelectorTest {
+
+    @Test
+    public void testTopK() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 3);
+
+        ExtractedUrl[] outlinks = new ExtractedUrl[10];
+        for (int i = 0; i < outlinks.length; i++) {
+            // Use fractional scores, to make sure we're not truncating differences to ints.
+            outlinks[i] = new ExtractedUrl("http://domain.com/page" + i, null, null,
+                    ((i * 7) % 10) / 10.0f);
+        }
+
+        ExtractedUrl[] result = selector.select(outlinks);
+        assertEquals(3, result.length);
+        assertEquals(0.9f, result[0].getScore(), 0.0001f);
+        assertEquals(0.8f, result[1].getScore(), 0.0001f);
+        assertEquals(0.7f, result[2].getScore(), 0.0001f);
+    }
+
+    @Test
+    public void testFewerThanK() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 10);
+
+        ExtractedUrl[] outlinks = {
+                new ExtractedUrl("http://domain.com/page1", null, null, 0.1f),
+                new ExtractedUrl("http://domain.com/page2", null, null, 0.2f)
+        };
+
+        ExtractedUrl[] result = selector.select(outlinks);
+        assertEquals(2, result.length);
+        assertEquals("http://domain.com/page2", result[0].getUrl());
+        assertEquals("http://domain.com/page1", result[1].getUrl());
+
+        assertEquals(0, selector.select(new ExtractedUrl[0]).length);
+    }
+
+    @Test
+    public void testMergingDuplicateTargets() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 2);
+
+        ExtractedUrl[] outlinks = {
+                new ExtractedUrl("http://domain.com/page1", "first", null, 0.4f),
+                new ExtractedUrl("http://domain.com/page2", "second", null, 0.5f),
+                new ExtractedUrl("http://DOMAIN.com/page1#section", "other", null, 0.4f),
+                new ExtractedUrl("http://domain.com/page1", "first", null, 0.4f),
+        };
+
+        ExtractedUrl[] result = selector.select(outlinks);
+        assertEquals(2, result.length);
+        assertEquals("http://domain.com/page1", result[0].getUrl());
+        assertEquals(1.2f, result[0].getScore(), 0.0001f);
+        assertEquals("first other", result[0].getAnchorText());
+        assertEquals("http://domain.com/page2", result[1].getUrl());
+    }
+
+    @Test
+    public void testMergingWholeAnchors() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 2);
+
+        // "news" is part of "business news", but it's a different anchor.
+        ExtractedUrl[] outlinks = {
+                new ExtractedUrl("http://domain.com/page1", "business news", null, 0.4f),
+                new ExtractedUrl("http://domain.com/page1", "news", null, 0.4f),
+                new ExtractedUrl("http://domain.com/page1", "business news", null, 0.4f),
+                new ExtractedUrl("http://domain.com/page1", "news", null, 0.4f),
+        };
+
+        ExtractedUrl[] result = selector.select(outlinks);
+        assertEquals(1, result.length);
+        assertEquals("business news news", result[0].getAnchorText());
+    }
+
+    @Test
+    public void testMergingOnlyWhileInHeap() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 2);
+
+        ExtractedUrl[] outlinks = {
+                new ExtractedUrl("http://domain.com/page1", null, null, 0.1f),
+                new ExtractedUrl("http://domain.com/page2", null, null, 0.5f),
+                new ExtractedUrl("http://domain.com/page3", null, null, 0.6f),
+                // page1 was pushed out by page3, so this doesn't include its first score.
+                new ExtractedUrl("http://domain.com/page1", null, null, 0.55f),
+                new ExtractedUrl("http://domain.com/page3", null, null, 0.1f),
+        };
+
+        ExtractedUrl[] result = selector.select(outlinks);
+        assertEquals(2, result.length);
+        assertEquals("http://domain.com/page3", result[0].getUrl());
+        assertEquals(0.7f, result[0].getScore(), 0.0001f);
+        assertEquals("http://domain.com/page1", result[1].getUrl());
+        assertEquals(0.55f, result[1].getScore(), 0.0001f);
+
+        // Nothing is left over from the previous call.
+        result = selector.select(new ExtractedUrl[] {
+                new ExtractedUrl("http://domain.com/page3", null, null, 0.2f)
+        });
+        assertEquals(1, result.length);
+        assertEquals(0.2f, result[0].getScore(), 0.0001f);
+    }
+
+    @Test
+    public void testZeroLimit() throws Exception {
+        OutlinkSelector selector = new OutlinkSelector(new SimpleUrlNormalizer(), 0);
+        ExtractedUrl[] outlinks = {
+                new ExtractedUrl("http://domain.com/page1", null, null, 0.1f)
+        };
+
+        assertEquals(0, selector.select(outlinks).length);
+    }
+}
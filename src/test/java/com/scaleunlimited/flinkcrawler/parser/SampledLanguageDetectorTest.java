@@ -0,0 +1,192 @@
+package com.scaleunlimited.flinkcrawler.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class SampledLanguageDetectorTest {
+
+    private static final String ENGLISH_TEXT = "The quick brown fox jumps over the lazy dog. "
+            + "This is a simple paragraph of English text, which should be more than enough for the "
+            + "detector to figure out what language it has been written in, without any help from "
+            + "the metadata that is normally found in the head of an HTML document.";
+
+    private static final String FRENCH_TEXT = "Le renard brun rapide saute par-dessus le chien paresseux. "
+            + "Ceci est un simple paragraphe de texte en fran\u00e7ais, qui devrait \u00eatre largement suffisant "
+            + "pour que le d\u00e9tecteur puisse d\u00e9terminer dans quelle langue il a \u00e9t\u00e9 \u00e9crit, sans aucune "
+            + "aide des m\u00e9tadonn\u00e9es que l'on trouve normalement dans l'en-t\u00eate d'un document.";
+
+    private static final String GERMAN_TEXT = "Der schnelle braune Fuchs springt \u00fcber den faulen Hund. "
+            + "Dies ist ein einfacher Absatz mit deutschem Text, der mehr als genug sein sollte, damit "
+            + "der Detektor herausfinden kann, in welcher Sprache er geschrieben wurde, ohne jede Hilfe "
+            + "von den Metadaten, die normalerweise im Kopf eines Dokuments zu finden sind.";
+
+    private static final String SPANISH_TEXT = "El r\u00e1pido zorro marr\u00f3n salta sobre el perro perezoso. "
+            + "Este es un p\u00e1rrafo sencillo de texto en espa\u00f1ol, que deber\u00eda ser "
+            + "m\u00e1s que suficiente para que el detector averig\u00fce en qu\u00e9 idioma ha sido "
+            + "escrito, sin ninguna ayuda de los metadatos que normalmente se encuentran en la "
+            + "cabecera de un documento. Los ni\u00f1os juegan en el parque mientras sus padres "
+            + "hablan de la comida y del tiempo que har\u00e1 ma\u00f1ana.";
+
+    private static final String ITALIAN_TEXT = "La veloce volpe marrone salta sopra il cane pigro. "
+            + "Questo \u00e8 un semplice paragrafo di testo in italiano, che dovrebbe essere pi\u00f9 "
+            + "che sufficiente perch\u00e9 il rilevatore capisca in quale lingua \u00e8 stato "
+            + "scritto, senza alcun aiuto dai metadati che di solito si trovano nell'intestazione di "
+            + "un documento. I bambini giocano nel giardino mentre i genitori parlano della cena e "
+            + "del tempo che far\u00e0 domani.";
+
+    private static final String DUTCH_TEXT = "De snelle bruine vos springt over de luie hond. "
+            + "Dit is een eenvoudige alinea met Nederlandse tekst, die meer dan genoeg zou moeten "
+            + "zijn voor de detector om uit te zoeken in welke taal het is geschreven, zonder enige "
+            + "hulp van de metagegevens die normaal gesproken in de kop van een document staan. De "
+            + "kinderen spelen in de tuin terwijl hun ouders praten over het eten en het weer van "
+            + "morgen.";
+
+    private static final String PORTUGUESE_TEXT = "A r\u00e1pida raposa marrom salta sobre o c\u00e3o pregui\u00e7oso. "
+            + "Este \u00e9 um par\u00e1grafo simples de texto em portugu\u00eas, que deveria ser mais "
+            + "do que suficiente para que o detector descubra em que l\u00edngua foi escrito, sem "
+            + "nenhuma ajuda dos metadados que normalmente se encontram no cabe\u00e7alho de um "
+            + "documento. As crian\u00e7as brincam no jardim enquanto os seus pais falam sobre o "
+            + "jantar e o tempo de amanh\u00e3.";
+
+    private static final String SWEDISH_TEXT = "Den snabba bruna r\u00e4ven hoppar \u00f6ver den lata hunden. "
+            + "Det h\u00e4r \u00e4r ett enkelt stycke med svensk text, som borde vara mer \u00e4n "
+            + "tillr\u00e4ckligt f\u00f6r att detektorn ska kunna r\u00e4kna ut vilket spr\u00e5k den "
+            + "\u00e4r skriven p\u00e5, utan n\u00e5gon hj\u00e4lp fr\u00e5n de metadata som "
+            + "vanligtvis finns i huvudet p\u00e5 ett dokument. Barnen leker i tr\u00e4dg\u00e5rden "
+            + "medan deras f\u00f6r\u00e4ldrar pratar om maten och vad det blir f\u00f6r v\u00e4der i "
+            + "morgon.";
+
+    @Test
+    public void testDetection() throws Exception {
+        assertEquals("en", detect(new SampledLanguageDetector(), ENGLISH_TEXT));
+        assertEquals("fr", detect(new SampledLanguageDetector(), FRENCH_TEXT));
+        assertEquals("de", detect(new SampledLanguageDetector(), GERMAN_TEXT));
+    }
+
+    @Test
+    public void testTooLittleText() throws Exception {
+        assertEquals("", detect(new SampledLanguageDetector(), "0.75"));
+        assertEquals("", detect(new SampledLanguageDetector(), ""));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        SampledLanguageDetector detector = new SampledLanguageDetector();
+        assertEquals("fr", detect(detector, FRENCH_TEXT));
+        assertEquals("en", detect(detector, ENGLISH_TEXT));
+    }
+
+    @Test
+    public void testSampleLimit() throws Exception {
+        SampledLanguageDetector detector = new SampledLanguageDetector(100);
+        detector.reset();
+
+        char[] chars = ENGLISH_TEXT.toCharArray();
+        detector.characters(chars, 0, chars.length);
+        assertTrue(detector.isDone());
+        assertEquals(100, detector.getNumSampledChars());
+    }
+
+    @Test
+    public void testEarlyStop() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(ENGLISH_TEXT);
+            text.append(' ');
+        }
+
+        SampledLanguageDetector detector = new SampledLanguageDetector(text.length());
+        assertEquals("en", detect(detector, text.toString()));
+        assertTrue(detector.isDone());
+        assertTrue(detector.getNumSampledChars() < text.length());
+    }
+
+    @Test
+    public void testAccuracyMatchesTika() throws Exception {
+        String[][] samples = {
+                { "en", ENGLISH_TEXT },
+                { "fr", FRENCH_TEXT },
+                { "de", GERMAN_TEXT },
+                { "es", SPANISH_TEXT },
+                { "it", ITALIAN_TEXT },
+                { "nl", DUTCH_TEXT },
+                { "pt", PORTUGUESE_TEXT },
+                { "sv", SWEDISH_TEXT }
+        };
+
+        BaseLanguageDetector tika = new TikaLanguageDetector();
+        SampledLanguageDetector sampled = new SampledLanguageDetector();
+        for (String[] sample : samples) {
+            String language = sample[0];
+
+            // Repeat the text, so both detectors see a typical page's worth.
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                text.append(sample[1]);
+                text.append(' ');
+            }
+
+            // We only look at the start of the text, but we should get the same answer as Tika
+            // whenever it's reasonably certain.
+            String sampledLanguage = detect(sampled, text.toString());
+            assertEquals(language, sampledLanguage);
+
+            String tikaLanguage = detect(tika, text.toString());
+            if (!tikaLanguage.isEmpty()) {
+                assertEquals(tikaLanguage, sampledLanguage);
+            }
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkAgainstTika() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append(GERMAN_TEXT);
+            text.append(' ');
+        }
+
+        String doc = text.toString();
+        final int numIterations = 1000;
+
+        // Warm up both detectors (and load our n-gram tables)
+        BaseLanguageDetector tika = new TikaLanguageDetector();
+        BaseLanguageDetector sampled = new SampledLanguageDetector();
+        for (int i = 0; i < 50; i++) {
+            detect(tika, doc);
+            detect(sampled, doc);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            assertEquals("de", detect(tika, doc));
+        }
+        long tikaTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            assertEquals("de", detect(sampled, doc));
+        }
+        long sampledTime = System.nanoTime() - startTime;
+
+        System.out.println(String.format("Tika: %dms, sampled: %dms for %d docs of %d chars",
+                tikaTime / 1000000, sampledTime / 1000000, numIterations, doc.length()));
+    }
+
+
+    private static String detect(BaseLanguageDetector detector, String text) throws Exception {
+        detector.reset();
+
+        // Feed the text in small chunks, like a SAX parser would.
+        char[] chars = text.toCharArray();
+        for (int offset = 0; offset < chars.length; offset += 64) {
+            detector.characters(chars, offset, Math.min(64, chars.length - offset));
+        }
+
+        return detector.getLanguage();
+    }
+}
@@ -0,0 +1,424 @@
+package com.scaleunlimited.flinkcrawler.sources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flink.runtime.checkpoint.OperatorSubtaskState;
+import org.apache.flink.streaming.api.functions.source.SourceFunction.SourceContext;
+import org.apache.flink.streaming.api.operators.StreamSource;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.util.AbstractStreamOperatorTestHarness;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.scaleunlimited.flinkcrawler.config.CrawlTerminator;
+import com.scaleunlimited.flinkcrawler.pojos.RawUrl;
+import com.scaleunlimited.flinkcrawler.utils.S3Utils;
+
+public class SeedUrlSourceTest {
+
+    private static final String S3_BUCKET = "bucket";
+    private static final String S3_SEEDS_PATH = "seeds.txt";
+    private static final String S3_SEEDS_FILENAME = "s3://" + S3_BUCKET + "/" + S3_SEEDS_PATH;
+
+    // Contents of the files in our fake S3 bucket, and the ranges that have been requested.
+    private static final Map<String, byte[]> S3_FILES = new ConcurrentHashMap<>();
+    private static final List<long[]> S3_RANGES = new CopyOnWriteArrayList<>();
+
+    // Split sizes that put split boundaries everywhere: on every byte, mid-line, exactly at the
+    // start of a line, and past the end of the file.
+    private static final long[] SPLIT_SIZES = new long[] {
+            1, 7, 20, 33, 64, 1000, SeedUrlSource.DEFAULT_SPLIT_SIZE
+    };
+
+    @Test
+    public void testReadingMultipleSplits() throws Exception {
+        File testDir = makeTestDir("testReadingMultipleSplits");
+        List<String> lines = makeLines(new Random(1L), 100);
+        File seedFile = new File(testDir, "seeds.txt");
+        FileUtils.writeByteArrayToFile(seedFile, makeContent(lines));
+
+        for (long splitSize : SPLIT_SIZES) {
+            SeedUrlSource source = makeSource(seedFile.getAbsolutePath(), splitSize);
+            List<String> urls = new ArrayList<>();
+            runSource(source, null, urls, lastUrl(lines), Integer.MAX_VALUE);
+            assertEquals("Split size " + splitSize, getUrls(lines), urls);
+        }
+    }
+
+    @Test
+    public void testReadingMultipleGzipMembers() throws Exception {
+        File testDir = makeTestDir("testReadingMultipleGzipMembers");
+        Random rand = new Random(1L);
+        List<String> lines = makeLines(rand, 100);
+        File seedFile = new File(testDir, "seeds.txt.gz");
+        FileUtils.writeByteArrayToFile(seedFile, compress(rand, makeContent(lines)));
+
+        SeedUrlSource source = makeSource(seedFile.getAbsolutePath(),
+                SeedUrlSource.DEFAULT_SPLIT_SIZE);
+        List<String> urls = new ArrayList<>();
+        runSource(source, null, urls, lastUrl(lines), Integer.MAX_VALUE);
+        assertEquals(getUrls(lines), urls);
+    }
+
+    @Test
+    public void testReadingS3Ranges() throws Exception {
+        List<String> lines = makeLines(new Random(1L), 100);
+        byte[] content = makeContent(lines);
+        S3_FILES.put(S3_SEEDS_PATH, content);
+
+        for (long splitSize : SPLIT_SIZES) {
+            S3_RANGES.clear();
+            SeedUrlSource source = makeSource(S3_SEEDS_FILENAME, splitSize);
+            List<String> urls = new ArrayList<>();
+            runSource(source, null, urls, lastUrl(lines), Integer.MAX_VALUE);
+            assertEquals("Split size " + splitSize, getUrls(lines), urls);
+
+            // Lines that cross the end of a split are finished with follow-on requests.
+            long numSplits = (content.length + splitSize - 1) / splitSize;
+            if (numSplits > 1) {
+                assertTrue(S3_RANGES.size() > numSplits);
+            }
+        }
+    }
+
+    @Test
+    public void testReadingLongLineFromS3() throws Exception {
+        // This line is longer than the follow-on range requests we make to finish the last line
+        // of a split, so it needs several of them.
+        List<String> lines = makeLines(new Random(1L), 100);
+        lines.add(50, makeLongUrl(200_000));
+        S3_FILES.put(S3_SEEDS_PATH, makeContent(lines));
+
+        SeedUrlSource source = makeSource(S3_SEEDS_FILENAME, 1000);
+        List<String> urls = new ArrayList<>();
+        runSource(source, null, urls, lastUrl(lines), Integer.MAX_VALUE);
+        assertEquals(getUrls(lines), urls);
+    }
+
+    @Test
+    public void testRestoringMidSplit() throws Exception {
+        File testDir = makeTestDir("testRestoringMidSplit");
+        List<String> lines = makeLines(new Random(1L), 30);
+        File seedFile = new File(testDir, "seeds.txt");
+        FileUtils.writeByteArrayToFile(seedFile, makeContent(lines));
+
+        checkRestoring(seedFile.getAbsolutePath(), 20, lines);
+    }
+
+    @Test
+    public void testRestoringMidS3Range() throws Exception {
+        List<String> lines = makeLines(new Random(1L), 30);
+        S3_FILES.put(S3_SEEDS_PATH, makeContent(lines));
+
+        checkRestoring(S3_SEEDS_FILENAME, 20, lines);
+    }
+
+    @Test
+    public void testRestoringMidGzipMember() throws Exception {
+        File testDir = makeTestDir("testRestoringMidGzipMember");
+        Random rand = new Random(1L);
+        List<String> lines = makeLines(rand, 30);
+        File seedFile = new File(testDir, "seeds.txt.gz");
+        FileUtils.writeByteArrayToFile(seedFile, compress(rand, makeContent(lines)));
+
+        checkRestoring(seedFile.getAbsolutePath(), SeedUrlSource.DEFAULT_SPLIT_SIZE, lines);
+    }
+
+    /**
+     * Stop after every possible number of URLs, snapshot, and then restore into a new source. Between the two runs we
+     * should get every URL exactly once.
+     */
+    private static void checkRestoring(String seedUrlsFilename, long splitSize, List<String> lines)
+            throws Exception {
+        List<String> expected = getUrls(lines);
+        for (int numUrls = 1; numUrls < expected.size(); numUrls++) {
+            SeedUrlSource source = makeSource(seedUrlsFilename, splitSize);
+            List<String> urls = new ArrayList<>();
+            OperatorSubtaskState state = runSource(source, null, urls, lastUrl(lines), numUrls);
+            assertEquals(numUrls, urls.size());
+
+            SeedUrlSource restoredSource = makeSource(seedUrlsFilename, splitSize);
+            runSource(restoredSource, state, urls, lastUrl(lines), Integer.MAX_VALUE);
+            assertEquals("Restored after " + numUrls, expected, urls);
+        }
+    }
+
+    private static SeedUrlSource makeSource(String seedUrlsFilename, long splitSize)
+            throws Exception {
+        SeedUrlSource result = S3Utils.isS3File(seedUrlsFilename)
+                ? new FakeS3SeedUrlSource(seedUrlsFilename)
+                : new SeedUrlSource(seedUrlsFilename, 1.0f);
+        result.setSplitSize(splitSize);
+        return result;
+    }
+
+    /**
+     * Run <source> as the only subtask, until it has emitted <lastUrl> or <maxUrls> URLs, and return a snapshot of its
+     * state.
+     */
+    private static OperatorSubtaskState runSource(SeedUrlSource source,
+            OperatorSubtaskState state, List<String> urls, String lastUrl, int maxUrls)
+            throws Exception {
+        source.setTerminator(new StopAfterCrawlTerminator(urls, lastUrl, maxUrls));
+        source.setMaxUrlsPerSecond(0);
+
+        AbstractStreamOperatorTestHarness<RawUrl> harness = new AbstractStreamOperatorTestHarness<>(
+                new StreamSource<>(source), 1, 1, 0);
+        harness.setup();
+        harness.initializeState(state);
+        harness.open();
+
+        try {
+            source.run(new ListSourceContext(urls));
+            return harness.snapshot(1L, 0L);
+        } finally {
+            harness.close();
+        }
+    }
+
+    private static File makeTestDir(String testName) throws Exception {
+        File testDir = new File("target/SeedUrlSourceTest/" + testName + "/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+        return testDir;
+    }
+
+    /**
+     * @return URLs of varying lengths, plus the comments, blank lines and CRLF line endings that we should skip or
+     *         strip.
+     */
+    private static List<String> makeLines(Random rand, int numUrls) {
+        List<String> result = new ArrayList<>();
+        result.add("# Seed URLs");
+        for (int i = 0; i < numUrls; i++) {
+            StringBuilder url = new StringBuilder("http://domain-" + i + ".com/");
+            int pathLength = rand.nextInt(40);
+            for (int j = 0; j < pathLength; j++) {
+                url.append((char) ('a' + rand.nextInt(26)));
+            }
+
+            if (rand.nextInt(10) == 0) {
+                result.add("");
+            }
+
+            result.add(rand.nextInt(10) == 0 ? url + "\r" : url.toString());
+        }
+
+        return result;
+    }
+
+    private static String makeLongUrl(int length) {
+        StringBuilder result = new StringBuilder("http://long-domain.com/");
+        while (result.length() < length) {
+            result.append('a');
+        }
+
+        return result.toString();
+    }
+
+    private static List<String> getUrls(List<String> lines) {
+        List<String> result = new ArrayList<>();
+        for (String line : lines) {
+            String url = line.trim();
+            if (!url.isEmpty() && !url.startsWith("#")) {
+                result.add(url);
+            }
+        }
+
+        return result;
+    }
+
+    private static String lastUrl(List<String> lines) {
+        List<String> urls = getUrls(lines);
+        return urls.get(urls.size() - 1);
+    }
+
+    private static byte[] makeContent(List<String> lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line);
+            result.append('\n');
+        }
+
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compress <data> in random-sized chunks, so we get many gzip members, with lines that span members.
+     */
+    private static byte[] compress(Random rand, byte[] data) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 1 + rand.nextInt(100));
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(member)) {
+                out.write(data, offset, length);
+            }
+
+            result.write(member.toByteArray());
+            offset += length;
+        }
+
+        return result.toByteArray();
+    }
+
+    /**
+     * Terminates the crawl once <lastUrl> has been emitted, or we've got <maxUrls>. We also give up after a while, so a
+     * source that's lost URLs fails the test versus waiting forever.
+     */
+    @SuppressWarnings("serial")
+    private static class StopAfterCrawlTerminator extends CrawlTerminator {
+
+        private static final long MAX_DURATION = 10_000L;
+
+        private final List<String> _urls;
+        private final String _lastUrl;
+        private final int _maxUrls;
+        private long _deadline;
+
+        public StopAfterCrawlTerminator(List<String> urls, String lastUrl, int maxUrls) {
+            _urls = urls;
+            _lastUrl = lastUrl;
+            _maxUrls = maxUrls;
+        }
+
+        @Override
+        public void open() {
+            super.open();
+
+            _deadline = System.currentTimeMillis() + MAX_DURATION;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            if (System.currentTimeMillis() > _deadline) {
+                return true;
+            }
+
+            int numUrls = _urls.size();
+            return (numUrls >= _maxUrls)
+                    || ((numUrls > 0) && _urls.get(numUrls - 1).equals(_lastUrl));
+        }
+    }
+
+    private static class ListSourceContext implements SourceContext<RawUrl> {
+
+        private final Object _lock = new Object();
+        private final List<String> _urls;
+
+        public ListSourceContext(List<String> urls) {
+            _urls = urls;
+        }
+
+        @Override
+        public void collect(RawUrl element) {
+            _urls.add(element.getUrl());
+        }
+
+        @Override
+        public void collectWithTimestamp(RawUrl element, long timestamp) {
+            collect(element);
+        }
+
+        @Override
+        public void emitWatermark(Watermark mark) {
+        }
+
+        @Override
+        public void markAsTemporarilyIdle() {
+        }
+
+        @Override
+        public Object getCheckpointLock() {
+            return _lock;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class FakeS3SeedUrlSource extends SeedUrlSource {
+
+        public FakeS3SeedUrlSource(String seedUrlsFilename) throws Exception {
+            super(seedUrlsFilename, 1.0f);
+        }
+
+        @Override
+        protected AmazonS3 makeS3Client() {
+            return new FakeS3Client();
+        }
+    }
+
+    /**
+     * Serves byte ranges of the files in S3_FILES, the way S3 does: the range end is inclusive, and gets clipped to the
+     * end of the file, but a range that starts past the end of the file is an error.
+     */
+    private static class FakeS3Client extends AbstractAmazonS3 {
+
+        @Override
+        public boolean doesObjectExist(String bucket, String key) {
+            return bucket.equals(S3_BUCKET) && S3_FILES.containsKey(key);
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(String bucket, String key) {
+            ObjectMetadata result = new ObjectMetadata();
+            result.setContentLength(getData(bucket, key).length);
+            return result;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            byte[] data = getData(request.getBucketName(), request.getKey());
+            long[] range = request.getRange();
+            long start = (range == null) ? 0 : range[0];
+            long end = (range == null) ? data.length : Math.min(range[1] + 1, data.length);
+            if (start >= data.length) {
+                AmazonS3Exception e = new AmazonS3Exception("Requested range not satisfiable");
+                e.setStatusCode(416);
+                throw e;
+            }
+
+            S3_RANGES.add(new long[] {
+                    start, end
+            });
+            S3Object result = new S3Object();
+            result.setObjectContent(
+                    new ByteArrayInputStream(data, (int) start, (int) (end - start)));
+            return result;
+        }
+
+        private byte[] getData(String bucket, String key) {
+            if (!doesObjectExist(bucket, key)) {
+                AmazonS3Exception e = new AmazonS3Exception("No such key: " + key);
+                e.setStatusCode(404);
+                throw e;
+            }
+
+            return S3_FILES.get(key);
+        }
+    }
+}
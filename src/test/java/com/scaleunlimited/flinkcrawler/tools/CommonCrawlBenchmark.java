@@ -0,0 +1,74 @@
+package com.scaleunlimited.flinkcrawler.tools;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flink.streaming.api.environment.LocalStreamEnvironment;
+import org.apache.flink.streaming.api.environment.LocalStreamEnvironmentWithAsyncExecution;
+import org.kohsuke.args4j.CmdLineParser;
+
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlMirror;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.WarcRangeBatcher;
+
+/**
+ * Throughput benchmark for the CommonCrawl fetch path that doesn't need S3. We generate a local CommonCrawl mirror with
+ * <numPages> pages, use all of them as seeds, and then run the CrawlTool (in common crawl mode, against the mirror)
+ * end to end in a local Flink environment.
+ *
+ * Usage: CommonCrawlBenchmark [number of pages] [parallelism] [fetch batch window in ms]
+ *
+ * The reported time includes the idle timeout (-timeout) that it takes for the crawl to terminate, so we subtract that
+ * when calculating pages/second. Each CommonCrawlFetcher logs the number of storage requests per page when it's
+ * closed.
+ */
+public class CommonCrawlBenchmark {
+
+    private static final String CRAWL_ID = "2017-22";
+    private static final int IDLE_TIMEOUT_SEC = 10;
+
+    public static void main(String[] args) throws Throwable {
+        int numPages = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int parallelism = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+        long fetchBatchWindow = (args.length > 2) ? Long.parseLong(args[2])
+                : WarcRangeBatcher.DEFAULT_BATCH_WINDOW;
+
+        File testDir = new File("target/CommonCrawlBenchmark/");
+        FileUtils.deleteDirectory(testDir);
+        File mirrorDir = new File(testDir, "mirror");
+        File seedsFile = new File(testDir, "seeds.txt");
+        File outputFile = new File(testDir, "content.txt");
+
+        long startTime = System.currentTimeMillis();
+        List<String> urls = CommonCrawlMirror.generate(mirrorDir, CRAWL_ID, numPages, 3000);
+        FileUtils.writeLines(seedsFile, StandardCharsets.UTF_8.name(), urls);
+        System.out.println(String.format("Generated %,d page mirror in %,dms", numPages,
+                System.currentTimeMillis() - startTime));
+
+        CrawlToolOptions options = new CrawlToolOptions();
+        new CmdLineParser(options).parseArgument(
+                "-commoncrawl", CRAWL_ID,
+                "-commoncrawlmirror", mirrorDir.getAbsolutePath(),
+                "-cachedir", new File(testDir, "cache").getAbsolutePath(),
+                "-seedurls", seedsFile.getAbsolutePath(),
+                "-textcontentfile", outputFile.getAbsolutePath(),
+                "-forcecrawldelay", "0",
+                "-fetcherspertask", "20",
+                "-fetchbatchwindow", Long.toString(fetchBatchWindow),
+                "-parallelism", Integer.toString(parallelism),
+                "-timeout", Integer.toString(IDLE_TIMEOUT_SEC));
+
+        LocalStreamEnvironment env = new LocalStreamEnvironmentWithAsyncExecution();
+        env.setParallelism(parallelism);
+
+        startTime = System.currentTimeMillis();
+        CrawlTool.run(env, options);
+        long deltaTime = System.currentTimeMillis() - startTime;
+
+        long crawlTime = Math.max(1L, deltaTime - (IDLE_TIMEOUT_SEC * 1000L));
+        System.out.println(String.format(
+                "Crawled %,d pages in %,dms (%,dms without idle timeout), %,.1f pages/second",
+                numPages, deltaTime, crawlTime, numPages * 1000.0 / crawlTime));
+    }
+}
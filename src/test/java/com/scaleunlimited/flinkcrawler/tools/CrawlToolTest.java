@@ -1,10 +1,20 @@
 package com.scaleunlimited.flinkcrawler.tools;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.scaleunlimited.flinkcrawler.urls.BaseUrlValidator;
+import com.scaleunlimited.flinkcrawler.utils.CrawlToolUtils;
+
 import crawlercommons.fetcher.http.UserAgent;
 
 public class CrawlToolTest {
@@ -42,4 +52,87 @@ public class CrawlToolTest {
         options.validate();
     }
 
+    @Test
+    public void testWARCContentPathRequiresCheckpointing() throws Throwable {
+        CrawlToolOptions options = new CrawlToolOptions();
+        options.setUserAgent(INVALID_USER_AGENT);
+        options.setWARCContentPath("target/CrawlToolTest/warc");
+        try {
+            options.validate();
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+            assertTrue(e.getMessage().contains("-checkpointdir"));
+        }
+
+        options.setCheckpointDir("file:///tmp/checkpoints");
+        options.validate();
+    }
+
+    @Test
+    public void testSeedUrlOptions() throws Throwable {
+        CrawlToolOptions options = new CrawlToolOptions();
+        options.setUserAgent(INVALID_USER_AGENT);
+        options.setMaxSeedUrlsPerSecond(100.0f);
+        options.setSeedSplitSize(16);
+        assertEquals(100.0f, options.getMaxSeedUrlsPerSecond(), 0.0001f);
+        assertEquals(16 * 1024L * 1024L, options.getSeedSplitSize());
+
+        options.setSeedSplitSize(0);
+        try {
+            options.validate();
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+            assertTrue(e.getMessage().contains("-seedsplitsize"));
+        }
+    }
+
+    @Test
+    public void testSegmentDiskCacheSize() throws Throwable {
+        CrawlToolOptions options = new CrawlToolOptions();
+        options.setCommonCrawlId("2017-22");
+        options.setCommonCrawlSegmentDiskCacheSize(512);
+        assertEquals(512 * 1024L * 1024L, options.getCommonCrawlSegmentDiskCacheSize());
+
+        options.setCommonCrawlSegmentDiskCacheSize(0);
+        try {
+            options.validate();
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+            assertTrue(e.getMessage().contains("-segmentdiskcachesize"));
+        }
+    }
+
+    @Test
+    public void testDomainFilterOptions() throws Throwable {
+        File testDir = new File("target/CrawlToolTest/testDomainFilterOptions/");
+        FileUtils.deleteDirectory(testDir);
+        File allowedFile = new File(testDir, "allowed.txt");
+        FileUtils.write(allowedFile, "# Domains to crawl\ndomain1.com\n\n  domain2.com  \n",
+                StandardCharsets.UTF_8);
+        File blockedFile = new File(testDir, "blocked.txt");
+        FileUtils.write(blockedFile, "spam.domain1.com\n", StandardCharsets.UTF_8);
+
+        CrawlToolOptions options = new CrawlToolOptions();
+        options.setUserAgent(INVALID_USER_AGENT);
+        options.setAllowedDomainsFilename(allowedFile.getAbsolutePath());
+        options.setBlockedDomainsFilename(blockedFile.getAbsolutePath());
+
+        BaseUrlValidator validator = CrawlToolUtils.getUrlValidator(options);
+        assertTrue(validator.isValid("http://domain1.com/page.html"));
+        assertTrue(validator.isValid("http://www.domain2.com/page.html"));
+        assertFalse(validator.isValid("http://domain3.com/page.html"));
+        assertFalse(validator.isValid("http://spam.domain1.com/page.html"));
+
+        options.setSingleDomain("domain1.com");
+        try {
+            options.validate();
+            fail("Should have thrown exception");
+        } catch (RuntimeException e) {
+            // expected
+            assertTrue(e.getMessage().contains("-singledomain"));
+        }
+    }
 }
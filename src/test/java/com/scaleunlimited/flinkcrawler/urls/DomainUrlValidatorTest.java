@@ -0,0 +1,79 @@
+package com.scaleunlimited.flinkcrawler.urls;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DomainUrlValidatorTest {
+
+    @Test
+    public void testAllowedDomains() {
+        DomainUrlValidator validator = new DomainUrlValidator(
+                Arrays.asList("foo.com", "sub.bar.com", "domain.co.uk", "co.uk"), null);
+
+        assertTrue(validator.isValid("http://foo.com/"));
+        assertTrue(validator.isValid("http://www.FOO.com/page.html"));
+        assertTrue(validator.isValid("http://sub.bar.com/"));
+        assertTrue(validator.isValid("http://www.sub.bar.com/"));
+        assertTrue(validator.isValid("http://www.domain.co.uk/"));
+
+        // Not on a label boundary
+        assertFalse(validator.isValid("http://barfoo.com/"));
+        // Super-domain of an allowed domain
+        assertFalse(validator.isValid("http://bar.com/"));
+        assertFalse(validator.isValid("http://other.bar.com/"));
+        // Shorter than the PLD, so doesn't count
+        assertFalse(validator.isValid("http://www.other.co.uk/"));
+    }
+
+    @Test
+    public void testBlockedDomains() {
+        DomainUrlValidator validator = new DomainUrlValidator(null,
+                Arrays.asList("spam.com", "ads.foo.com"), "pdf");
+
+        assertTrue(validator.isValid("http://foo.com/"));
+        assertTrue(validator.isValid("http://www.foo.com/"));
+        assertTrue(validator.isValid("http://notspam.com/"));
+
+        assertFalse(validator.isValid("http://spam.com/"));
+        assertFalse(validator.isValid("http://www.spam.com/"));
+        assertFalse(validator.isValid("http://ads.foo.com/"));
+        assertFalse(validator.isValid("http://x.ads.foo.com/"));
+
+        // Still does regular validation
+        assertFalse(validator.isValid("ftp://www.foo.com/"));
+        assertFalse(validator.isValid("http://www.foo.com/doc.pdf"));
+    }
+
+    @Test
+    public void testNoDomains() {
+        DomainUrlValidator validator = new DomainUrlValidator(null, null, "pdf");
+
+        assertTrue(validator.isValid("http://foo.com/"));
+        assertTrue(validator.isValid("http://www.other.co.uk/"));
+        assertTrue(validator.isHostnameValid("localhost"));
+
+        // Still does regular validation
+        assertFalse(validator.isValid("ftp://www.foo.com/"));
+        assertFalse(validator.isValid("http://www.foo.com/doc.pdf"));
+    }
+
+    @Test
+    public void testManyDomains() {
+        List<String> domains = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            domains.add("domain" + i + ".com");
+        }
+
+        DomainUrlValidator validator = new DomainUrlValidator(domains, null);
+        assertTrue(validator.isValid("http://domain0.com/"));
+        assertTrue(validator.isValid("http://www.domain49999.com/"));
+        assertFalse(validator.isValid("http://domain50000.com/"));
+        assertFalse(validator.isValid("http://xdomain1.com/"));
+    }
+}
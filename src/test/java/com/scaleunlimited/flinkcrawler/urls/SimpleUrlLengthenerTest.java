@@ -50,25 +50,27 @@ public class SimpleUrlLengthenerTest {
     }
     
     @Test
-    public void testLruCache() throws Throwable {
-        Map<Integer, Integer> testCache = SimpleUrlLengthener.makeLruCache(10);
-        for (int i = 0; i < 10; i++) {
-            testCache.put(i, i * 5);
-        }
-        for (int i = 0; i < 5; i++) {
-            testCache.put(i * 2, i * 10);
-        }
-        for (int i = 0; i < 5; i++) {
-            testCache.put((i+1) * 10, (i+1) * 10);
-        }
-        testCache.put(1000, 1000);
-        for (int i = 0; i < 5; i++) {
-            Assert.assertNull(testCache.get(0));
-            if (i != 0) {
-                Assert.assertEquals(i * 10, (int)(testCache.get(i * 2)));
-            }
-            Assert.assertEquals((i+1) * 10, (int)(testCache.get((i+1) * 10)));
-            Assert.assertEquals(1000, (int)(testCache.get(1000)));
-        }
+    public void testNeedsLengthening() throws Throwable {
+        // Shouldn't need to be opened first.
+        SimpleUrlLengthener lengthener = new SimpleUrlLengthener(
+                new MockUrlLengthenerFetcher.MockUrlLengthenerFetcherBuilder(
+                        new MockUrlLengthenerFetcher(REDIRECTIONS)));
+        Assert.assertTrue(lengthener.needsLengthening(new RawUrl("http://bit.ly/4526")));
+        Assert.assertTrue(lengthener.needsLengthening(new RawUrl("https://tinyurl.com/my-url-name")));
+        Assert.assertFalse(lengthener.needsLengthening(new RawUrl("http://domain.com/page")));
+        Assert.assertFalse(lengthener.needsLengthening(
+                new RawUrl("http://tinyurl.com.my-domain.com/my-url-name")));
+    }
+
+    @Test
+    public void testCachedLengthening() throws Throwable {
+        RawUrl sourceUrl = new RawUrl(_normalizer.normalize("bit.ly/4526"), 0.5f);
+        RawUrl targetUrl = _lengthener.lengthen(sourceUrl);
+
+        // Once it's cached, we should get the same target, but with the score of the source URL.
+        REDIRECTIONS.clear();
+        RawUrl cachedUrl = _lengthener.lengthen(new RawUrl(sourceUrl.getUrl(), 0.25f));
+        Assert.assertEquals(targetUrl.getUrl(), cachedUrl.getUrl());
+        Assert.assertEquals(0.25f, cachedUrl.getScore(), 0.0001f);
     }
 }
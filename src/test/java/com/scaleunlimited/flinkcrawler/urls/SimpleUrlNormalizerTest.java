@@ -16,8 +16,11 @@
  */
 package com.scaleunlimited.flinkcrawler.urls;
 
+import java.util.Random;
+
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class SimpleUrlNormalizerTest {
@@ -394,4 +397,84 @@ public class SimpleUrlNormalizerTest {
         normalizeTest("http://domain.org/201705.mbox/<CAC@mail.gmail.com>",
                 "http://domain.org/201705.mbox/%3cCAC@mail.gmail.com%3e", "Encode <> chars");
     }
+
+    @Test
+    public void testSameResultsAsReferenceNormalizer() {
+        // Pieces of URLs that exercise all of the special cases in the normalizer.
+        final String[] pieces = {
+                "http://", "https://", "HTTP://", "ftp://", "mailto:", "http:foo", "://", "www.",
+                "Domain.COM", "domain.com.", "[::1]", "1.2.3.4", ":80", ":443", ":8080", ":", "/",
+                "//", "/../", "/./", "..", "/index.html", "/Default.ASPX", "/index.php3",
+                "/INDEX.htm", "?", "&", "=", "#", "#/", "/#", "%", "%2", "%41", "%zz", "%e2%82%ac",
+                "%c3", "%C3%A9", "+", " ", "sid=1", "SessionID=x", "jsessionid=abc",
+                ";jsessionid=ABC", "user=bob", "usr=1", "Sort=desc", "width=3", "q=", "a=b", "x",
+                "\u00e9", "\u20ac", "\ud83d\ude00", "\ud800", "\udc00", "\u0085", "\u2028",
+                "\u212a", "\u0001", "\t", "\u007f", "~", "!", "*", "'", "(", ")", ";", "@", "$",
+                ",", "[", "]", "\"", "<", ">", "{", "|", "\\", "^", "`", "user:pw@"
+        };
+
+        BaseUrlNormalizer[][] normalizers = {
+                {
+                        new ReferenceUrlNormalizer(), new SimpleUrlNormalizer()
+                }, {
+                        new ReferenceUrlNormalizer(true), new SimpleUrlNormalizer(true)
+                }, {
+                        new ReferenceUrlNormalizer(false, true),
+                        new SimpleUrlNormalizer(false, true)
+                }
+        };
+
+        Random rand = new Random(1L);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder url = new StringBuilder();
+            if (rand.nextInt(4) != 0) {
+                url.append(rand.nextBoolean() ? "http://" : "https://");
+            }
+
+            int numPieces = rand.nextInt(14);
+            for (int j = 0; j < numPieces; j++) {
+                url.append(pieces[rand.nextInt(pieces.length)]);
+            }
+
+            for (BaseUrlNormalizer[] pair : normalizers) {
+                normalizeTest(pair[1], url.toString(), pair[0].normalize(url.toString()),
+                        "same as reference");
+            }
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkAgainstReferenceNormalizer() {
+        final String[] urls = {
+                "http://www.domain.com/path/to/page.html",
+                "https://Domain.com:443/a/b/../c/index.html?q=1&sid=123&z=%41",
+                "http://domain.com/search?q=foo+bar&page=2#frag", "domain.com/some%20path/x"
+        };
+        final int numIterations = 1000000;
+
+        BaseUrlNormalizer reference = new ReferenceUrlNormalizer();
+        BaseUrlNormalizer normalizer = new SimpleUrlNormalizer();
+
+        // Warm up both normalizers
+        for (int i = 0; i < 100000; i++) {
+            reference.normalize(urls[i % urls.length]);
+            normalizer.normalize(urls[i % urls.length]);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            reference.normalize(urls[i % urls.length]);
+        }
+        long referenceTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            normalizer.normalize(urls[i % urls.length]);
+        }
+        long normalizerTime = System.nanoTime() - startTime;
+
+        System.out.println(String.format("Reference: %dns/url, simple: %dns/url",
+                referenceTime / numIterations, normalizerTime / numIterations));
+    }
 }
@@ -16,11 +16,14 @@
  */
 package com.scaleunlimited.flinkcrawler.urls;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
 public class SimpleUrlValidatorTest {
 
     @Test
@@ -56,6 +59,10 @@ public class SimpleUrlValidatorTest {
 
         assertFalse(validator.isValid("http://foo.com/page1.pdf"));
         assertFalse(validator.isValid("http://foo.com/page1.xml"));
+
+        // Only matches an extension
+        assertTrue(validator.isValid("http://foo.com/pdf"));
+        assertTrue(validator.isValid("http://foo.com/page1.html?type=pdf"));
     }
 
     @Test
@@ -68,4 +75,50 @@ public class SimpleUrlValidatorTest {
                 "http://mail-archives.us.apache.org/mod_mbox/www-announce/201705.mbox/%3CCACRbFyjtT7QQGHUzTRdbJoySbJb7tt4BDk5-r-VRn0GB0Kgvag@mail.gmail.com%3E"));
     }
 
+    @Test
+    public void testParsedUrl() throws Exception {
+        SimpleUrlValidator validator = new SimpleUrlValidator("pdf");
+
+        // Validating the parsed URL gives the same result as validating the string (which also
+        // parses it with java.net.URI), for URLs that java.net.URL can parse.
+        String[] urls = {
+                "http://foo.com", "https://www.foo.com/", "HTTP://foo.com/",
+                "ftp://aws.foo.com/", "http://foo.com/page1.pdf", "http://foo.com/pdf",
+                "http://foo.com/page1.html?type=pdf", "http://www.foo.com/a;b/c?d=e&f=g#h",
+                "http://foo.com/page?x=[1]", "http://foo.com/page[1]", "http://foo.com/#a#b",
+                "http://foo.com/a b", "http://foo.com/a%20b", "http://foo.com/a%2", "http://foo.com/a%zz",
+                "http://foo.com/<a>", "http://foo.com/a{b}", "http://foo.com/a|b", "http://foo.com/a^b",
+                "http://foo.com/caf\u00e9", "http://foo_bar.com/", "http://-foo.com/", "http://foo-.com/",
+                "http://foo..com/", "http://foo.com./", "http://foo.123/", "http://123/",
+                "http://10.0.0.1/", "http://10.0.0.256/", "http://10.0.0/", "http://[::1]/",
+                "http://user@foo.com/", "http://foo.com:8080/", "http://foo.com:/",
+                "http://foo.com?x=1", "http://foo.com#ref",
+                "http://mail-archives.us.apache.org/mod_mbox/www-announce/201705.mbox/<CACRbFyjtT7QQGHUzTRdbJoySbJb7tt4BDk5-r-VRn0GB0Kgvag@mail.gmail.com>",
+                "http://mail-archives.us.apache.org/mod_mbox/www-announce/201705.mbox/%3CCACRbFyjtT7QQGHUzTRdbJoySbJb7tt4BDk5-r-VRn0GB0Kgvag@mail.gmail.com%3E"
+        };
+
+        for (String url : urls) {
+            assertEquals(url, validator.isValid(url), validator.isValid(new ValidUrl(url)));
+        }
+    }
+
+    @Test
+    public void testParsedIPv6Url() throws Exception {
+        SimpleUrlValidator validator = new SimpleUrlValidator();
+
+        // java.net.URL accepts these IPv6 literals, but java.net.URI doesn't.
+        String[] invalidUrls = {
+                "http://[fe80::1%25et,h0]/", "https://[0fe80::1%25eth0]/"
+        };
+
+        for (String url : invalidUrls) {
+            assertFalse(url, validator.isValid(url));
+            assertFalse(url, validator.isValid(new ValidUrl(url)));
+        }
+
+        // A scope id isn't a '%' escape.
+        String url = "https://[::1%2]/";
+        assertTrue(url, validator.isValid(url));
+        assertTrue(url, validator.isValid(new ValidUrl(url)));
+    }
 }
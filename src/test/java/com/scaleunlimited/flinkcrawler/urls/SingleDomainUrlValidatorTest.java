@@ -11,6 +11,17 @@ public class SingleDomainUrlValidatorTest {
         SimpleUrlValidator validator = new SingleDomainUrlValidator("scaleunlimited.com");
         assertThat(validator.isValid("http://transpac.com")).isFalse();
         assertThat(validator.isValid("http://scaleunlimited.com")).isTrue();
+        assertThat(validator.isValid("http://www.ScaleUnlimited.com")).isTrue();
+        assertThat(validator.isValid("http://notscaleunlimited.com")).isFalse();
+    }
+
+    @Test
+    public void testIsHostnameWithinDomain() {
+        assertThat(SingleDomainUrlValidator.isHostnameWithinDomain("a.b.domain.co.uk", "domain.co.uk")).isTrue();
+        assertThat(SingleDomainUrlValidator.isHostnameWithinDomain("a.b.domain.co.uk", "b.domain.co.uk")).isTrue();
+        assertThat(SingleDomainUrlValidator.isHostnameWithinDomain("a.b.domain.co.uk", "co.uk")).isFalse();
+        assertThat(SingleDomainUrlValidator.isHostnameWithinDomain("co.uk", "co.uk")).isTrue();
+        assertThat(SingleDomainUrlValidator.isHostnameWithinDomain("b.domain.co.uk", "a.b.domain.co.uk")).isFalse();
     }
 
 }
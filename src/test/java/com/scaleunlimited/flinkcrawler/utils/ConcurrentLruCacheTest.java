@@ -0,0 +1,60 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConcurrentLruCacheTest {
+
+    @Test
+    public void testLruEviction() throws Exception {
+        // Single stripe, so we get exact LRU behavior.
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<>(3, 1);
+        cache.put(1, 10);
+        cache.put(2, 20);
+        cache.put(3, 30);
+
+        // Touch 1, so 2 is now the least recently used.
+        assertEquals(10, (int) cache.get(1));
+        cache.put(4, 40);
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        assertEquals(10, (int) cache.get(1));
+        assertEquals(30, (int) cache.get(3));
+        assertEquals(40, (int) cache.get(4));
+    }
+
+    @Test
+    public void testBoundedWithConcurrentAccess() throws Exception {
+        final int maxSize = 100;
+        final ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(maxSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10_000; i++) {
+                        String key = "key-" + thread + "-" + i;
+                        cache.put(key, key);
+                        cache.get("key-" + thread + "-" + (i / 2));
+                    }
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertTrue(cache.size() <= maxSize);
+        assertTrue(cache.size() > 0);
+    }
+}
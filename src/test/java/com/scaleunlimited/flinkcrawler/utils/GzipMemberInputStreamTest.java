@@ -0,0 +1,136 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.utils.GzipMemberInputStream.MemberStart;
+
+public class GzipMemberInputStreamTest {
+
+    @Test
+    public void testSingleMember() throws Exception {
+        byte[] data = makeData(new Random(1L), 100_000);
+        byte[] compressed = compress(data);
+
+        try (GzipMemberInputStream in = new GzipMemberInputStream(
+                new ByteArrayInputStream(compressed), 0)) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+
+            MemberStart start = in.getMemberStart(data.length);
+            assertEquals(0, start.getCompressedOffset());
+            assertEquals(0, start.getUncompressedOffset());
+        }
+    }
+
+    @Test
+    public void testResumingFromMemberStarts() throws Exception {
+        Random rand = new Random(1L);
+        byte[] data = makeData(rand, 500_000);
+
+        // Compress in random-sized chunks, so we get lots of members.
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, 1 + rand.nextInt(20_000));
+            bos.write(compress(Arrays.copyOfRange(data, offset, offset + length)));
+            offset += length;
+        }
+
+        byte[] compressed = bos.toByteArray();
+
+        // Read through the data, and check that we can resume from randomly selected points.
+        try (GzipMemberInputStream in = new GzipMemberInputStream(
+                new ByteArrayInputStream(compressed), 0)) {
+            byte[] buffer = new byte[1000];
+            long position = 0;
+            while (true) {
+                int numRead = in.read(buffer, 0, 1 + rand.nextInt(buffer.length));
+                if (numRead == -1) {
+                    break;
+                }
+
+                position += numRead;
+                if (rand.nextInt(20) == 0) {
+                    MemberStart start = in.getMemberStart(position);
+                    byte[] remaining = resume(compressed, start.getCompressedOffset(),
+                            position - start.getUncompressedOffset());
+                    assertArrayEquals(Arrays.copyOfRange(data, (int) position, data.length),
+                            remaining);
+                }
+            }
+
+            assertEquals(data.length, position);
+        }
+    }
+
+    @Test
+    public void testTrailingGarbage() throws Exception {
+        byte[] data = "http://domain.com/\n".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(data);
+        byte[] padded = Arrays.copyOf(compressed, compressed.length + 100);
+
+        try (GzipMemberInputStream in = new GzipMemberInputStream(
+                new ByteArrayInputStream(padded), 0)) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testBadCrc() throws Exception {
+        byte[] compressed = compress("http://domain.com/\n".getBytes(StandardCharsets.UTF_8));
+        compressed[compressed.length - 8] ^= 1;
+
+        try (GzipMemberInputStream in = new GzipMemberInputStream(
+                new ByteArrayInputStream(compressed), 0)) {
+            IOUtils.toByteArray(in);
+            fail("Should have thrown exception");
+        } catch (ZipException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] resume(byte[] compressed, long compressedOffset, long skip)
+            throws IOException {
+        ByteArrayInputStream bis = new ByteArrayInputStream(compressed);
+        bis.skip(compressedOffset);
+        try (GzipMemberInputStream in = new GzipMemberInputStream(bis, compressedOffset)) {
+            IOUtils.skipFully(in, skip);
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+            out.write(data);
+        }
+
+        return bos.toByteArray();
+    }
+
+    private static byte[] makeData(Random rand, int numBytes) {
+        StringBuilder result = new StringBuilder();
+        while (result.length() < numBytes) {
+            result.append("http://www.domain");
+            result.append(rand.nextInt(1000));
+            result.append(".com/page");
+            result.append(rand.nextInt(100_000));
+            result.append(".html\n");
+        }
+
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
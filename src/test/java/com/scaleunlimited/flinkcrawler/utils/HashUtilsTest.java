@@ -0,0 +1,133 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class HashUtilsTest {
+
+    @Test
+    public void testKnownValues() {
+        // xxHash64 (seed 0) of the UTF-16LE bytes
+        assertEquals(0xEF46DB3751D8E999L, HashUtils.longHash(""));
+        assertEquals(0xAFF0F2A2F8B32731L, HashUtils.longHash("abc"));
+        assertEquals(0x18F2954BC6AEE473L, HashUtils.longHash("http://domain.com/"));
+        assertEquals(0xE23D38ECB4907376L,
+                HashUtils.longHash("http://www.scaleunlimited.com/page?q=\u00e9t\u00e9"));
+    }
+
+    @Test
+    public void testCharSequences() {
+        String url = "http://www.scaleunlimited.com/some/longer/path/to/a/page.html";
+        assertEquals(HashUtils.longHash(url), HashUtils.longHash(new StringBuilder(url)));
+    }
+
+    @Test
+    public void testAvalanche() {
+        // Flipping any one bit of the input should flip about half of the output bits.
+        Random rand = new Random(1L);
+        final int numTrials = 10_000;
+        long totalFlippedBits = 0;
+        for (int i = 0; i < numTrials; i++) {
+            char[] chars = makeUrl(rand).toCharArray();
+            long hash = HashUtils.longHash(new String(chars));
+
+            int index = rand.nextInt(chars.length);
+            chars[index] ^= (char) (1 << rand.nextInt(7));
+            totalFlippedBits += Long.bitCount(hash ^ HashUtils.longHash(new String(chars)));
+        }
+
+        double averageFlippedBits = (double) totalFlippedBits / numTrials;
+        assertEquals(32.0, averageFlippedBits, 0.5);
+    }
+
+    @Test
+    public void testNoCollisions() {
+        assertEquals(0, countCollisions(1_000_000));
+    }
+
+    @Ignore
+    @Test
+    public void testNoCollisionsLargeCorpus() {
+        // Needs about 1GB of heap, so run with -Xmx2g or so.
+        assertEquals(0, countCollisions(100_000_000));
+    }
+
+    @Ignore
+    @Test
+    public void benchmarkAgainstLegacyHash() {
+        Random rand = new Random(1L);
+        String[] urls = new String[10_000];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = makeUrl(rand);
+        }
+
+        final int numIterations = 10_000_000;
+        long result = 0;
+
+        // Warm up both hash functions.
+        for (int i = 0; i < numIterations / 10; i++) {
+            result += HashUtils.longHash(urls[i % urls.length]);
+            result += HashUtils.legacyLongHash(urls[i % urls.length]);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            result += HashUtils.legacyLongHash(urls[i % urls.length]);
+        }
+        long legacyTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < numIterations; i++) {
+            result += HashUtils.longHash(urls[i % urls.length]);
+        }
+        long newTime = System.nanoTime() - startTime;
+
+        System.out.println(String.format("Legacy: %dns/url, new: %dns/url (%d)",
+                legacyTime / numIterations, newTime / numIterations, result));
+    }
+
+    /**
+     * Hash <numUrls> unique URLs, and return the number of duplicate hashes.
+     */
+    private static int countCollisions(int numUrls) {
+        long[] hashes = new long[numUrls];
+        StringBuilder url = new StringBuilder();
+        for (int i = 0; i < numUrls; i++) {
+            // Similar URLs that differ in only a few chars are the hard case.
+            url.setLength(0);
+            url.append("http://www.domain");
+            url.append(i % 1000);
+            url.append(".com/page-");
+            url.append(i / 1000);
+            url.append(".html");
+            hashes[i] = HashUtils.longHash(url);
+        }
+
+        Arrays.sort(hashes);
+        int result = 0;
+        for (int i = 1; i < numUrls; i++) {
+            if (hashes[i] == hashes[i - 1]) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    private static String makeUrl(Random rand) {
+        StringBuilder result = new StringBuilder("http://www.domain");
+        result.append(rand.nextInt(10_000));
+        result.append(".com/");
+        int numChars = 5 + rand.nextInt(60);
+        for (int i = 0; i < numChars; i++) {
+            result.append((char) ('a' + rand.nextInt(26)));
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.scaleunlimited.flinkcrawler.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testRateLimiting() throws Exception {
+        TokenBucket bucket = new TokenBucket(100.0, 1.0);
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 51; i++) {
+            bucket.acquire();
+        }
+        long elapsedTime = System.currentTimeMillis() - startTime;
+
+        // First token is free, the next 50 take 10ms each.
+        assertTrue("Took " + elapsedTime + "ms", elapsedTime >= 450);
+        assertTrue("Took " + elapsedTime + "ms", elapsedTime < 2000);
+    }
+
+    @Test
+    public void testTryAcquire() throws Exception {
+        TokenBucket bucket = new TokenBucket(10.0, 2.0);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // After being idle we can burst, but only up to the max number of tokens.
+        Thread.sleep(500);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testChangingRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000.0, 1.0);
+        bucket.acquire();
+
+        bucket.setTokensPerSecond(10.0);
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            bucket.acquire();
+        }
+        long elapsedTime = System.currentTimeMillis() - startTime;
+
+        // At the lower rate, each token takes 100ms.
+        assertTrue("Took " + elapsedTime + "ms", elapsedTime >= 350);
+        assertTrue("Took " + elapsedTime + "ms", elapsedTime < 2000);
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+        TokenBucket bucket = new TokenBucket(0, 0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+    }
+}
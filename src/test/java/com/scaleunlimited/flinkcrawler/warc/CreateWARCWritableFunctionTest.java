@@ -0,0 +1,121 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.Collector;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.scaleunlimited.flinkcrawler.pojos.FetchResultUrl;
+import com.scaleunlimited.flinkcrawler.pojos.FetchStatus;
+import com.scaleunlimited.flinkcrawler.pojos.ValidUrl;
+
+import crawlercommons.util.Headers;
+
+public class CreateWARCWritableFunctionTest {
+
+    @Test
+    public void testResponseRequestAndMetadataRecords() throws Exception {
+        CreateWARCWritableFunction func = new CreateWARCWritableFunction("test-agent");
+        func.setRuntimeContext(Mockito.mock(RuntimeContext.class));
+        func.open(new Configuration());
+
+        ValidUrl url = new ValidUrl("http://domain.com/page.html");
+        Headers headers = new Headers();
+        headers.add("Content-Type", "text/html");
+        headers.add("Content-Encoding", "gzip");
+        byte[] content = "<html><body>abc</body></html>".getBytes(StandardCharsets.UTF_8);
+        FetchResultUrl fetchedUrl = new FetchResultUrl(url, FetchStatus.FETCHED, 1495454400000L,
+                "http://domain.com/page.html?x=1", headers, content, "text/html", 1000);
+        fetchedUrl.setHostAddress("10.0.0.1");
+
+        List<WARCRecord> records = new ArrayList<>();
+        Collector<Tuple2<NullWritable, WARCWritable>> collector = new Collector<Tuple2<NullWritable, WARCWritable>>() {
+
+            @Override
+            public void collect(Tuple2<NullWritable, WARCWritable> record) {
+                records.add(record.f1.getRecord());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        func.flatMap(fetchedUrl, collector);
+        assertEquals(3, records.size());
+
+        WARCRecord response = records.get(0);
+        WARCRecord.Header header = response.getHeader();
+        assertEquals("response", header.getRecordType());
+        assertEquals("http://domain.com/page.html?x=1", header.getTargetURI());
+        assertEquals("2017-05-22T12:00:00Z", header.getDateString());
+        assertEquals("application/http; msgtype=response", header.getContentType());
+        assertTrue(header.getRecordID().startsWith("<urn:uuid:"));
+        assertNull(header.getField("WARC-Warcinfo-ID"));
+        assertEquals("10.0.0.1", header.getField("WARC-IP-Address"));
+        assertEquals(new WARCDigester().digest(content), header.getField("WARC-Payload-Digest"));
+
+        // The fetched content isn't copied.
+        assertSame(content, response.getPayload());
+
+        String httpHeaders = new String(response.getContentPrefix(), StandardCharsets.UTF_8);
+        assertTrue(httpHeaders.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(httpHeaders.contains("X-Crawler-content-encoding: gzip\r\n"));
+        assertTrue(httpHeaders.endsWith("Content-Length: " + content.length + "\r\n\r\n"));
+        assertEquals(new WARCDigester().digest(response.getContent()),
+                header.getField("WARC-Block-Digest"));
+
+        // Round-trip the response record.
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            response.write(out);
+        }
+
+        WARCRecord parsed = new WARCRecord(
+                new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertArrayEquals(response.getContent(), parsed.getContent());
+
+        WARCRecord request = records.get(1);
+        assertEquals("request", request.getHeader().getRecordType());
+        assertEquals(header.getRecordID(), request.getHeader().getField("WARC-Concurrent-To"));
+        assertEquals("GET /page.html?x=1 HTTP/1.1\r\nHost: domain.com\r\nUser-Agent: test-agent\r\n\r\n",
+                new String(request.getContent(), StandardCharsets.UTF_8));
+
+        WARCRecord metadata = records.get(2);
+        assertEquals("metadata", metadata.getHeader().getRecordType());
+        assertEquals(header.getRecordID(), metadata.getHeader().getField("WARC-Concurrent-To"));
+        assertNotEquals(header.getRecordID(), metadata.getHeader().getRecordID());
+        String fields = new String(metadata.getContent(), StandardCharsets.UTF_8);
+        assertTrue(fields.contains("originalUrl: http://domain.com/page.html\r\n"));
+        assertTrue(fields.contains("ip: 10.0.0.1\r\n"));
+        assertTrue(fields.contains("responseRate: 1000\r\n"));
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        WARCDigester digester = new WARCDigester();
+        assertEquals("sha1:VGMT4NSHA2AWVOR6EVYXQUGCNSONBWE5",
+                digester.digest("abc".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("sha1:VGMT4NSHA2AWVOR6EVYXQUGCNSONBWE5",
+                digester.digest("a".getBytes(StandardCharsets.UTF_8),
+                        "bc".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,73 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.Collector;
+import org.apache.hadoop.io.NullWritable;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class EncodeWARCRecordFunctionTest {
+
+    @Test
+    public void testEncoding() throws Exception {
+        EncodeWARCRecordFunction func = new EncodeWARCRecordFunction(true);
+        func.setRuntimeContext(Mockito.mock(RuntimeContext.class));
+        func.open(new Configuration());
+
+        List<EncodedWARCRecord> results = new ArrayList<>();
+        Collector<EncodedWARCRecord> collector = new Collector<EncodedWARCRecord>() {
+
+            @Override
+            public void collect(EncodedWARCRecord record) {
+                results.add(record);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        byte[] content = "<html><body>abc</body></html>".getBytes(StandardCharsets.UTF_8);
+        func.flatMap(makeRecord("resource", content), collector);
+        func.flatMap(makeRecord("metadata", content), collector);
+        func.flatMap(new Tuple2<>(NullWritable.get(), new WARCWritable()), collector);
+        func.close();
+
+        assertEquals(2, results.size());
+
+        // Each record is a complete gzip member.
+        for (EncodedWARCRecord encoded : results) {
+            WARCRecord record = new WARCRecord(new DataInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(encoded.getData()))));
+            assertEquals("http://domain.com/page.html", record.getHeader().getTargetURI());
+        }
+
+        // Only the resource record gets indexed.
+        assertTrue(results.get(0).getCdxLinePrefix().startsWith("com,domain)/page.html "));
+        assertTrue(results.get(0).getCdxLinePrefix().endsWith("\"status\": \"200\""));
+        assertNull(results.get(1).getCdxLinePrefix());
+    }
+
+    private static Tuple2<NullWritable, WARCWritable> makeRecord(String recordType, byte[] content) {
+        WARCRecord record = new WARCRecord.Builder(recordType)
+                .setTargetURI("http://domain.com/page.html")
+                .setDate(1495454400000L)
+                .setContentType("text/html")
+                .setContent(content)
+                .build();
+        return new Tuple2<>(NullWritable.get(), new WARCWritable(record));
+    }
+}
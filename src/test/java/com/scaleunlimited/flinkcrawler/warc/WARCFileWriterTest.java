@@ -0,0 +1,112 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CdxEntry;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CdxSegment;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlUrls;
+
+public class WARCFileWriterTest {
+
+    @Test
+    public void testGzipPerRecordWithIndex() throws Exception {
+        File testDir = new File("target/WARCFileWriterTest/testGzipPerRecordWithIndex/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+
+        Configuration conf = new Configuration();
+        conf.setBoolean(WARCFileWriter.GZIP_PER_RECORD_KEY, true);
+
+        // Small segments, so that we roll over to new files (and indexes).
+        conf.setLong("warc.output.segment.size", 20_000L);
+
+        final int numRecords = 100;
+        WARCFileWriter writer = new WARCFileWriter(conf, null,
+                new Path(testDir.getAbsolutePath(), "part"));
+        for (int i = 0; i < numRecords; i++) {
+            writer.write(makeRecord(i));
+        }
+
+        writer.close();
+
+        File[] indexFiles = testDir.listFiles((dir, name) -> name.endsWith(".cdx"));
+        assertTrue(indexFiles.length > 1);
+
+        int numIndexed = 0;
+        for (File indexFile : indexFiles) {
+            CdxSegment segment = new CdxSegment(FileUtils.readFileToByteArray(indexFile));
+            numIndexed += segment.size();
+        }
+
+        assertEquals(numRecords, numIndexed);
+
+        // Every record can be found via the index, and read with one range read.
+        for (int i = 0; i < numRecords; i++) {
+            String url = makeUrl(i);
+            String key = CommonCrawlUrls.convertToIndexFormat(new URL(url));
+
+            CdxEntry entry = null;
+            for (File indexFile : indexFiles) {
+                CdxSegment segment = new CdxSegment(FileUtils.readFileToByteArray(indexFile));
+                List<CdxEntry> entries = segment.getEntries(key);
+                if (!entries.isEmpty()) {
+                    entry = entries.get(0);
+                }
+            }
+
+            assertEquals(url, entry.getUrl());
+            assertEquals("text/html", entry.getMime());
+            assertEquals(200, entry.getStatus());
+
+            byte[] data = new byte[(int) entry.getLength()];
+            try (RandomAccessFile raf = new RandomAccessFile(new File(testDir, entry.getFilename()),
+                    "r")) {
+                raf.seek(entry.getOffset());
+                raf.readFully(data);
+            }
+
+            WARCRecord record = new WARCRecord(new DataInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(data))));
+            assertEquals(url, record.getHeader().getTargetURI());
+            assertEquals(makeHtml(i), new String(record.getContent(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static WARCRecord makeRecord(int index) {
+        return new WARCRecord.Builder("resource")
+                .setTargetURI(makeUrl(index))
+                .setDate(System.currentTimeMillis())
+                .setContentType("text/html; charset=UTF-8")
+                .setContent(makeHtml(index).getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private static String makeUrl(int index) {
+        return String.format("http://domain%d.com/page%d.html", index % 7, index);
+    }
+
+    private static String makeHtml(int index) {
+        StringBuilder result = new StringBuilder("<html><body>");
+        for (int i = 0; i < index * 10; i++) {
+            result.append(String.format("<p>Paragraph %d of page %d</p>\n", i, index));
+        }
+
+        result.append("</body></html>");
+        return result.toString();
+    }
+}
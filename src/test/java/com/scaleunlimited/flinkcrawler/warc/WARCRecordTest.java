@@ -0,0 +1,68 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class WARCRecordTest {
+
+    @Test
+    public void testBuilder() throws Exception {
+        byte[] content = "<html><body>Caf\u00e9</body></html>".getBytes(StandardCharsets.UTF_8);
+        WARCRecord record = new WARCRecord.Builder("resource")
+                .setTargetURI("http://domain.com/page.html")
+                .setDate(1495454400123L)
+                .setRecordID("<http://domain.com/page.html>")
+                .setContentType("text/html")
+                .setField("WARC-Truncated", null)
+                .setContent(content)
+                .build();
+
+        // Content isn't copied.
+        assertSame(content, record.getContent());
+        assertEquals(content.length, record.getHeader().getContentLength());
+        assertEquals("2017-05-22T12:00:00Z", record.getHeader().getDateString());
+        assertNull(record.getHeader().getField("WARC-Truncated"));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            record.write(out);
+        }
+
+        String expectedHeader = "WARC/1.0\r\n"
+                + "WARC-Type: resource\r\n"
+                + "WARC-Target-URI: http://domain.com/page.html\r\n"
+                + "WARC-Date: 2017-05-22T12:00:00Z\r\n"
+                + "WARC-Record-ID: <http://domain.com/page.html>\r\n"
+                + "Content-Type: text/html\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "\r\n";
+        assertEquals(expectedHeader, new String(bos.toByteArray(), 0, expectedHeader.length(),
+                StandardCharsets.UTF_8));
+
+        WARCRecord parsed = new WARCRecord(
+                new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+        assertEquals("resource", parsed.getHeader().getRecordType());
+        assertEquals("http://domain.com/page.html", parsed.getHeader().getTargetURI());
+        assertEquals("text/html", parsed.getHeader().getContentType());
+        assertArrayEquals(content, parsed.getContent());
+    }
+
+    @Test
+    public void testFormatDate() throws Exception {
+        assertEquals("1970-01-01T00:00:00Z", WARCRecord.formatDate(0));
+        assertEquals("2017-05-22T12:00:00Z", WARCRecord.formatDate(1495454400999L));
+        assertEquals("2017-05-22T12:00:01Z", WARCRecord.formatDate(1495454401000L));
+        assertEquals("2017-05-22T12:00:00Z", WARCRecord.formatDate(1495454400000L));
+        assertEquals("1969-12-31T23:59:59Z", WARCRecord.formatDate(-1));
+    }
+}
@@ -0,0 +1,251 @@
+package com.scaleunlimited.flinkcrawler.warc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flink.runtime.checkpoint.OperatorSubtaskState;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.util.OneInputStreamOperatorTestHarness;
+import org.junit.Test;
+
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CdxEntry;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CdxSegment;
+import com.scaleunlimited.flinkcrawler.fetcher.commoncrawl.CommonCrawlUrls;
+
+public class WARCSinkOperatorTest {
+
+    private static final long MAX_PART_SIZE = 20_000L;
+    private static final long INTERVAL = 1000L;
+    private static final String USER_AGENT = "test-agent";
+
+    @Test
+    public void testCommitOnCheckpoint() throws Exception {
+        File testDir = makeTestDir("testCommitOnCheckpoint");
+        OneInputStreamOperatorTestHarness<EncodedWARCRecord, Void> harness = makeHarness(
+                new WARCSinkOperator(testDir.getAbsolutePath(), "part", true, MAX_PART_SIZE,
+                        INTERVAL * 60, INTERVAL * 5, INTERVAL, true, USER_AGENT));
+        harness.open();
+
+        final int numRecords = 100;
+        for (int i = 0; i < numRecords; i++) {
+            harness.processElement(makeRecord(i, true), 0);
+        }
+
+        // Files aren't visible until the checkpoint that contains them completes.
+        harness.snapshot(1L, 0);
+        assertEquals(0, getCommittedFiles(testDir).length);
+
+        harness.notifyOfCompletedCheckpoint(1L);
+        File[] indexFiles = getIndexFiles(testDir);
+        assertTrue(indexFiles.length > 1);
+        assertEquals(indexFiles.length * 2, getCommittedFiles(testDir).length);
+
+        checkRecords(testDir, indexFiles, 0, numRecords);
+
+        // Every file starts with its own warcinfo record.
+        for (File warcFile : testDir.listFiles((dir, name) -> name.endsWith(".warc.gz"))) {
+            try (DataInputStream in = new DataInputStream(
+                    new GZIPInputStream(new FileInputStream(warcFile)))) {
+                WARCRecord warcInfo = new WARCRecord(in);
+                assertEquals("warcinfo", warcInfo.getHeader().getRecordType());
+                assertEquals(warcFile.getName(), warcInfo.getHeader().getField("WARC-Filename"));
+                assertTrue(new String(warcInfo.getContent(), StandardCharsets.UTF_8)
+                        .contains("http-header-user-agent: " + USER_AGENT + "\r\n"));
+            }
+        }
+
+        harness.close();
+    }
+
+    @Test
+    public void testCommitOnClose() throws Exception {
+        File testDir = makeTestDir("testCommitOnClose");
+        OneInputStreamOperatorTestHarness<EncodedWARCRecord, Void> harness = makeHarness(
+                new WARCSinkOperator(testDir.getAbsolutePath(), "part", true, MAX_PART_SIZE,
+                        INTERVAL * 60, INTERVAL * 5, INTERVAL, false, USER_AGENT));
+        harness.open();
+
+        final int numRecords = 5;
+        for (int i = 0; i < numRecords; i++) {
+            harness.processElement(makeRecord(i, true), 0);
+        }
+
+        harness.snapshot(1L, 0);
+        assertEquals(0, getCommittedFiles(testDir).length);
+
+        // The end of the input commits everything, without waiting for another checkpoint.
+        harness.close();
+
+        File[] indexFiles = getIndexFiles(testDir);
+        assertEquals(1, indexFiles.length);
+        checkRecords(testDir, indexFiles, 0, numRecords);
+    }
+
+    @Test
+    public void testRollOnInactivity() throws Exception {
+        File testDir = makeTestDir("testRollOnInactivity");
+        OneInputStreamOperatorTestHarness<EncodedWARCRecord, Void> harness = makeHarness(
+                new WARCSinkOperator(testDir.getAbsolutePath(), "part", false, MAX_PART_SIZE,
+                        INTERVAL * 60, INTERVAL * 5, INTERVAL, false, USER_AGENT));
+        harness.setProcessingTime(0);
+        harness.open();
+
+        harness.processElement(makeRecord(0, false), 0);
+        harness.setProcessingTime(INTERVAL * 6);
+        harness.processElement(makeRecord(1, false), 0);
+
+        harness.snapshot(1L, 0);
+        harness.notifyOfCompletedCheckpoint(1L);
+
+        // The first file was rolled (and committed), the second one is still in progress.
+        File[] indexFiles = getIndexFiles(testDir);
+        assertEquals(1, indexFiles.length);
+        assertTrue(new File(testDir, "part-0-0.warc").exists());
+        assertEquals(1, new CdxSegment(FileUtils.readFileToByteArray(indexFiles[0])).size());
+
+        harness.close();
+        assertTrue(new File(testDir, "part-0-1.warc").exists());
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        File testDir = makeTestDir("testRestore");
+        WARCSinkOperator operator = new WARCSinkOperator(testDir.getAbsolutePath(), "part", true,
+                MAX_PART_SIZE * 10, INTERVAL * 60, INTERVAL * 5, INTERVAL, false, USER_AGENT);
+        OneInputStreamOperatorTestHarness<EncodedWARCRecord, Void> harness = makeHarness(
+                operator);
+        harness.open();
+
+        for (int i = 0; i < 5; i++) {
+            harness.processElement(makeRecord(i, true), 0);
+        }
+
+        OperatorSubtaskState state = harness.snapshot(1L, 0);
+
+        // These records were written after the checkpoint, so they have to go away when we
+        // fail before the next one.
+        for (int i = 5; i < 10; i++) {
+            harness.processElement(makeRecord(i, true), 0);
+        }
+
+        operator.dispose();
+        assertEquals(0, getCommittedFiles(testDir).length);
+
+        harness = makeHarness(new WARCSinkOperator(testDir.getAbsolutePath(), "part", true,
+                MAX_PART_SIZE * 10, INTERVAL * 60, INTERVAL * 5, INTERVAL, false, USER_AGENT));
+        harness.initializeState(state);
+        harness.open();
+
+        for (int i = 10; i < 12; i++) {
+            harness.processElement(makeRecord(i, true), 0);
+        }
+
+        harness.close();
+
+        File[] indexFiles = getIndexFiles(testDir);
+        assertEquals(1, indexFiles.length);
+        CdxSegment segment = new CdxSegment(FileUtils.readFileToByteArray(indexFiles[0]));
+        assertEquals(7, segment.size());
+
+        checkRecords(testDir, indexFiles, 0, 5);
+        checkRecords(testDir, indexFiles, 10, 12);
+    }
+
+    private static OneInputStreamOperatorTestHarness<EncodedWARCRecord, Void> makeHarness(
+            WARCSinkOperator operator) throws Exception {
+        return new OneInputStreamOperatorTestHarness<>(operator);
+    }
+
+    private static File makeTestDir(String testName) throws Exception {
+        File testDir = new File("target/WARCSinkOperatorTest/" + testName + "/");
+        FileUtils.deleteDirectory(testDir);
+        testDir.mkdirs();
+        return testDir;
+    }
+
+    /**
+     * @return files that have been committed (in-progress files are hidden).
+     */
+    private static File[] getCommittedFiles(File testDir) {
+        return testDir.listFiles((dir, name) -> !name.startsWith("."));
+    }
+
+    private static File[] getIndexFiles(File testDir) {
+        return testDir.listFiles((dir, name) -> name.endsWith(".cdx"));
+    }
+
+    /**
+     * Every record from <start> up to <end> can be found via the indexes, and read with one range
+     * read.
+     */
+    private static void checkRecords(File testDir, File[] indexFiles, int start, int end)
+            throws Exception {
+        for (int i = start; i < end; i++) {
+            String url = makeUrl(i);
+            String key = CommonCrawlUrls.convertToIndexFormat(new URL(url));
+
+            CdxEntry entry = null;
+            for (File indexFile : indexFiles) {
+                CdxSegment segment = new CdxSegment(FileUtils.readFileToByteArray(indexFile));
+                List<CdxEntry> entries = segment.getEntries(key);
+                if (!entries.isEmpty()) {
+                    entry = entries.get(0);
+                }
+            }
+
+            assertNotNull("No index entry for " + url, entry);
+
+            byte[] data = new byte[(int) entry.getLength()];
+            try (RandomAccessFile raf = new RandomAccessFile(new File(testDir, entry.getFilename()),
+                    "r")) {
+                raf.seek(entry.getOffset());
+                raf.readFully(data);
+            }
+
+            WARCRecord record = new WARCRecord(new DataInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(data))));
+            assertEquals(url, record.getHeader().getTargetURI());
+            assertEquals(makeHtml(i), new String(record.getContent(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static StreamRecord<EncodedWARCRecord> makeRecord(int index, boolean compress)
+            throws Exception {
+        WARCRecord record = new WARCRecord.Builder("resource")
+                .setTargetURI(makeUrl(index))
+                .setDate(System.currentTimeMillis())
+                .setContentType("text/html; charset=UTF-8")
+                .setContent(makeHtml(index).getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        try (WARCRecordEncoder encoder = new WARCRecordEncoder(compress)) {
+            return new StreamRecord<>(encoder.encode(record));
+        }
+    }
+
+    private static String makeUrl(int index) {
+        return String.format("http://domain%d.com/page%d.html", index % 7, index);
+    }
+
+    private static String makeHtml(int index) {
+        StringBuilder result = new StringBuilder("<html><body>");
+        for (int i = 0; i < index * 10; i++) {
+            result.append(String.format("<p>Paragraph %d of page %d</p>\n", i, index));
+        }
+
+        result.append("</body></html>");
+        return result.toString();
+    }
+}